@@ -21,26 +21,62 @@ package org.springframework.boot.actuate.metrics.ambari;
 import static java.util.Collections.min;
 import static org.springframework.util.CollectionUtils.isEmpty;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.boot.actuate.metrics.ambari.buffer.MetricBuffer;
+import org.springframework.boot.actuate.metrics.ambari.buffer.TimestampQuantization;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricNameDictionary;
+import org.springframework.boot.actuate.metrics.ambari.domain.AbstractMetricValues;
+import org.springframework.boot.actuate.metrics.ambari.domain.QualifiedMetricName;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.ambari.filter.DeadbandFilter;
+import org.springframework.boot.actuate.metrics.ambari.filter.MetricNameFilter;
+import org.springframework.boot.actuate.metrics.ambari.history.MetricHistory;
+import org.springframework.boot.actuate.metrics.ambari.json.PayloadListener;
+import org.springframework.boot.actuate.metrics.ambari.lane.PriorityLane;
+import org.springframework.boot.actuate.metrics.ambari.lane.PriorityLaneRouter;
 import org.springframework.boot.actuate.metrics.ambari.pool.MetricObjectPool;
+import org.springframework.boot.actuate.metrics.ambari.spool.MetricSpool;
+import org.springframework.boot.actuate.metrics.ambari.tuning.AdaptiveFlushTuner;
+import org.springframework.boot.actuate.metrics.ambari.tuning.TokenBucket;
 import org.springframework.boot.actuate.metrics.writer.Delta;
 import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.actuate.metrics.writer.PrefixMetricWriter;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
 
 /**
  * A {@link MetricWriter} for the Apache Ambari Metrics Service, writing metrics to the HTTP endpoint provided by the
  * server. Data are buffered according to the {@link #setMetricBufferSize(int) bufferSize} property, and only flushed
  * automatically when the buffer size is reached. Users should either manually {@link #flushMetricBuffer()} after
- * writing a batch of data if that makes sense, or consider adding a {@link Scheduled Scheduled} task to flush
- * periodically.
+ * writing a batch of data if that makes sense, set a {@link #setFlushIntervalMillis(long) flush interval} or consider
+ * adding a {@link Scheduled Scheduled} task to flush periodically.
  * 
  * This is an common abstract class. Extensions should implement the {@link #doSendMetrics(TimelineMetrics)} to allow
  * transition of SpringBoot metrics to the Ambari Metrics Collector.
@@ -49,13 +85,52 @@ import org.springframework.scheduling.annotation.Scheduled;
  * {@link #returnMetricPoolObjects(TimelineMetrics)} after transmitting the metrics, to return thetimelineMetrics to the
  * object pool.
  * 
+ * The writer is also a {@link PrefixMetricWriter}, so the exporters that provide whole metric groups (e.g.
+ * PrefixMetricGroupExporter) use the {@link #set(Collection)} batch ingestion.
+ * 
+ * On {@link #close()} the buffered metrics are flushed and the buffer and object pools (including the off-heap memory
+ * if {@link #setOffHeapBufferCapacity(long) enabled}) are released.
+ * 
+ * As a {@link SmartLifecycle} the writer drains on context shutdown: the buffer is sent in chunks, in parallel, and
+ * the sends in flight are awaited, all within the {@link #setShutdownTimeoutMillis(long) shutdown timeout}. The
+ * chunks not sent in time are written to the {@link #setSpoolDirectory(File) spool directory}, if set, and replayed
+ * on the next start.
+ * 
+ * The metrics matching the {@link #setPriorityLanes(List) priority lanes} bypass the main buffer. Each lane has its
+ * own buffer, size and interval flush triggers and dispatch thread, so the critical metrics (e.g. error rates and
+ * health) are sent with low latency while the high volume metrics stay heavily batched.
+ * 
+ * Fleets of applications started together should enable the {@link #setFlushPhaseJitter(boolean) flush phase jitter},
+ * so that their periodic flushes are spread over the interval, and can cap the collector load of every instance with a
+ * {@link #setSendRateLimiter(TokenBucket) send rate limiter}.
+ * 
+ * Several logical applications hosted in one JVM share a single writer: the {@link #forApplication(String, String)}
+ * writers tag their metrics with their own application and instance ids, so one buffer and one transport serve all of
+ * them.
+ * 
  * @author tzolov@apache.org
  *
  */
-public abstract class AmbariMetricWriter implements MetricWriter {
+public abstract class AmbariMetricWriter implements MetricWriter, PrefixMetricWriter, Closeable, SmartLifecycle {
 
     private static final Logger logger = LoggerFactory.getLogger(AmbariMetricWriter.class);
 
+    /**
+     * Stopped late, after the components producing metrics.
+     */
+    public static final int DEFAULT_LIFECYCLE_PHASE = Integer.MIN_VALUE + 1000;
+
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    public static final int DEFAULT_SHUTDOWN_PARALLELISM = 4;
+
+    public static final int DEFAULT_SHUTDOWN_CHUNK_SIZE = 500;
+
+    /**
+     * A rate limited buffer is flushed regardless of the limit once it holds that many times its size.
+     */
+    private static final int MAX_DEFERRED_BUFFER_FACTOR = 10;
+
     /**
      * Uniquely identify service/application within Ambari Metrics Collector.
      */
@@ -71,6 +146,11 @@ public abstract class AmbariMetricWriter implements MetricWriter {
      */
     private String metricInstanceId;
 
+    /**
+     * Maps the metric names to int IDs once at ingestion. Shared by the filters and the metric buffer.
+     */
+    private final MetricNameDictionary metricNameDictionary;
+
     /**
      * Metric buffer to patch the input metrics and post them in batches. The batch approach reduces the number of
      * remote HTTP calls.
@@ -78,9 +158,9 @@ public abstract class AmbariMetricWriter implements MetricWriter {
     private final MetricBuffer metricBuffer;
 
     /**
-     * Metric buffer size to fill before posting data to server.
+     * Metric buffer size to fill before posting data to server. Changed by the flush tuner on the flushing thread.
      */
-    private int metricBufferSize;
+    private volatile int metricBufferSize;
 
     /**
      * TimelineMetric/TimelineMetrics object pool. The object pool minimizes the repetitive creation of data objects and
@@ -88,16 +168,125 @@ public abstract class AmbariMetricWriter implements MetricWriter {
      */
     private final MetricObjectPool metricObjectPool;
 
+    /**
+     * Include/exclude metric name filter applied before any other processing. Accepts all metrics by default.
+     */
+    private volatile MetricNameFilter metricNameFilter = new MetricNameFilter(null, null);
+
+    /**
+     * Drops the samples of slow moving gauges that did not change enough since the last sent value.
+     */
+    private final DeadbandFilter deadbandFilter;
+
+    /**
+     * Flushes the buffer periodically when a flush interval is set. Created on demand.
+     */
+    private ScheduledExecutorService flushScheduler;
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Set by {@link #close()}. No periodic flush is scheduled anymore, also not by the flush tuner.
+     */
+    private boolean closed = false;
+
+    private long flushIntervalMillis = 0;
+
+    private volatile boolean running = false;
+
+    private int lifecyclePhase = DEFAULT_LIFECYCLE_PHASE;
+
+    private long shutdownTimeoutMillis = DEFAULT_SHUTDOWN_TIMEOUT_MILLIS;
+
+    private int shutdownParallelism = DEFAULT_SHUTDOWN_PARALLELISM;
+
+    /**
+     * Max number of TimelineMetric per shutdown send.
+     */
+    private int shutdownChunkSize = DEFAULT_SHUTDOWN_CHUNK_SIZE;
+
+    /**
+     * (Optional) Stores the batches not sent before the shutdown deadline.
+     */
+    private volatile MetricSpool metricSpool;
+
+    /**
+     * (Optional) Tunes the buffer size and the flush interval from the observed flush cost.
+     */
+    private volatile AdaptiveFlushTuner flushTuner;
+
+    /**
+     * When true the periodic flushes start at a phase derived from the host name and the instance id.
+     */
+    private volatile boolean flushPhaseJitter = false;
+
+    /**
+     * (Optional) Limits the bytes per second sent to the collector by deferring the main buffer flushes.
+     */
+    private volatile TokenBucket sendRateLimiter;
+
+    private final AtomicLong deferredFlushes = new AtomicLong(0);
+
+    /**
+     * {@link System#nanoTime()} until which the size and interval triggered flushes are deferred without consulting
+     * the send rate limiter.
+     */
+    private final AtomicLong deferredUntilNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * (Optional) Keeps the recently exported points of every series for local reads.
+     */
+    private volatile MetricHistory metricHistory;
+
+    /**
+     * Writers of the other applications hosted in this JVM, indexed by the application index of their
+     * {@link QualifiedMetricName qualified} metric names.
+     */
+    private final List<ApplicationMetricWriter> applications = new CopyOnWriteArrayList<ApplicationMetricWriter>();
+
+    /**
+     * (Optional) Routes the metrics to the priority lanes. Null when no lanes are configured.
+     */
+    private volatile PriorityLaneRouter laneRouter;
+
+    private volatile LaneBuffer[] laneBuffers = new LaneBuffer[0];
+
+    /**
+     * Feeds the payload size and the serialization time of the sent metrics to the send rate limiter and the flush
+     * tuner.
+     */
+    private final PayloadListener payloadListener = new PayloadListener() {
+        @Override
+        public void payloadEncoded(TimelineMetrics timelineMetrics, int bytes, long encodeNanos) {
+            TokenBucket limiter = sendRateLimiter;
+            if (limiter != null) {
+                limiter.consume(bytes);
+            }
+            AdaptiveFlushTuner tuner = flushTuner;
+            if (tuner != null) {
+                long points = 0;
+                for (TimelineMetric metric : timelineMetrics.getMetrics()) {
+                    points += metric.getMetricValues().size();
+                }
+                tuner.recordPayload(points, bytes, encodeNanos);
+            }
+        }
+    };
+
     public AmbariMetricWriter(String applicationId, String hostName, String instanceId, int metricsBufferSize) {
 
         this.metricApplicationId = applicationId;
         this.metricHostName = hostName;
         this.metricInstanceId = instanceId;
 
-        this.metricBuffer = new MetricBuffer();
+        this.metricNameDictionary = new MetricNameDictionary();
+
+        this.metricBuffer = new MetricBuffer(metricNameDictionary);
         this.metricBufferSize = metricsBufferSize;
 
         this.metricObjectPool = new MetricObjectPool(1000, Math.max(1000, metricBufferSize * 10));
+
+        this.deadbandFilter = new DeadbandFilter(metricNameDictionary);
     }
 
     @Override
@@ -108,6 +297,7 @@ public abstract class AmbariMetricWriter implements MetricWriter {
     @Override
     public void reset(String metricName) {
         logger.debug("Reset: " + metricName);
+        deadbandFilter.reset(metricName);
         set(new Metric<Long>(metricName, 0L));
     }
 
@@ -116,32 +306,320 @@ public abstract class AmbariMetricWriter implements MetricWriter {
 
         logger.debug("Set: " + metric);
 
-        metricBuffer.add(metric);
+        int metricId = acceptedId(metric);
+        if (metricId < 0) {
+            return;
+        }
+
+        LaneBuffer lane = laneFor(metricId, metric.getName());
+        if (lane != null) {
+            lane.add(metricId, metric);
+            return;
+        }
+
+        metricBuffer.add(metricId, metric);
+
+        if (metricBuffer.size() > metricBufferSize) {
+            flushDefaultBuffer(true);
+        }
+    }
+
+    /**
+     * Writes a floating point sample without a {@link Metric} instance. Used by the exporters that read the metric
+     * values directly (e.g. AmbariBufferMetricExporter).
+     * 
+     * @param metricName
+     *            Metric name.
+     * @param timestamp
+     *            Sample timestamp in milliseconds.
+     * @param value
+     *            Sample value.
+     */
+    public void set(String metricName, long timestamp, double value) {
+
+        int metricId = acceptedId(metricName, timestamp, value);
+        if (metricId < 0) {
+            return;
+        }
+
+        LaneBuffer lane = laneFor(metricId, metricName);
+        if (lane != null) {
+            lane.add(metricId, timestamp, value);
+            return;
+        }
+
+        metricBuffer.add(metricId, timestamp, value);
+
+        if (metricBuffer.size() > metricBufferSize) {
+            flushDefaultBuffer(true);
+        }
+    }
+
+    /**
+     * Writes an integral sample (e.g. counter) without a {@link Metric} instance.
+     * 
+     * @param metricName
+     *            Metric name.
+     * @param timestamp
+     *            Sample timestamp in milliseconds.
+     * @param value
+     *            Sample value.
+     */
+    public void set(String metricName, long timestamp, long value) {
+
+        int metricId = acceptedId(metricName, timestamp, value);
+        if (metricId < 0) {
+            return;
+        }
+
+        LaneBuffer lane = laneFor(metricId, metricName);
+        if (lane != null) {
+            lane.add(metricId, timestamp, value);
+            return;
+        }
+
+        metricBuffer.add(metricId, timestamp, value);
+
+        if (metricBuffer.size() > metricBufferSize) {
+            flushDefaultBuffer(true);
+        }
+    }
+
+    /**
+     * Ingests a whole batch (e.g. an export snapshot) in one pass. The metric buffer is locked only once for the batch
+     * and the buffer size is checked after the batch is added.
+     * 
+     * @param metrics
+     *            Metrics to write.
+     */
+    public void set(Collection<Metric<?>> metrics) {
+
+        logger.debug("Set " + metrics.size() + " metrics");
+
+        List<Metric<?>> accepted = new ArrayList<Metric<?>>(metrics.size());
+        int[] acceptedIds = new int[metrics.size()];
+        for (Metric<?> metric : metrics) {
+            int metricId = acceptedId(metric);
+            if (metricId >= 0) {
+                LaneBuffer lane = laneFor(metricId, metric.getName());
+                if (lane != null) {
+                    lane.add(metricId, metric);
+                } else {
+                    acceptedIds[accepted.size()] = metricId;
+                    accepted.add(metric);
+                }
+            }
+        }
+
+        metricBuffer.addAll(acceptedIds, accepted);
 
         if (metricBuffer.size() > metricBufferSize) {
-            flushMetricBuffer();
+            flushDefaultBuffer(true);
+        }
+    }
+
+    @Override
+    public void set(String group, Collection<Metric<?>> values) {
+        set(values);
+    }
+
+    @Override
+    public void increment(String group, Delta<?> delta) {
+        throw new UnsupportedOperationException("Counters not supported via increment");
+    }
+
+    /**
+     * @return Returns the metric ID or -1 if the metric is excluded by name or is an unchanged slow moving gauge.
+     */
+    private int acceptedId(Metric<?> metric) {
+        return acceptedId(metric.getName(), metric.getTimestamp().getTime(), metric.getValue().doubleValue());
+    }
+
+    private int acceptedId(String metricName, long timestamp, double value) {
+        int metricId = filteredId(metricName);
+        return (metricId >= 0 && deadbandFilter.accept(metricId, timestamp, value)) ? metricId : -1;
+    }
+
+    /**
+     * The excluded names are never registered in the dictionary, otherwise every excluded name would permanently grow
+     * the dictionary and the arrays indexed by the metric ID.
+     * 
+     * @return Returns the ID of a name accepted by the metric name filter or -1 for an excluded name.
+     */
+    private int filteredId(String metricName) {
+        MetricNameFilter filter = metricNameFilter;
+        if (filter.isAcceptAll()) {
+            return metricNameDictionary.getId(metricName);
+        }
+        int metricId = metricNameDictionary.findId(metricName);
+        if (metricId < 0) {
+            if (!filter.accept(metricName)) {
+                return -1;
+            }
+            metricId = metricNameDictionary.getId(metricName);
+        }
+        return filter.accept(metricId, metricName) ? metricId : -1;
+    }
+
+    /**
+     * @return Returns the priority lane of the metric or null for the metrics of the main buffer.
+     */
+    private LaneBuffer laneFor(int metricId, String metricName) {
+        PriorityLaneRouter router = laneRouter;
+        if (router == null) {
+            return null;
         }
+        int lane = router.route(metricId, metricName);
+        LaneBuffer[] lanes = laneBuffers;
+        return (lane == PriorityLaneRouter.DEFAULT_LANE || lane >= lanes.length) ? null : lanes[lane];
     }
 
     /**
-     * Flushes the metric buffer without waiting for it to fill any further. Converts the metricSnapsht into
-     * {@link TimelineMetrics} instance and sends it to the Ambari Metrics Collector using the abstract
-     * {@link #sendMetricsAndCleanPool(TimelineMetrics)}.
+     * Flushes the metric buffer, and the priority lane buffers, without waiting for them to fill any further. Converts
+     * the metricSnapsht into {@link TimelineMetrics} instance and sends it to the Ambari Metrics Collector using the
+     * abstract {@link #sendMetricsAndCleanPool(TimelineMetrics)}. The lanes are flushed first, on the calling thread.
      */
     public void flushMetricBuffer() {
+        for (LaneBuffer lane : laneBuffers) {
+            lane.flush();
+        }
+        flushDefaultBuffer(false);
+    }
+
+    /**
+     * Flushes the main buffer only.
+     * 
+     * @param triggered
+     *            True for the size and interval triggered flushes, which are subject to the send rate limit.
+     */
+    private void flushDefaultBuffer(boolean triggered) {
+
+        if (metricBuffer.isEmpty()) {
+            return;
+        }
 
-        if (metricBuffer.size() <= 0) {
+        if (triggered && isRateLimited()) {
+            // The metrics stay buffered and go with the next flush allowed by the limiter
             return;
         }
 
-        Map<String, Map<Long, Double>> metricsSnapshot = metricBuffer.flush();
+        long points = metricBuffer.size();
+
+        flushBuffer(metricBuffer);
+
+        AdaptiveFlushTuner tuner = flushTuner;
+        if (tuner != null) {
+            tuner.recordFlush(points, System.currentTimeMillis());
+            applyTuning(tuner);
+        }
+    }
+
+    /**
+     * The limiter is consulted only once the debt found by the previous check is paid, so the producers above the
+     * buffer size do not contend on the limiter monitor. A deferral is counted once per debt period.
+     */
+    private boolean isRateLimited() {
+        TokenBucket limiter = sendRateLimiter;
+        long maxDeferredSize = (long) Math.max(1, metricBufferSize) * MAX_DEFERRED_BUFFER_FACTOR;
+        if (limiter == null || metricBuffer.size() > maxDeferredSize) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+        long deferredUntil = deferredUntilNanos.get();
+        if (now - deferredUntil < 0) {
+            return true;
+        }
+
+        long debtNanos = limiter.getDebtNanos(now);
+        if (debtNanos == 0) {
+            return false;
+        }
+        if (deferredUntilNanos.compareAndSet(deferredUntil, now + debtNanos)) {
+            deferredFlushes.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * @param intervalMillis
+     *            Flush interval.
+     * @return Returns the delay of the first periodic flush. With the {@link #setFlushPhaseJitter(boolean) phase
+     *         jitter} on, a delay in the [1, interval] range derived from a hash of the host name and the instance id:
+     *         stable across restarts and spread across a fleet. Random if neither is set.
+     */
+    long getFlushPhaseMillis(long intervalMillis) {
+        if (!flushPhaseJitter || intervalMillis <= 1) {
+            return intervalMillis;
+        }
+        int hash;
+        if (metricHostName == null && metricInstanceId == null) {
+            hash = ThreadLocalRandom.current().nextInt();
+        } else {
+            hash = mix((metricHostName + ":" + metricInstanceId).hashCode());
+        }
+        return 1 + (hash & 0x7fffffffL) % intervalMillis;
+    }
+
+    /**
+     * Murmur3 finalizer. Similar host names (e.g. host-01, host-02) have close String hash codes.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private void flushBuffer(MetricBuffer buffer) {
+
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        Map<String, Map<Long, Double>> metricsSnapshot = buffer.flush();
 
         if (!isEmpty(metricsSnapshot)) {
             // Send the metrics to Ambari Metrics Collector
-            sendMetricsAndCleanPool(toTimelineMetrics(metricsSnapshot));
+            sendMetricsAndCleanPool(toTimelineMetrics(buffer, metricsSnapshot));
+        }
+    }
+
+    private void applyTuning(AdaptiveFlushTuner tuner) {
+        this.metricBufferSize = tuner.getBufferSize();
+
+        // Reschedule only on a significant change
+        long interval = tuner.getFlushIntervalMillis();
+        long currentInterval = getFlushIntervalMillis();
+        if (currentInterval <= 0 || Math.abs(interval - currentInterval) > currentInterval / 5) {
+            rescheduleFlush(interval);
+        }
+    }
+
+    /**
+     * Records the latency of a completed send for the flush tuner.
+     * 
+     * @param startNanos
+     *            System#nanoTime() when the send started.
+     * @param success
+     *            True if the server accepted the metrics.
+     */
+    protected void recordSend(long startNanos, boolean success) {
+        AdaptiveFlushTuner tuner = flushTuner;
+        if (tuner != null) {
+            tuner.recordSend(System.nanoTime() - startNanos, success);
         }
     }
 
+    /**
+     * @return Returns the listener the rest clients report the encoded payloads to.
+     */
+    protected PayloadListener getPayloadListener() {
+        return payloadListener;
+    }
+
     /**
      * Sends the {@link TimelineMetrics} to the Ambari Metric Collector and then returns the used transfer objects to
      * the metric objects pool.
@@ -161,15 +639,20 @@ public abstract class AmbariMetricWriter implements MetricWriter {
 
     /**
      * Converts the metricsSnapshots into {@link TimelineMetrics} instance. It uses the object pools to minimize the
-     * creation of {@link TimelineMetric} and {@link TimelineMetrics} object instance.
+     * creation of {@link TimelineMetric} and {@link TimelineMetrics} object instance. The snapshot value maps are
+     * swapped with the maps held by the pooled {@link TimelineMetric}s, so the value maps circulate between the buffer
+     * and the object pool.
      * 
+     * @param buffer
+     *            Buffer the snapshot was taken from.
      * @param metricsSnapshot
      * @return Returns {@link TimelineMetrics}
      */
-    private TimelineMetrics toTimelineMetrics(Map<String, Map<Long, Double>> metricsSnapshot) {
+    private TimelineMetrics toTimelineMetrics(MetricBuffer buffer, Map<String, Map<Long, Double>> metricsSnapshot) {
 
         try {
             TimelineMetrics timelineMetrics = metricObjectPool.getMetrics();
+            MetricHistory history = metricHistory;
 
             for (String metricName : metricsSnapshot.keySet()) {
 
@@ -177,17 +660,31 @@ public abstract class AmbariMetricWriter implements MetricWriter {
 
                 // Filter out metrics with no values
                 if (!isEmpty(metricValues)) {
+                    ApplicationMetricWriter application = applicationOf(metricName);
+                    if (history != null) {
+                        history.record((application == null) ? metricName : application
+                                .historyKey(QualifiedMetricName.getMetricName(metricName)), metricValues);
+                    }
                     try {
                         TimelineMetric metric = metricObjectPool.getMetricFor(timelineMetrics);
 
-                        metric.setMetricName(metricName);
-                        metric.setAppId(metricApplicationId);
+                        if (application == null) {
+                            metric.setMetricName(metricName);
+                            metric.setAppId(metricApplicationId);
+                            metric.setInstanceId(metricInstanceId);
+                        } else {
+                            metric.setMetricName(QualifiedMetricName.getMetricName(metricName));
+                            metric.setAppId(application.getApplicationId());
+                            metric.setInstanceId(application.getInstanceId());
+                        }
                         metric.setHostName(metricHostName);
-                        metric.setInstanceId(metricInstanceId);
-//                        metric.setType(metricBuffer.getMetricType(metricName));
-                        long startTime = computeStartTime(metricValues.keySet());
+                        metric.setType(buffer.getMetricType(metricName));
+                        long startTime = computeStartTime(metricValues);
                         metric.setStartTime(startTime);
                         metric.setTimestamp(startTime); // Not sure of the exact semantics?
+                        // Swap the maps. The pooled TimelineMetric keeps the snapshot map until its next use and
+                        // its previous (already cleaned) map goes back to the buffer.
+                        buffer.recycle(metric.getMetricValues());
                         metric.setMetricValues(metricValues);
 
                     } catch (Exception e) {
@@ -204,65 +701,876 @@ public abstract class AmbariMetricWriter implements MetricWriter {
         }
     }
 
-    private long computeStartTime(Collection<Long> times) {
-        return isEmpty(times) ? 0 : min(times);
-    }
-
-    /**
-     * Transmits {@link TimelineMetrics} object to the Ambari Metric Collector.
-     * 
-     * @param timelineMetrics
-     *            {@link TimelineMetrics} to send to the server.
-     */
-    protected abstract void doSendMetrics(TimelineMetrics timelineMetrics);
-
     /**
-     * Return the unused {@link TimelineMetrics} and {@link TimelineMetric} objects to their pools.
-     * 
-     * @param timelineMetrics
-     *            {@link TimelineMetrics} object to return to the timelineMetricsPool. The {@link TimelineMetrics}
-     *            contains list of {@link TimelineMetric} which in turn are returned to the pool.
+     * @return Returns the writer of the application owning the buffer key or null for the metrics of this writer.
      */
-    protected void returnMetricPoolObjects(TimelineMetrics timelineMetrics) {
-        metricObjectPool.returnObjects(timelineMetrics);
+    private ApplicationMetricWriter applicationOf(String metricName) {
+        int applicationIndex = QualifiedMetricName.getApplicationIndex(metricName);
+        return (applicationIndex < 0 || applicationIndex >= applications.size()) ? null : applications
+                .get(applicationIndex);
     }
 
-    // ------------------------------------------------------------------------
-    // Getters/Setters used for test purposes only
-    // ------------------------------------------------------------------------
-    public String getMetricApplicationId() {
-        return metricApplicationId;
+    private long computeStartTime(Map<Long, Double> metricValues) {
+        if (metricValues instanceof AbstractMetricValues) {
+            // Ordered by timestamp
+            return ((AbstractMetricValues) metricValues).getFirstTimestamp();
+        }
+        return isEmpty(metricValues) ? 0 : min(metricValues.keySet());
     }
 
-    public void setMetricApplicationId(String applicationId) {
-        this.metricApplicationId = applicationId;
-    }
+    @Override
+    public void start() {
+        running = true;
 
-    public String getMetricHostName() {
-        return metricHostName;
+        final MetricSpool spool = metricSpool;
+        if (spool != null && !spool.list().isEmpty()) {
+            Thread replay = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    replaySpool();
+                }
+            }, "ambari-metric-spool-replay");
+            replay.setDaemon(true);
+            replay.start();
+        }
     }
 
-    public void setMetricHostName(String hostName) {
-        this.metricHostName = hostName;
+    @Override
+    public void stop() {
+        try {
+            drain(shutdownTimeoutMillis);
+        } finally {
+            running = false;
+        }
     }
 
-    public String getMetricInstanceId() {
-        return metricInstanceId;
+    @Override
+    public void stop(Runnable callback) {
+        try {
+            stop();
+        } finally {
+            callback.run();
+        }
     }
 
-    public void setMetricInstanceId(String instanceId) {
-        this.metricInstanceId = instanceId;
+    @Override
+    public boolean isRunning() {
+        return running;
     }
 
-    public int getMetricBufferSize() {
-        return metricBufferSize;
+    @Override
+    public boolean isAutoStartup() {
+        return true;
     }
 
-    public void setMetricBufferSize(int bufferSize) {
-        this.metricBufferSize = bufferSize;
+    @Override
+    public int getPhase() {
+        return lifecyclePhase;
+    }
+
+    /**
+     * Sends the buffered metrics and waits for the sends in flight, within the timeout. The buffer is split in chunks
+     * of {@link #setShutdownChunkSize(int) shutdownChunkSize} metrics sent in parallel. The chunks not sent in time (or
+     * failed) are spooled if a {@link #setSpoolDirectory(File) spool directory} is set. A chunk still being sent at
+     * the deadline is spooled as well, and its spool copy is deleted if the late send succeeds.
+     * 
+     * @param timeoutMillis
+     *            Max time to wait for the sends.
+     * @return Returns true if all metrics were sent in time.
+     */
+    public boolean drain(long timeoutMillis) {
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        boolean drained = true;
+
+        for (LaneBuffer lane : laneBuffers) {
+            drained &= drainBuffer(lane.buffer, deadline);
+        }
+        drained &= drainBuffer(metricBuffer, deadline);
+
+        if (!awaitPendingSends(deadline)) {
+            logger.warn((getPendingSends() + getLaneSendsInFlight()) + " metric sends still in flight after the "
+                    + timeoutMillis + "ms shutdown timeout");
+            drained = false;
+        }
+
+        return drained;
+    }
+
+    private boolean drainBuffer(MetricBuffer buffer, long deadline) {
+        if (buffer.isEmpty()) {
+            return true;
+        }
+        TimelineMetrics timelineMetrics = toTimelineMetrics(buffer, buffer.flush());
+        return (timelineMetrics == null) || sendChunks(timelineMetrics, deadline);
+    }
+
+    private boolean sendChunks(TimelineMetrics timelineMetrics, final long deadline) {
+
+        List<TimelineMetric> metrics = timelineMetrics.getMetrics();
+        int chunkSize = Math.max(1, shutdownChunkSize);
+
+        // The chunk containers are borrowed from the pool, so the chunks can be returned like any other batch
+        List<ChunkSend> sends = new ArrayList<ChunkSend>();
+        int from = 0;
+        try {
+            while (metrics.size() - from > chunkSize) {
+                TimelineMetrics chunk = metricObjectPool.getMetrics();
+                chunk.getMetrics().addAll(metrics.subList(from, from + chunkSize));
+                sends.add(new ChunkSend(chunk, deadline));
+                from += chunkSize;
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to borrow TimelineMetrics object. The remaining metrics are sent in one chunk", e);
+        }
+
+        // The drained container is the last chunk. The other chunks own the metric objects moved to them
+        metrics.subList(0, from).clear();
+        if (metrics.isEmpty()) {
+            returnMetricPoolObjects(timelineMetrics);
+            return true;
+        }
+        sends.add(new ChunkSend(timelineMetrics, deadline));
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(Math.max(1, shutdownParallelism),
+                sends.size()), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ambari-metric-drain-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        boolean allSent = true;
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(sends.size());
+            for (ChunkSend send : sends) {
+                futures.add(executor.submit(send));
+            }
+
+            for (Future<Boolean> future : futures) {
+                try {
+                    future.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    // Failed or not completed in time. Sorted out below
+                    logger.debug("Metric chunk not sent on shutdown: " + e);
+                }
+            }
+
+            for (int i = 0; i < sends.size(); i++) {
+                allSent &= sends.get(i).complete(futures.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        return allSent;
+    }
+
+    /**
+     * Send of a shutdown drain chunk. The chunk metric objects are returned to the pool by the drain once the send is
+     * over or, if the drain gives up on a send still running, by the late send itself when it ends. The off-heap
+     * values are freed either way.
+     */
+    private class ChunkSend implements Callable<Boolean> {
+
+        private static final int QUEUED = 0;
+
+        private static final int RUNNING = 1;
+
+        private static final int FINISHED = 2;
+
+        private static final int ABANDONED = 3;
+
+        private final TimelineMetrics chunk;
+
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        private volatile boolean sent = false;
+
+        /**
+         * Spool copy of an abandoned chunk. Deleted if the late send succeeds after all.
+         */
+        private volatile File spooled;
+
+        ChunkSend(TimelineMetrics chunk, long deadline) {
+            this.chunk = chunk;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            if (!state.compareAndSet(QUEUED, RUNNING)) {
+                // Given up before it started
+                return false;
+            }
+            try {
+                sent = sendBlocking(chunk, Math.max(1, deadline - System.currentTimeMillis()));
+                return sent;
+            } finally {
+                if (!state.compareAndSet(RUNNING, FINISHED)) {
+                    lateSendEnded();
+                }
+            }
+        }
+
+        private void lateSendEnded() {
+            File file = spooled;
+            if (sent && file != null) {
+                unspool(file);
+            }
+            returnMetricPoolObjects(chunk);
+        }
+
+        /**
+         * Called by the drain after the deadline. Spools the chunk unless it was sent. A send still running is
+         * interrupted and left to release the chunk itself.
+         * 
+         * @return Returns true if the chunk was sent.
+         */
+        boolean complete(Future<Boolean> future) {
+            if (state.get() == FINISHED) {
+                if (!sent) {
+                    spool(chunk);
+                }
+                returnMetricPoolObjects(chunk);
+                return sent;
+            }
+
+            if (state.compareAndSet(QUEUED, ABANDONED)) {
+                spool(chunk);
+                returnMetricPoolObjects(chunk);
+                return false;
+            }
+
+            // Still running. Spooled before the send may release the chunk. If the send succeeds late the spool copy
+            // is deleted. A send that succeeds after the JVM exits is replayed once more, which rewrites the same
+            // points in the collector.
+            spooled = spool(chunk);
+            if (state.compareAndSet(RUNNING, ABANDONED)) {
+                future.cancel(true);
+                return false;
+            }
+
+            // Finished in the meantime
+            if (sent && spooled != null) {
+                unspool(spooled);
+            }
+            returnMetricPoolObjects(chunk);
+            return sent;
+        }
+    }
+
+    /**
+     * @return Returns the spool file or null if the metrics were not spooled.
+     */
+    private File spool(TimelineMetrics timelineMetrics) {
+        MetricSpool spool = metricSpool;
+        if (spool == null) {
+            logger.warn("Dropped " + timelineMetrics.getMetrics().size() + " metrics not sent before the shutdown "
+                    + "deadline. Set a spool directory to keep them");
+            return null;
+        }
+        try {
+            File file = spool.write(timelineMetrics);
+            logger.info("Spooled " + timelineMetrics.getMetrics().size() + " metrics to " + file);
+            return file;
+        } catch (IOException e) {
+            logger.error("Failed to spool " + timelineMetrics.getMetrics().size() + " metrics", e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the spool copy of a chunk sent after all, so it is not replayed twice.
+     */
+    private void unspool(File file) {
+        if (file.delete()) {
+            logger.info("Deleted " + file + ". The metrics were sent after the shutdown deadline");
+        } else {
+            logger.warn("Can not delete " + file + ". Its metrics, sent after the shutdown deadline, will be replayed");
+        }
+    }
+
+    /**
+     * Sends the spooled batches, oldest first. Stops at the first failure, leaving the rest for the next start.
+     * 
+     * @return Returns the number of replayed batches.
+     */
+    public int replaySpool() {
+        MetricSpool spool = metricSpool;
+        if (spool == null) {
+            return 0;
+        }
+
+        int replayed = 0;
+        for (File file : spool.list()) {
+            try {
+                if (!sendBlocking(spool.read(file), shutdownTimeoutMillis)) {
+                    break;
+                }
+                spool.delete(file);
+                replayed++;
+            } catch (Exception e) {
+                logger.warn("Failed to replay the spooled metrics " + file + ": " + e);
+                break;
+            }
+        }
+
+        if (replayed > 0) {
+            logger.info("Replayed " + replayed + " spooled metric batches");
+        }
+        return replayed;
+    }
+
+    /**
+     * Sends the metrics and waits for the result. Used by the shutdown drain and the spool replay.
+     * 
+     * @param timelineMetrics
+     *            {@link TimelineMetrics} to send. The objects are not returned to the pool.
+     * @param timeoutMillis
+     *            Max time to wait for an asynchronous send.
+     * @return Returns true if the server accepted the metrics.
+     */
+    protected boolean sendBlocking(TimelineMetrics timelineMetrics, long timeoutMillis) throws Exception {
+        doSendMetrics(timelineMetrics);
+        return true;
+    }
+
+    /**
+     * @return Returns the number of asynchronous sends not completed yet.
+     */
+    protected int getPendingSends() {
+        return 0;
+    }
+
+    private int getLaneSendsInFlight() {
+        int sends = 0;
+        for (LaneBuffer lane : laneBuffers) {
+            sends += lane.sendsInFlight.get();
+        }
+        return sends;
+    }
+
+    /**
+     * @return Returns false if sends are still pending at the deadline.
+     */
+    boolean awaitPendingSends(long deadline) {
+        while (getPendingSends() + getLaneSendsInFlight() > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flushes the remaining metrics, {@link #shutdownSenders(long) shuts down the senders} and releases the metric
+     * buffers and the object pools.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            scheduledFlush = null;
+            if (flushScheduler != null) {
+                flushScheduler.shutdownNow();
+                flushScheduler = null;
+            }
+        }
+        for (LaneBuffer lane : laneBuffers) {
+            lane.dispatcher.shutdownNow();
+        }
+        flushMetricBuffer();
+        shutdownSenders(shutdownTimeoutMillis);
+        for (LaneBuffer lane : laneBuffers) {
+            lane.buffer.close();
+        }
+        metricBuffer.close();
+        metricObjectPool.close();
+    }
+
+    /**
+     * Called by {@link #close()} after the last flush. Writers sending on their own threads stop accepting sends and
+     * wait for the sends in flight, which still use the metric objects, before the pools are released.
+     * 
+     * @param timeoutMillis
+     *            Max time to wait for the sends in flight, the {@link #setShutdownTimeoutMillis(long) shutdown
+     *            timeout}.
+     */
+    protected void shutdownSenders(long timeoutMillis) {
+    }
+
+    /**
+     * Transmits {@link TimelineMetrics} object to the Ambari Metric Collector.
+     * 
+     * @param timelineMetrics
+     *            {@link TimelineMetrics} to send to the server.
+     */
+    protected abstract void doSendMetrics(TimelineMetrics timelineMetrics);
+
+    /**
+     * Return the unused {@link TimelineMetrics} and {@link TimelineMetric} objects to their pools.
+     * 
+     * @param timelineMetrics
+     *            {@link TimelineMetrics} object to return to the timelineMetricsPool. The {@link TimelineMetrics}
+     *            contains list of {@link TimelineMetric} which in turn are returned to the pool.
+     */
+    protected void returnMetricPoolObjects(TimelineMetrics timelineMetrics) {
+        metricObjectPool.returnObjects(timelineMetrics);
+    }
+
+    // ------------------------------------------------------------------------
+    // Getters/Setters used for test purposes only
+    // ------------------------------------------------------------------------
+    public String getMetricApplicationId() {
+        return metricApplicationId;
+    }
+
+    public void setMetricApplicationId(String applicationId) {
+        this.metricApplicationId = applicationId;
+    }
+
+    public String getMetricHostName() {
+        return metricHostName;
+    }
+
+    public void setMetricHostName(String hostName) {
+        this.metricHostName = hostName;
+    }
+
+    public String getMetricInstanceId() {
+        return metricInstanceId;
+    }
+
+    public void setMetricInstanceId(String instanceId) {
+        this.metricInstanceId = instanceId;
+    }
+
+    public int getMetricBufferSize() {
+        return metricBufferSize;
+    }
+
+    public void setMetricBufferSize(int bufferSize) {
+        this.metricBufferSize = bufferSize;
+    }
+
+    public synchronized long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    /**
+     * Flushes the buffer every flushIntervalMillis, in addition to the flushes triggered by the buffer size. The
+     * flushes run on a single daemon thread owned by the writer.
+     * 
+     * @param flushIntervalMillis
+     *            Flush period in milliseconds. 0 disables the periodic flush.
+     */
+    public synchronized void setFlushIntervalMillis(long flushIntervalMillis) {
+        scheduleFlush(flushIntervalMillis, getFlushPhaseMillis(flushIntervalMillis));
+    }
+
+    /**
+     * Changes the interval of a running periodic flush. The phase of the fleet is already spread by the first
+     * schedule, so the next flush runs one full interval later.
+     * 
+     * @param flushIntervalMillis
+     *            New flush period in milliseconds.
+     */
+    synchronized void rescheduleFlush(long flushIntervalMillis) {
+        scheduleFlush(flushIntervalMillis, flushIntervalMillis);
+    }
+
+    private void scheduleFlush(long flushIntervalMillis, long initialDelayMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        if (flushIntervalMillis <= 0 || closed) {
+            return;
+        }
+
+        if (flushScheduler == null) {
+            flushScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ambari-metric-flush");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        scheduledFlush = flushScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushDefaultBuffer(true);
+                } catch (Exception e) {
+                    logger.warn("Scheduled metric flush failed", e);
+                }
+            }
+        }, initialDelayMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Returns the delay of the next periodic flush or -1 if the periodic flush is off.
+     */
+    synchronized long getNextFlushDelayMillis() {
+        return (scheduledFlush == null) ? -1 : scheduledFlush.getDelay(TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isFlushPhaseJitter() {
+        return flushPhaseJitter;
+    }
+
+    /**
+     * Spreads the periodic flushes of a fleet over the flush interval, instead of flushing all instances started
+     * together at the same time. Applies to the main buffer and to the priority lanes created afterwards.
+     * 
+     * @param flushPhaseJitter
+     *            True to delay the first periodic flush by a phase derived from the host name and the instance id.
+     */
+    public synchronized void setFlushPhaseJitter(boolean flushPhaseJitter) {
+        this.flushPhaseJitter = flushPhaseJitter;
+        if (flushIntervalMillis > 0) {
+            setFlushIntervalMillis(flushIntervalMillis);
+        }
+    }
+
+    public TokenBucket getSendRateLimiter() {
+        return sendRateLimiter;
+    }
+
+    /**
+     * Limits the bytes per second sent to the collector. The size and interval triggered flushes of the main buffer are
+     * deferred while the limiter is in debt, so the metrics are sent in fewer, larger batches. The explicit
+     * {@link #flushMetricBuffer()}, the shutdown drain and the priority lanes are not deferred, but their payloads are
+     * accounted for.
+     * 
+     * @param sendRateLimiter
+     *            Limiter to use. Null disables the limit.
+     */
+    public void setSendRateLimiter(TokenBucket sendRateLimiter) {
+        this.sendRateLimiter = sendRateLimiter;
+        deferredUntilNanos.set(System.nanoTime());
+    }
+
+    /**
+     * @return Returns the number of times the flushes were deferred by the send rate limiter. The flushes deferred
+     *         during the same limiter debt are counted once.
+     */
+    public long getDeferredFlushes() {
+        return deferredFlushes.get();
+    }
+
+    public AdaptiveFlushTuner getFlushTuner() {
+        return flushTuner;
+    }
+
+    /**
+     * Enables the adaptive mode: the buffer size and the flush interval are tuned after every flush.
+     * 
+     * @param flushTuner
+     *            Tuner to use. Null disables the adaptive mode, keeping the last tuned values.
+     */
+    public void setFlushTuner(AdaptiveFlushTuner flushTuner) {
+        this.flushTuner = flushTuner;
+        if (flushTuner != null) {
+            applyTuning(flushTuner);
+        }
+    }
+
+    public MetricHistory getMetricHistory() {
+        return metricHistory;
+    }
+
+    /**
+     * Keeps the recent history of the exported series. Every flushed snapshot is recorded before it is sent.
+     * 
+     * @param metricHistory
+     *            History to record to. Null disables the history.
+     */
+    public void setMetricHistory(MetricHistory metricHistory) {
+        this.metricHistory = metricHistory;
+    }
+
+    /**
+     * Returns the writer of another logical application hosted in this JVM. Its metrics share the buffer, the object
+     * pools and the transport of this writer and are sent in the same batches, tagged with the given application and
+     * instance ids. All buffer settings (filters, lanes, percentiles ...) apply to the application metrics by metric
+     * name. The {@link #getMetricHistory() history} keeps them as [application id]:[instance id]:[metric name], or
+     * [application id]:[metric name] without an instance id.
+     * 
+     * @param applicationId
+     *            Application id in Ambari.
+     * @param instanceId
+     *            (Optional) Application instance id.
+     * @return Returns the writer of the application. The same instance is returned for the same ids.
+     */
+    public synchronized ApplicationMetricWriter forApplication(String applicationId, String instanceId) {
+        Assert.hasText(applicationId, "The application id is required");
+        for (ApplicationMetricWriter applicationWriter : applications) {
+            if (applicationWriter.getApplicationId().equals(applicationId)
+                    && ObjectUtils.nullSafeEquals(applicationWriter.getInstanceId(), instanceId)) {
+                return applicationWriter;
+            }
+        }
+        ApplicationMetricWriter applicationWriter = new ApplicationMetricWriter(this, applications.size(),
+                applicationId, instanceId);
+        applications.add(applicationWriter);
+        return applicationWriter;
+    }
+
+    public List<ApplicationMetricWriter> getApplicationWriters() {
+        return applications;
+    }
+
+    public List<PriorityLane> getPriorityLanes() {
+        PriorityLaneRouter router = laneRouter;
+        return (router == null) ? new ArrayList<PriorityLane>() : router.getLanes();
+    }
+
+    /**
+     * Routes the metrics matching the lane patterns to their own buffers, flushed and sent on the lane dispatch
+     * threads. A metric belongs to the first matching lane. The lane buffers keep the raw values on the heap: the
+     * {@link #setPercentileMetrics(String...) percentile} and the {@link #setOffHeapBufferCapacity(long) off-heap}
+     * settings apply to the main buffer only. Must be set before the first metric is written.
+     * 
+     * @param priorityLanes
+     *            Lanes in priority order. Empty or null sends all metrics through the main buffer.
+     */
+    public synchronized void setPriorityLanes(List<PriorityLane> priorityLanes) {
+
+        LaneBuffer[] previous = laneBuffers;
+
+        if (isEmpty(priorityLanes)) {
+            this.laneRouter = null;
+            this.laneBuffers = new LaneBuffer[0];
+        } else {
+            LaneBuffer[] lanes = new LaneBuffer[priorityLanes.size()];
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = new LaneBuffer(priorityLanes.get(i));
+            }
+            this.laneBuffers = lanes;
+            this.laneRouter = new PriorityLaneRouter(priorityLanes);
+        }
+
+        for (LaneBuffer lane : previous) {
+            lane.dispatcher.shutdownNow();
+            lane.flush();
+        }
+    }
+
+    public void setLifecyclePhase(int lifecyclePhase) {
+        this.lifecyclePhase = lifecyclePhase;
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    public int getShutdownParallelism() {
+        return shutdownParallelism;
+    }
+
+    public void setShutdownParallelism(int shutdownParallelism) {
+        this.shutdownParallelism = shutdownParallelism;
+    }
+
+    public int getShutdownChunkSize() {
+        return shutdownChunkSize;
+    }
+
+    public void setShutdownChunkSize(int shutdownChunkSize) {
+        this.shutdownChunkSize = shutdownChunkSize;
+    }
+
+    public MetricSpool getMetricSpool() {
+        return metricSpool;
+    }
+
+    /**
+     * @param spoolDirectory
+     *            Directory for the metrics not sent before the shutdown deadline. Null disables the spool.
+     */
+    public void setSpoolDirectory(File spoolDirectory) {
+        this.metricSpool = (spoolDirectory == null) ? null : new MetricSpool(spoolDirectory);
     }
 
     public MetricObjectPool getMetricObjectPool() {
         return this.metricObjectPool;
     }
+
+    public MetricBuffer getMetricBuffer() {
+        return this.metricBuffer;
+    }
+
+    public MetricNameDictionary getMetricNameDictionary() {
+        return this.metricNameDictionary;
+    }
+
+    /**
+     * Stores the buffered metric values off-heap. Must be set before the first metric is written.
+     * 
+     * @param capacityBytes
+     *            Size of the off-heap buffer in bytes (16 bytes per point). 0 keeps the values on the heap.
+     */
+    public void setOffHeapBufferCapacity(long capacityBytes) {
+        this.metricBuffer.setOffHeapCapacity(capacityBytes);
+    }
+
+    /**
+     * Accumulates the metrics matching the patterns into fixed size quantile sketches and sends only the
+     * configured {@link #setPercentiles(double...) percentiles} on flush.
+     * 
+     * @param patterns
+     *            Metric name patterns. Supports '*' wildcards.
+     */
+    public void setPercentileMetrics(String... patterns) {
+        this.metricBuffer.setPercentileMetrics(patterns);
+    }
+
+    /**
+     * Rounds the timestamps of the matching metrics down to the rule resolution and merges the samples of the same
+     * slot at insert time. Applies to the main and the priority lane buffers.
+     * 
+     * @param timestampQuantizations
+     *            Quantization rules. The first rule matching a metric name applies. Empty or null disables the
+     *            quantization.
+     */
+    public synchronized void setTimestampQuantizations(List<TimestampQuantization> timestampQuantizations) {
+        this.metricBuffer.setTimestampQuantizations(timestampQuantizations);
+        for (LaneBuffer lane : laneBuffers) {
+            lane.buffer.setTimestampQuantizations(timestampQuantizations);
+        }
+    }
+
+    public List<TimestampQuantization> getTimestampQuantizations() {
+        return this.metricBuffer.getTimestampQuantizations();
+    }
+
+    public void setPercentiles(double... percentiles) {
+        this.metricBuffer.setPercentiles(percentiles);
+    }
+
+    public void setPercentileAccuracy(double percentileAccuracy) {
+        this.metricBuffer.setPercentileAccuracy(percentileAccuracy);
+    }
+
+    public MetricNameFilter getMetricNameFilter() {
+        return metricNameFilter;
+    }
+
+    public void setMetricNameFilter(MetricNameFilter metricNameFilter) {
+        this.metricNameFilter = metricNameFilter;
+    }
+
+    public DeadbandFilter getDeadbandFilter() {
+        return deadbandFilter;
+    }
+
+    /**
+     * Buffer and dispatch thread of a {@link PriorityLane}. The size triggered flushes are handed over to the dispatch
+     * thread, coalescing the flush requests made while a flush is queued or running, so the writing threads never
+     * wait for the lane sends.
+     */
+    private class LaneBuffer {
+
+        private final PriorityLane lane;
+
+        private final MetricBuffer buffer;
+
+        private final ScheduledExecutorService dispatcher;
+
+        private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+
+        private final AtomicInteger sendsInFlight = new AtomicInteger(0);
+
+        private final Runnable flushTask = new Runnable() {
+            @Override
+            public void run() {
+                flushQueued.set(false);
+                sendsInFlight.incrementAndGet();
+                try {
+                    flush();
+                } catch (Exception e) {
+                    logger.warn("Flush of the " + lane.getName() + " metric lane failed", e);
+                } finally {
+                    sendsInFlight.decrementAndGet();
+                }
+            }
+        };
+
+        LaneBuffer(final PriorityLane lane) {
+            this.lane = lane;
+            this.buffer = new MetricBuffer(metricNameDictionary);
+            this.buffer.setTimestampQuantizations(metricBuffer.getTimestampQuantizations());
+            this.dispatcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ambari-metric-lane-" + lane.getName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            long interval = lane.getFlushIntervalMillis();
+            if (interval > 0) {
+                dispatcher.scheduleWithFixedDelay(flushTask, getFlushPhaseMillis(interval), interval,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        void add(int metricId, Metric<?> metric) {
+            buffer.add(metricId, metric);
+            flushIfFull();
+        }
+
+        void add(int metricId, long timestamp, double value) {
+            buffer.add(metricId, timestamp, value);
+            flushIfFull();
+        }
+
+        void add(int metricId, long timestamp, long value) {
+            buffer.add(metricId, timestamp, value);
+            flushIfFull();
+        }
+
+        private void flushIfFull() {
+            if (buffer.size() > lane.getBufferSize() && flushQueued.compareAndSet(false, true)) {
+                try {
+                    dispatcher.execute(flushTask);
+                } catch (RejectedExecutionException e) {
+                    // Closed. The buffer is flushed by the close
+                    flushQueued.set(false);
+                }
+            }
+        }
+
+        void flush() {
+            flushBuffer(buffer);
+        }
+    }
 }
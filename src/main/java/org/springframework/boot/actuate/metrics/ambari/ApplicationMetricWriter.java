@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.buffer.MetricBuffer;
+import org.springframework.boot.actuate.metrics.ambari.domain.QualifiedMetricName;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.actuate.metrics.writer.PrefixMetricWriter;
+
+/**
+ * {@link MetricWriter} of a logical application hosted in the JVM of an {@link AmbariMetricWriter}. The metrics are
+ * tagged with the application identity and written to the shared writer, so the metrics of all applications are
+ * buffered together and sent in combined batches over the writer transport. The collector receives them with the
+ * application id and instance id of this writer. Obtain instances with
+ * {@link AmbariMetricWriter#forApplication(String, String)}.
+ * 
+ * Thread safe.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class ApplicationMetricWriter implements MetricWriter, PrefixMetricWriter {
+
+    private final AmbariMetricWriter metricWriter;
+
+    private final int applicationIndex;
+
+    private final String applicationId;
+
+    private final String instanceId;
+
+    /**
+     * Key prefix of the application series in the metric history.
+     */
+    private final String historyPrefix;
+
+    /**
+     * Qualified buffer keys by metric name, so the keys are not concatenated for every sample.
+     */
+    private final ConcurrentHashMap<String, String> qualifiedNames = new ConcurrentHashMap<String, String>();
+
+    ApplicationMetricWriter(AmbariMetricWriter metricWriter, int applicationIndex, String applicationId,
+            String instanceId) {
+        this.metricWriter = metricWriter;
+        this.applicationIndex = applicationIndex;
+        this.applicationId = applicationId;
+        this.instanceId = instanceId;
+        this.historyPrefix = applicationId + ":" + ((instanceId != null) ? instanceId + ":" : "");
+    }
+
+    @Override
+    public void set(Metric<?> metric) {
+        Number value = metric.getValue();
+        long timestamp = metric.getTimestamp().getTime();
+        if (MetricBuffer.isIntegral(value)) {
+            metricWriter.set(qualify(metric.getName()), timestamp, value.longValue());
+        } else {
+            metricWriter.set(qualify(metric.getName()), timestamp, value.doubleValue());
+        }
+    }
+
+    @Override
+    public void set(String group, Collection<Metric<?>> values) {
+        set(values);
+    }
+
+    /**
+     * Writes a whole batch through {@link AmbariMetricWriter#set(Collection)}, so the shared buffer is locked only
+     * once for the batch.
+     * 
+     * @param metrics
+     *            Metrics to write.
+     */
+    public void set(Collection<Metric<?>> metrics) {
+        List<Metric<?>> qualified = new ArrayList<Metric<?>>(metrics.size());
+        for (Metric<?> metric : metrics) {
+            qualified.add(new Metric<Number>(qualify(metric.getName()), metric.getValue(), metric.getTimestamp()));
+        }
+        metricWriter.set(qualified);
+    }
+
+    @Override
+    public void increment(Delta<?> delta) {
+        throw new UnsupportedOperationException("Counters not supported via increment");
+    }
+
+    @Override
+    public void increment(String group, Delta<?> delta) {
+        throw new UnsupportedOperationException("Counters not supported via increment");
+    }
+
+    @Override
+    public void reset(String metricName) {
+        String qualifiedName = qualify(metricName);
+        metricWriter.getDeadbandFilter().reset(qualifiedName);
+        metricWriter.set(qualifiedName, System.currentTimeMillis(), 0L);
+    }
+
+    /**
+     * @return Returns the buffer key of the metric.
+     */
+    String qualify(String metricName) {
+        String qualifiedName = qualifiedNames.get(metricName);
+        if (qualifiedName == null) {
+            qualifiedName = QualifiedMetricName.qualify(applicationIndex, metricName);
+            qualifiedNames.putIfAbsent(metricName, qualifiedName);
+        }
+        return qualifiedName;
+    }
+
+    /**
+     * @return Returns the key of the metric in the metric history: [application id]:[instance id]:[metric name], or
+     *         [application id]:[metric name] without an instance id.
+     */
+    String historyKey(String metricName) {
+        return historyPrefix + metricName;
+    }
+
+    public AmbariMetricWriter getMetricWriter() {
+        return metricWriter;
+    }
+
+    public int getApplicationIndex() {
+        return applicationIndex;
+    }
+
+    public String getApplicationId() {
+        return applicationId;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public String toString() {
+        return "ApplicationMetricWriter [applicationId=" + applicationId + ", instanceId=" + instanceId + "]";
+    }
+}
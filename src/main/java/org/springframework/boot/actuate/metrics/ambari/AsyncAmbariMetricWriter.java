@@ -19,12 +19,15 @@
 package org.springframework.boot.actuate.metrics.ambari;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
 import org.springframework.boot.actuate.metrics.ambari.restclient.AsyncAmbariMetricsCollectorRestClient;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.ListenableFutureCallback;
 
 public class AsyncAmbariMetricWriter extends AmbariMetricWriter {
@@ -33,6 +36,11 @@ public class AsyncAmbariMetricWriter extends AmbariMetricWriter {
 
     private AsyncAmbariMetricsCollectorRestClient metricsCollectorRestClient;
 
+    /**
+     * Requests sent and not completed yet.
+     */
+    private final AtomicInteger pendingSends = new AtomicInteger(0);
+
     public AsyncAmbariMetricWriter(String metricsCollectorHost, String metricsCollectorPort, String applicationId,
             String hostName, String instanceId, int metricsBufferSize) {
 
@@ -40,6 +48,8 @@ public class AsyncAmbariMetricWriter extends AmbariMetricWriter {
 
         this.metricsCollectorRestClient = new AsyncAmbariMetricsCollectorRestClient(metricsCollectorHost,
                 metricsCollectorPort);
+        this.metricsCollectorRestClient.setMetricNameDictionary(getMetricNameDictionary());
+        this.metricsCollectorRestClient.setPayloadListener(getPayloadListener());
     }
 
     @Override
@@ -51,7 +61,38 @@ public class AsyncAmbariMetricWriter extends AmbariMetricWriter {
     @Override
     protected void doSendMetrics(TimelineMetrics timelineMetrics) {
         // Send the metrics to the Ambari Metrics Collector
-        metricsCollectorRestClient.putMetrics(timelineMetrics, new ResponseListener(timelineMetrics));
+        pendingSends.incrementAndGet();
+        try {
+            metricsCollectorRestClient.putMetrics(timelineMetrics, new ResponseListener(timelineMetrics));
+        } catch (RuntimeException e) {
+            pendingSends.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    protected boolean sendBlocking(TimelineMetrics timelineMetrics, long timeoutMillis) throws Exception {
+        final long start = System.nanoTime();
+        ListenableFuture<ResponseEntity<Map>> response = metricsCollectorRestClient.putMetrics(timelineMetrics,
+                new ListenableFutureCallback<ResponseEntity<Map>>() {
+                    @Override
+                    public void onSuccess(ResponseEntity<Map> result) {
+                        recordSend(start, result.getStatusCode().is2xxSuccessful());
+                    }
+
+                    @Override
+                    public void onFailure(Throwable ex) {
+                        logger.warn("Failed to send timeline metrics!", ex);
+                        recordSend(start, false);
+                    }
+                });
+        return response.get(timeoutMillis, TimeUnit.MILLISECONDS).getStatusCode().is2xxSuccessful();
+    }
+
+    @Override
+    protected int getPendingSends() {
+        return pendingSends.get();
     }
 
     @SuppressWarnings("rawtypes")
@@ -59,6 +100,8 @@ public class AsyncAmbariMetricWriter extends AmbariMetricWriter {
 
         private TimelineMetrics timelineMetrics;
 
+        private final long start = System.nanoTime();
+
         public ResponseListener(TimelineMetrics timelineMetrics) {
             this.timelineMetrics = timelineMetrics;
         }
@@ -66,14 +109,18 @@ public class AsyncAmbariMetricWriter extends AmbariMetricWriter {
         @Override
         public void onFailure(Throwable ex) {
             logger.warn("Failed to send timeline metrics!", ex);
+            recordSend(start, false);
             // Return the TimelineMetric objects to the pool
             returnMetricPoolObjects(timelineMetrics);
+            pendingSends.decrementAndGet();
         }
 
         @Override
         public void onSuccess(ResponseEntity<Map> result) {
+            recordSend(start, true);
             // Return the TimelineMetric objects to the pool
             returnMetricPoolObjects(timelineMetrics);
+            pendingSends.decrementAndGet();
         }
     }
 
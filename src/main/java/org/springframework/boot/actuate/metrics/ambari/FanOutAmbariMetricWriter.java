@@ -0,0 +1,361 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.ambari.json.JsonByteBuffer;
+import org.springframework.boot.actuate.metrics.ambari.json.TimelineMetricsJsonEncoder;
+import org.springframework.boot.actuate.metrics.ambari.restclient.SyncAmbariMetricsCollectorRestClient;
+
+/**
+ * Sends the same metrics to several Ambari Metrics Collectors (e.g. during a migration or to a DR cluster) with a
+ * single buffer, object pool and serialization. Every flushed batch is encoded once and the payload bytes are shared by
+ * all collectors.
+ * 
+ * Each collector has its own dispatch thread and bounded queue of payloads, so a slow or failing collector neither
+ * delays the others nor the writing threads. A failed send is retried {@link #setMaxAttempts(int) maxAttempts} times
+ * with an exponential backoff, independently per collector. When the queue of a collector is full its oldest payload
+ * is dropped.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class FanOutAmbariMetricWriter extends AmbariMetricWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(FanOutAmbariMetricWriter.class);
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    public static final long DEFAULT_RETRY_BACKOFF_MILLIS = 500;
+
+    public static final int DEFAULT_MAX_QUEUED_PAYLOADS = 10;
+
+    private final List<CollectorEndpoint> endpoints;
+
+    private final TimelineMetricsJsonEncoder encoder;
+
+    private final JsonByteBuffer payloadBuffer = new JsonByteBuffer(16 * 1024);
+
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private volatile long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+
+    /**
+     * @param collectors
+     *            Collector addresses as host[:port]. The port defaults to 6188.
+     */
+    public FanOutAmbariMetricWriter(String[] collectors, String applicationId, String hostName, String instanceId,
+            int metricsBufferSize) {
+        this(collectors, applicationId, hostName, instanceId, metricsBufferSize, DEFAULT_MAX_QUEUED_PAYLOADS);
+    }
+
+    public FanOutAmbariMetricWriter(String[] collectors, String applicationId, String hostName, String instanceId,
+            int metricsBufferSize, int maxQueuedPayloads) {
+
+        super(applicationId, hostName, instanceId, metricsBufferSize);
+
+        if (collectors == null || collectors.length == 0) {
+            throw new IllegalArgumentException("At least one metrics collector is required");
+        }
+
+        List<CollectorEndpoint> endpoints = new ArrayList<CollectorEndpoint>(collectors.length);
+        for (String collector : collectors) {
+            String address = collector.trim();
+            int separator = address.lastIndexOf(':');
+            String host = (separator < 0) ? address : address.substring(0, separator);
+            String port = (separator < 0) ? "6188" : address.substring(separator + 1);
+            endpoints.add(new CollectorEndpoint(new SyncAmbariMetricsCollectorRestClient(host, port),
+                    maxQueuedPayloads));
+        }
+        this.endpoints = Collections.unmodifiableList(endpoints);
+
+        this.encoder = new TimelineMetricsJsonEncoder(getMetricNameDictionary());
+    }
+
+    @Override
+    protected void doSendMetrics(TimelineMetrics timelineMetrics) {
+        byte[] payload = encode(timelineMetrics);
+        for (CollectorEndpoint endpoint : endpoints) {
+            endpoint.submit(payload);
+        }
+    }
+
+    /**
+     * Waits for all collectors. Resending to a collector that already accepted the batch is harmless, the collector
+     * stores the points by timestamp.
+     */
+    @Override
+    protected boolean sendBlocking(TimelineMetrics timelineMetrics, long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        byte[] payload = encode(timelineMetrics);
+
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(endpoints.size());
+        for (CollectorEndpoint endpoint : endpoints) {
+            futures.add(endpoint.submit(payload));
+        }
+
+        boolean allSent = true;
+        for (Future<Boolean> future : futures) {
+            if (future == null) {
+                allSent = false;
+                continue;
+            }
+            try {
+                allSent &= future.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (CancellationException e) {
+                // Dropped from the queue of a collector that does not keep up
+                allSent = false;
+            }
+        }
+        return allSent;
+    }
+
+    private byte[] encode(TimelineMetrics timelineMetrics) {
+        synchronized (payloadBuffer) {
+            long start = System.nanoTime();
+            payloadBuffer.reset();
+            encoder.encode(timelineMetrics, payloadBuffer);
+            getPayloadListener().payloadEncoded(timelineMetrics, payloadBuffer.size(), System.nanoTime() - start);
+            // The copy outlives the call, it is shared by the collector queues
+            return payloadBuffer.toByteArray();
+        }
+    }
+
+    @Override
+    protected int getPendingSends() {
+        int pending = 0;
+        for (CollectorEndpoint endpoint : endpoints) {
+            pending += endpoint.pendingSends.get();
+        }
+        return pending;
+    }
+
+    /**
+     * Waits for the queued sends of all collectors, within one shared timeout.
+     */
+    @Override
+    protected void shutdownSenders(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (CollectorEndpoint endpoint : endpoints) {
+            endpoint.executor.shutdown();
+        }
+        for (CollectorEndpoint endpoint : endpoints) {
+            try {
+                if (!endpoint.executor.awaitTermination(Math.max(1, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS)) {
+                    logger.warn("Metric sends to " + endpoint.getName() + " still in flight after " + timeoutMillis
+                            + "ms");
+                    endpoint.executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    /**
+     * @param retryBackoffMillis
+     *            Delay before the first retry. Doubled for every next retry.
+     */
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public List<CollectorEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * A collector with its dispatch thread, retry loop and counters.
+     */
+    public class CollectorEndpoint {
+
+        private final SyncAmbariMetricsCollectorRestClient restClient;
+
+        private final ThreadPoolExecutor executor;
+
+        /**
+         * Queued or running sends.
+         */
+        private final AtomicInteger pendingSends = new AtomicInteger(0);
+
+        private final AtomicLong sentPayloads = new AtomicLong(0);
+
+        private final AtomicLong failedPayloads = new AtomicLong(0);
+
+        private final AtomicLong droppedPayloads = new AtomicLong(0);
+
+        private final AtomicLong retries = new AtomicLong(0);
+
+        CollectorEndpoint(SyncAmbariMetricsCollectorRestClient restClient, int maxQueuedPayloads) {
+            this.restClient = restClient;
+            this.restClient.setMetricNameDictionary(getMetricNameDictionary());
+
+            final String threadName = "ambari-metric-fanout-" + getName();
+            this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(1, maxQueuedPayloads)), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, threadName);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                            if (executor.isShutdown()) {
+                                throw new RejectedExecutionException("Metric sender of " + getName()
+                                        + " is shut down");
+                            }
+                            dropOldest(executor);
+                            executor.execute(runnable);
+                        }
+                    });
+        }
+
+        /**
+         * Drops the oldest queued payload. Its future is cancelled, so a {@link #sendBlocking} caller waiting on it
+         * returns at once.
+         */
+        private void dropOldest(ThreadPoolExecutor executor) {
+            Runnable oldest = executor.getQueue().poll();
+            if (oldest != null) {
+                if (oldest instanceof Future) {
+                    ((Future<?>) oldest).cancel(false);
+                }
+                droppedPayloads.incrementAndGet();
+                pendingSends.decrementAndGet();
+                logger.warn("Metric collector " + getName() + " does not keep up. Dropped the oldest queued payload");
+            }
+        }
+
+        /**
+         * @return Returns the future result of the send (after the retries), or null if the endpoint is shut down.
+         */
+        Future<Boolean> submit(final byte[] payload) {
+            pendingSends.incrementAndGet();
+            try {
+                return executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        try {
+                            return send(payload);
+                        } finally {
+                            pendingSends.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pendingSends.decrementAndGet();
+                droppedPayloads.incrementAndGet();
+                logger.warn("Metric sender of " + getName() + " is shut down. Dropped a payload");
+                return null;
+            }
+        }
+
+        private boolean send(byte[] payload) {
+            long backoff = retryBackoffMillis;
+            for (int attempt = 1;; attempt++) {
+                long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    success = restClient.putPayload(payload);
+                } catch (Exception e) {
+                    logger.debug("Metric send to " + getName() + " failed: " + e);
+                } finally {
+                    recordSend(start, success);
+                }
+
+                if (success) {
+                    sentPayloads.incrementAndGet();
+                    return true;
+                }
+
+                if (attempt >= maxAttempts) {
+                    failedPayloads.incrementAndGet();
+                    logger.warn("Failed to send " + payload.length + " bytes of metrics to " + getName() + " after "
+                            + attempt + " attempts");
+                    return false;
+                }
+
+                retries.incrementAndGet();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                backoff *= 2;
+            }
+        }
+
+        public String getName() {
+            return restClient.getAmbariMetricsCollectorHost() + ":" + restClient.getAmbariMetricsCollectorPort();
+        }
+
+        public SyncAmbariMetricsCollectorRestClient getRestClient() {
+            return restClient;
+        }
+
+        public long getSentPayloads() {
+            return sentPayloads.get();
+        }
+
+        public long getFailedPayloads() {
+            return failedPayloads.get();
+        }
+
+        public long getDroppedPayloads() {
+            return droppedPayloads.get();
+        }
+
+        public long getRetries() {
+            return retries.get();
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.ambari.reactive.TimelineMetricsPublisher;
+import org.springframework.boot.actuate.metrics.ambari.restclient.AsyncAmbariMetricsCollectorRestClient;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+/**
+ * Backpressured {@link AmbariMetricWriter} built on Reactive Streams. The pipeline is: metric buffer, window by size
+ * ({@link #setMetricBufferSize(int) buffer size}) or time ({@link #setFlushIntervalMillis(long) flush interval}),
+ * {@link TimelineMetricsPublisher batch publisher}, collector subscriber that serializes and sends.
+ * 
+ * The collector subscriber requests a new batch only when one of its {@link #setMaxConcurrentSends(int) concurrent
+ * sends} completes, so a slow collector limits the number of requests in flight. The batches waiting for demand are
+ * bounded by {@link #setMaxPendingBatches(int) maxPendingBatches}, the oldest batch is dropped beyond that.
+ * 
+ * Reactive producers can subscribe the {@link #getMetricSubscriber() metric subscriber} to a {@link Publisher} of
+ * metrics. It requests metrics only while the batch publisher has room for more batches, so the collector backpressure
+ * propagates to the producer instead of dropping batches.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class ReactiveAmbariMetricWriter extends AmbariMetricWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveAmbariMetricWriter.class);
+
+    public static final int DEFAULT_MAX_CONCURRENT_SENDS = 1;
+
+    public static final int DEFAULT_MAX_PENDING_BATCHES = 10;
+
+    private final AsyncAmbariMetricsCollectorRestClient metricsCollectorRestClient;
+
+    private volatile TimelineMetricsPublisher publisher;
+
+    private final CollectorSubscriber collectorSubscriber = new CollectorSubscriber();
+
+    private final MetricSubscriber metricSubscriber = new MetricSubscriber();
+
+    private int maxConcurrentSends = DEFAULT_MAX_CONCURRENT_SENDS;
+
+    private int maxPendingBatches = DEFAULT_MAX_PENDING_BATCHES;
+
+    public ReactiveAmbariMetricWriter(String metricsCollectorHost, String metricsCollectorPort, String applicationId,
+            String hostName, String instanceId, int metricsBufferSize) {
+
+        super(applicationId, hostName, instanceId, metricsBufferSize);
+
+        this.metricsCollectorRestClient = new AsyncAmbariMetricsCollectorRestClient(metricsCollectorHost,
+                metricsCollectorPort);
+        this.metricsCollectorRestClient.setMetricNameDictionary(getMetricNameDictionary());
+        this.metricsCollectorRestClient.setPayloadListener(getPayloadListener());
+    }
+
+    @Override
+    protected void sendMetricsAndCleanPool(TimelineMetrics timelineMetrics) {
+        // The pool objects are returned when the send completes or the batch is dropped
+        getPublisher().offer(timelineMetrics);
+    }
+
+    @Override
+    protected void doSendMetrics(TimelineMetrics timelineMetrics) {
+        metricsCollectorRestClient.putMetrics(timelineMetrics, new ResponseListener(timelineMetrics));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    protected boolean sendBlocking(TimelineMetrics timelineMetrics, long timeoutMillis) throws Exception {
+        final long start = System.nanoTime();
+        ListenableFuture<ResponseEntity<Map>> response = metricsCollectorRestClient.putMetrics(timelineMetrics,
+                new ListenableFutureCallback<ResponseEntity<Map>>() {
+                    @Override
+                    public void onSuccess(ResponseEntity<Map> result) {
+                        recordSend(start, result.getStatusCode().is2xxSuccessful());
+                    }
+
+                    @Override
+                    public void onFailure(Throwable ex) {
+                        logger.warn("Failed to send timeline metrics!", ex);
+                        recordSend(start, false);
+                    }
+                });
+        return response.get(timeoutMillis, TimeUnit.MILLISECONDS).getStatusCode().is2xxSuccessful();
+    }
+
+    /**
+     * @return Returns the batches waiting for demand and the sends in flight.
+     */
+    @Override
+    protected int getPendingSends() {
+        TimelineMetricsPublisher current = publisher;
+        return (current == null) ? 0 : current.getPendingCount() + collectorSubscriber.getInFlight();
+    }
+
+    /**
+     * Completes the batch publisher after the last flush and waits for the pending batches and the sends in flight.
+     * The batches still pending after the timeout are dropped, which returns their objects to the pools.
+     */
+    @Override
+    protected void shutdownSenders(long timeoutMillis) {
+        TimelineMetricsPublisher current = publisher;
+        if (current == null) {
+            return;
+        }
+        current.complete();
+        if (!awaitPendingSends(System.currentTimeMillis() + timeoutMillis)) {
+            logger.warn(getPendingSends() + " metric batches still pending or in flight after " + timeoutMillis
+                    + "ms");
+            collectorSubscriber.cancel();
+        }
+    }
+
+    /**
+     * @return Returns a {@link Subscriber} that writes the metrics of a reactive producer with backpressure. Can be
+     *         subscribed once.
+     */
+    public Subscriber<Metric<?>> getMetricSubscriber() {
+        return metricSubscriber;
+    }
+
+    /**
+     * @return Returns the publisher of the flushed batches. It is subscribed by the collector sender on creation.
+     */
+    public TimelineMetricsPublisher getPublisher() {
+        TimelineMetricsPublisher current = publisher;
+        if (current == null) {
+            synchronized (this) {
+                current = publisher;
+                if (current == null) {
+                    current = new TimelineMetricsPublisher(maxPendingBatches,
+                            new TimelineMetricsPublisher.DroppedBatchHandler() {
+                                @Override
+                                public void dropped(TimelineMetrics timelineMetrics) {
+                                    logger.warn("Collector does not keep up. Dropped a batch of "
+                                            + timelineMetrics.getMetrics().size() + " metrics");
+                                    returnMetricPoolObjects(timelineMetrics);
+                                }
+                            });
+                    current.subscribe(collectorSubscriber);
+                    publisher = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    public synchronized int getMaxConcurrentSends() {
+        return maxConcurrentSends;
+    }
+
+    /**
+     * @param maxConcurrentSends
+     *            Max number of batches sent at the same time. Must be set before the first metric is written.
+     */
+    public synchronized void setMaxConcurrentSends(int maxConcurrentSends) {
+        checkNotStarted();
+        if (maxConcurrentSends < 1) {
+            throw new IllegalArgumentException("At least one concurrent send is required: " + maxConcurrentSends);
+        }
+        this.maxConcurrentSends = maxConcurrentSends;
+    }
+
+    public synchronized int getMaxPendingBatches() {
+        return maxPendingBatches;
+    }
+
+    /**
+     * @param maxPendingBatches
+     *            Max number of flushed batches waiting for a send. Must be set before the first metric is written.
+     */
+    public synchronized void setMaxPendingBatches(int maxPendingBatches) {
+        checkNotStarted();
+        if (maxPendingBatches < 1) {
+            throw new IllegalArgumentException("At least one pending batch is required: " + maxPendingBatches);
+        }
+        this.maxPendingBatches = maxPendingBatches;
+    }
+
+    private void checkNotStarted() {
+        if (publisher != null) {
+            throw new IllegalStateException("The writer has already started sending metrics");
+        }
+    }
+
+    /**
+     * Sends the batches, requesting a new batch each time a send completes.
+     */
+    private class CollectorSubscriber implements Subscriber<TimelineMetrics> {
+
+        private volatile Subscription subscription;
+
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+
+        /**
+         * Demand signalled by the completed sends, not yet requested.
+         */
+        private final AtomicLong missedRequests = new AtomicLong(0);
+
+        /**
+         * Serializes the request calls of the concurrent send callbacks (Rule 2.7).
+         */
+        private final AtomicInteger requestWip = new AtomicInteger(0);
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            request(getMaxConcurrentSends());
+        }
+
+        @Override
+        public void onNext(TimelineMetrics timelineMetrics) {
+            inFlight.incrementAndGet();
+            try {
+                doSendMetrics(timelineMetrics);
+            } catch (Exception e) {
+                logger.warn("Failed to send timeline metrics!", e);
+                sendCompleted(timelineMetrics);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            logger.error("Timeline metrics publisher failed", t);
+        }
+
+        @Override
+        public void onComplete() {
+            logger.debug("Timeline metrics publisher completed with " + inFlight.get() + " sends in flight");
+        }
+
+        void sendCompleted(TimelineMetrics timelineMetrics) {
+            inFlight.decrementAndGet();
+            returnMetricPoolObjects(timelineMetrics);
+            request(1);
+            metricSubscriber.requestMore();
+        }
+
+        /**
+         * The thread in the drain loop requests the demand of the threads that signalled meanwhile.
+         */
+        private void request(long n) {
+            missedRequests.addAndGet(n);
+            if (requestWip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                long requests = missedRequests.getAndSet(0);
+                if (requests > 0) {
+                    subscription.request(requests);
+                }
+                missed = requestWip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        int getInFlight() {
+            return inFlight.get();
+        }
+
+        void cancel() {
+            Subscription s = subscription;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private class ResponseListener implements ListenableFutureCallback<ResponseEntity<Map>> {
+
+        private final TimelineMetrics timelineMetrics;
+
+        private final AtomicInteger completed = new AtomicInteger(0);
+
+        private final long start = System.nanoTime();
+
+        public ResponseListener(TimelineMetrics timelineMetrics) {
+            this.timelineMetrics = timelineMetrics;
+        }
+
+        @Override
+        public void onFailure(Throwable ex) {
+            logger.warn("Failed to send timeline metrics!", ex);
+            recordSend(start, false);
+            complete();
+        }
+
+        @Override
+        public void onSuccess(ResponseEntity<Map> result) {
+            recordSend(start, true);
+            complete();
+        }
+
+        private void complete() {
+            // Guards against a double callback returning the pool objects twice
+            if (completed.compareAndSet(0, 1)) {
+                collectorSubscriber.sendCompleted(timelineMetrics);
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics of a reactive producer. Keeps up to one buffer size of metrics requested and stops requesting
+     * while the batch publisher is full. Resumes when a send completes.
+     */
+    private class MetricSubscriber implements Subscriber<Metric<?>> {
+
+        private volatile Subscription subscription;
+
+        /**
+         * Requested, not yet received metrics.
+         */
+        private final AtomicLong outstanding = new AtomicLong(0);
+
+        /**
+         * Serializes the request calls of onNext and of the send completion callbacks (Rule 2.7).
+         */
+        private final AtomicInteger requestWip = new AtomicInteger(0);
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (this.subscription != null) {
+                // Rule 2.5
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            requestMore();
+        }
+
+        @Override
+        public void onNext(Metric<?> metric) {
+            outstanding.decrementAndGet();
+            set(metric);
+            requestMore();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            logger.warn("Metric publisher failed", t);
+            flushMetricBuffer();
+        }
+
+        @Override
+        public void onComplete() {
+            flushMetricBuffer();
+        }
+
+        /**
+         * Only one thread at a time runs the drain loop. A thread finding it busy leaves one more pass to it.
+         */
+        void requestMore() {
+            if (requestWip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                Subscription s = subscription;
+                if (s != null && getPublisher().hasCapacity()) {
+                    long window = Math.max(1, getMetricBufferSize());
+                    long current = outstanding.get();
+                    // Replenish when half of the window is consumed
+                    if (current <= window / 2 && outstanding.compareAndSet(current, window)) {
+                        s.request(window - current);
+                    }
+                }
+                missed = requestWip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    // Test purpose only
+    public AsyncAmbariMetricsCollectorRestClient getTimelineRestClient() {
+        return metricsCollectorRestClient;
+    }
+
+    int getSendsInFlight() {
+        return collectorSubscriber.getInFlight();
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.ambari.json.JsonByteBuffer;
+import org.springframework.boot.actuate.metrics.ambari.json.TimelineMetricsJsonEncoder;
+import org.springframework.boot.actuate.metrics.ambari.sidecar.MetricRingFile;
+import org.springframework.boot.actuate.metrics.ambari.sidecar.SidecarAgent;
+
+/**
+ * Sidecar mode writer: instead of sending the flushed metrics to the Ambari Metrics Collector, appends them to a
+ * per-process memory-mapped {@link MetricRingFile}. A {@link SidecarAgent} running on the same host reads the rings of
+ * all JVMs, merges the series and sends consolidated batches, so the collector sees one client per host.
+ * 
+ * An append is a memory copy and never blocks on the network. When the agent is down or falls behind by more than the
+ * ring capacity the oldest batches are overwritten.
+ * 
+ * The writer refreshes its ring every {@link #HEARTBEAT_MILLIS}, so the agent tells an idle application from a dead
+ * one, and creates the ring again if it was deleted.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class SidecarAmbariMetricWriter extends AmbariMetricWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SidecarAmbariMetricWriter.class);
+
+    public static final int DEFAULT_RING_CAPACITY = 4 * 1024 * 1024;
+
+    public static final long HEARTBEAT_MILLIS = 60000;
+
+    /**
+     * Tells apart the rings of the writers of the same application in one JVM.
+     */
+    private static final AtomicInteger ringSequence = new AtomicInteger(0);
+
+    private final File ringPath;
+
+    private final int ringCapacity;
+
+    private final ScheduledExecutorService heartbeatScheduler;
+
+    /**
+     * Replaced, under the payload lock, when the ring is created again.
+     */
+    private volatile MetricRingFile ringFile;
+
+    private final TimelineMetricsJsonEncoder encoder;
+
+    private final JsonByteBuffer payload = new JsonByteBuffer(16 * 1024);
+
+    private final AtomicLong droppedBatches = new AtomicLong(0);
+
+    /**
+     * @param ringDirectory
+     *            Directory shared with the {@link SidecarAgent}.
+     * @param ringCapacity
+     *            Size in bytes of the ring.
+     */
+    public SidecarAmbariMetricWriter(File ringDirectory, int ringCapacity, String applicationId, String hostName,
+            String instanceId, int metricsBufferSize) {
+
+        super(applicationId, hostName, instanceId, metricsBufferSize);
+
+        this.ringPath = new File(ringDirectory, ringFileName(applicationId));
+        this.ringCapacity = ringCapacity;
+        try {
+            this.ringFile = MetricRingFile.create(ringPath, ringCapacity);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not create the metric ring file " + ringPath, e);
+        }
+
+        this.encoder = new TimelineMetricsJsonEncoder(getMetricNameDictionary());
+
+        this.heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ambari-metric-ring-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.heartbeatScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                heartbeat();
+            }
+        }, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Returns [application id]-[pid]-[sequence].ring. The process id keeps the rings of the application
+     *         instances apart, the sequence the rings of the writers sharing an application id in one JVM.
+     */
+    private static String ringFileName(String applicationId) {
+        // The JVM name is pid@host on the common JVMs
+        String jvmName = ManagementFactory.getRuntimeMXBean().getName();
+        String pid = jvmName.contains("@") ? jvmName.substring(0, jvmName.indexOf('@')) : jvmName;
+        String name = ((applicationId != null) ? applicationId : "application") + "-" + pid + "-"
+                + ringSequence.incrementAndGet();
+        return name.replaceAll("[^A-Za-z0-9._-]", "_") + MetricRingFile.FILE_SUFFIX;
+    }
+
+    /**
+     * Refreshes the last write time of the ring, or creates the ring again if the agent deleted it as stale. The
+     * records not read before the deletion are lost, the later ones go to the new ring.
+     */
+    void heartbeat() {
+        synchronized (payload) {
+            MetricRingFile ring = ringFile;
+            if (ring.isClosed()) {
+                return;
+            }
+            if (ringPath.exists()) {
+                ring.touch();
+                return;
+            }
+            try {
+                ringFile = MetricRingFile.create(ringPath, ringCapacity);
+                logger.warn("Created the deleted metric ring " + ringPath + " again");
+            } catch (IOException e) {
+                logger.warn("Can not create the metric ring file " + ringPath + " again: " + e);
+                return;
+            }
+            try {
+                ring.close();
+            } catch (IOException e) {
+                logger.debug("Can not close the deleted metric ring " + ringPath + ": " + e);
+            }
+        }
+    }
+
+    @Override
+    protected void doSendMetrics(TimelineMetrics timelineMetrics) {
+
+        long start = System.nanoTime();
+        boolean appended;
+        int size;
+
+        synchronized (payload) {
+            payload.reset();
+            encoder.encode(timelineMetrics, payload);
+            size = payload.size();
+            getPayloadListener().payloadEncoded(timelineMetrics, size, System.nanoTime() - start);
+
+            appended = ringFile.append(payload.array(), 0, size);
+        }
+
+        if (!appended) {
+            droppedBatches.incrementAndGet();
+            logger.warn("Dropped a metric batch of " + size + " bytes larger than the metric ring");
+        }
+        recordSend(start, appended);
+    }
+
+    @Override
+    public void close() throws IOException {
+        heartbeatScheduler.shutdownNow();
+        try {
+            super.close();
+        } finally {
+            synchronized (payload) {
+                ringFile.close();
+            }
+        }
+    }
+
+    /**
+     * @return Returns the number of batches too large for the ring.
+     */
+    public long getDroppedBatches() {
+        return droppedBatches.get();
+    }
+
+    public MetricRingFile getRingFile() {
+        return ringFile;
+    }
+}
@@ -43,6 +43,8 @@ public class SyncAmbariMetricWriter extends AmbariMetricWriter {
 
         this.metricsCollectorRestClient = new SyncAmbariMetricsCollectorRestClient(metricsCollectorHost,
                 metricsCollectorPort);
+        this.metricsCollectorRestClient.setMetricNameDictionary(getMetricNameDictionary());
+        this.metricsCollectorRestClient.setPayloadListener(getPayloadListener());
     }
 
     @Override
@@ -51,7 +53,26 @@ public class SyncAmbariMetricWriter extends AmbariMetricWriter {
         logger.debug("Send metrics");
 
         // REST call to send the metrics to the Ambari Metrics Collector
-        metricsCollectorRestClient.putMetrics(timelineMetrics);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            success = metricsCollectorRestClient.putMetrics(timelineMetrics);
+        } finally {
+            recordSend(start, success);
+        }
+    }
+
+    @Override
+    protected boolean sendBlocking(TimelineMetrics timelineMetrics, long timeoutMillis) {
+        // Bounded by the client connect and read timeouts
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            success = metricsCollectorRestClient.putMetrics(timelineMetrics);
+            return success;
+        } finally {
+            recordSend(start, success);
+        }
     }
 
     // Test purpose only
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+
+/**
+ * {@link SyncAmbariMetricWriter} that runs each blocking send on its own virtual thread (Java 21+). A semaphore bounds
+ * the number of concurrent sends: the flushing thread blocks only when all the permits are taken, which throttles the
+ * producers the same way the plain synchronous writer does, but with maxConcurrentSends requests in flight.
+ * 
+ * The virtual thread executor is looked up reflectively, so the writer builds and runs on older JDKs too. There it
+ * falls back to a fixed pool of maxConcurrentSends daemon threads.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class VirtualThreadAmbariMetricWriter extends SyncAmbariMetricWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadAmbariMetricWriter.class);
+
+    private final int maxConcurrentSends;
+
+    private final Semaphore sendPermits;
+
+    private ExecutorService sendExecutor;
+
+    private final boolean virtualThreads;
+
+    public VirtualThreadAmbariMetricWriter(String metricsCollectorHost, String metricsCollectorPort,
+            String applicationId, String hostName, String instanceId, int metricsBufferSize, int maxConcurrentSends) {
+
+        super(metricsCollectorHost, metricsCollectorPort, applicationId, hostName, instanceId, metricsBufferSize);
+
+        if (maxConcurrentSends < 1) {
+            throw new IllegalArgumentException("At least one concurrent send is required: " + maxConcurrentSends);
+        }
+        this.maxConcurrentSends = maxConcurrentSends;
+        this.sendPermits = new Semaphore(maxConcurrentSends);
+
+        ExecutorService virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+        this.virtualThreads = virtualThreadExecutor != null;
+        this.sendExecutor = virtualThreads ? virtualThreadExecutor : newPlatformThreadExecutor(maxConcurrentSends);
+    }
+
+    @Override
+    protected void sendMetricsAndCleanPool(final TimelineMetrics timelineMetrics) {
+        try {
+            sendPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for a send permit. Dropped " + timelineMetrics.getMetrics().size()
+                    + " metrics");
+            returnMetricPoolObjects(timelineMetrics);
+            return;
+        }
+
+        try {
+            sendExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        doSendMetrics(timelineMetrics);
+                    } catch (Exception e) {
+                        logger.warn("Failed to send timeline metrics!", e);
+                    } finally {
+                        returnMetricPoolObjects(timelineMetrics);
+                        sendPermits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Sender is shut down. Dropped " + timelineMetrics.getMetrics().size() + " metrics");
+            returnMetricPoolObjects(timelineMetrics);
+            sendPermits.release();
+        }
+    }
+
+    /**
+     * Waits for the sends in flight to complete.
+     */
+    @Override
+    protected void shutdownSenders(long timeoutMillis) {
+        sendExecutor.shutdown();
+        try {
+            if (!sendExecutor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("Metric sends still in flight after " + timeoutMillis + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected int getPendingSends() {
+        return getSendsInFlight();
+    }
+
+    public int getMaxConcurrentSends() {
+        return maxConcurrentSends;
+    }
+
+    /**
+     * @return Returns true if the sends run on virtual threads, false if on the platform thread pool fallback.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getSendsInFlight() {
+        return maxConcurrentSends - sendPermits.availablePermits();
+    }
+
+    // Test purpose only
+    void setSendExecutor(ExecutorService sendExecutor) {
+        this.sendExecutor.shutdown();
+        this.sendExecutor = sendExecutor;
+    }
+
+    /**
+     * @return Returns the Executors#newVirtualThreadPerTaskExecutor() executor or null if the JDK has no virtual
+     *         threads.
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            // e.g. preview feature not enabled
+            logger.debug("Virtual threads are not available", e);
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(int threads) {
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        // The semaphore bounds the submitted tasks, so the queue never holds more than maxConcurrentSends tasks
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "ambari-metric-sender-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -17,16 +17,19 @@
  */
 package org.springframework.boot.actuate.metrics.ambari.buffer;
 
-import static org.springframework.util.CollectionUtils.isEmpty;
-import it.unimi.dsi.fastutil.longs.Long2DoubleRBTreeMap;
-
 import java.io.Closeable;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -34,10 +37,35 @@ import org.apache.commons.lang.ClassUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricNameDictionary;
+import org.springframework.boot.actuate.metrics.ambari.domain.AbstractMetricValues;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricValues;
+import org.springframework.boot.actuate.metrics.ambari.filter.MetricNamePatterns;
+import org.springframework.boot.actuate.metrics.ambari.pool.LockFreeObjectPool;
+import org.springframework.boot.actuate.metrics.ambari.pool.PoolObjectFactory;
 
 /**
  * Thread safe Metric buffer implementation. Converts the input {@link Metric} objects into Map<String, Map<Long,
- * Float>> entries. The Map<Long, Float> values can directly be used by the TimelineMetric#getMetricValues().
+ * Double>> entries. The Map<Long, Double> values are primitive-backed {@link AbstractMetricValues} and can directly be
+ * used by the TimelineMetric#getMetricValues(). By default the values are kept in heap {@link MetricValues}. With
+ * {@link #setOffHeapCapacity(long) offHeapCapacity} set, the values are stored in a direct memory {@link OffHeapSlab}
+ * instead, so that the buffered metrics add no GC pressure to the application. The series of the integral metric types
+ * (Long, Integer ...) store the values as exact longs.
+ * 
+ * The metric names are mapped to int IDs by a {@link MetricNameDictionary} at ingestion. The per-metric state (value
+ * series, types, percentile sketches) is kept in arrays indexed by the ID and the names are resolved back only when the
+ * buffer is flushed.
+ * 
+ * Metrics matching the {@link #setPercentileMetrics(String...) percentileMetrics} patterns are not buffered as raw
+ * samples. They are accumulated into fixed size {@link QuantileSketch}es instead and the configured percentiles are
+ * emitted on every {@link #flush()}.
+ * 
+ * The timestamps of the metrics matching a {@link #setTimestampQuantizations(List) timestamp quantization} rule are
+ * rounded down to the rule resolution and the samples of the same slot are merged into a single point at insert time.
+ * 
+ * The value maps are recycled: {@link #flush()} hands the filled maps over to the snapshot and replaces them with
+ * empty maps taken from a pool. Once the snapshot is consumed its maps should be given back with
+ * {@link #recycle(Map)}, so that a steady-state flush does not allocate new maps.
  * 
  * @author tzolov@apache.org
  *
@@ -52,9 +80,14 @@ public class MetricBuffer implements Closeable {
     private ReentrantLock bufferLock;
 
     /**
-     * Metric buffer to fill before posting data to server.
+     * Maps the metric names to the indexes of the per-metric state arrays.
      */
-    private Map<String, Map<Long, Double>> metricBuffer;
+    private final MetricNameDictionary metricNameDictionary;
+
+    /**
+     * Metric buffer to fill before posting data to server. Value series indexed by metric ID.
+     */
+    private AbstractMetricValues[] metricBuffer;
 
     /**
      * Keep the count of all metric entries collected in the namedMetricsBuffer map.
@@ -62,16 +95,116 @@ public class MetricBuffer implements Closeable {
     private AtomicLong bufferedMetricCount;
 
     /**
-     * Metric value type (e.g. Long, Double ...) map. Type is resolved on first metric {@link #add(Metric)} and is
-     * retained for the duration of the application life-cycle. Run-time metric type altering is not allowed.
+     * Keep the count of the samples accumulated in the percentile sketches since the last flush.
+     */
+    private AtomicLong sketchedMetricCount;
+
+    /**
+     * Metric value types (e.g. Long, Double ...) indexed by metric ID. Type is resolved on first metric
+     * {@link #add(Metric)} and is retained for the duration of the application life-cycle. Run-time metric type
+     * altering is not allowed.
+     */
+    private String[] metricTypes;
+
+    /**
+     * Name patterns (e.g. gauge.response.*) of the metrics accumulated into {@link QuantileSketch}es instead of being
+     * buffered as raw samples.
+     */
+    private MetricNamePatterns percentileMetrics = new MetricNamePatterns();
+
+    /**
+     * Percentiles (e.g. 50, 99, 99.9) emitted on flush for every percentile metric.
+     */
+    private double[] percentiles = { 50, 99, 99.9 };
+
+    /**
+     * Relative accuracy of the percentile sketches.
+     */
+    private double percentileAccuracy = QuantileSketch.DEFAULT_RELATIVE_ACCURACY;
+
+    /**
+     * Percentile sketch indexed by metric ID. Metrics that don't match the percentileMetrics patterns are mapped to the
+     * {@link #NO_SKETCH} marker, so the patterns are evaluated only once per metric name.
+     */
+    private PercentileSeries[] percentileSeries;
+
+    /**
+     * Timestamp quantization rules. The first rule matching a metric name applies.
+     */
+    private List<TimestampQuantization> timestampQuantizations = new ArrayList<TimestampQuantization>();
+
+    /**
+     * Timestamp quantization indexed by metric ID. Metrics that don't match any rule are mapped to the
+     * {@link #NO_QUANTIZATION} marker.
+     */
+    private TimestampQuantization[] quantizations;
+
+    /**
+     * Number of samples merged into each point of the quantized series, indexed by metric ID and point index.
+     */
+    private int[][] mergedSamples;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final PercentileSeries NO_SKETCH = new PercentileSeries(null, null);
+
+    private static final TimestampQuantization NO_QUANTIZATION = new TimestampQuantization(1,
+            TimestampQuantization.Merge.LAST);
+
+    /**
+     * {@link #doAdd(int, long, double)} outcomes.
+     */
+    private static final int BUFFERED = 0;
+
+    private static final int MERGED = 1;
+
+    private static final int SKETCHED = 2;
+
+    /**
+     * Max number of idle value maps retained for reuse.
+     */
+    private static final int MAX_IDLE_VALUE_MAPS = 10000;
+
+    /**
+     * Empty value maps to replace the maps handed over to the flush snapshots.
+     */
+    private final LockFreeObjectPool<AbstractMetricValues> valueMapPool;
+
+    /**
+     * Off-heap storage of the buffered values. Null in the (default) heap mode.
      */
-    private final ConcurrentHashMap<String, String> metricTypeMap;
+    private volatile OffHeapSlab offHeapSlab;
+
+    private static final String DOUBLE_TYPE = "Double";
+
+    private static final String LONG_TYPE = "Long";
+
+    /**
+     * Recorded metric types stored as exact longs.
+     */
+    private static final Set<String> INTEGRAL_TYPES = new HashSet<String>(Arrays.asList(LONG_TYPE, "Integer",
+            "Short", "Byte", "AtomicLong", "AtomicInteger"));
 
     public MetricBuffer() {
+        this(new MetricNameDictionary());
+    }
+
+    /**
+     * @param metricNameDictionary
+     *            Dictionary shared with the other stages of the pipeline that work with metric IDs.
+     */
+    public MetricBuffer(MetricNameDictionary metricNameDictionary) {
+        this.metricNameDictionary = metricNameDictionary;
         this.bufferLock = new ReentrantLock();
         this.bufferedMetricCount = new AtomicLong(0);
-        this.metricBuffer = new HashMap<String, Map<Long, Double>>();
-        this.metricTypeMap = new ConcurrentHashMap<String, String>();
+        this.sketchedMetricCount = new AtomicLong(0);
+        this.metricBuffer = new AbstractMetricValues[INITIAL_CAPACITY];
+        this.metricTypes = new String[INITIAL_CAPACITY];
+        this.percentileSeries = new PercentileSeries[INITIAL_CAPACITY];
+        this.quantizations = new TimestampQuantization[INITIAL_CAPACITY];
+        this.mergedSamples = new int[INITIAL_CAPACITY][];
+        this.valueMapPool = new LockFreeObjectPool<AbstractMetricValues>(new ValueMapFactory(),
+                MAX_IDLE_VALUE_MAPS);
     }
 
     /**
@@ -80,36 +213,422 @@ public class MetricBuffer implements Closeable {
      * @param metric
      */
     public void add(Metric<?> metric) {
+        add(metricNameDictionary.getId(metric.getName()), metric);
+    }
+
+    /**
+     * Add new {@link Metric} for an already resolved metric ID (thread safe).
+     * 
+     * @param metricId
+     *            Metric ID of the metric name from the {@link #getMetricNameDictionary() dictionary}.
+     * @param metric
+     *            Metric to add.
+     */
+    public void add(int metricId, Metric<?> metric) {
 
         try {
             if (bufferLock.tryLock() || bufferLock.tryLock(5, TimeUnit.SECONDS)) {
                 try {
+                    putMetricType(metricId, metric);
+                    count(doAdd(metricId, metric.getTimestamp().getTime(), metric.getValue()));
+                } finally {
+                    bufferLock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Failed to buffer metric: " + metric + " due to locked thread!");
+        }
+    }
 
-                    String metricName = metric.getName();
+    /**
+     * Add new floating point metric sample to the buffer (thread safe). Unlike the {@link #add(Metric)} it does not
+     * require a {@link Metric} instance with a boxed value and a Date timestamp.
+     * 
+     * @param metricName
+     *            Metric name.
+     * @param timestamp
+     *            Sample timestamp in milliseconds.
+     * @param value
+     *            Sample value.
+     */
+    public void add(String metricName, long timestamp, double value) {
+        add(metricNameDictionary.getId(metricName), timestamp, value);
+    }
 
-                    if (!metricBuffer.containsKey(metricName)) {
-                        metricBuffer.put(metricName, new Long2DoubleRBTreeMap());
-                    }
+    /**
+     * Add new integral metric sample (e.g. counter) to the buffer (thread safe).
+     * 
+     * @param metricName
+     *            Metric name.
+     * @param timestamp
+     *            Sample timestamp in milliseconds.
+     * @param value
+     *            Sample value.
+     */
+    public void add(String metricName, long timestamp, long value) {
+        add(metricNameDictionary.getId(metricName), timestamp, value);
+    }
 
-                    metricBuffer.get(metricName).put(metric.getTimestamp().getTime(), metric.getValue().doubleValue());
+    /**
+     * Add new floating point metric sample for an already resolved metric ID (thread safe).
+     * 
+     * @param metricId
+     *            Metric ID from the {@link #getMetricNameDictionary() dictionary}.
+     * @param timestamp
+     *            Sample timestamp in milliseconds.
+     * @param value
+     *            Sample value.
+     */
+    public void add(int metricId, long timestamp, double value) {
+        try {
+            if (bufferLock.tryLock() || bufferLock.tryLock(5, TimeUnit.SECONDS)) {
+                try {
+                    putMetricType(metricId, DOUBLE_TYPE);
+                    count(doAdd(metricId, timestamp, value));
+                } finally {
+                    bufferLock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Failed to buffer metric: " + metricNameDictionary.getName(metricId)
+                    + " due to locked thread!");
+        }
+    }
 
-                    putMetricType(metric);
+    /**
+     * Add new integral metric sample for an already resolved metric ID (thread safe). The value is stored exactly.
+     * 
+     * @param metricId
+     *            Metric ID from the {@link #getMetricNameDictionary() dictionary}.
+     * @param timestamp
+     *            Sample timestamp in milliseconds.
+     * @param value
+     *            Sample value.
+     */
+    public void add(int metricId, long timestamp, long value) {
+        try {
+            if (bufferLock.tryLock() || bufferLock.tryLock(5, TimeUnit.SECONDS)) {
+                try {
+                    putMetricType(metricId, LONG_TYPE);
+                    count(doAdd(metricId, timestamp, value));
+                } finally {
+                    bufferLock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Failed to buffer metric: " + metricNameDictionary.getName(metricId)
+                    + " due to locked thread!");
+        }
+    }
 
-                    bufferedMetricCount.incrementAndGet();
+    private void count(int outcome) {
+        if (outcome == BUFFERED) {
+            bufferedMetricCount.incrementAndGet();
+        } else if (outcome == SKETCHED) {
+            sketchedMetricCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds a batch of {@link Metric}s to the buffer (thread safe). The buffer lock is taken and the buffer counters are
+     * updated only once for the whole batch.
+     * 
+     * @param metrics
+     *            Metrics to add.
+     */
+    public void addAll(Collection<Metric<?>> metrics) {
+        int[] metricIds = new int[metrics.size()];
+        int i = 0;
+        for (Metric<?> metric : metrics) {
+            metricIds[i++] = metricNameDictionary.getId(metric.getName());
+        }
+        addAll(metricIds, metrics);
+    }
 
+    /**
+     * Adds a batch of {@link Metric}s with already resolved metric IDs (thread safe).
+     * 
+     * @param metricIds
+     *            Metric IDs of the metrics, in the iteration order of the metrics.
+     * @param metrics
+     *            Metrics to add.
+     */
+    public void addAll(int[] metricIds, Collection<Metric<?>> metrics) {
+
+        if (metrics.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (bufferLock.tryLock() || bufferLock.tryLock(5, TimeUnit.SECONDS)) {
+                int buffered = 0;
+                int sketched = 0;
+                try {
+                    int i = 0;
+                    for (Metric<?> metric : metrics) {
+                        int metricId = metricIds[i++];
+                        putMetricType(metricId, metric);
+                        int outcome = doAdd(metricId, metric.getTimestamp().getTime(), metric.getValue());
+                        if (outcome == BUFFERED) {
+                            buffered++;
+                        } else if (outcome == SKETCHED) {
+                            sketched++;
+                        }
+                    }
                 } finally {
+                    bufferedMetricCount.addAndGet(buffered);
+                    sketchedMetricCount.addAndGet(sketched);
                     bufferLock.unlock();
                 }
             }
         } catch (InterruptedException e) {
-            logger.warn("Failed to buffer metric: " + metric + " due to locked thread!");
+            logger.warn("Failed to buffer " + metrics.size() + " metrics due to locked thread!");
         }
     }
 
-    private void putMetricType(Metric<?> metric) {
-        if (!metricTypeMap.containsKey(metric.getName())) {
-            String metricType = ClassUtils.getShortCanonicalName(metric.getValue(), "Number");
-            metricTypeMap.putIfAbsent(metric.getName(), metricType);
+    /**
+     * Must be called with the buffer lock held.
+     * 
+     * @return Returns BUFFERED for a new raw point, MERGED if the sample is merged into a quantized point or SKETCHED
+     *         if it is added to a percentile sketch.
+     */
+    private int doAdd(int metricId, long timestamp, Number value) {
+        if (isIntegral(value)) {
+            return doAdd(metricId, timestamp, value.longValue());
+        }
+        return doAdd(metricId, timestamp, value.doubleValue());
+    }
+
+    /**
+     * Must be called with the buffer lock held.
+     * 
+     * @return Returns BUFFERED for a new raw point, MERGED if the sample is merged into a quantized point or SKETCHED
+     *         if it is added to a percentile sketch.
+     */
+    private int doAdd(int metricId, long timestamp, double value) {
+
+        ensureCapacity(metricId + 1);
+
+        PercentileSeries series = getPercentileSeries(metricId);
+        if (series != NO_SKETCH) {
+            // Sketched samples use fixed memory and are not counted as buffered metrics
+            series.add(timestamp, value);
+            return SKETCHED;
+        }
+
+        AbstractMetricValues metricValues = getValueSeries(metricId);
+
+        TimestampQuantization quantization = getQuantization(metricId);
+        if (quantization != NO_QUANTIZATION) {
+            timestamp = quantization.quantize(timestamp);
+            int slot = findSlot(metricValues, timestamp);
+            if (slot >= 0) {
+                int[] samples = getMergedSamples(metricId, metricValues.size());
+                metricValues.put(timestamp, quantization.merge(metricValues.getValue(slot), value, samples[slot]++));
+                return MERGED;
+            }
+            if (metricValues.put(timestamp, value)) {
+                addSlot(metricId, -slot - 1, metricValues.size());
+            }
+            return BUFFERED;
+        }
+
+        metricValues.put(timestamp, value);
+
+        return BUFFERED;
+    }
+
+    /**
+     * Must be called with the buffer lock held.
+     * 
+     * @return Returns BUFFERED for a new raw point, MERGED if the sample is merged into a quantized point or SKETCHED
+     *         if it is added to a percentile sketch.
+     */
+    private int doAdd(int metricId, long timestamp, long value) {
+
+        ensureCapacity(metricId + 1);
+
+        PercentileSeries series = getPercentileSeries(metricId);
+        if (series != NO_SKETCH) {
+            series.add(timestamp, value);
+            return SKETCHED;
+        }
+
+        AbstractMetricValues metricValues = getValueSeries(metricId);
+
+        TimestampQuantization quantization = getQuantization(metricId);
+        if (quantization != NO_QUANTIZATION) {
+            timestamp = quantization.quantize(timestamp);
+            int slot = findSlot(metricValues, timestamp);
+            if (slot >= 0) {
+                int[] samples = getMergedSamples(metricId, metricValues.size());
+                if (metricValues.isIntegral() && quantization.getMerge() != TimestampQuantization.Merge.AVG) {
+                    // Keep the exact long value
+                    long current = metricValues.getLongValue(slot);
+                    metricValues.put(timestamp, (quantization.getMerge() == TimestampQuantization.Merge.MAX) ? Math
+                            .max(current, value) : value);
+                } else {
+                    metricValues.put(timestamp,
+                            quantization.merge(metricValues.getValue(slot), value, samples[slot]));
+                }
+                samples[slot]++;
+                return MERGED;
+            }
+            if (metricValues.put(timestamp, value)) {
+                addSlot(metricId, -slot - 1, metricValues.size());
+            }
+            return BUFFERED;
+        }
+
+        metricValues.put(timestamp, value);
+
+        return BUFFERED;
+    }
+
+    /**
+     * @return Returns the index of the point of the quantized timestamp or (-(insertion point) - 1) if there is none.
+     *         The common in order samples hit or follow the last point.
+     */
+    private static int findSlot(AbstractMetricValues metricValues, long timestamp) {
+        int last = metricValues.size() - 1;
+        if (last < 0 || metricValues.getTimestamp(last) < timestamp) {
+            return -(last + 2);
+        }
+        if (metricValues.getTimestamp(last) == timestamp) {
+            return last;
+        }
+        return metricValues.indexOf(timestamp);
+    }
+
+    /**
+     * Records a new single sample point at index, shifting the sample counts of the later points. Must be called with
+     * the buffer lock held.
+     */
+    private void addSlot(int metricId, int index, int points) {
+        int[] samples = getMergedSamples(metricId, points);
+        if (index < points - 1) {
+            System.arraycopy(samples, index, samples, index + 1, points - 1 - index);
+        }
+        samples[index] = 1;
+    }
+
+    /**
+     * @return Returns the sample counts of the points of a quantized series, grown to hold at least the given number
+     *         of points.
+     */
+    private int[] getMergedSamples(int metricId, int points) {
+        int[] samples = mergedSamples[metricId];
+        if (samples == null || samples.length < points) {
+            int length = (samples != null) ? samples.length : 0;
+            samples = (samples != null) ? Arrays.copyOf(samples, points * 2) : new int[Math.max(8, points * 2)];
+            Arrays.fill(samples, length, samples.length, 1);
+            mergedSamples[metricId] = samples;
+        }
+        return samples;
+    }
+
+    private AbstractMetricValues getValueSeries(int metricId) {
+        AbstractMetricValues metricValues = metricBuffer[metricId];
+        if (metricValues == null) {
+            metricValues = newValueSeries(metricId);
+            metricBuffer[metricId] = metricValues;
+        }
+        return metricValues;
+    }
+
+    /**
+     * @return Returns an empty value series that stores longs for the integral metric types and doubles otherwise.
+     */
+    private AbstractMetricValues newValueSeries(int metricId) {
+        AbstractMetricValues metricValues = valueMapPool.borrowObject();
+        metricValues.setIntegral(isIntegralType(metricTypes[metricId]));
+        return metricValues;
+    }
+
+    /**
+     * @return Returns true for the integral number types, buffered as exact longs.
+     */
+    public static boolean isIntegral(Number value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicLong || value instanceof AtomicInteger;
+    }
+
+    private static boolean isIntegralType(String metricType) {
+        return metricType != null && INTEGRAL_TYPES.contains(metricType);
+    }
+
+    /**
+     * Grows the ID indexed arrays. Must be called with the buffer lock held.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > metricBuffer.length) {
+            int newCapacity = Math.max(capacity, metricBuffer.length * 2);
+            metricBuffer = Arrays.copyOf(metricBuffer, newCapacity);
+            metricTypes = Arrays.copyOf(metricTypes, newCapacity);
+            percentileSeries = Arrays.copyOf(percentileSeries, newCapacity);
+            quantizations = Arrays.copyOf(quantizations, newCapacity);
+            mergedSamples = Arrays.copyOf(mergedSamples, newCapacity);
+        }
+    }
+
+    private TimestampQuantization getQuantization(int metricId) {
+        TimestampQuantization quantization = quantizations[metricId];
+        if (quantization == null) {
+            quantization = NO_QUANTIZATION;
+            String metricName = metricNameDictionary.getName(metricId);
+            for (TimestampQuantization rule : timestampQuantizations) {
+                if (rule.matches(metricName)) {
+                    quantization = rule;
+                    break;
+                }
+            }
+            quantizations[metricId] = quantization;
+        }
+        return quantization;
+    }
+
+    private PercentileSeries getPercentileSeries(int metricId) {
+        PercentileSeries series = percentileSeries[metricId];
+        if (series == null) {
+            String metricName = metricNameDictionary.getName(metricId);
+            if (percentileMetrics.matches(metricName)) {
+                QuantileSketch sketch = new QuantileSketch(percentileAccuracy, QuantileSketch.DEFAULT_MAX_BUCKETS);
+                series = new PercentileSeries(sketch, percentileNames(metricName, percentiles));
+            } else {
+                series = NO_SKETCH;
+            }
+            percentileSeries[metricId] = series;
+        }
+        return series;
+    }
+
+    private static String[] percentileNames(String metricName, double[] percentiles) {
+        String[] names = new String[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            // 50 -> p50, 99.9 -> p99_9, 9.99 -> p9_99
+            names[i] = metricName + ".p"
+                    + BigDecimal.valueOf(percentiles[i]).stripTrailingZeros().toPlainString().replace('.', '_');
+        }
+        return names;
+    }
+
+    /**
+     * Must be called with the buffer lock held.
+     */
+    private void putMetricType(int metricId, Metric<?> metric) {
+        ensureCapacity(metricId + 1);
+        if (metricTypes[metricId] == null) {
+            metricTypes[metricId] = ClassUtils.getShortCanonicalName(metric.getValue(), "Number");
+        }
+    }
+
+    /**
+     * Must be called with the buffer lock held.
+     */
+    private void putMetricType(int metricId, String metricType) {
+        ensureCapacity(metricId + 1);
+        if (metricTypes[metricId] == null) {
+            metricTypes[metricId] = metricType;
         }
     }
 
@@ -119,7 +638,16 @@ public class MetricBuffer implements Closeable {
      * @return Returns the metric type (Long, Double, Float ...) for metric with name metricName.
      */
     public String getMetricType(String metricName) {
-        return metricTypeMap.get(metricName);
+        int metricId = metricNameDictionary.findId(metricName);
+        if (metricId < 0) {
+            return null;
+        }
+        bufferLock.lock();
+        try {
+            return (metricId < metricTypes.length) ? metricTypes[metricId] : null;
+        } finally {
+            bufferLock.unlock();
+        }
     }
 
     /**
@@ -130,24 +658,40 @@ public class MetricBuffer implements Closeable {
     }
 
     /**
-     * @return cleans the buffer and returns the last state.
+     * @return Returns true if there are neither buffered nor sketched metrics to flush.
+     */
+    public boolean isEmpty() {
+        return bufferedMetricCount.get() == 0 && sketchedMetricCount.get() == 0;
+    }
+
+    /**
+     * Cleans the buffer and returns the last state. The returned value maps are owned by the caller, who should
+     * {@link #recycle(Map)} them once they are no longer used.
+     * 
+     * @return Returns the buffered values per metric name.
      */
     public Map<String, Map<Long, Double>> flush() {
 
         HashMap<String, Map<Long, Double>> snapshot = new HashMap<String, Map<Long, Double>>();
         try {
             if (bufferLock.tryLock() || bufferLock.tryLock(5, TimeUnit.SECONDS)) {
-                for (Entry<String, Map<Long, Double>> metricEntry : metricBuffer.entrySet()) {
-                    String metricName = metricEntry.getKey();
-                    Map<Long, Double> metricValues = metricEntry.getValue();
+                for (int metricId = 0; metricId < metricBuffer.length; metricId++) {
+                    AbstractMetricValues metricValues = metricBuffer[metricId];
 
-                    if (!isEmpty(metricValues)) {
-                        snapshot.put(metricName, ((Long2DoubleRBTreeMap) metricValues).clone());
-                        metricValues.clear();
+                    if (metricValues != null && !metricValues.isEmpty()) {
+                        // Hand the filled map over to the snapshot instead of copying it
+                        snapshot.put(metricNameDictionary.getName(metricId), metricValues);
+                        metricBuffer[metricId] = newValueSeries(metricId);
+                    }
+                }
+                for (PercentileSeries series : percentileSeries) {
+                    if (series != null && series != NO_SKETCH) {
+                        series.flushTo(snapshot, percentiles, valueMapPool);
                     }
                 }
                 // Reset the buffer metric count
                 bufferedMetricCount.set(0);
+                sketchedMetricCount.set(0);
             }
         } catch (InterruptedException e) {
             logger.warn("Metric Buffer flush failed due to locked thread!");
@@ -158,8 +702,201 @@ public class MetricBuffer implements Closeable {
         return snapshot;
     }
 
+    /**
+     * Returns a value map obtained from {@link #flush()} for reuse. Maps of another buffer mode (heap or off-heap slab)
+     * are cleared instead of pooled and the maps not created by a buffer are ignored. The caller must not use the map
+     * after it is recycled.
+     * 
+     * @param metricValues
+     *            Value map to recycle.
+     */
+    public void recycle(Map<Long, Double> metricValues) {
+        if (!(metricValues instanceof AbstractMetricValues)) {
+            return;
+        }
+        if (isOwnMode(metricValues)) {
+            valueMapPool.returnObject((AbstractMetricValues) metricValues);
+        } else {
+            // A map of another buffer (or of the previous mode). Gives its off-heap chunks back, if any
+            metricValues.clear();
+        }
+    }
+
+    private boolean isOwnMode(Map<Long, Double> metricValues) {
+        OffHeapSlab slab = offHeapSlab;
+        if (metricValues instanceof OffHeapMetricValues) {
+            return ((OffHeapMetricValues) metricValues).getSlab() == slab;
+        }
+        return slab == null;
+    }
+
+    /**
+     * Drops the buffered metrics and releases the pooled value maps and the off-heap memory. The off-heap memory still
+     * held by not yet recycled snapshot maps is released when they are recycled.
+     */
     @Override
     public void close() throws IOException {
-        flush();
+        for (Map<Long, Double> metricValues : flush().values()) {
+            // Gives the off-heap chunks back
+            metricValues.clear();
+        }
+        valueMapPool.close();
+        if (offHeapSlab != null) {
+            offHeapSlab.close();
+        }
+    }
+
+    /**
+     * Configures the metrics accumulated into percentile sketches. Must be set before the first metric is added.
+     *
+     * @param patterns
+     *            Metric name patterns. Supports '*' wildcards.
+     */
+    public void setPercentileMetrics(String... patterns) {
+        this.percentileMetrics = new MetricNamePatterns(patterns);
+    }
+
+    public String[] getPercentileMetrics() {
+        return percentileMetrics.getPatterns();
+    }
+
+    /**
+     * @param percentiles
+     *            Percentiles in the [0, 100] range to emit for every percentile metric. Each percentile is sent as
+     *            separate metric named [metric name].p[percentile], with an underscore for the decimal point, e.g.
+     *            latency.p50 and latency.p99_9 for the 50 and 99.9 percentiles.
+     */
+    public void setPercentiles(double... percentiles) {
+        for (double percentile : percentiles) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentiles must be between 0 and 100: " + percentile);
+            }
+        }
+        this.percentiles = percentiles;
+    }
+
+    public double[] getPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentileAccuracy(double percentileAccuracy) {
+        this.percentileAccuracy = percentileAccuracy;
+    }
+
+    public double getPercentileAccuracy() {
+        return percentileAccuracy;
+    }
+
+    /**
+     * Configures the timestamp quantization of the raw (not sketched) metrics. The samples of a quantized metric with
+     * the same quantized timestamp are merged into a single point as they are added, also when a late sample falls in
+     * an older slot than the last point of its series.
+     *
+     * @param timestampQuantizations
+     *            Quantization rules. The first rule matching a metric name applies. Empty or null disables the
+     *            quantization.
+     */
+    public void setTimestampQuantizations(List<TimestampQuantization> timestampQuantizations) {
+        bufferLock.lock();
+        try {
+            this.timestampQuantizations = (timestampQuantizations == null) ? new ArrayList<TimestampQuantization>()
+                    : new ArrayList<TimestampQuantization>(timestampQuantizations);
+            // Resolved again on the next add
+            Arrays.fill(quantizations, null);
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    public List<TimestampQuantization> getTimestampQuantizations() {
+        return timestampQuantizations;
+    }
+
+    public MetricNameDictionary getMetricNameDictionary() {
+        return metricNameDictionary;
+    }
+
+    /**
+     * Switches the buffer to the off-heap mode. Must be set before the first metric is added.
+     * 
+     * @param capacityBytes
+     *            Size in bytes of the direct memory slab that stores the buffered values (16 bytes per point). Points
+     *            that don't fit are dropped. 0 keeps the values on the heap.
+     */
+    public void setOffHeapCapacity(long capacityBytes) {
+        if (offHeapSlab != null) {
+            offHeapSlab.close();
+        }
+        offHeapSlab = (capacityBytes > 0) ? new OffHeapSlab(capacityBytes) : null;
+        // Drop the value maps of the previous mode
+        valueMapPool.clear();
+    }
+
+    public long getOffHeapCapacity() {
+        OffHeapSlab slab = offHeapSlab;
+        return (slab != null) ? slab.getCapacityBytes() : 0;
+    }
+
+    /**
+     * @return Returns the off-heap slab or null in heap mode.
+     */
+    public OffHeapSlab getOffHeapSlab() {
+        return offHeapSlab;
+    }
+
+    /**
+     * Percentile sketch of a single metric with the pre-computed names of the emitted percentile metrics.
+     */
+    private static class PercentileSeries {
+
+        private final QuantileSketch sketch;
+
+        private final String[] percentileNames;
+
+        private long lastTimestamp;
+
+        PercentileSeries(QuantileSketch sketch, String[] percentileNames) {
+            this.sketch = sketch;
+            this.percentileNames = percentileNames;
+        }
+
+        void add(long timestamp, double value) {
+            sketch.add(value);
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+        }
+
+        /**
+         * Emits one point per percentile, stamped with the latest sample timestamp, and resets the sketch.
+         */
+        void flushTo(Map<String, Map<Long, Double>> snapshot, double[] percentiles,
+                LockFreeObjectPool<AbstractMetricValues> valueMapPool) {
+            if (sketch.getCount() == 0) {
+                return;
+            }
+            for (int i = 0; i < percentiles.length && i < percentileNames.length; i++) {
+                AbstractMetricValues values = valueMapPool.borrowObject();
+                values.put(lastTimestamp, sketch.getValueAtPercentile(percentiles[i]));
+                snapshot.put(percentileNames[i], values);
+            }
+            sketch.clear();
+            lastTimestamp = 0;
+        }
+    }
+
+    /**
+     * Creates heap or off-heap value series depending on the buffer mode.
+     */
+    private class ValueMapFactory implements PoolObjectFactory<AbstractMetricValues> {
+
+        @Override
+        public AbstractMetricValues create() {
+            OffHeapSlab slab = offHeapSlab;
+            return (slab != null) ? new OffHeapMetricValues(slab) : new MetricValues();
+        }
+
+        @Override
+        public void passivate(AbstractMetricValues metricValues) {
+            metricValues.clear();
+        }
     }
 }
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.buffer;
+
+import java.util.Arrays;
+
+import org.springframework.boot.actuate.metrics.ambari.domain.AbstractMetricValues;
+
+/**
+ * {@link AbstractMetricValues} stored in {@link OffHeapSlab} chunks. Only the small chunk index array lives on the
+ * heap, so the buffered points add neither GC pressure nor old-gen promotion. The chunks are given back to the slab
+ * when the series is cleared. Points that do not fit into an exhausted slab are dropped.
+ * 
+ * Not thread safe.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class OffHeapMetricValues extends AbstractMetricValues {
+
+    private final OffHeapSlab slab;
+
+    private final int chunkPoints;
+
+    private int[] chunks = new int[4];
+
+    private int chunkCount;
+
+    private int size;
+
+    public OffHeapMetricValues(OffHeapSlab slab) {
+        this.slab = slab;
+        this.chunkPoints = slab.getChunkPoints();
+    }
+
+    @Override
+    protected boolean putRaw(long timestamp, long value) {
+
+        if (size == 0 || timestamp > getTimestamp(size - 1)) {
+            if (!ensureCapacity(size + 1)) {
+                return false;
+            }
+            slab.putPoint(chunk(size), offset(size), timestamp, value);
+            size++;
+            return true;
+        }
+
+        int index = indexOf(timestamp);
+        if (index >= 0) {
+            slab.putValue(chunk(index), offset(index), value);
+            return false;
+        }
+
+        if (!ensureCapacity(size + 1)) {
+            return false;
+        }
+        int insertAt = -(index + 1);
+        for (int i = size; i > insertAt; i--) {
+            slab.putPoint(chunk(i), offset(i), getTimestamp(i - 1), getRaw(i - 1));
+        }
+        slab.putPoint(chunk(insertAt), offset(insertAt), timestamp, value);
+        size++;
+        return true;
+    }
+
+    @Override
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return slab.getTimestamp(chunk(index), offset(index));
+    }
+
+    @Override
+    protected long getRaw(int index) {
+        checkIndex(index);
+        return slab.getValue(chunk(index), offset(index));
+    }
+
+    @Override
+    protected void setRaw(int index, long value) {
+        slab.putValue(chunk(index), offset(index), value);
+    }
+
+    /**
+     * @return Returns the slab storing the points.
+     */
+    public OffHeapSlab getSlab() {
+        return slab;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all points and gives the chunks back to the slab.
+     */
+    @Override
+    protected void clearPoints() {
+        for (int i = 0; i < chunkCount; i++) {
+            slab.freeChunk(chunks[i]);
+        }
+        chunkCount = 0;
+        size = 0;
+    }
+
+    @Override
+    protected void removeAt(int index) {
+        for (int i = index; i < size - 1; i++) {
+            slab.putPoint(chunk(i), offset(i), getTimestamp(i + 1), getRaw(i + 1));
+        }
+        size--;
+        if (size <= (chunkCount - 1) * chunkPoints) {
+            slab.freeChunk(chunks[--chunkCount]);
+        }
+    }
+
+    private int chunk(int index) {
+        return chunks[index / chunkPoints];
+    }
+
+    private int offset(int index) {
+        return index % chunkPoints;
+    }
+
+    private boolean ensureCapacity(int capacity) {
+        while (capacity > chunkCount * chunkPoints) {
+            int chunk = slab.allocateChunk();
+            if (chunk < 0) {
+                slab.rejectPoint();
+                return false;
+            }
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+            chunks[chunkCount++] = chunk;
+        }
+        return true;
+    }
+}
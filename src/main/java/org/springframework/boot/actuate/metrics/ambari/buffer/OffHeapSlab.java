@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.buffer;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fixed capacity direct (off-heap) memory slab for the (timestamp, value) points of the {@link OffHeapMetricValues}.
+ * The slab is split into fixed size chunks of {@link #getChunkPoints()} points each. Chunks are handed out to the
+ * series and given back when a series is cleared, so the memory is recycled without any GC involvement.
+ * 
+ * The slab memory is released on {@link #close()}. If some chunks are still in use (e.g. a flushed snapshot being
+ * sent) the release is deferred until the last chunk is freed, so the memory is never read after it is released.
+ * 
+ * Chunk allocation is thread safe. A chunk is read and written only by the series that owns it.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class OffHeapSlab implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapSlab.class);
+
+    /**
+     * Bytes per point: 8 bytes timestamp and 8 bytes value.
+     */
+    public static final int POINT_BYTES = 16;
+
+    public static final int DEFAULT_CHUNK_POINTS = 32;
+
+    private final int chunkPoints;
+
+    private final int chunkCount;
+
+    private ByteBuffer slab;
+
+    /**
+     * Stack of the free chunk indexes.
+     */
+    private final int[] freeChunks;
+
+    private int freeCount;
+
+    private boolean closed = false;
+
+    private final AtomicLong rejectedPoints = new AtomicLong(0);
+
+    /**
+     * @param capacityBytes
+     *            Slab size in bytes. Rounded down to whole chunks.
+     */
+    public OffHeapSlab(long capacityBytes) {
+        this(capacityBytes, DEFAULT_CHUNK_POINTS);
+    }
+
+    public OffHeapSlab(long capacityBytes, int chunkPoints) {
+        if (chunkPoints < 1) {
+            throw new IllegalArgumentException("At least one point per chunk is required: " + chunkPoints);
+        }
+        long chunks = capacityBytes / ((long) chunkPoints * POINT_BYTES);
+        if (chunks < 1 || chunks * chunkPoints * POINT_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Off-heap capacity must fit between one chunk ("
+                    + (chunkPoints * POINT_BYTES) + " bytes) and 2GB: " + capacityBytes);
+        }
+
+        this.chunkPoints = chunkPoints;
+        this.chunkCount = (int) chunks;
+        this.slab = ByteBuffer.allocateDirect(chunkCount * chunkPoints * POINT_BYTES);
+        this.freeChunks = new int[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            // Hand out the low chunks first
+            freeChunks[i] = chunkCount - 1 - i;
+        }
+        this.freeCount = chunkCount;
+    }
+
+    /**
+     * @return Returns a free chunk index or -1 if the slab is exhausted or closed.
+     */
+    public synchronized int allocateChunk() {
+        if (closed || freeCount == 0) {
+            return -1;
+        }
+        return freeChunks[--freeCount];
+    }
+
+    /**
+     * @param chunk
+     *            Chunk index, returned by {@link #allocateChunk()}, to give back to the slab.
+     */
+    public synchronized void freeChunk(int chunk) {
+        freeChunks[freeCount++] = chunk;
+        if (closed && freeCount == chunkCount) {
+            release();
+        }
+    }
+
+    /**
+     * Writes a point. The value is the raw 8 bytes (long or double bits) of the series value.
+     */
+    public void putPoint(int chunk, int offset, long timestamp, long value) {
+        int index = position(chunk, offset);
+        slab.putLong(index, timestamp);
+        slab.putLong(index + 8, value);
+    }
+
+    public void putValue(int chunk, int offset, long value) {
+        slab.putLong(position(chunk, offset) + 8, value);
+    }
+
+    public long getTimestamp(int chunk, int offset) {
+        return slab.getLong(position(chunk, offset));
+    }
+
+    public long getValue(int chunk, int offset) {
+        return slab.getLong(position(chunk, offset) + 8);
+    }
+
+    private int position(int chunk, int offset) {
+        return (chunk * chunkPoints + offset) * POINT_BYTES;
+    }
+
+    void rejectPoint() {
+        if (rejectedPoints.getAndIncrement() % 10000 == 0) {
+            logger.warn("Off-heap metric buffer is full (" + getCapacityBytes() + " bytes). Points are dropped!");
+        }
+    }
+
+    /**
+     * @return Returns the number of points dropped because the slab was exhausted.
+     */
+    public long getRejectedPoints() {
+        return rejectedPoints.get();
+    }
+
+    public int getChunkPoints() {
+        return chunkPoints;
+    }
+
+    public long getCapacityBytes() {
+        return (long) chunkCount * chunkPoints * POINT_BYTES;
+    }
+
+    /**
+     * @return Returns the number of chunks in use.
+     */
+    public synchronized int getUsedChunks() {
+        return chunkCount - freeCount;
+    }
+
+    public synchronized boolean isReleased() {
+        return slab == null;
+    }
+
+    /**
+     * Stops handing out chunks and releases the slab memory once all chunks are freed.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (freeCount == chunkCount) {
+            release();
+        }
+    }
+
+    private void release() {
+        if (slab == null) {
+            return;
+        }
+        ByteBuffer released = slab;
+        slab = null;
+        try {
+            // Free the native memory right away instead of waiting for the GC (JDK 7/8 direct buffers)
+            Method cleanerMethod = released.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(released);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            logger.debug("Direct buffer cleaner not accessible. The off-heap memory is left to the GC", e);
+        }
+    }
+}
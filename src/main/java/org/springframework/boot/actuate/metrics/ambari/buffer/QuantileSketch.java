@@ -0,0 +1,294 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.buffer;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with relative-error guarantees (DDSketch style). Values are mapped to logarithmically
+ * sized buckets so that any quantile estimate is within the configured relative accuracy of the true value. The
+ * number of buckets per sign is bounded, so the memory footprint is fixed no matter how many samples are added. When
+ * the bucket range is exhausted the lowest buckets are collapsed, trading accuracy of the lowest quantiles for the
+ * accuracy of the high ones (p99, p99.9) that matter for latency metrics.
+ *
+ * Not thread safe. The {@link MetricBuffer} guards the sketches with its buffer lock.
+ *
+ * @author tzolov@apache.org
+ *
+ */
+public class QuantileSketch {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    public static final int DEFAULT_MAX_BUCKETS = 2048;
+
+    private final double relativeAccuracy;
+
+    private final double gamma;
+
+    private final double logGamma;
+
+    /**
+     * Buckets for the positive and for the (absolute) negative values.
+     */
+    private final BucketStore positiveStore;
+    private final BucketStore negativeStore;
+
+    private long zeroCount;
+
+    private long count;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BUCKETS);
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxBuckets) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("The relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        if (maxBuckets < 2) {
+            throw new IllegalArgumentException("At least two buckets are required: " + maxBuckets);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.positiveStore = new BucketStore(maxBuckets);
+        this.negativeStore = new BucketStore(maxBuckets);
+    }
+
+    /**
+     * Adds new sample to the sketch. NaN and infinite values are ignored: an infinite sample has no bucket and would
+     * make every percentile infinite.
+     *
+     * @param value
+     *            Sample value.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+
+        if (value > 0) {
+            positiveStore.add(index(value), 1);
+        } else if (value < 0) {
+            negativeStore.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Merges the state of another sketch into this one. Both sketches must use the same relative accuracy.
+     *
+     * @param other
+     *            Sketch to merge.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Can not merge sketches with different relative accuracy: "
+                    + relativeAccuracy + " and " + other.relativeAccuracy);
+        }
+
+        if (other.count == 0) {
+            return;
+        }
+
+        positiveStore.merge(other.positiveStore);
+        negativeStore.merge(other.negativeStore);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @param quantile
+     *            Quantile in the [0, 1] range (e.g. 0.99 for p99).
+     * @return Returns the estimated value for the quantile or NaN if the sketch is empty.
+     */
+    public double getValueAtQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("The quantile must be between 0 and 1: " + quantile);
+        }
+
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        long rank = (long) (quantile * (count - 1));
+
+        // The exact extremes are known
+        if (rank == 0) {
+            return min;
+        } else if (rank == count - 1) {
+            return max;
+        }
+
+        double value;
+        if (rank < negativeStore.count) {
+            // The negative store is ordered by absolute value, so the ranks go from the highest index downwards
+            value = -bucketValue(negativeStore.indexAtRank(negativeStore.count - 1 - rank));
+        } else if (rank < negativeStore.count + zeroCount) {
+            value = 0;
+        } else {
+            value = bucketValue(positiveStore.indexAtRank(rank - negativeStore.count - zeroCount));
+        }
+
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * @param percentile
+     *            Percentile in the [0, 100] range (e.g. 99.9 for p99.9).
+     * @return Returns the estimated value for the percentile or NaN if the sketch is empty.
+     */
+    public double getValueAtPercentile(double percentile) {
+        return getValueAtQuantile(percentile / 100);
+    }
+
+    /**
+     * @return Returns the number of samples added since the last {@link #clear()}.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Resets the sketch to the empty state. The bucket arrays are retained.
+     */
+    public void clear() {
+        positiveStore.clear();
+        negativeStore.clear();
+        zeroCount = 0;
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private double bucketValue(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * Fixed size window of bucket counters. The window slides towards the higher indexes, collapsing the lowest
+     * buckets when a sample does not fit the window anymore.
+     */
+    private static class BucketStore {
+
+        private final long[] counts;
+
+        /**
+         * Bucket index of counts[0].
+         */
+        private int offset;
+
+        private long count;
+
+        BucketStore(int maxBuckets) {
+            this.counts = new long[maxBuckets];
+        }
+
+        void add(int index, long increment) {
+            if (count == 0) {
+                // Center the window around the first sample
+                offset = index - counts.length / 2;
+            }
+
+            if (index < offset) {
+                // Collapse into the lowest bucket
+                index = offset;
+            } else if (index >= offset + counts.length) {
+                shift(index - (offset + counts.length - 1));
+            }
+
+            counts[index - offset] += increment;
+            count += increment;
+        }
+
+        void merge(BucketStore other) {
+            if (other.count == 0) {
+                return;
+            }
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] > 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        int indexAtRank(long rank) {
+            long n = 0;
+            for (int i = 0; i < counts.length; i++) {
+                n += counts[i];
+                if (n > rank) {
+                    return offset + i;
+                }
+            }
+            return offset + counts.length - 1;
+        }
+
+        void clear() {
+            Arrays.fill(counts, 0);
+            count = 0;
+        }
+
+        private void shift(int shift) {
+            if (shift >= counts.length) {
+                long collapsed = 0;
+                for (long c : counts) {
+                    collapsed += c;
+                }
+                Arrays.fill(counts, 0);
+                counts[0] = collapsed;
+            } else {
+                long collapsed = 0;
+                for (int i = 0; i <= shift; i++) {
+                    collapsed += counts[i];
+                }
+                System.arraycopy(counts, shift, counts, 0, counts.length - shift);
+                Arrays.fill(counts, counts.length - shift, counts.length, 0);
+                counts[0] = collapsed;
+            }
+            offset += shift;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.buffer;
+
+import org.springframework.boot.actuate.metrics.ambari.filter.MetricNamePatterns;
+import org.springframework.util.Assert;
+
+/**
+ * Timestamp resolution of the metrics matching a set of name patterns. The {@link MetricBuffer} rounds the sample
+ * timestamps of the matching metrics down to the resolution and merges the samples falling into the same slot at
+ * insert time, so samples a few milliseconds apart become a single point. The collector stores the points at second
+ * or minute precision anyway, so no information is lost at the stored precision.
+ *
+ * Instances are immutable and thread safe.
+ *
+ * @author tzolov@apache.org
+ *
+ */
+public class TimestampQuantization {
+
+    /**
+     * How the samples of the same timestamp slot are merged.
+     */
+    public enum Merge {
+
+        /**
+         * The last sample wins.
+         */
+        LAST,
+
+        /**
+         * The largest sample is kept.
+         */
+        MAX,
+
+        /**
+         * The samples are averaged.
+         */
+        AVG
+    }
+
+    private final long resolutionMillis;
+
+    private final Merge merge;
+
+    private final MetricNamePatterns metricPatterns;
+
+    /**
+     * @param resolutionMillis
+     *            Timestamp resolution in milliseconds, e.g. 1000 to keep a single point per second.
+     * @param merge
+     *            Merge rule of the samples with the same quantized timestamp.
+     * @param metricPatterns
+     *            Metric name patterns. Supports '*' wildcards.
+     */
+    public TimestampQuantization(long resolutionMillis, Merge merge, String... metricPatterns) {
+        if (resolutionMillis < 1) {
+            throw new IllegalArgumentException("The timestamp resolution must be positive: " + resolutionMillis);
+        }
+        Assert.notNull(merge, "The merge rule is required");
+        this.resolutionMillis = resolutionMillis;
+        this.merge = merge;
+        this.metricPatterns = new MetricNamePatterns(metricPatterns);
+    }
+
+    /**
+     * @param metricName
+     *            Metric name to check.
+     * @return Returns true if the metric timestamps are quantized by this rule.
+     */
+    public boolean matches(String metricName) {
+        return metricPatterns.matches(metricName);
+    }
+
+    /**
+     * @param timestamp
+     *            Sample timestamp in milliseconds.
+     * @return Returns the timestamp rounded down to the resolution.
+     */
+    public long quantize(long timestamp) {
+        long remainder = timestamp % resolutionMillis;
+        return (remainder < 0) ? timestamp - remainder - resolutionMillis : timestamp - remainder;
+    }
+
+    /**
+     * @param current
+     *            Value of the slot.
+     * @param sample
+     *            New sample of the slot.
+     * @param samples
+     *            Number of samples merged into the current value.
+     * @return Returns the merged value.
+     */
+    double merge(double current, double sample, int samples) {
+        switch (merge) {
+        case MAX:
+            return Math.max(current, sample);
+        case AVG:
+            return current + (sample - current) / (samples + 1);
+        default:
+            return sample;
+        }
+    }
+
+    public long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    public Merge getMerge() {
+        return merge;
+    }
+
+    public String[] getMetricPatterns() {
+        return metricPatterns.getPatterns();
+    }
+
+    @Override
+    public String toString() {
+        return "TimestampQuantization [resolutionMillis=" + resolutionMillis + ", merge=" + merge + ", metricPatterns="
+                + metricPatterns + "]";
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.codec;
+
+/**
+ * Streaming decoder of the points written by a {@link GorillaEncoder}. Iterate with {@link #next()} and read the
+ * current point with {@link #getTimestamp()} and {@link #getValue()}:
+ *
+ * <pre>
+ * GorillaDecoder decoder = encoder.decoder();
+ * while (decoder.next()) {
+ *     process(decoder.getTimestamp(), decoder.getValue());
+ * }
+ * </pre>
+ *
+ * Not thread safe.
+ *
+ * @author tzolov@apache.org
+ *
+ */
+public class GorillaDecoder {
+
+    private final long[] words;
+
+    private final long bitLength;
+
+    private final int count;
+
+    private long bitPosition;
+
+    private int index;
+
+    private long timestamp;
+
+    private long delta;
+
+    private long valueBits;
+
+    private int leadingZeros;
+
+    private int trailingZeros;
+
+    GorillaDecoder(long[] words, long bitLength, int count) {
+        this.words = words;
+        this.bitLength = bitLength;
+        this.count = count;
+    }
+
+    /**
+     * @param bytes
+     *            Stream returned by {@link GorillaEncoder#toByteArray()}.
+     * @param count
+     *            Number of encoded points.
+     */
+    public GorillaDecoder(byte[] bytes, int count) {
+        this(toWords(bytes), bytes.length * 8L, count);
+    }
+
+    private static long[] toWords(byte[] bytes) {
+        long[] words = new long[(bytes.length + 7) >>> 3];
+        for (int i = 0; i < bytes.length; i++) {
+            words[i >>> 3] |= (bytes[i] & 0xFFL) << (56 - ((i & 7) << 3));
+        }
+        return words;
+    }
+
+    /**
+     * Decodes the next point.
+     *
+     * @return Returns false when all points are read.
+     */
+    public boolean next() {
+        if (index >= count) {
+            return false;
+        }
+
+        if (index == 0) {
+            timestamp = readBits(64);
+            valueBits = readBits(64);
+        } else {
+            delta += readDeltaOfDelta();
+            timestamp += delta;
+            readValue();
+        }
+
+        index++;
+        return true;
+    }
+
+    private long readDeltaOfDelta() {
+        if (readBits(1) == 0) {
+            return 0;
+        } else if (readBits(1) == 0) {
+            return signed(readBits(7), 7);
+        } else if (readBits(1) == 0) {
+            return signed(readBits(9), 9);
+        } else if (readBits(1) == 0) {
+            return signed(readBits(12), 12);
+        }
+        return readBits(64);
+    }
+
+    private void readValue() {
+        if (readBits(1) == 0) {
+            return;
+        }
+
+        if (readBits(1) == 1) {
+            leadingZeros = (int) readBits(5);
+            int meaningfulBits = (int) readBits(6);
+            if (meaningfulBits == 0) {
+                meaningfulBits = 64;
+            }
+            trailingZeros = 64 - leadingZeros - meaningfulBits;
+        }
+
+        valueBits ^= readBits(64 - leadingZeros - trailingZeros) << trailingZeros;
+    }
+
+    private static long signed(long value, int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private long readBits(int bits) {
+        if (bitPosition + bits > bitLength) {
+            throw new IllegalStateException("Truncated stream at bit " + bitPosition);
+        }
+
+        int word = (int) (bitPosition >>> 6);
+        int offset = (int) (bitPosition & 63);
+        bitPosition += bits;
+
+        long value;
+        if (offset + bits <= 64) {
+            value = words[word] << offset;
+        } else {
+            value = (words[word] << offset) | (words[word + 1] >>> (64 - offset));
+        }
+        return (bits == 64) ? value : value >>> (64 - bits);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getValue() {
+        return Double.longBitsToDouble(valueBits);
+    }
+
+    /**
+     * @return Returns the number of points decoded so far.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
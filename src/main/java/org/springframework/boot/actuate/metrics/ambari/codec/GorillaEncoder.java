@@ -0,0 +1,250 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.codec;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.springframework.boot.actuate.metrics.ambari.domain.AbstractMetricValues;
+
+/**
+ * Streaming time series encoder in the style of the Facebook Gorilla TSDB. The timestamps are stored as
+ * delta-of-deltas and the values as the XOR with the previous value, both with variable bit lengths. Regular
+ * timestamps take a single bit and slowly changing values a handful of bits, so a typical metric series fits in 1 to
+ * 2 bytes per point instead of 16.
+ *
+ * The first point is stored raw. For every next point:
+ *
+ * <pre>
+ * delta-of-delta:  0                   '0'
+ *                  [-64, 63]           '10'   + 7 bits
+ *                  [-256, 255]         '110'  + 9 bits
+ *                  [-2048, 2047]       '1110' + 12 bits
+ *                  otherwise           '1111' + 64 bits
+ * value XOR:       0                   '0'
+ *                  within the previous '10'   + the meaningful bits of the previous window
+ *                  otherwise           '11'   + 5 bits leading zeros + 6 bits length + the meaningful bits
+ * </pre>
+ *
+ * The timestamps must be appended in increasing order. Read the points back with a {@link GorillaDecoder}.
+ *
+ * Not thread safe.
+ *
+ * @author tzolov@apache.org
+ *
+ */
+public class GorillaEncoder {
+
+    private static final int INITIAL_WORDS = 4;
+
+    private long[] words;
+
+    private long bitLength;
+
+    private int count;
+
+    private long firstTimestamp;
+
+    private long lastTimestamp;
+
+    private long lastDelta;
+
+    private long lastValueBits;
+
+    private int lastLeadingZeros = Integer.MAX_VALUE;
+
+    private int lastTrailingZeros;
+
+    public GorillaEncoder() {
+        this.words = new long[INITIAL_WORDS];
+    }
+
+    /**
+     * Appends a point to the stream.
+     *
+     * @param timestamp
+     *            Point timestamp. Must not be lower than the last appended timestamp.
+     * @param value
+     *            Point value.
+     */
+    public void append(long timestamp, double value) {
+        long valueBits = Double.doubleToRawLongBits(value);
+
+        if (count == 0) {
+            writeBits(timestamp, 64);
+            writeBits(valueBits, 64);
+            firstTimestamp = timestamp;
+        } else {
+            if (timestamp < lastTimestamp) {
+                throw new IllegalArgumentException("Timestamp " + timestamp + " is older than the last appended "
+                        + lastTimestamp);
+            }
+            long delta = timestamp - lastTimestamp;
+            writeDeltaOfDelta(delta - lastDelta);
+            writeValue(valueBits);
+            lastDelta = delta;
+        }
+
+        lastTimestamp = timestamp;
+        lastValueBits = valueBits;
+        count++;
+    }
+
+    /**
+     * Appends the points of a metric series.
+     *
+     * @param metricValues
+     *            Points ordered by timestamp.
+     */
+    public void append(Map<Long, Double> metricValues) {
+        if (metricValues instanceof AbstractMetricValues) {
+            // No boxing
+            AbstractMetricValues values = (AbstractMetricValues) metricValues;
+            for (int i = 0; i < values.size(); i++) {
+                append(values.getTimestamp(i), values.getValue(i));
+            }
+        } else {
+            for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
+                append(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writeBits(0, 1);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            writeBits(0x2, 2);
+            writeBits(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            writeBits(0x6, 3);
+            writeBits(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            writeBits(0xE, 4);
+            writeBits(deltaOfDelta, 12);
+        } else {
+            writeBits(0xF, 4);
+            writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    private void writeValue(long valueBits) {
+        long xor = valueBits ^ lastValueBits;
+        if (xor == 0) {
+            writeBits(0, 1);
+            return;
+        }
+
+        // The leading zeros count is stored in 5 bits
+        int leadingZeros = Math.min(31, Long.numberOfLeadingZeros(xor));
+        int trailingZeros = Long.numberOfTrailingZeros(xor);
+
+        if (leadingZeros >= lastLeadingZeros && trailingZeros >= lastTrailingZeros) {
+            // Fits in the previous meaningful bits window
+            writeBits(0x2, 2);
+            writeBits(xor >>> lastTrailingZeros, 64 - lastLeadingZeros - lastTrailingZeros);
+        } else {
+            int meaningfulBits = 64 - leadingZeros - trailingZeros;
+            writeBits(0x3, 2);
+            writeBits(leadingZeros, 5);
+            // 64 meaningful bits are stored as 0
+            writeBits(meaningfulBits, 6);
+            writeBits(xor >>> trailingZeros, meaningfulBits);
+            lastLeadingZeros = leadingZeros;
+            lastTrailingZeros = trailingZeros;
+        }
+    }
+
+    /**
+     * Writes the lowest bits of the value, most significant bit first.
+     */
+    private void writeBits(long value, int bits) {
+        ensureCapacity(bitLength + bits);
+
+        int word = (int) (bitLength >>> 6);
+        int free = 64 - (int) (bitLength & 63);
+        long masked = (bits == 64) ? value : value & ((1L << bits) - 1);
+
+        if (bits <= free) {
+            words[word] |= masked << (free - bits);
+        } else {
+            int overflow = bits - free;
+            words[word] |= masked >>> overflow;
+            words[word + 1] |= masked << (64 - overflow);
+        }
+        bitLength += bits;
+    }
+
+    private void ensureCapacity(long bits) {
+        int required = (int) ((bits + 63) >>> 6);
+        if (required > words.length) {
+            words = Arrays.copyOf(words, Math.max(required, words.length * 2));
+        }
+    }
+
+    /**
+     * Releases the unused capacity. Call when no more points are appended.
+     */
+    public void trim() {
+        int required = (int) ((bitLength + 63) >>> 6);
+        if (required < words.length) {
+            words = Arrays.copyOf(words, required);
+        }
+    }
+
+    /**
+     * @return Returns a decoder over the points appended so far.
+     */
+    public GorillaDecoder decoder() {
+        return new GorillaDecoder(words, bitLength, count);
+    }
+
+    /**
+     * @return Returns the encoded stream. Decode it with {@link GorillaDecoder#GorillaDecoder(byte[], int)}.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[getSizeInBytes()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (words[i >>> 3] >>> (56 - ((i & 7) << 3)));
+        }
+        return bytes;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return Returns the encoded size in bytes.
+     */
+    public int getSizeInBytes() {
+        return (int) ((bitLength + 7) >>> 3);
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public double getLastValue() {
+        return Double.longBitsToDouble(lastValueBits);
+    }
+}
@@ -17,13 +17,32 @@
  */
 package org.springframework.boot.actuate.metrics.ambari.configuration;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.ExportMetricReader;
 import org.springframework.boot.actuate.autoconfigure.ExportMetricWriter;
+import org.springframework.boot.actuate.metrics.ambari.AmbariMetricWriter;
 import org.springframework.boot.actuate.metrics.ambari.SyncAmbariMetricWriter;
+import org.springframework.boot.actuate.metrics.ambari.VirtualThreadAmbariMetricWriter;
 import org.springframework.boot.actuate.metrics.ambari.AsyncAmbariMetricWriter;
 import org.springframework.boot.actuate.metrics.ambari.DummyAmbariMetricWriter;
+import org.springframework.boot.actuate.metrics.ambari.FanOutAmbariMetricWriter;
+import org.springframework.boot.actuate.metrics.ambari.ReactiveAmbariMetricWriter;
+import org.springframework.boot.actuate.metrics.ambari.SidecarAmbariMetricWriter;
+import org.springframework.boot.actuate.metrics.ambari.buffer.TimestampQuantization;
+import org.springframework.boot.actuate.metrics.ambari.export.AmbariBufferMetricExporter;
+import org.springframework.boot.actuate.metrics.ambari.filter.MetricNameFilter;
+import org.springframework.boot.actuate.metrics.ambari.history.MetricHistory;
+import org.springframework.boot.actuate.metrics.ambari.lane.PriorityLane;
+import org.springframework.boot.actuate.metrics.ambari.tuning.AdaptiveFlushTuner;
+import org.springframework.boot.actuate.metrics.ambari.tuning.TokenBucket;
+import org.springframework.boot.actuate.metrics.buffer.CounterBuffers;
+import org.springframework.boot.actuate.metrics.buffer.GaugeBuffers;
+import org.springframework.boot.actuate.metrics.reader.MetricReader;
 import org.springframework.boot.actuate.metrics.writer.MetricWriter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -40,20 +59,69 @@ public class AmbariMetricConfiguration {
     @Autowired
     private AmbariMetricProperties properties;
 
+    @Autowired(required = false)
+    private MetricHistory metricHistory;
+
     @Bean
     @ExportMetricWriter
     @ConditionalOnMissingBean
     @ConditionalOnProperty(prefix = "spring.metrics.export.ambari", name = "metrics-collector-host")
     public MetricWriter ambariMetricExporter() {
+        return createMetricWriter(properties, metricHistory);
+    }
+
+    /**
+     * Recent history of the exported series, readable as a {@link MetricReader}. Not marked as
+     * {@link ExportMetricReader}, so the history is not exported again.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.metrics.export.ambari", name = "history-retention-millis")
+    public MetricHistory ambariMetricHistory() {
+        return new MetricHistory(properties.getHistoryRetentionMillis(), properties.getHistoryMaxSeries(),
+                properties.getHistoryMaxPointsPerSeries());
+    }
+
+    /**
+     * Direct export mode: the writer is fed by the {@link AmbariBufferMetricExporter} straight from the Spring Boot
+     * metric buffers. The writer is not marked as {@link ExportMetricWriter}, so the default (Metric copying) exporter
+     * is not created for it.
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = "spring.metrics.export.ambari", name = { "metrics-collector-host",
+            "direct-export" })
+    protected static class DirectExportConfiguration {
+
+        @Autowired
+        private AmbariMetricProperties properties;
+
+        @Autowired(required = false)
+        private MetricHistory metricHistory;
+
+        @Bean
+        @ConditionalOnMissingBean
+        public AmbariMetricWriter ambariDirectMetricWriter() {
+            return createMetricWriter(properties, metricHistory);
+        }
+
+        @Bean
+        public AmbariBufferMetricExporter ambariBufferMetricExporter(AmbariMetricWriter metricWriter,
+                CounterBuffers counterBuffers, GaugeBuffers gaugeBuffers) {
+            return new AmbariBufferMetricExporter(metricWriter, counterBuffers, gaugeBuffers);
+        }
+    }
+
+    static AmbariMetricWriter createMetricWriter(AmbariMetricProperties properties, MetricHistory metricHistory) {
 
         if (StringUtils.isEmpty(properties.getWriterType())
-                || !Arrays.asList("sync", "async", "dummy").contains(properties.getWriterType().trim())) {
+                || !Arrays.asList("sync", "async", "reactive", "virtual", "sidecar", "fanout", "dummy").contains(
+                        properties.getWriterType().trim())) {
 
             throw new java.lang.IllegalArgumentException("The spring.metrics.export.ambari.writer-type "
-                    + " properterty must be set to: sync, async or dummy");
+                    + " properterty must be set to: sync, async, reactive, virtual, sidecar, fanout or dummy");
         }
 
-        MetricWriter metricWriter = null;
+        AmbariMetricWriter metricWriter = null;
 
         if (properties.getWriterType().trim().equalsIgnoreCase("sync")) {
 
@@ -66,6 +134,46 @@ public class AmbariMetricConfiguration {
             metricWriter = new AsyncAmbariMetricWriter(properties.getMetricsCollectorHost(), ""
                     + properties.getMetricsCollectorPort(), properties.getApplicationId(), properties.getHostName(),
                     properties.getInstanceId(), properties.getMetricsBufferSize());
+
+        } else if (properties.getWriterType().trim().equalsIgnoreCase("reactive")) {
+
+            ReactiveAmbariMetricWriter reactiveMetricWriter = new ReactiveAmbariMetricWriter(
+                    properties.getMetricsCollectorHost(), "" + properties.getMetricsCollectorPort(),
+                    properties.getApplicationId(), properties.getHostName(), properties.getInstanceId(),
+                    properties.getMetricsBufferSize());
+            reactiveMetricWriter.setMaxConcurrentSends(properties.getMaxConcurrentSends());
+            reactiveMetricWriter.setMaxPendingBatches(properties.getMaxPendingBatches());
+            metricWriter = reactiveMetricWriter;
+
+        } else if (properties.getWriterType().trim().equalsIgnoreCase("virtual")) {
+
+            metricWriter = new VirtualThreadAmbariMetricWriter(properties.getMetricsCollectorHost(), ""
+                    + properties.getMetricsCollectorPort(), properties.getApplicationId(), properties.getHostName(),
+                    properties.getInstanceId(), properties.getMetricsBufferSize(),
+                    properties.getMaxConcurrentSends());
+
+        } else if (properties.getWriterType().trim().equalsIgnoreCase("sidecar")) {
+
+            metricWriter = new SidecarAmbariMetricWriter(new File(properties.getSidecarDirectory().trim()),
+                    properties.getSidecarRingCapacity(), properties.getApplicationId(), properties.getHostName(),
+                    properties.getInstanceId(), properties.getMetricsBufferSize());
+
+        } else if (properties.getWriterType().trim().equalsIgnoreCase("fanout")) {
+
+            List<String> collectors = new ArrayList<String>();
+            collectors.add(properties.getMetricsCollectorHost() + ":" + properties.getMetricsCollectorPort());
+            for (String collector : properties.getFanoutCollectors()) {
+                if (StringUtils.hasText(collector)) {
+                    collectors.add(collector.trim());
+                }
+            }
+            FanOutAmbariMetricWriter fanOutMetricWriter = new FanOutAmbariMetricWriter(
+                    collectors.toArray(new String[collectors.size()]), properties.getApplicationId(),
+                    properties.getHostName(), properties.getInstanceId(), properties.getMetricsBufferSize(),
+                    properties.getFanoutMaxQueuedPayloads());
+            fanOutMetricWriter.setMaxAttempts(properties.getFanoutMaxAttempts());
+            fanOutMetricWriter.setRetryBackoffMillis(properties.getFanoutRetryBackoffMillis());
+            metricWriter = fanOutMetricWriter;
         } else {
 
             metricWriter = new DummyAmbariMetricWriter(properties.getMetricsCollectorHost(), ""
@@ -73,6 +181,61 @@ public class AmbariMetricConfiguration {
                     properties.getInstanceId(), properties.getMetricsBufferSize());
         }
 
+        metricWriter.setOffHeapBufferCapacity(properties.getOffHeapBufferCapacity());
+        metricWriter.setFlushPhaseJitter(properties.isFlushPhaseJitter());
+        metricWriter.setFlushIntervalMillis(properties.getFlushIntervalMillis());
+
+        if (properties.getMaxBytesPerSecond() > 0) {
+            metricWriter.setSendRateLimiter(new TokenBucket(properties.getMaxBytesPerSecond(), properties
+                    .getMaxBurstBytes()));
+        }
+
+        if (properties.getAdaptiveTargetRequestsPerMinute() > 0 || properties.getAdaptiveTargetPayloadBytes() > 0) {
+            metricWriter.setFlushTuner(new AdaptiveFlushTuner(properties.getAdaptiveTargetRequestsPerMinute(),
+                    properties.getAdaptiveTargetPayloadBytes(), properties.getMetricsBufferSize(), properties
+                            .getAdaptiveMinBufferSize(), properties.getAdaptiveMaxBufferSize()));
+        }
+
+        metricWriter.setShutdownTimeoutMillis(properties.getShutdownTimeoutMillis());
+        metricWriter.setShutdownParallelism(properties.getShutdownParallelism());
+        metricWriter.setShutdownChunkSize(properties.getShutdownChunkSize());
+        if (StringUtils.hasText(properties.getSpoolDirectory())) {
+            metricWriter.setSpoolDirectory(new File(properties.getSpoolDirectory().trim()));
+        }
+
+        metricWriter.setMetricNameFilter(new MetricNameFilter(properties.getIncludes(), properties.getExcludes()));
+
+        metricWriter.setPercentileMetrics(properties.getPercentileMetrics());
+        metricWriter.setPercentiles(properties.getPercentiles());
+        metricWriter.setPercentileAccuracy(properties.getPercentileAccuracy());
+
+        if (properties.getPriorityLanes() != null && !properties.getPriorityLanes().isEmpty()) {
+            List<PriorityLane> lanes = new ArrayList<PriorityLane>();
+            for (int i = 0; i < properties.getPriorityLanes().size(); i++) {
+                AmbariMetricProperties.PriorityLane lane = properties.getPriorityLanes().get(i);
+                lanes.add(new PriorityLane(StringUtils.hasText(lane.getName()) ? lane.getName().trim() : "" + i, lane
+                        .getBufferSize(), lane.getFlushIntervalMillis(), lane.getMetrics()));
+            }
+            metricWriter.setPriorityLanes(lanes);
+        }
+
+        if (properties.getTimestampQuantizations() != null && !properties.getTimestampQuantizations().isEmpty()) {
+            List<TimestampQuantization> quantizations = new ArrayList<TimestampQuantization>();
+            for (AmbariMetricProperties.TimestampQuantization quantization : properties.getTimestampQuantizations()) {
+                quantizations.add(new TimestampQuantization(quantization.getResolutionMillis(),
+                        TimestampQuantization.Merge.valueOf(quantization.getMerge().trim().toUpperCase()), quantization
+                                .getMetrics()));
+            }
+            metricWriter.setTimestampQuantizations(quantizations);
+        }
+
+        metricWriter.getDeadbandFilter().setMetricPatterns(properties.getDeadbandMetrics());
+        metricWriter.getDeadbandFilter().setAbsoluteThreshold(properties.getDeadbandAbsolute());
+        metricWriter.getDeadbandFilter().setRelativeThreshold(properties.getDeadbandRelative());
+        metricWriter.getDeadbandFilter().setMaxSilenceMillis(properties.getDeadbandMaxSilenceMillis());
+
+        metricWriter.setMetricHistory(metricHistory);
+
         return metricWriter;
     }
 }
@@ -17,6 +17,9 @@
  */
 package org.springframework.boot.actuate.metrics.ambari.configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -62,7 +65,11 @@ public class AmbariMetricProperties {
      * Ambari Metric Writer implementation. Accepted values are:
      * <ul>
      * <li>sync (AmbariMetricWriter)</li>
-     * <li>async (AsyncAmbariMetricWriter)</li> and
+     * <li>async (AsyncAmbariMetricWriter)</li>
+     * <li>reactive (ReactiveAmbariMetricWriter)</li>
+     * <li>virtual (VirtualThreadAmbariMetricWriter)</li>
+     * <li>sidecar (SidecarAmbariMetricWriter)</li>
+     * <li>fanout (FanOutAmbariMetricWriter)</li> and
      * <li>dummy (DummyAmbariMetricWriter)</li>
      * 
      * <br/>
@@ -71,6 +78,201 @@ public class AmbariMetricProperties {
      */
     private String writerType = "sync";
 
+    /**
+     * Directory of the memory-mapped metric rings shared with the local SidecarAgent (sidecar writer).
+     */
+    private String sidecarDirectory = System.getProperty("java.io.tmpdir") + "/ambari-metrics";
+
+    /**
+     * Size in bytes of the metric ring of the sidecar writer. Defaults to 4MB.
+     */
+    private int sidecarRingCapacity = 4 * 1024 * 1024;
+
+    /**
+     * Additional collectors (host[:port]) receiving the same metrics as the metrics-collector-host (fanout writer).
+     */
+    private String[] fanoutCollectors = new String[0];
+
+    /**
+     * Max number of attempts to send a payload to a collector (fanout writer).
+     */
+    private int fanoutMaxAttempts = 3;
+
+    /**
+     * Delay before the first retry of a failed send, doubled for every next retry (fanout writer).
+     */
+    private long fanoutRetryBackoffMillis = 500;
+
+    /**
+     * Max number of payloads waiting for a collector. The oldest payload is dropped beyond that (fanout writer).
+     */
+    private int fanoutMaxQueuedPayloads = 10;
+
+    /**
+     * Flushes the metric buffer every flush-interval-millis in addition to the size triggered flushes. 0 (default)
+     * disables the periodic flush.
+     */
+    private long flushIntervalMillis = 0;
+
+    /**
+     * When true the periodic flushes start at a phase derived from the host name and the instance id, so a fleet of
+     * applications started together does not flush at the same time.
+     */
+    private boolean flushPhaseJitter = false;
+
+    /**
+     * Max bytes per second sent to the collector. The triggered flushes are deferred beyond that rate. 0 (default)
+     * disables the limit.
+     */
+    private long maxBytesPerSecond = 0;
+
+    /**
+     * Max bytes sent in a burst when the send rate is limited. 0 (default) allows one second worth of bytes.
+     */
+    private long maxBurstBytes = 0;
+
+    /**
+     * Max number of batches the reactive and the virtual thread writers send at the same time.
+     */
+    private int maxConcurrentSends = 1;
+
+    /**
+     * Max number of flushed batches the reactive writer keeps while the collector does not keep up. The oldest batch
+     * is dropped beyond that.
+     */
+    private int maxPendingBatches = 10;
+
+    /**
+     * Adaptive mode: tunes the buffer size and the flush interval to reach this number of requests per minute. 0
+     * (default) disables the request rate target.
+     */
+    private double adaptiveTargetRequestsPerMinute = 0;
+
+    /**
+     * Adaptive mode: tunes the buffer size and the flush interval to reach this payload size in bytes. Used when no
+     * target request rate is set. 0 (default) disables the payload size target.
+     */
+    private long adaptiveTargetPayloadBytes = 0;
+
+    /**
+     * Smallest buffer size the adaptive mode can set.
+     */
+    private int adaptiveMinBufferSize = 10;
+
+    /**
+     * Largest buffer size the adaptive mode can set.
+     */
+    private int adaptiveMaxBufferSize = 10000;
+
+    /**
+     * Max time to send the buffered metrics and wait for the sends in flight on shutdown.
+     */
+    private long shutdownTimeoutMillis = 10000;
+
+    /**
+     * Number of parallel sends used to flush the buffer on shutdown.
+     */
+    private int shutdownParallelism = 4;
+
+    /**
+     * Max number of metrics per send on shutdown.
+     */
+    private int shutdownChunkSize = 500;
+
+    /**
+     * (Optional) Directory where the metrics not sent before the shutdown timeout are stored. The stored metrics are
+     * sent on the next start.
+     */
+    private String spoolDirectory;
+
+    /**
+     * When set to true the metrics are exported straight from the Spring Boot metric buffers (CounterBuffers and
+     * GaugeBuffers), without creating intermediate Metric objects. Requires Java 8.
+     */
+    private boolean directExport = false;
+
+    /**
+     * Size in bytes of the off-heap (direct memory) metric buffer. Each buffered point takes 16 bytes. When set, the
+     * buffered metric values are kept off-heap and add no GC pressure to the application. 0 (default) keeps the values
+     * on the heap.
+     */
+    private long offHeapBufferCapacity = 0;
+
+    /**
+     * Patterns of the metric names to export (e.g. gauge.*,counter.status.*). All metrics are exported by default.
+     */
+    private String[] includes = new String[0];
+
+    /**
+     * Patterns of the metric names not to export. Applied after the includes.
+     */
+    private String[] excludes = new String[0];
+
+    /**
+     * Patterns of the metric names (e.g. gauge.response.*) to accumulate into percentile sketches. Only the
+     * configured percentiles of those metrics are sent to the server, as [metric name].p50, [metric name].p99_9 ...
+     */
+    private String[] percentileMetrics = new String[0];
+
+    /**
+     * Percentiles sent for every percentile metric. Defaults to 50, 99 and 99.9.
+     */
+    private double[] percentiles = { 50, 99, 99.9 };
+
+    /**
+     * Relative accuracy of the computed percentiles. Defaults to 0.01 (1%).
+     */
+    private double percentileAccuracy = 0.01;
+
+    /**
+     * Priority lanes, e.g. priority-lanes[0].metrics=counter.status.5*,gauge.health*. The metrics of a lane are
+     * buffered and sent separately from the other metrics, with the lane buffer size and flush interval.
+     */
+    private List<PriorityLane> priorityLanes = new ArrayList<PriorityLane>();
+
+    /**
+     * Timestamp quantization rules, e.g. timestamp-quantizations[0].metrics=gauge.response.*. The samples of the
+     * matching metrics are merged into one point per resolution slot before they are exported.
+     */
+    private List<TimestampQuantization> timestampQuantizations = new ArrayList<TimestampQuantization>();
+
+    /**
+     * Patterns of the slow moving metric names (e.g. gauge.heap.*) sent only when the value changes by more than the
+     * deadband thresholds.
+     */
+    private String[] deadbandMetrics = new String[0];
+
+    /**
+     * Minimal absolute change of a deadband metric value to send it. With both deadband thresholds set to 0 every
+     * changed value is sent.
+     */
+    private double deadbandAbsolute = 0;
+
+    /**
+     * Minimal change of a deadband metric value, relative to the last sent value (e.g. 0.05 for 5%), to send it.
+     */
+    private double deadbandRelative = 0;
+
+    /**
+     * Max time in milliseconds a deadband metric can stay unsent. Defaults to 60000.
+     */
+    private long deadbandMaxSilenceMillis = 60 * 1000;
+
+    /**
+     * Time in milliseconds the exported points are kept in the local metric history. Defaults to 0 (no history).
+     */
+    private long historyRetentionMillis = 0;
+
+    /**
+     * Max number of series kept in the metric history. Defaults to 1000.
+     */
+    private int historyMaxSeries = 1000;
+
+    /**
+     * Max number of points kept per series in the metric history. Defaults to 360.
+     */
+    private int historyMaxPointsPerSeries = 360;
+
     public String getWriterType() {
         return writerType;
     }
@@ -126,4 +328,396 @@ public class AmbariMetricProperties {
     public void setMetricsBufferSize(int metricsBufferSize) {
         this.metricsBufferSize = metricsBufferSize;
     }
+
+    public String[] getPercentileMetrics() {
+        return percentileMetrics;
+    }
+
+    public void setPercentileMetrics(String[] percentileMetrics) {
+        this.percentileMetrics = percentileMetrics;
+    }
+
+    public double[] getPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentiles(double[] percentiles) {
+        this.percentiles = percentiles;
+    }
+
+    public double getPercentileAccuracy() {
+        return percentileAccuracy;
+    }
+
+    public void setPercentileAccuracy(double percentileAccuracy) {
+        this.percentileAccuracy = percentileAccuracy;
+    }
+
+    public String[] getDeadbandMetrics() {
+        return deadbandMetrics;
+    }
+
+    public void setDeadbandMetrics(String[] deadbandMetrics) {
+        this.deadbandMetrics = deadbandMetrics;
+    }
+
+    public double getDeadbandAbsolute() {
+        return deadbandAbsolute;
+    }
+
+    public void setDeadbandAbsolute(double deadbandAbsolute) {
+        this.deadbandAbsolute = deadbandAbsolute;
+    }
+
+    public double getDeadbandRelative() {
+        return deadbandRelative;
+    }
+
+    public void setDeadbandRelative(double deadbandRelative) {
+        this.deadbandRelative = deadbandRelative;
+    }
+
+    public long getDeadbandMaxSilenceMillis() {
+        return deadbandMaxSilenceMillis;
+    }
+
+    public void setDeadbandMaxSilenceMillis(long deadbandMaxSilenceMillis) {
+        this.deadbandMaxSilenceMillis = deadbandMaxSilenceMillis;
+    }
+
+    public long getHistoryRetentionMillis() {
+        return historyRetentionMillis;
+    }
+
+    public void setHistoryRetentionMillis(long historyRetentionMillis) {
+        this.historyRetentionMillis = historyRetentionMillis;
+    }
+
+    public int getHistoryMaxSeries() {
+        return historyMaxSeries;
+    }
+
+    public void setHistoryMaxSeries(int historyMaxSeries) {
+        this.historyMaxSeries = historyMaxSeries;
+    }
+
+    public int getHistoryMaxPointsPerSeries() {
+        return historyMaxPointsPerSeries;
+    }
+
+    public void setHistoryMaxPointsPerSeries(int historyMaxPointsPerSeries) {
+        this.historyMaxPointsPerSeries = historyMaxPointsPerSeries;
+    }
+
+    public String[] getIncludes() {
+        return includes;
+    }
+
+    public void setIncludes(String[] includes) {
+        this.includes = includes;
+    }
+
+    public String[] getExcludes() {
+        return excludes;
+    }
+
+    public void setExcludes(String[] excludes) {
+        this.excludes = excludes;
+    }
+
+    public boolean isDirectExport() {
+        return directExport;
+    }
+
+    public void setDirectExport(boolean directExport) {
+        this.directExport = directExport;
+    }
+
+    public long getOffHeapBufferCapacity() {
+        return offHeapBufferCapacity;
+    }
+
+    public void setOffHeapBufferCapacity(long offHeapBufferCapacity) {
+        this.offHeapBufferCapacity = offHeapBufferCapacity;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public int getMaxConcurrentSends() {
+        return maxConcurrentSends;
+    }
+
+    public void setMaxConcurrentSends(int maxConcurrentSends) {
+        this.maxConcurrentSends = maxConcurrentSends;
+    }
+
+    public int getMaxPendingBatches() {
+        return maxPendingBatches;
+    }
+
+    public void setMaxPendingBatches(int maxPendingBatches) {
+        this.maxPendingBatches = maxPendingBatches;
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    public int getShutdownParallelism() {
+        return shutdownParallelism;
+    }
+
+    public void setShutdownParallelism(int shutdownParallelism) {
+        this.shutdownParallelism = shutdownParallelism;
+    }
+
+    public int getShutdownChunkSize() {
+        return shutdownChunkSize;
+    }
+
+    public void setShutdownChunkSize(int shutdownChunkSize) {
+        this.shutdownChunkSize = shutdownChunkSize;
+    }
+
+    public String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    public void setSpoolDirectory(String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    public double getAdaptiveTargetRequestsPerMinute() {
+        return adaptiveTargetRequestsPerMinute;
+    }
+
+    public void setAdaptiveTargetRequestsPerMinute(double adaptiveTargetRequestsPerMinute) {
+        this.adaptiveTargetRequestsPerMinute = adaptiveTargetRequestsPerMinute;
+    }
+
+    public long getAdaptiveTargetPayloadBytes() {
+        return adaptiveTargetPayloadBytes;
+    }
+
+    public void setAdaptiveTargetPayloadBytes(long adaptiveTargetPayloadBytes) {
+        this.adaptiveTargetPayloadBytes = adaptiveTargetPayloadBytes;
+    }
+
+    public int getAdaptiveMinBufferSize() {
+        return adaptiveMinBufferSize;
+    }
+
+    public void setAdaptiveMinBufferSize(int adaptiveMinBufferSize) {
+        this.adaptiveMinBufferSize = adaptiveMinBufferSize;
+    }
+
+    public int getAdaptiveMaxBufferSize() {
+        return adaptiveMaxBufferSize;
+    }
+
+    public void setAdaptiveMaxBufferSize(int adaptiveMaxBufferSize) {
+        this.adaptiveMaxBufferSize = adaptiveMaxBufferSize;
+    }
+
+    public List<PriorityLane> getPriorityLanes() {
+        return priorityLanes;
+    }
+
+    public void setPriorityLanes(List<PriorityLane> priorityLanes) {
+        this.priorityLanes = priorityLanes;
+    }
+
+    public List<TimestampQuantization> getTimestampQuantizations() {
+        return timestampQuantizations;
+    }
+
+    public void setTimestampQuantizations(List<TimestampQuantization> timestampQuantizations) {
+        this.timestampQuantizations = timestampQuantizations;
+    }
+
+    public boolean isFlushPhaseJitter() {
+        return flushPhaseJitter;
+    }
+
+    public void setFlushPhaseJitter(boolean flushPhaseJitter) {
+        this.flushPhaseJitter = flushPhaseJitter;
+    }
+
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    public long getMaxBurstBytes() {
+        return maxBurstBytes;
+    }
+
+    public void setMaxBurstBytes(long maxBurstBytes) {
+        this.maxBurstBytes = maxBurstBytes;
+    }
+
+    public String getSidecarDirectory() {
+        return sidecarDirectory;
+    }
+
+    public void setSidecarDirectory(String sidecarDirectory) {
+        this.sidecarDirectory = sidecarDirectory;
+    }
+
+    public int getSidecarRingCapacity() {
+        return sidecarRingCapacity;
+    }
+
+    public void setSidecarRingCapacity(int sidecarRingCapacity) {
+        this.sidecarRingCapacity = sidecarRingCapacity;
+    }
+
+    public String[] getFanoutCollectors() {
+        return fanoutCollectors;
+    }
+
+    public void setFanoutCollectors(String[] fanoutCollectors) {
+        this.fanoutCollectors = fanoutCollectors;
+    }
+
+    public int getFanoutMaxAttempts() {
+        return fanoutMaxAttempts;
+    }
+
+    public void setFanoutMaxAttempts(int fanoutMaxAttempts) {
+        this.fanoutMaxAttempts = fanoutMaxAttempts;
+    }
+
+    public long getFanoutRetryBackoffMillis() {
+        return fanoutRetryBackoffMillis;
+    }
+
+    public void setFanoutRetryBackoffMillis(long fanoutRetryBackoffMillis) {
+        this.fanoutRetryBackoffMillis = fanoutRetryBackoffMillis;
+    }
+
+    public int getFanoutMaxQueuedPayloads() {
+        return fanoutMaxQueuedPayloads;
+    }
+
+    public void setFanoutMaxQueuedPayloads(int fanoutMaxQueuedPayloads) {
+        this.fanoutMaxQueuedPayloads = fanoutMaxQueuedPayloads;
+    }
+
+    /**
+     * Priority lane settings.
+     */
+    public static class PriorityLane {
+
+        /**
+         * Lane name. Defaults to the lane index.
+         */
+        private String name;
+
+        /**
+         * Patterns of the metric names in the lane. A metric belongs to the first matching lane.
+         */
+        private String[] metrics = new String[0];
+
+        /**
+         * Number of buffered points that triggers a flush of the lane. 0 (default) sends the points as soon as
+         * possible.
+         */
+        private int bufferSize = 0;
+
+        /**
+         * Flush period of the lane in milliseconds. 0 disables the periodic flush. Defaults to 1000.
+         */
+        private long flushIntervalMillis = 1000;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String[] getMetrics() {
+            return metrics;
+        }
+
+        public void setMetrics(String[] metrics) {
+            this.metrics = metrics;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public long getFlushIntervalMillis() {
+            return flushIntervalMillis;
+        }
+
+        public void setFlushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+        }
+    }
+
+    /**
+     * Timestamp quantization settings.
+     */
+    public static class TimestampQuantization {
+
+        /**
+         * Patterns of the quantized metric names. The first matching rule applies.
+         */
+        private String[] metrics = new String[0];
+
+        /**
+         * Timestamp resolution in milliseconds. Defaults to 1000.
+         */
+        private long resolutionMillis = 1000;
+
+        /**
+         * Merge rule of the samples with the same quantized timestamp: last, max or avg. Defaults to last.
+         */
+        private String merge = "last";
+
+        public String[] getMetrics() {
+            return metrics;
+        }
+
+        public void setMetrics(String[] metrics) {
+            this.metrics = metrics;
+        }
+
+        public long getResolutionMillis() {
+            return resolutionMillis;
+        }
+
+        public void setResolutionMillis(long resolutionMillis) {
+            this.resolutionMillis = resolutionMillis;
+        }
+
+        public String getMerge() {
+            return merge;
+        }
+
+        public void setMerge(String merge) {
+            this.merge = merge;
+        }
+    }
 }
@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.domain;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.springframework.boot.actuate.metrics.ambari.json.MetricValuesSerializer;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Base class of the primitive-backed, timestamp ordered (metricTimestamp, metricValue) series. Implementations keep the
+ * points in primitive storage (heap arrays or off-heap memory), so building and serializing the series does not create
+ * entry objects nor boxed values. The {@link MetricValuesSerializer} writes the points straight from the storage
+ * through the {@link #getTimestamp(int)} and {@link #getValue(int)} accessors.
+ * 
+ * A series is either floating point or {@link #isIntegral() integral}. Integral series store the values as exact
+ * longs, so large counters don't lose precision and are serialized without floating point formatting. Both kinds use
+ * the same 8 bytes per value (the raw double bits or the long). An integral series is promoted to floating point if a
+ * fractional value is put.
+ * 
+ * Implements Map<Long, Double> so it can be used as {@link TimelineMetric#setMetricValues(java.util.Map)}. The Map
+ * view boxes the keys and values and is meant for compatibility only.
+ * 
+ * Not thread safe.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+@JsonSerialize(using = MetricValuesSerializer.class)
+public abstract class AbstractMetricValues extends AbstractMap<Long, Double> {
+
+    private boolean integral = false;
+
+    /**
+     * Adds a point or replaces the value of an existing timestamp. Appending in timestamp order is a constant time
+     * operation.
+     * 
+     * @param timestamp
+     *            Point timestamp in milliseconds.
+     * @param value
+     *            Point value.
+     * @return Returns true if a new point is added or false if an existing value is replaced or the point could not be
+     *         stored.
+     */
+    public boolean put(long timestamp, double value) {
+        if (integral) {
+            long longValue = (long) value;
+            if (longValue == value) {
+                return putRaw(timestamp, longValue);
+            }
+            // Fractional (or out of long range) value
+            promoteToFloatingPoint();
+        }
+        return putRaw(timestamp, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Adds an integral point or replaces the value of an existing timestamp. The value is stored exactly if the series
+     * is integral and is converted to double otherwise.
+     * 
+     * @param timestamp
+     *            Point timestamp in milliseconds.
+     * @param value
+     *            Point value.
+     * @return Returns true if a new point is added or false if an existing value is replaced or the point could not be
+     *         stored.
+     */
+    public boolean put(long timestamp, long value) {
+        return putRaw(timestamp, integral ? value : Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * @param index
+     *            Point index in the [0, size) range.
+     * @return Returns the timestamp of the point at index. The points are ordered by timestamp.
+     */
+    public abstract long getTimestamp(int index);
+
+    /**
+     * @param index
+     *            Point index in the [0, size) range.
+     * @return Returns the value of the point at index.
+     */
+    public double getValue(int index) {
+        long raw = getRaw(index);
+        return integral ? (double) raw : Double.longBitsToDouble(raw);
+    }
+
+    /**
+     * @param index
+     *            Point index in the [0, size) range.
+     * @return Returns the value of the point at index. Exact for the integral series, truncated otherwise.
+     */
+    public long getLongValue(int index) {
+        long raw = getRaw(index);
+        return integral ? raw : (long) Double.longBitsToDouble(raw);
+    }
+
+    /**
+     * @return Returns true if the values are stored as exact longs.
+     */
+    public boolean isIntegral() {
+        return integral;
+    }
+
+    /**
+     * Sets the value type of an empty series. The series type is reset to floating point on {@link #clear()}.
+     * 
+     * @param integral
+     *            True to store the values as longs.
+     */
+    public void setIntegral(boolean integral) {
+        if (size() > 0 && integral != this.integral) {
+            throw new IllegalStateException("The type of a non empty series can not be changed");
+        }
+        this.integral = integral;
+    }
+
+    private void promoteToFloatingPoint() {
+        for (int i = 0; i < size(); i++) {
+            setRaw(i, Double.doubleToRawLongBits(getRaw(i)));
+        }
+        integral = false;
+    }
+
+    /**
+     * Adds a point with a raw (long or double bits) value or replaces the value of an existing timestamp.
+     * 
+     * @return Returns true if a new point is added or false if an existing value is replaced or the point could not be
+     *         stored.
+     */
+    protected abstract boolean putRaw(long timestamp, long rawValue);
+
+    /**
+     * @return Returns the raw (long or double bits) value at index.
+     */
+    protected abstract long getRaw(int index);
+
+    /**
+     * Replaces the raw value at index.
+     */
+    protected abstract void setRaw(int index, long rawValue);
+
+    /**
+     * Removes the point at index.
+     * 
+     * @param index
+     *            Point index in the [0, size) range.
+     */
+    protected abstract void removeAt(int index);
+
+    /**
+     * @return Returns the lowest timestamp or 0 if the series is empty.
+     */
+    public long getFirstTimestamp() {
+        return isEmpty() ? 0 : getTimestamp(0);
+    }
+
+    @Override
+    public abstract int size();
+
+    /**
+     * Removes all points and resets the series to floating point.
+     */
+    @Override
+    public void clear() {
+        clearPoints();
+        integral = false;
+    }
+
+    /**
+     * Removes all points.
+     */
+    protected abstract void clearPoints();
+
+    /**
+     * @param timestamp
+     *            Timestamp to look for.
+     * @return Returns the index of the timestamp or (-(insertion point) - 1) if the timestamp is not present.
+     */
+    public int indexOf(long timestamp) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midTimestamp = getTimestamp(mid);
+            if (midTimestamp < timestamp) {
+                low = mid + 1;
+            } else if (midTimestamp > timestamp) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public Double put(Long timestamp, Double value) {
+        int index = indexOf(timestamp.longValue());
+        Double previous = (index >= 0) ? getValue(index) : null;
+        put(timestamp.longValue(), value.doubleValue());
+        return previous;
+    }
+
+    @Override
+    public Double get(Object key) {
+        int index = (key instanceof Long) ? indexOf((Long) key) : -1;
+        return (index >= 0) ? getValue(index) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (key instanceof Long) && indexOf((Long) key) >= 0;
+    }
+
+    @Override
+    public Set<Entry<Long, Double>> entrySet() {
+        return new AbstractSet<Entry<Long, Double>>() {
+
+            @Override
+            public Iterator<Entry<Long, Double>> iterator() {
+                return new Iterator<Entry<Long, Double>>() {
+
+                    private int next = 0;
+
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size();
+                    }
+
+                    @Override
+                    public Entry<Long, Double> next() {
+                        if (next >= size()) {
+                            throw new NoSuchElementException();
+                        }
+                        last = next++;
+                        return new SimpleImmutableEntry<Long, Double>(getTimestamp(last), getValue(last));
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0) {
+                            throw new IllegalStateException();
+                        }
+                        removeAt(last);
+                        next = last;
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return AbstractMetricValues.this.size();
+            }
+        };
+    }
+
+    protected void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.domain;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interning dictionary that assigns a dense int ID to every metric name. The name is hashed once at ingestion and the
+ * downstream stages (buffer, filters, aggregators) index plain arrays by the ID instead of hashing and comparing the
+ * name strings. IDs start at 0 and are never reused, so an ID-indexed array grows to at most {@link #size()} entries.
+ * 
+ * The UTF-8 bytes of the names are cached for the serialization.
+ * 
+ * Thread safe. Lookups of known names are lock free; new names are registered under the dictionary lock.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class MetricNameDictionary {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Names indexed by ID. Replaced (copy on grow) under the dictionary lock. An ID is published through the ids map
+     * only after its name is stored, so the map lookup makes the name visible to the reader.
+     */
+    private volatile String[] names = new String[INITIAL_CAPACITY];
+
+    private volatile byte[][] nameBytes = new byte[INITIAL_CAPACITY][];
+
+    private int size = 0;
+
+    /**
+     * @param metricName
+     *            Metric name.
+     * @return Returns the ID of the metric name. Unknown names get the next free ID.
+     */
+    public int getId(String metricName) {
+        Integer id = ids.get(metricName);
+        return (id != null) ? id : register(metricName);
+    }
+
+    /**
+     * @param metricName
+     *            Metric name.
+     * @return Returns the ID of the metric name or -1 if the name is not registered.
+     */
+    public int findId(String metricName) {
+        Integer id = ids.get(metricName);
+        return (id != null) ? id : -1;
+    }
+
+    private synchronized int register(String metricName) {
+        Integer id = ids.get(metricName);
+        if (id != null) {
+            return id;
+        }
+
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            nameBytes = Arrays.copyOf(nameBytes, size * 2);
+        }
+
+        int newId = size++;
+        String name = metricName.intern();
+        names[newId] = name;
+        nameBytes[newId] = name.getBytes(UTF8);
+        // Publish the ID only after the name is stored
+        ids.put(name, newId);
+
+        return newId;
+    }
+
+    /**
+     * @param metricId
+     *            ID returned by {@link #getId(String)}.
+     * @return Returns the (interned) metric name of the ID.
+     */
+    public String getName(int metricId) {
+        return names[metricId];
+    }
+
+    /**
+     * @param metricId
+     *            ID returned by {@link #getId(String)}.
+     * @return Returns the cached UTF-8 bytes of the metric name. The returned array must not be modified.
+     */
+    public byte[] getNameBytes(int metricId) {
+        return nameBytes[metricId];
+    }
+
+    /**
+     * @return Returns the number of registered names. All IDs are smaller than the size.
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.domain;
+
+import java.util.Arrays;
+
+/**
+ * Heap {@link AbstractMetricValues} implementation. The points are kept in parallel long[] arrays of timestamps and
+ * raw values.
+ * 
+ * Not thread safe.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class MetricValues extends AbstractMetricValues {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private long[] timestamps;
+
+    private long[] values;
+
+    private int size;
+
+    public MetricValues() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MetricValues(int initialCapacity) {
+        this.timestamps = new long[Math.max(1, initialCapacity)];
+        this.values = new long[timestamps.length];
+    }
+
+    @Override
+    protected boolean putRaw(long timestamp, long value) {
+
+        if (size == 0 || timestamp > timestamps[size - 1]) {
+            ensureCapacity(size + 1);
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+            return true;
+        }
+
+        int index = indexOf(timestamp);
+        if (index >= 0) {
+            values[index] = value;
+            return false;
+        }
+
+        int insertAt = -(index + 1);
+        ensureCapacity(size + 1);
+        System.arraycopy(timestamps, insertAt, timestamps, insertAt + 1, size - insertAt);
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        timestamps[insertAt] = timestamp;
+        values[insertAt] = value;
+        size++;
+        return true;
+    }
+
+    @Override
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    @Override
+    protected long getRaw(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    @Override
+    protected void setRaw(int index, long value) {
+        values[index] = value;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all points. The arrays are retained.
+     */
+    @Override
+    protected void clearPoints() {
+        size = 0;
+    }
+
+    @Override
+    public int indexOf(long timestamp) {
+        return Arrays.binarySearch(timestamps, 0, size, timestamp);
+    }
+
+    @Override
+    protected void removeAt(int index) {
+        System.arraycopy(timestamps, index + 1, timestamps, index, size - index - 1);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > timestamps.length) {
+            int newCapacity = Math.max(capacity, timestamps.length * 2);
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.domain;
+
+/**
+ * Buffer key of a metric written on behalf of another application than the writer's own (see
+ * AmbariMetricWriter#forApplication). The key prefixes the metric name with the application index, enclosed in unit
+ * separator characters, so the metrics of all applications share one buffer, dictionary and transport:
+ * 
+ * <pre>
+ * \u001F[application index]\u001F[metric name]
+ * </pre>
+ * 
+ * The metric name patterns (filters, lanes, percentiles ...) are matched against the metric name part only.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public final class QualifiedMetricName {
+
+    public static final char SEPARATOR = '\u001F';
+
+    private QualifiedMetricName() {
+    }
+
+    /**
+     * @param applicationIndex
+     *            Index of the application.
+     * @param metricName
+     *            Metric name.
+     * @return Returns the buffer key of the application metric.
+     */
+    public static String qualify(int applicationIndex, String metricName) {
+        return SEPARATOR + Integer.toString(applicationIndex) + SEPARATOR + metricName;
+    }
+
+    /**
+     * @return Returns true if the key is a qualified application metric name.
+     */
+    public static boolean isQualified(String key) {
+        return key.length() > 0 && key.charAt(0) == SEPARATOR;
+    }
+
+    /**
+     * @return Returns the offset of the metric name in the key. 0 for plain metric names.
+     */
+    public static int getMetricNameOffset(String key) {
+        return isQualified(key) ? key.indexOf(SEPARATOR, 1) + 1 : 0;
+    }
+
+    /**
+     * @return Returns the metric name part of the key.
+     */
+    public static String getMetricName(String key) {
+        return isQualified(key) ? key.substring(getMetricNameOffset(key)) : key;
+    }
+
+    /**
+     * @return Returns the application index of a qualified key or -1 for plain metric names.
+     */
+    public static int getApplicationIndex(String key) {
+        return isQualified(key) ? Integer.parseInt(key.substring(1, key.indexOf(SEPARATOR, 1))) : -1;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.export;
+
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.AmbariMetricWriter;
+import org.springframework.boot.actuate.metrics.buffer.BufferMetricReader;
+import org.springframework.boot.actuate.metrics.buffer.CounterBuffer;
+import org.springframework.boot.actuate.metrics.buffer.CounterBuffers;
+import org.springframework.boot.actuate.metrics.buffer.GaugeBuffer;
+import org.springframework.boot.actuate.metrics.buffer.GaugeBuffers;
+import org.springframework.boot.actuate.metrics.export.Exporter;
+
+/**
+ * {@link Exporter} that pulls the metric values straight from the Spring Boot {@link CounterBuffers} and
+ * {@link GaugeBuffers} into the {@link AmbariMetricWriter}. Unlike the default {@link BufferMetricReader} based export,
+ * it doesn't create a {@link Metric} (with Date timestamp) per exported value, but writes the timestamp and the value
+ * as primitives through {@link AmbariMetricWriter#set(String, long, double)}.
+ * 
+ * Only the values updated since the previous export are written, unless {@link #setSendLatest(boolean) sendLatest} is
+ * enabled.
+ * 
+ * Requires Java 8, as do the Spring Boot metric buffers.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class AmbariBufferMetricExporter implements Exporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AmbariBufferMetricExporter.class);
+
+    private static final Predicate<String> ALL = new Predicate<String>() {
+        @Override
+        public boolean test(String metricName) {
+            return true;
+        }
+    };
+
+    private final AmbariMetricWriter metricWriter;
+
+    private final CounterBuffers counterBuffers;
+
+    private final GaugeBuffers gaugeBuffers;
+
+    private final BiConsumer<String, CounterBuffer> counterExporter = new BiConsumer<String, CounterBuffer>() {
+        @Override
+        public void accept(String metricName, CounterBuffer buffer) {
+            long timestamp = buffer.getTimestamp();
+            if (isUpdated(timestamp)) {
+                metricWriter.set(metricName, timestamp, buffer.getValue().longValue());
+            }
+        }
+    };
+
+    private final BiConsumer<String, GaugeBuffer> gaugeExporter = new BiConsumer<String, GaugeBuffer>() {
+        @Override
+        public void accept(String metricName, GaugeBuffer buffer) {
+            long timestamp = buffer.getTimestamp();
+            if (isUpdated(timestamp)) {
+                metricWriter.set(metricName, timestamp, buffer.getValue().doubleValue());
+            }
+        }
+    };
+
+    /**
+     * Export all metric values, not only the values updated since the previous export.
+     */
+    private boolean sendLatest = false;
+
+    /**
+     * Start time of the previous export.
+     */
+    private long lastExportTime = 0;
+
+    private long exportTime;
+
+    public AmbariBufferMetricExporter(AmbariMetricWriter metricWriter, CounterBuffers counterBuffers,
+            GaugeBuffers gaugeBuffers) {
+        this.metricWriter = metricWriter;
+        this.counterBuffers = counterBuffers;
+        this.gaugeBuffers = gaugeBuffers;
+    }
+
+    @Override
+    public synchronized void export() {
+
+        exportTime = System.currentTimeMillis();
+
+        try {
+            if (counterBuffers != null) {
+                counterBuffers.forEach(ALL, counterExporter);
+            }
+            if (gaugeBuffers != null) {
+                gaugeBuffers.forEach(ALL, gaugeExporter);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to export the buffered metrics", e);
+        }
+
+        lastExportTime = exportTime;
+    }
+
+    private boolean isUpdated(long timestamp) {
+        return sendLatest || (timestamp >= lastExportTime && timestamp < exportTime) || lastExportTime == 0;
+    }
+
+    public boolean isSendLatest() {
+        return sendLatest;
+    }
+
+    public void setSendLatest(boolean sendLatest) {
+        this.sendLatest = sendLatest;
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.filter;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricNameDictionary;
+
+/**
+ * Deadband (change-only) filter for slow moving gauges. A sample of a filtered metric is accepted only if it differs
+ * from the last accepted value by more than the absolute or the relative threshold. With both thresholds set to 0 only
+ * the changed values are accepted. To keep the metric alive on the server side, unchanged values are still accepted
+ * once the max silence period since the last accepted sample has passed (heartbeat).
+ * 
+ * The filter is thread safe. The state is kept in an array indexed by the metric ID from the
+ * {@link MetricNameDictionary}.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class DeadbandFilter {
+
+    /**
+     * Marker for the metrics that don't match the filter patterns.
+     */
+    private static final LastSample NOT_FILTERED = new LastSample(0, 0);
+
+    /**
+     * Name patterns (e.g. gauge.heap.*) of the metrics to filter. No metrics are filtered by default.
+     */
+    private MetricNamePatterns metricPatterns = new MetricNamePatterns();
+
+    /**
+     * Minimal absolute difference from the last accepted value.
+     */
+    private double absoluteThreshold = 0;
+
+    /**
+     * Minimal difference relative to the last accepted value (e.g. 0.05 for 5%).
+     */
+    private double relativeThreshold = 0;
+
+    /**
+     * Max time in milliseconds a metric can stay silent before the value is sent regardless of the thresholds.
+     */
+    private long maxSilenceMillis = 60 * 1000;
+
+    private final MetricNameDictionary metricNameDictionary;
+
+    /**
+     * Last accepted sample indexed by metric ID. Replaced (copy on grow) under the filter lock. A sample stored in the
+     * replaced array while it is copied is lost, which only causes the next sample of that metric to be accepted.
+     */
+    private volatile AtomicReferenceArray<LastSample> lastSamples = new AtomicReferenceArray<LastSample>(64);
+
+    public DeadbandFilter() {
+        this(new MetricNameDictionary());
+    }
+
+    /**
+     * @param metricNameDictionary
+     *            Dictionary shared with the other stages of the pipeline that work with metric IDs.
+     */
+    public DeadbandFilter(MetricNameDictionary metricNameDictionary) {
+        this.metricNameDictionary = metricNameDictionary;
+    }
+
+    /**
+     * @param metricName
+     *            Metric name.
+     * @param timestamp
+     *            Sample timestamp in milliseconds.
+     * @param value
+     *            Sample value.
+     * @return Returns true if the sample must be sent or false if it is within the deadband of the last sent value.
+     */
+    public boolean accept(String metricName, long timestamp, double value) {
+        return accept(metricNameDictionary.getId(metricName), timestamp, value);
+    }
+
+    /**
+     * @param metricId
+     *            Metric ID from the filter's {@link MetricNameDictionary}.
+     * @param timestamp
+     *            Sample timestamp in milliseconds.
+     * @param value
+     *            Sample value.
+     * @return Returns true if the sample must be sent or false if it is within the deadband of the last sent value.
+     */
+    public boolean accept(int metricId, long timestamp, double value) {
+
+        AtomicReferenceArray<LastSample> samples = lastSamples(metricId);
+
+        LastSample lastSample = samples.get(metricId);
+
+        if (lastSample == null) {
+            if (!metricPatterns.matches(metricNameDictionary.getName(metricId))) {
+                samples.compareAndSet(metricId, null, NOT_FILTERED);
+                return true;
+            }
+            lastSample = new LastSample(timestamp, value);
+            if (samples.compareAndSet(metricId, null, lastSample)) {
+                // First sample is always accepted
+                return true;
+            }
+            lastSample = samples.get(metricId);
+            if (lastSample == null) {
+                // Concurrently reset
+                return true;
+            }
+        }
+
+        if (lastSample == NOT_FILTERED) {
+            return true;
+        }
+
+        synchronized (lastSample) {
+            if (isOutsideDeadband(lastSample.value, value) || timestamp - lastSample.timestamp >= maxSilenceMillis) {
+                lastSample.value = value;
+                lastSample.timestamp = timestamp;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private boolean isOutsideDeadband(double lastValue, double value) {
+
+        if (value == lastValue || (Double.isNaN(value) && Double.isNaN(lastValue))) {
+            return false;
+        }
+
+        double delta = Math.abs(value - lastValue);
+
+        if (Double.isNaN(delta) || (absoluteThreshold <= 0 && relativeThreshold <= 0)) {
+            // Change-only mode or a change from/to NaN or infinity
+            return true;
+        }
+
+        return (absoluteThreshold > 0 && delta > absoluteThreshold)
+                || (relativeThreshold > 0 && delta > relativeThreshold * Math.abs(lastValue));
+    }
+
+    /**
+     * Drops the state of the metric, so the next sample is always accepted.
+     * 
+     * @param metricName
+     *            Metric name.
+     */
+    public void reset(String metricName) {
+        int metricId = metricNameDictionary.findId(metricName);
+        if (metricId >= 0) {
+            lastSamples(metricId).set(metricId, null);
+        }
+    }
+
+    private AtomicReferenceArray<LastSample> lastSamples(int metricId) {
+        AtomicReferenceArray<LastSample> samples = lastSamples;
+        return (metricId < samples.length()) ? samples : growLastSamples(metricId + 1);
+    }
+
+    private synchronized AtomicReferenceArray<LastSample> growLastSamples(int capacity) {
+        AtomicReferenceArray<LastSample> samples = lastSamples;
+        if (capacity > samples.length()) {
+            AtomicReferenceArray<LastSample> newSamples = new AtomicReferenceArray<LastSample>(Math.max(capacity,
+                    samples.length() * 2));
+            for (int i = 0; i < samples.length(); i++) {
+                newSamples.set(i, samples.get(i));
+            }
+            lastSamples = newSamples;
+            samples = newSamples;
+        }
+        return samples;
+    }
+
+    public MetricNameDictionary getMetricNameDictionary() {
+        return metricNameDictionary;
+    }
+
+    public String[] getMetricPatterns() {
+        return metricPatterns.getPatterns();
+    }
+
+    /**
+     * Must be set before the first sample is filtered.
+     * 
+     * @param metricPatterns
+     *            Metric name patterns. Supports '*' wildcards.
+     */
+    public void setMetricPatterns(String... metricPatterns) {
+        this.metricPatterns = new MetricNamePatterns(metricPatterns);
+    }
+
+    public double getAbsoluteThreshold() {
+        return absoluteThreshold;
+    }
+
+    public void setAbsoluteThreshold(double absoluteThreshold) {
+        this.absoluteThreshold = absoluteThreshold;
+    }
+
+    public double getRelativeThreshold() {
+        return relativeThreshold;
+    }
+
+    public void setRelativeThreshold(double relativeThreshold) {
+        this.relativeThreshold = relativeThreshold;
+    }
+
+    public long getMaxSilenceMillis() {
+        return maxSilenceMillis;
+    }
+
+    public void setMaxSilenceMillis(long maxSilenceMillis) {
+        this.maxSilenceMillis = maxSilenceMillis;
+    }
+
+    private static class LastSample {
+
+        private long timestamp;
+
+        private double value;
+
+        LastSample(long timestamp, double value) {
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+    }
+}
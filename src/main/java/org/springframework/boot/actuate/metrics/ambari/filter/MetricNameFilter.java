@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.filter;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Include/exclude metric name filter. A metric is accepted if it matches any of the include patterns (or no include
+ * patterns are set) and none of the exclude patterns. The patterns are compiled once into {@link MetricNamePatterns}
+ * and the decision is cached per metric name, so the repeated metric names cost a single map lookup. The pipeline
+ * stages that already work with the metric IDs of a MetricNameDictionary use {@link #accept(int, String)}, which caches
+ * the decisions in an array indexed by the ID.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class MetricNameFilter {
+
+    /**
+     * Upper bound of the cached decisions. Protects from unbounded growth if the metric names are generated.
+     */
+    private static final int MAX_CACHED_DECISIONS = 10000;
+
+    private final MetricNamePatterns includes;
+
+    private final MetricNamePatterns excludes;
+
+    private final ConcurrentHashMap<String, Boolean> decisions = new ConcurrentHashMap<String, Boolean>();
+
+    private static final byte UNKNOWN = 0;
+    private static final byte ACCEPT = 1;
+    private static final byte REJECT = 2;
+
+    /**
+     * Decisions indexed by metric ID. The decision for a given name never changes, so the racy updates are harmless.
+     */
+    private volatile byte[] decisionsById = new byte[64];
+
+    public MetricNameFilter(String[] includes, String[] excludes) {
+        this.includes = new MetricNamePatterns(includes);
+        this.excludes = new MetricNamePatterns(excludes);
+    }
+
+    /**
+     * @param metricName
+     *            Name of the metric to check.
+     * @return Returns true if the metric should be exported.
+     */
+    public boolean accept(String metricName) {
+
+        Boolean decision = decisions.get(metricName);
+
+        if (decision == null) {
+            decision = (includes.isEmpty() || includes.matches(metricName)) && !excludes.matches(metricName);
+            if (decisions.size() < MAX_CACHED_DECISIONS) {
+                decisions.put(metricName, decision);
+            }
+        }
+
+        return decision;
+    }
+
+    /**
+     * @param metricId
+     *            Metric ID assigned by the MetricNameDictionary of the caller.
+     * @param metricName
+     *            Metric name of the ID. Used only the first time the ID is seen.
+     * @return Returns true if the metric should be exported.
+     */
+    public boolean accept(int metricId, String metricName) {
+
+        byte[] decisions = decisionsById;
+        if (metricId >= decisions.length) {
+            decisions = growDecisions(metricId + 1);
+        }
+
+        byte decision = decisions[metricId];
+        if (decision == UNKNOWN) {
+            boolean accept = (includes.isEmpty() || includes.matches(metricName)) && !excludes.matches(metricName);
+            decision = accept ? ACCEPT : REJECT;
+            decisions[metricId] = decision;
+        }
+
+        return decision == ACCEPT;
+    }
+
+    private synchronized byte[] growDecisions(int capacity) {
+        if (capacity > decisionsById.length) {
+            decisionsById = Arrays.copyOf(decisionsById, Math.max(capacity, decisionsById.length * 2));
+        }
+        return decisionsById;
+    }
+
+    /**
+     * @return Returns true if the filter accepts all metrics.
+     */
+    public boolean isAcceptAll() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    public MetricNamePatterns getIncludes() {
+        return includes;
+    }
+
+    public MetricNamePatterns getExcludes() {
+        return excludes;
+    }
+}
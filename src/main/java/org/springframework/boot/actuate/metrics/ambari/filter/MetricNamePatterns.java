@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.filter;
+
+import java.util.Arrays;
+
+import org.springframework.boot.actuate.metrics.ambari.domain.QualifiedMetricName;
+import org.springframework.util.StringUtils;
+
+/**
+ * Set of metric name patterns compiled into a single trie. The '*' wildcard matches any (possibly empty) sequence of
+ * characters, so all "xxx*", "*xxx", "*xxx*" and "xxx*yyy" patterns are supported. The name is matched against all
+ * patterns at once, sharing the common pattern prefixes, instead of evaluating every pattern separately.
+ * 
+ * Instances are immutable and thread safe.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class MetricNamePatterns {
+
+    private final Node root = new Node();
+
+    private final String[] patterns;
+
+    public MetricNamePatterns(String... patterns) {
+
+        this.patterns = (patterns != null) ? patterns : new String[0];
+
+        for (String pattern : this.patterns) {
+            if (StringUtils.hasLength(pattern)) {
+                compile(pattern.trim());
+            }
+        }
+    }
+
+    private void compile(String pattern) {
+        Node node = root;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*') {
+                // Consecutive wildcards are equivalent to a single one
+                if (node.star == null) {
+                    node.star = new Node();
+                }
+                node = node.star;
+                while (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                    i++;
+                }
+            } else {
+                node = node.addChild(c);
+            }
+        }
+        node.terminal = true;
+    }
+
+    /**
+     * @param metricName
+     *            Metric name to match. The application prefix of a {@link QualifiedMetricName} is not matched.
+     * @return Returns true if the name matches at least one of the patterns.
+     */
+    public boolean matches(String metricName) {
+        return metricName != null && match(root, metricName, QualifiedMetricName.getMetricNameOffset(metricName));
+    }
+
+    /**
+     * @return Returns true if no patterns are configured.
+     */
+    public boolean isEmpty() {
+        return !root.terminal && root.star == null && root.childCount == 0;
+    }
+
+    public String[] getPatterns() {
+        return patterns;
+    }
+
+    private static boolean match(Node node, String name, int index) {
+        while (true) {
+            if (node.star != null && matchStar(node.star, name, index)) {
+                return true;
+            }
+            if (index == name.length()) {
+                return node.terminal;
+            }
+            node = node.child(name.charAt(index));
+            if (node == null) {
+                return false;
+            }
+            index++;
+        }
+    }
+
+    private static boolean matchStar(Node starNode, String name, int index) {
+        if (starNode.terminal) {
+            // Trailing wildcard matches the rest of the name
+            return true;
+        }
+        for (int i = index; i <= name.length(); i++) {
+            if (match(starNode, name, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(patterns);
+    }
+
+    private static class Node {
+
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        private int childCount;
+
+        private Node star;
+
+        private boolean terminal;
+
+        Node child(char c) {
+            for (int i = 0; i < childCount; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node addChild(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, childCount + 1);
+                children = Arrays.copyOf(children, childCount + 1);
+                keys[childCount] = c;
+                children[childCount] = child;
+                childCount++;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.history;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.codec.GorillaEncoder;
+import org.springframework.boot.actuate.metrics.ambari.domain.AbstractMetricValues;
+import org.springframework.boot.actuate.metrics.reader.MetricReader;
+import org.springframework.boot.actuate.metrics.reader.PrefixMetricReader;
+
+/**
+ * Bounded in-memory history of the recently exported metrics. Local dashboards and health checks can read the last
+ * {@link #getRetentionMillis() retentionMillis} of a series with {@link #findHistory(String)} without querying the
+ * Ambari Metrics Collector. As a {@link MetricReader} and {@link PrefixMetricReader} the history serves the latest
+ * value of every series.
+ *
+ * The memory is bounded by the max number of series and of points per series. The points are compressed with the
+ * {@link GorillaEncoder}, about 1 to 2 bytes per point for regularly sampled series. New series are not tracked once
+ * the max number of series is reached, unless expired series can be dropped.
+ *
+ * Thread safe.
+ *
+ * @author tzolov@apache.org
+ *
+ */
+public class MetricHistory implements MetricReader, PrefixMetricReader {
+
+    public static final int DEFAULT_MAX_SERIES = 1000;
+
+    public static final int DEFAULT_MAX_POINTS_PER_SERIES = 360;
+
+    private final long retentionMillis;
+
+    private final int maxSeries;
+
+    private final int maxPointsPerSeries;
+
+    private final ConcurrentHashMap<String, MetricSeries> series = new ConcurrentHashMap<String, MetricSeries>();
+
+    private final AtomicLong untrackedPoints = new AtomicLong(0);
+
+    public MetricHistory(long retentionMillis) {
+        this(retentionMillis, DEFAULT_MAX_SERIES, DEFAULT_MAX_POINTS_PER_SERIES);
+    }
+
+    public MetricHistory(long retentionMillis, int maxSeries, int maxPointsPerSeries) {
+        if (retentionMillis <= 0) {
+            throw new IllegalArgumentException("The history retention must be positive: " + retentionMillis);
+        }
+        if (maxSeries < 1 || maxPointsPerSeries < 1) {
+            throw new IllegalArgumentException("The max number of series and points must be positive: " + maxSeries
+                    + ", " + maxPointsPerSeries);
+        }
+        this.retentionMillis = retentionMillis;
+        this.maxSeries = maxSeries;
+        this.maxPointsPerSeries = maxPointsPerSeries;
+    }
+
+    /**
+     * Records a point of a series.
+     * 
+     * @param metricName
+     *            Series name.
+     * @param timestamp
+     *            Point timestamp in milliseconds.
+     * @param value
+     *            Point value.
+     */
+    public void record(String metricName, long timestamp, double value) {
+        MetricSeries metricSeries = getOrCreate(metricName);
+        if (metricSeries != null) {
+            metricSeries.evictBefore(timestamp - retentionMillis);
+            metricSeries.add(timestamp, value);
+        }
+    }
+
+    /**
+     * Records the points of a flushed series.
+     * 
+     * @param metricName
+     *            Series name.
+     * @param metricValues
+     *            Points ordered by timestamp.
+     */
+    public void record(String metricName, Map<Long, Double> metricValues) {
+        if (metricValues.isEmpty()) {
+            return;
+        }
+        MetricSeries metricSeries = getOrCreate(metricName);
+        if (metricSeries == null) {
+            return;
+        }
+
+        if (metricValues instanceof AbstractMetricValues) {
+            // No boxing
+            AbstractMetricValues values = (AbstractMetricValues) metricValues;
+            int size = values.size();
+            metricSeries.evictBefore(values.getTimestamp(size - 1) - retentionMillis);
+            for (int i = 0; i < size; i++) {
+                metricSeries.add(values.getTimestamp(i), values.getValue(i));
+            }
+        } else {
+            for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
+                metricSeries.evictBefore(entry.getKey() - retentionMillis);
+                metricSeries.add(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private MetricSeries getOrCreate(String metricName) {
+        MetricSeries metricSeries = series.get(metricName);
+        if (metricSeries != null) {
+            return metricSeries;
+        }
+
+        if (series.size() >= maxSeries) {
+            evictExpiredSeries(System.currentTimeMillis());
+            if (series.size() >= maxSeries) {
+                untrackedPoints.incrementAndGet();
+                return null;
+            }
+        }
+
+        MetricSeries newSeries = new MetricSeries(maxPointsPerSeries);
+        metricSeries = series.putIfAbsent(metricName, newSeries);
+        return (metricSeries != null) ? metricSeries : newSeries;
+    }
+
+    private void evictExpiredSeries(long nowMillis) {
+        Iterator<MetricSeries> iterator = series.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getLastTimestamp() < nowMillis - retentionMillis) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @param metricName
+     *            Series name.
+     * @return Returns the points of the last retentionMillis, oldest first.
+     */
+    public List<Metric<Double>> findHistory(String metricName) {
+        return findHistory(metricName, System.currentTimeMillis() - retentionMillis);
+    }
+
+    /**
+     * @param metricName
+     *            Series name.
+     * @param fromMillis
+     *            Timestamp of the oldest point to return.
+     * @return Returns the retained points not older than fromMillis, oldest first.
+     */
+    public List<Metric<Double>> findHistory(String metricName, long fromMillis) {
+        MetricSeries metricSeries = series.get(metricName);
+        if (metricSeries == null) {
+            return new ArrayList<Metric<Double>>();
+        }
+
+        int capacity = metricSeries.size();
+        long[] timestamps = new long[capacity];
+        double[] values = new double[capacity];
+        int count = metricSeries.copyFrom(fromMillis, timestamps, values);
+
+        List<Metric<Double>> history = new ArrayList<Metric<Double>>(count);
+        for (int i = 0; i < count; i++) {
+            history.add(new Metric<Double>(metricName, values[i], new Date(timestamps[i])));
+        }
+        return history;
+    }
+
+    /**
+     * @return Returns the latest value of the series or null if unknown.
+     */
+    @Override
+    public Metric<?> findOne(String metricName) {
+        MetricSeries metricSeries = series.get(metricName);
+        return (metricSeries == null) ? null : latest(metricName, metricSeries);
+    }
+
+    /**
+     * @return Returns the latest value of every series.
+     */
+    @Override
+    public Iterable<Metric<?>> findAll() {
+        return findAll("");
+    }
+
+    /**
+     * @return Returns the latest value of every series with name starting with the prefix.
+     */
+    @Override
+    public Iterable<Metric<?>> findAll(String prefix) {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        for (Map.Entry<String, MetricSeries> entry : series.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                Metric<?> metric = latest(entry.getKey(), entry.getValue());
+                if (metric != null) {
+                    metrics.add(metric);
+                }
+            }
+        }
+        return metrics;
+    }
+
+    @Override
+    public long count() {
+        return series.size();
+    }
+
+    private static Metric<?> latest(String metricName, MetricSeries metricSeries) {
+        synchronized (metricSeries) {
+            if (metricSeries.size() == 0) {
+                return null;
+            }
+            return new Metric<Double>(metricName, metricSeries.getLastValue(),
+                    new Date(metricSeries.getLastTimestamp()));
+        }
+    }
+
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    public int getMaxSeries() {
+        return maxSeries;
+    }
+
+    public int getMaxPointsPerSeries() {
+        return maxPointsPerSeries;
+    }
+
+    /**
+     * @return Returns the size of the compressed points of all series in bytes.
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (MetricSeries metricSeries : series.values()) {
+            size += metricSeries.getSizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * @return Returns the number of points of the series not tracked because the max number of series was reached.
+     */
+    public long getUntrackedPoints() {
+        return untrackedPoints.get();
+    }
+}
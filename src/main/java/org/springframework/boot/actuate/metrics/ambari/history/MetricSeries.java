@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.history;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import org.springframework.boot.actuate.metrics.ambari.codec.GorillaDecoder;
+import org.springframework.boot.actuate.metrics.ambari.codec.GorillaEncoder;
+
+/**
+ * Recent points of a single metric series, compressed into {@link GorillaEncoder} blocks of a fixed number of points.
+ * The oldest blocks are dropped when the series exceeds the max number of points or the retention, so the series
+ * holds at most one block more than the max number of points. The points beyond the bounds in the oldest remaining
+ * block are skipped on read.
+ *
+ * Points are appended in timestamp order: a point older than the newest point is ignored and a point with the newest
+ * timestamp replaces its value. The newest point is kept raw until a newer point arrives, so it can be replaced.
+ *
+ * Thread safe.
+ *
+ * @author tzolov@apache.org
+ *
+ */
+class MetricSeries {
+
+    private static final int MIN_BLOCK_POINTS = 8;
+
+    private static final int MAX_BLOCK_POINTS = 128;
+
+    private final int maxPoints;
+
+    private final int blockPoints;
+
+    private final ArrayDeque<GorillaEncoder> blocks = new ArrayDeque<GorillaEncoder>();
+
+    /**
+     * Number of points in the blocks.
+     */
+    private int encodedPoints;
+
+    private boolean hasLast;
+
+    private long lastTimestamp;
+
+    private double lastValue;
+
+    /**
+     * The points older than this timestamp are evicted.
+     */
+    private long floorTimestamp = Long.MIN_VALUE;
+
+    MetricSeries(int maxPoints) {
+        this.maxPoints = maxPoints;
+        this.blockPoints = Math.max(MIN_BLOCK_POINTS, Math.min(MAX_BLOCK_POINTS, maxPoints / 4));
+    }
+
+    /**
+     * @return Returns false if the point is older than the newest point.
+     */
+    synchronized boolean add(long timestamp, double value) {
+        if (hasLast) {
+            if (timestamp < lastTimestamp) {
+                return false;
+            }
+            if (timestamp == lastTimestamp) {
+                lastValue = value;
+                return true;
+            }
+            encode(lastTimestamp, lastValue);
+        } else if (timestamp < floorTimestamp) {
+            return false;
+        }
+
+        hasLast = true;
+        lastTimestamp = timestamp;
+        lastValue = value;
+        return true;
+    }
+
+    private void encode(long timestamp, double value) {
+        GorillaEncoder block = blocks.peekLast();
+        if (block == null || block.getCount() >= blockPoints) {
+            if (block != null) {
+                block.trim();
+            }
+            block = new GorillaEncoder();
+            blocks.addLast(block);
+        }
+        block.append(timestamp, value);
+        encodedPoints++;
+
+        // Keep maxPoints including the raw newest point
+        while (blocks.size() > 1 && encodedPoints - blocks.peekFirst().getCount() + 1 >= maxPoints) {
+            encodedPoints -= blocks.removeFirst().getCount();
+        }
+    }
+
+    /**
+     * Drops the points older than the timestamp.
+     */
+    synchronized void evictBefore(long timestamp) {
+        if (timestamp <= floorTimestamp) {
+            return;
+        }
+        floorTimestamp = timestamp;
+
+        while (!blocks.isEmpty() && blocks.peekFirst().getLastTimestamp() < timestamp) {
+            encodedPoints -= blocks.removeFirst().getCount();
+        }
+        if (hasLast && lastTimestamp < timestamp) {
+            hasLast = false;
+        }
+    }
+
+    /**
+     * @return Returns the timestamp of the newest point or Long.MIN_VALUE if the series is empty.
+     */
+    synchronized long getLastTimestamp() {
+        return hasLast ? lastTimestamp : Long.MIN_VALUE;
+    }
+
+    synchronized double getLastValue() {
+        return hasLast ? lastValue : Double.NaN;
+    }
+
+    /**
+     * Copies the retained points not older than the timestamp, oldest first.
+     *
+     * @return Returns the number of copied points.
+     */
+    synchronized int copyFrom(long fromTimestamp, long[] timestampsOut, double[] valuesOut) {
+        if (!hasLast) {
+            return 0;
+        }
+
+        long from = Math.max(fromTimestamp, floorTimestamp);
+        int skip = Math.max(0, encodedPoints + 1 - maxPoints);
+        int count = 0;
+        int index = 0;
+
+        Iterator<GorillaEncoder> iterator = blocks.iterator();
+        while (iterator.hasNext() && count < timestampsOut.length) {
+            GorillaEncoder block = iterator.next();
+            if (block.getLastTimestamp() < from || index + block.getCount() <= skip) {
+                index += block.getCount();
+                continue;
+            }
+            GorillaDecoder decoder = block.decoder();
+            while (decoder.next() && count < timestampsOut.length) {
+                if (index++ >= skip && decoder.getTimestamp() >= from) {
+                    timestampsOut[count] = decoder.getTimestamp();
+                    valuesOut[count] = decoder.getValue();
+                    count++;
+                }
+            }
+        }
+
+        if (lastTimestamp >= from && count < timestampsOut.length) {
+            timestampsOut[count] = lastTimestamp;
+            valuesOut[count] = lastValue;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return Returns the number of stored points, an upper bound of the points returned by
+     *         {@link #copyFrom(long, long[], double[])}.
+     */
+    synchronized int size() {
+        return encodedPoints + (hasLast ? 1 : 0);
+    }
+
+    /**
+     * @return Returns the size of the compressed points in bytes.
+     */
+    synchronized int getSizeInBytes() {
+        int size = 0;
+        for (GorillaEncoder block : blocks) {
+            size += block.getSizeInBytes();
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MetricSeries [size=" + size() + ", maxPoints=" + maxPoints + ", blocks=" + blocks.size()
+                + ", bytes=" + getSizeInBytes() + "]";
+    }
+}
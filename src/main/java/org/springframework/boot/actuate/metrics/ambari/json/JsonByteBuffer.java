@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer the JSON payload is encoded into. Meant to be reused across encodings ({@link #reset()}), so a
+ * steady-state encoding does not allocate. Strings are written as escaped UTF-8 and numbers through the
+ * {@link JsonNumberFormatter}.
+ * 
+ * Not thread safe.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class JsonByteBuffer {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private byte[] bytes;
+
+    private int size;
+
+    public JsonByteBuffer(int initialCapacity) {
+        this.bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return bytes.length;
+    }
+
+    /**
+     * @return Returns the backing array. Only the first {@link #size()} bytes are valid.
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    public void writeByte(int b) {
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte) b;
+    }
+
+    /**
+     * Writes pre-encoded bytes as they are.
+     */
+    public void writeRaw(byte[] raw) {
+        ensureCapacity(size + raw.length);
+        System.arraycopy(raw, 0, bytes, size, raw.length);
+        size += raw.length;
+    }
+
+    public void writeLong(long value) {
+        ensureCapacity(size + JsonNumberFormatter.MAX_LONG_LENGTH);
+        size = JsonNumberFormatter.writeLong(value, bytes, size);
+    }
+
+    /**
+     * Writes a JSON number. NaN and infinities, not valid JSON numbers, are written as quoted strings.
+     */
+    public void writeDouble(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeByte('"');
+            ensureCapacity(size + JsonNumberFormatter.MAX_DOUBLE_LENGTH + 1);
+            size = JsonNumberFormatter.writeDouble(value, bytes, size);
+            writeByte('"');
+            return;
+        }
+        ensureCapacity(size + JsonNumberFormatter.MAX_DOUBLE_LENGTH);
+        size = JsonNumberFormatter.writeDouble(value, bytes, size);
+    }
+
+    /**
+     * Writes a long as a quoted JSON string (e.g. a timestamp object key).
+     */
+    public void writeQuotedLong(long value) {
+        ensureCapacity(size + JsonNumberFormatter.MAX_LONG_LENGTH + 2);
+        bytes[size++] = '"';
+        size = JsonNumberFormatter.writeLong(value, bytes, size);
+        bytes[size++] = '"';
+    }
+
+    /**
+     * Writes a quoted and escaped JSON string.
+     */
+    public void writeString(String value) {
+        int length = value.length();
+        // Worst case: 6 bytes (\\u00XX) per char
+        ensureCapacity(size + 2 + length * 6);
+
+        byte[] b = bytes;
+        int position = size;
+        b[position++] = '"';
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                position = writeAsciiChar(c, b, position);
+            } else if (c < 0x800) {
+                b[position++] = (byte) (0xc0 | (c >> 6));
+                b[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                b[position++] = (byte) (0xf0 | (codePoint >> 18));
+                b[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                b[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                b[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                b[position++] = (byte) (0xe0 | (c >> 12));
+                b[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        b[position++] = '"';
+        size = position;
+    }
+
+    /**
+     * Writes a quoted JSON string from already UTF-8 encoded bytes, escaping the JSON special characters.
+     */
+    public void writeString(byte[] utf8) {
+        ensureCapacity(size + 2 + utf8.length * 6);
+
+        byte[] b = bytes;
+        int position = size;
+        b[position++] = '"';
+        for (byte u : utf8) {
+            if (u >= 0) {
+                position = writeAsciiChar((char) u, b, position);
+            } else {
+                // Multi-byte UTF-8 sequences need no escaping
+                b[position++] = u;
+            }
+        }
+        b[position++] = '"';
+        size = position;
+    }
+
+    private static int writeAsciiChar(char c, byte[] b, int position) {
+        if (c >= 0x20 && c != '"' && c != '\\') {
+            b[position++] = (byte) c;
+            return position;
+        }
+        b[position++] = '\\';
+        switch (c) {
+        case '"':
+        case '\\':
+            b[position++] = (byte) c;
+            break;
+        case '\n':
+            b[position++] = 'n';
+            break;
+        case '\r':
+            b[position++] = 'r';
+            break;
+        case '\t':
+            b[position++] = 't';
+            break;
+        case '\b':
+            b[position++] = 'b';
+            break;
+        case '\f':
+            b[position++] = 'f';
+            break;
+        default:
+            b[position++] = 'u';
+            b[position++] = '0';
+            b[position++] = '0';
+            b[position++] = HEX[c >> 4];
+            b[position++] = HEX[c & 0xf];
+        }
+        return position;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+}
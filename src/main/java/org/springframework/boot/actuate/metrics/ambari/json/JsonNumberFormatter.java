@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.json;
+
+/**
+ * Allocation free number to ASCII formatting for the JSON encoder. The numbers are written straight into the caller's
+ * byte array.
+ * 
+ * Doubles use a fast path that finds the shortest scaled decimal (at most 17 fraction digits) that parses back to
+ * the same double. The decimal m / 10^k, with m < 2^53 and k <= 22, is evaluated exactly by the correctly rounded
+ * double division, so the fast path never produces a value that does not round-trip. Values outside of the fast path
+ * (very large or very small magnitudes, values needing 17 significant digits) fall back to
+ * {@link Double#toString(double)}.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public final class JsonNumberFormatter {
+
+    /**
+     * Max length of a formatted long: "-9223372036854775808".
+     */
+    public static final int MAX_LONG_LENGTH = 20;
+
+    /**
+     * Max length of a formatted double, e.g. "-2.2250738585072014E-308".
+     */
+    public static final int MAX_DOUBLE_LENGTH = 24;
+
+    private static final byte[] MIN_LONG = "-9223372036854775808".getBytes();
+
+    private static final byte[] ZERO = "0.0".getBytes();
+
+    /**
+     * Doubles in this range are formatted as plain decimals (the Double.toString range is [1e-3, 1e7)).
+     */
+    private static final double MIN_PLAIN = 1e-3;
+
+    private static final double MAX_PLAIN = 1L << 53;
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private static final int MAX_FRACTION_DIGITS = 17;
+
+    private static final double[] DOUBLE_POW10 = new double[MAX_FRACTION_DIGITS + 1];
+
+    private static final long[] LONG_POW10 = new long[19];
+
+    static {
+        double d = 1;
+        for (int i = 0; i < DOUBLE_POW10.length; i++) {
+            DOUBLE_POW10[i] = d;
+            d *= 10;
+        }
+        long l = 1;
+        for (int i = 0; i < LONG_POW10.length; i++) {
+            LONG_POW10[i] = l;
+            l *= 10;
+        }
+    }
+
+    private JsonNumberFormatter() {
+    }
+
+    /**
+     * Writes the decimal ASCII representation of the value.
+     * 
+     * @param value
+     *            Value to write.
+     * @param buffer
+     *            Target with at least {@link #MAX_LONG_LENGTH} free bytes after position.
+     * @param position
+     *            Write position.
+     * @return Returns the position after the last written byte.
+     */
+    public static int writeLong(long value, byte[] buffer, int position) {
+
+        if (value == Long.MIN_VALUE) {
+            System.arraycopy(MIN_LONG, 0, buffer, position, MIN_LONG.length);
+            return position + MIN_LONG.length;
+        }
+
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+
+        int end = position + digitCount(value);
+        writeDigits(value, buffer, end);
+        return end;
+    }
+
+    /**
+     * Writes a short, round-tripping decimal representation of the value. Magnitudes in the [1e-3, 2^53) range are
+     * written as plain decimals (e.g. "0.5", "666.666", "2.0", "268435456.0"), which in practice is the
+     * {@link Double#toString(double)} output below 1e7.
+     * 
+     * @param value
+     *            Finite value to write. NaN and infinities are written as by {@link Double#toString(double)}.
+     * @param buffer
+     *            Target with at least {@link #MAX_DOUBLE_LENGTH} free bytes after position.
+     * @param position
+     *            Write position.
+     * @return Returns the position after the last written byte.
+     */
+    public static int writeDouble(double value, byte[] buffer, int position) {
+
+        if (value == 0) {
+            if (Double.doubleToRawLongBits(value) != 0) {
+                buffer[position++] = '-';
+            }
+            System.arraycopy(ZERO, 0, buffer, position, ZERO.length);
+            return position + ZERO.length;
+        }
+
+        double abs = Math.abs(value);
+
+        if (abs >= MIN_PLAIN && abs < MAX_PLAIN) {
+            for (int k = 0; k <= MAX_FRACTION_DIGITS; k++) {
+                long mantissa = Math.round(abs * DOUBLE_POW10[k]);
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    break;
+                }
+                if (mantissa / DOUBLE_POW10[k] == abs) {
+                    if (value < 0) {
+                        buffer[position++] = '-';
+                    }
+                    return writeScaledDecimal(mantissa, k, buffer, position);
+                }
+            }
+        }
+
+        return writeAscii(Double.toString(value), buffer, position);
+    }
+
+    private static int writeScaledDecimal(long mantissa, int fractionDigits, byte[] buffer, int position) {
+
+        long integerPart = (fractionDigits == 0) ? mantissa : mantissa / LONG_POW10[fractionDigits];
+        long fractionPart = (fractionDigits == 0) ? 0 : mantissa % LONG_POW10[fractionDigits];
+
+        int end = position + digitCount(integerPart);
+        writeDigits(integerPart, buffer, end);
+        position = end;
+
+        buffer[position++] = '.';
+
+        if (fractionDigits == 0) {
+            buffer[position++] = '0';
+            return position;
+        }
+
+        end = position + fractionDigits;
+        // Fills the leading zeros of the fraction too
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + fractionPart % 10);
+            fractionPart /= 10;
+        }
+        return end;
+    }
+
+    private static int writeAscii(String text, byte[] buffer, int position) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+        return position;
+    }
+
+    /**
+     * Writes the digits of a non negative value backwards, ending just before end.
+     */
+    private static void writeDigits(long value, byte[] buffer, int end) {
+        int position = end;
+        do {
+            buffer[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+    }
+
+    private static int digitCount(long value) {
+        for (int i = 1; i < LONG_POW10.length; i++) {
+            if (value < LONG_POW10[i]) {
+                return i;
+            }
+        }
+        return 19;
+    }
+}
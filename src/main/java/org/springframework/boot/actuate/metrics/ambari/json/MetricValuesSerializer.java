@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.json;
+
+import java.io.IOException;
+
+import org.springframework.boot.actuate.metrics.ambari.domain.AbstractMetricValues;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Writes {@link AbstractMetricValues} (heap or off-heap) as the Ambari Metrics Collector {"timestamp": value, ...}
+ * object, reading the points directly from the primitive storage. The values of the integral series are written as
+ * JSON integers.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class MetricValuesSerializer extends JsonSerializer<AbstractMetricValues> {
+
+    @Override
+    public void serialize(AbstractMetricValues metricValues, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+
+        boolean integral = metricValues.isIntegral();
+
+        generator.writeStartObject();
+        for (int i = 0; i < metricValues.size(); i++) {
+            generator.writeFieldName(Long.toString(metricValues.getTimestamp(i)));
+            if (integral) {
+                generator.writeNumber(metricValues.getLongValue(i));
+            } else {
+                generator.writeNumber(metricValues.getValue(i));
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public boolean isEmpty(SerializerProvider provider, AbstractMetricValues metricValues) {
+        return metricValues == null || metricValues.isEmpty();
+    }
+
+    @Override
+    public Class<AbstractMetricValues> handledType() {
+        return AbstractMetricValues.class;
+    }
+}
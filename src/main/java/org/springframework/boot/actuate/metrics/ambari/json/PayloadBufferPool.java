@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.json;
+
+import java.io.Closeable;
+
+import org.springframework.boot.actuate.metrics.ambari.pool.LockFreeObjectPool;
+import org.springframework.boot.actuate.metrics.ambari.pool.PoolObjectFactory;
+
+/**
+ * Pool of the {@link JsonByteBuffer}s the payloads are serialized into. New buffers are sized from an exponential
+ * moving average of the recent payload sizes, so a steady-state flush fits the buffer without growing it. Buffers that
+ * grew far above the recent payload sizes (e.g. a one-off huge flush) are dropped on release instead of being
+ * retained.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class PayloadBufferPool implements Closeable {
+
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    /**
+     * Smallest buffer created. Also the retained capacity that is never considered oversized.
+     */
+    static final int MIN_BUFFER_SIZE = 4 * 1024;
+
+    /**
+     * Headroom added to the payload size estimate when creating a new buffer.
+     */
+    private static final double SIZE_HEADROOM = 1.25;
+
+    /**
+     * Buffers larger than this multiple of the size estimate are not retained.
+     */
+    private static final int MAX_RETAINED_SIZE_FACTOR = 4;
+
+    /**
+     * Weight of the latest payload size in the moving average.
+     */
+    private static final double SIZE_EMA_ALPHA = 0.2;
+
+    private final LockFreeObjectPool<JsonByteBuffer> pool;
+
+    /**
+     * Moving average of the payload sizes. Updated without synchronization, a lost update only delays the estimate.
+     */
+    private volatile double payloadSizeEstimate = -1;
+
+    public PayloadBufferPool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    public PayloadBufferPool(int maxIdle) {
+        this.pool = new LockFreeObjectPool<JsonByteBuffer>(new PoolObjectFactory<JsonByteBuffer>() {
+            @Override
+            public JsonByteBuffer create() {
+                return new JsonByteBuffer(getNewBufferSize());
+            }
+
+            @Override
+            public void passivate(JsonByteBuffer buffer) {
+                buffer.reset();
+            }
+        }, maxIdle);
+    }
+
+    /**
+     * @return Returns an empty buffer. Must be released with {@link #release(JsonByteBuffer)} once the payload is
+     *         written.
+     */
+    public JsonByteBuffer borrow() {
+        return pool.borrowObject();
+    }
+
+    /**
+     * Records the size of the payload held by the buffer and returns the buffer to the pool.
+     */
+    public void release(JsonByteBuffer buffer) {
+        int payloadSize = buffer.size();
+        double estimate = payloadSizeEstimate;
+        estimate = (estimate < 0) ? payloadSize : estimate + SIZE_EMA_ALPHA * (payloadSize - estimate);
+        payloadSizeEstimate = estimate;
+
+        if (buffer.capacity() > Math.max(MIN_BUFFER_SIZE, MAX_RETAINED_SIZE_FACTOR * estimate)) {
+            pool.invalidateObject(buffer);
+        } else {
+            pool.returnObject(buffer);
+        }
+    }
+
+    /**
+     * @return Returns the moving average of the released payload sizes, or -1 before the first release.
+     */
+    public double getPayloadSizeEstimate() {
+        return payloadSizeEstimate;
+    }
+
+    public int getNumIdle() {
+        return pool.getNumIdle();
+    }
+
+    public long getCreatedCount() {
+        return pool.getCreatedCount();
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    int getNewBufferSize() {
+        double estimate = payloadSizeEstimate;
+        return (estimate < 0) ? MIN_BUFFER_SIZE : Math.max(MIN_BUFFER_SIZE, (int) (estimate * SIZE_HEADROOM));
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.json;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricNameDictionary;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+/**
+ * Write only {@link HttpMessageConverter} that encodes the {@link TimelineMetrics} request body with the
+ * {@link TimelineMetricsJsonEncoder}. The payload is encoded into a pooled buffer, sized from the recent payloads,
+ * and written with a known Content-Length. With a streaming (non buffering) request factory the pooled array is
+ * written directly to the connection. The responses are still read by the Jackson converter registered after this
+ * one.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class TimelineMetricsHttpMessageConverter implements HttpMessageConverter<TimelineMetrics> {
+
+    private final TimelineMetricsJsonEncoder encoder = new TimelineMetricsJsonEncoder();
+
+    private final PayloadBufferPool bufferPool = new PayloadBufferPool();
+
+    private volatile PayloadListener payloadListener;
+
+    public PayloadBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public void setPayloadListener(PayloadListener payloadListener) {
+        this.payloadListener = payloadListener;
+    }
+
+    public void setMetricNameDictionary(MetricNameDictionary metricNameDictionary) {
+        encoder.setMetricNameDictionary(metricNameDictionary);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return TimelineMetrics.class.isAssignableFrom(clazz)
+                && (mediaType == null || MediaType.ALL.equals(mediaType) || MediaType.APPLICATION_JSON
+                        .isCompatibleWith(mediaType));
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return Collections.singletonList(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    public TimelineMetrics read(Class<? extends TimelineMetrics> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Reading TimelineMetrics is not supported");
+    }
+
+    @Override
+    public void write(TimelineMetrics timelineMetrics, MediaType contentType, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+
+        JsonByteBuffer buffer = bufferPool.borrow();
+        try {
+            long start = System.nanoTime();
+            encoder.encode(timelineMetrics, buffer);
+
+            PayloadListener listener = payloadListener;
+            if (listener != null) {
+                listener.payloadEncoded(timelineMetrics, buffer.size(), System.nanoTime() - start);
+            }
+
+            HttpHeaders headers = outputMessage.getHeaders();
+            if (headers.getContentType() == null) {
+                headers.setContentType((contentType == null || contentType.isWildcardType()
+                        || contentType.isWildcardSubtype()) ? MediaType.APPLICATION_JSON : contentType);
+            }
+            headers.setContentLength(buffer.size());
+
+            // Straight from the pooled array to the (streaming) request body
+            buffer.writeTo(outputMessage.getBody());
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.json;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.actuate.metrics.ambari.domain.AbstractMetricValues;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricNameDictionary;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+
+/**
+ * Hand written {@link TimelineMetrics} JSON encoder. Produces the same document as the Jackson (JAXB annotations,
+ * NON_NULL inclusion) mapping: the same field names and order, and absent null fields. The timestamps and values are
+ * formatted with the {@link JsonNumberFormatter} straight into a reusable {@link JsonByteBuffer}, so no intermediate
+ * strings are created for the metric values.
+ * 
+ * The only difference to the Jackson output is the formatting of doubles outside of the [1e-3, 1e7) range, e.g.
+ * 12345678.0 instead of 1.2345678E7. Both parse to the same value.
+ * 
+ * Thread safe if the buffers are not shared.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class TimelineMetricsJsonEncoder {
+
+    private static final byte[] METRICS_START = "{\"metrics\":[".getBytes();
+    private static final byte[] METRICS_END = "]}".getBytes();
+    private static final byte[] METRIC_NAME = "\"metricname\":".getBytes();
+    private static final byte[] HOST_NAME = "\"hostname\":".getBytes();
+    private static final byte[] TIMESTAMP = "\"timestamp\":".getBytes();
+    private static final byte[] APP_ID = "\"appid\":".getBytes();
+    private static final byte[] INSTANCE_ID = "\"instanceid\":".getBytes();
+    private static final byte[] START_TIME = "\"starttime\":".getBytes();
+    private static final byte[] TYPE = "\"type\":".getBytes();
+    private static final byte[] VALUES = "\"metrics\":".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+
+    /**
+     * (Optional) Source of the pre-encoded metric names.
+     */
+    private volatile MetricNameDictionary metricNameDictionary;
+
+    public TimelineMetricsJsonEncoder() {
+    }
+
+    public TimelineMetricsJsonEncoder(MetricNameDictionary metricNameDictionary) {
+        this.metricNameDictionary = metricNameDictionary;
+    }
+
+    public void setMetricNameDictionary(MetricNameDictionary metricNameDictionary) {
+        this.metricNameDictionary = metricNameDictionary;
+    }
+
+    /**
+     * Appends the JSON document to the buffer.
+     */
+    public void encode(TimelineMetrics timelineMetrics, JsonByteBuffer buffer) {
+        buffer.writeRaw(METRICS_START);
+        List<TimelineMetric> metrics = timelineMetrics.getMetrics();
+        if (metrics != null) {
+            for (int i = 0; i < metrics.size(); i++) {
+                if (i > 0) {
+                    buffer.writeByte(',');
+                }
+                encode(metrics.get(i), buffer);
+            }
+        }
+        buffer.writeRaw(METRICS_END);
+    }
+
+    public void encode(TimelineMetric metric, JsonByteBuffer buffer) {
+        buffer.writeByte('{');
+
+        // The timestamp is the first field that is always present
+        boolean comma = false;
+        if (metric.getMetricName() != null) {
+            buffer.writeRaw(METRIC_NAME);
+            writeMetricName(metric.getMetricName(), buffer);
+            comma = true;
+        }
+        if (metric.getHostName() != null) {
+            writeFieldName(HOST_NAME, comma, buffer);
+            buffer.writeString(metric.getHostName());
+            comma = true;
+        }
+
+        writeFieldName(TIMESTAMP, comma, buffer);
+        buffer.writeLong(metric.getTimestamp());
+
+        writeOptionalString(APP_ID, metric.getAppId(), buffer);
+        writeOptionalString(INSTANCE_ID, metric.getInstanceId(), buffer);
+
+        writeFieldName(START_TIME, true, buffer);
+        buffer.writeLong(metric.getStartTime());
+
+        writeOptionalString(TYPE, metric.getType(), buffer);
+
+        Map<Long, Double> metricValues = metric.getMetricValues();
+        if (metricValues != null) {
+            writeFieldName(VALUES, true, buffer);
+            if (metricValues instanceof AbstractMetricValues) {
+                writeValues((AbstractMetricValues) metricValues, buffer);
+            } else {
+                writeValues(metricValues, buffer);
+            }
+        }
+
+        buffer.writeByte('}');
+    }
+
+    private void writeMetricName(String metricName, JsonByteBuffer buffer) {
+        MetricNameDictionary dictionary = metricNameDictionary;
+        if (dictionary != null) {
+            int metricId = dictionary.findId(metricName);
+            if (metricId >= 0) {
+                buffer.writeString(dictionary.getNameBytes(metricId));
+                return;
+            }
+        }
+        buffer.writeString(metricName);
+    }
+
+    private void writeOptionalString(byte[] fieldName, String value, JsonByteBuffer buffer) {
+        if (value != null) {
+            writeFieldName(fieldName, true, buffer);
+            buffer.writeString(value);
+        }
+    }
+
+    private static void writeFieldName(byte[] fieldName, boolean comma, JsonByteBuffer buffer) {
+        if (comma) {
+            buffer.writeByte(',');
+        }
+        buffer.writeRaw(fieldName);
+    }
+
+    private void writeValues(AbstractMetricValues metricValues, JsonByteBuffer buffer) {
+        boolean integral = metricValues.isIntegral();
+        buffer.writeByte('{');
+        for (int i = 0; i < metricValues.size(); i++) {
+            if (i > 0) {
+                buffer.writeByte(',');
+            }
+            buffer.writeQuotedLong(metricValues.getTimestamp(i));
+            buffer.writeByte(':');
+            if (integral) {
+                buffer.writeLong(metricValues.getLongValue(i));
+            } else {
+                buffer.writeDouble(metricValues.getValue(i));
+            }
+        }
+        buffer.writeByte('}');
+    }
+
+    private void writeValues(Map<Long, Double> metricValues, JsonByteBuffer buffer) {
+        buffer.writeByte('{');
+        boolean first = true;
+        for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
+            if (!first) {
+                buffer.writeByte(',');
+            }
+            first = false;
+            buffer.writeQuotedLong(entry.getKey());
+            buffer.writeByte(':');
+            Double value = entry.getValue();
+            if (value == null) {
+                buffer.writeRaw(NULL);
+            } else {
+                buffer.writeDouble(value);
+            }
+        }
+        buffer.writeByte('}');
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.lane;
+
+import org.springframework.boot.actuate.metrics.ambari.filter.MetricNamePatterns;
+import org.springframework.util.Assert;
+
+/**
+ * Priority class of the metrics matching a set of name patterns. The metrics of a lane are buffered, flushed and sent
+ * independently of the other metrics: the lane has its own buffer size and flush interval and its own dispatch thread,
+ * so a lane with a small buffer (e.g. error rates and health) reaches the collector without waiting behind the bulk
+ * sends of the heavily batched metrics.
+ * 
+ * Instances are immutable and thread safe.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class PriorityLane {
+
+    private final String name;
+
+    private final MetricNamePatterns metricPatterns;
+
+    private final int bufferSize;
+
+    private final long flushIntervalMillis;
+
+    /**
+     * @param name
+     *            Lane name. Used for the dispatch thread name.
+     * @param bufferSize
+     *            Number of buffered points that triggers a flush. 0 sends every point as soon as possible, batching
+     *            only the points written while the previous send is in flight.
+     * @param flushIntervalMillis
+     *            Flush period in milliseconds. 0 disables the periodic flush of the lane.
+     * @param metricPatterns
+     *            Metric name patterns of the lane. Supports '*' wildcards.
+     */
+    public PriorityLane(String name, int bufferSize, long flushIntervalMillis, String... metricPatterns) {
+        Assert.hasText(name, "The lane name is required");
+        if (bufferSize < 0) {
+            throw new IllegalArgumentException("The lane buffer size must not be negative: " + bufferSize);
+        }
+        this.name = name;
+        this.bufferSize = bufferSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.metricPatterns = new MetricNamePatterns(metricPatterns);
+    }
+
+    /**
+     * @param metricName
+     *            Metric name to check.
+     * @return Returns true if the metric belongs to this lane.
+     */
+    public boolean matches(String metricName) {
+        return metricPatterns.matches(metricName);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public MetricNamePatterns getMetricPatterns() {
+        return metricPatterns;
+    }
+
+    @Override
+    public String toString() {
+        return "PriorityLane [name=" + name + ", patterns=" + metricPatterns + ", bufferSize=" + bufferSize
+                + ", flushIntervalMillis=" + flushIntervalMillis + "]";
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.lane;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns the metrics to the {@link PriorityLane}s. A metric belongs to the first lane whose patterns match its name,
+ * or to the default lane if none does. The decision is cached in an array indexed by the metric ID, so the routing of
+ * a known metric costs a single array read.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class PriorityLaneRouter {
+
+    /**
+     * Route of the metrics not matching any lane.
+     */
+    public static final int DEFAULT_LANE = -1;
+
+    private static final int UNKNOWN = 0;
+
+    private final PriorityLane[] lanes;
+
+    /**
+     * Lane index + 1 per metric ID, DEFAULT_LANE or UNKNOWN. A route never changes, so the racy updates are harmless.
+     */
+    private volatile int[] routesById = new int[64];
+
+    public PriorityLaneRouter(List<PriorityLane> lanes) {
+        this.lanes = lanes.toArray(new PriorityLane[lanes.size()]);
+    }
+
+    /**
+     * @param metricId
+     *            Metric ID assigned by the MetricNameDictionary of the caller.
+     * @param metricName
+     *            Metric name of the ID. Used only the first time the ID is seen.
+     * @return Returns the index of the metric lane or {@link #DEFAULT_LANE}.
+     */
+    public int route(int metricId, String metricName) {
+
+        int[] routes = routesById;
+        if (metricId >= routes.length) {
+            routes = growRoutes(metricId + 1);
+        }
+
+        int route = routes[metricId];
+        if (route == UNKNOWN) {
+            route = DEFAULT_LANE;
+            for (int i = 0; i < lanes.length; i++) {
+                if (lanes[i].matches(metricName)) {
+                    route = i + 1;
+                    break;
+                }
+            }
+            routes[metricId] = route;
+        }
+
+        return (route == DEFAULT_LANE) ? DEFAULT_LANE : route - 1;
+    }
+
+    private synchronized int[] growRoutes(int capacity) {
+        if (capacity > routesById.length) {
+            routesById = Arrays.copyOf(routesById, Math.max(capacity, routesById.length * 2));
+        }
+        return routesById;
+    }
+
+    public List<PriorityLane> getLanes() {
+        return Arrays.asList(lanes);
+    }
+
+    public boolean isEmpty() {
+        return lanes.length == 0;
+    }
+}
@@ -0,0 +1,298 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.pool;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight lock-free object pool. Returned objects are kept in a small per-thread cache first and overflow to a
+ * shared lock-free (multi-producer, multi-consumer) stash. Borrowing takes an object from the thread cache, then from
+ * the stash and creates a new object only if both are empty. Only the objects a thread borrowed itself go to its
+ * cache. The objects returned by other threads (e.g. a send thread returning the metrics borrowed by the flushing
+ * thread) go to the stash, so they are not stranded in the cache of a thread that never borrows. Virtual threads
+ * (Java 21+) bypass the thread cache: they typically run one task and end, taking their cache with them.
+ * 
+ * Unlike the commons-pool2 GenericObjectPool it never blocks and keeps no per-object bookkeeping. The pool size bounds
+ * only the number of idle objects retained in the shared stash. Exhausted pool creates new objects and the surplus of
+ * returned objects is left to the GC.
+ * 
+ * @author tzolov@apache.org
+ *
+ * @param <T>
+ *            Pooled object type.
+ */
+public class LockFreeObjectPool<T> implements Closeable {
+
+    /**
+     * Max number of objects cached per thread.
+     */
+    private static final int THREAD_CACHE_SIZE = 16;
+
+    /**
+     * Thread#isVirtual() or null on the JDKs without virtual threads.
+     */
+    private static final MethodHandle IS_VIRTUAL = isVirtualHandle();
+
+    private final PoolObjectFactory<T> factory;
+
+    /**
+     * Max number of idle objects retained in the shared stash.
+     */
+    private final int maxIdle;
+
+    private final ConcurrentLinkedQueue<T> stash = new ConcurrentLinkedQueue<T>();
+
+    /**
+     * Approximate stash size. The ConcurrentLinkedQueue#size() is not a constant time operation.
+     */
+    private final AtomicInteger stashSize = new AtomicInteger(0);
+
+    private final ThreadLocal<ThreadCache<T>> threadCache = new ThreadLocal<ThreadCache<T>>() {
+        @Override
+        protected ThreadCache<T> initialValue() {
+            return new ThreadCache<T>(THREAD_CACHE_SIZE);
+        }
+    };
+
+    private final AtomicInteger numActive = new AtomicInteger(0);
+
+    private final AtomicLong borrowedCount = new AtomicLong(0);
+
+    private final AtomicLong createdCount = new AtomicLong(0);
+
+    private volatile boolean closed = false;
+
+    public LockFreeObjectPool(PoolObjectFactory<T> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return Returns a pooled or a new object instance.
+     */
+    public T borrowObject() {
+
+        ThreadCache<T> cache = threadCache();
+        T object = null;
+        if (cache != null) {
+            cache.borrowed++;
+            object = cache.pop();
+        }
+
+        if (object == null) {
+            object = stash.poll();
+            if (object != null) {
+                stashSize.decrementAndGet();
+            }
+        }
+
+        if (object == null) {
+            object = factory.create();
+            createdCount.incrementAndGet();
+        }
+
+        numActive.incrementAndGet();
+        borrowedCount.incrementAndGet();
+
+        return object;
+    }
+
+    /**
+     * Cleans and returns the object to the pool. The object can be returned from a thread other than the one that
+     * borrowed it.
+     * 
+     * @param object
+     *            Object to return.
+     */
+    public void returnObject(T object) {
+
+        numActive.decrementAndGet();
+
+        // Cleaned even if the pool is closed, so the object can release the resources it holds
+        factory.passivate(object);
+
+        ThreadCache<T> cache = threadCache();
+        boolean ownBorrow = cache != null && cache.borrowed > 0;
+        if (ownBorrow) {
+            cache.borrowed--;
+        }
+
+        if (closed) {
+            return;
+        }
+
+        if (ownBorrow && cache.push(object)) {
+            return;
+        }
+        if (stashSize.incrementAndGet() <= maxIdle) {
+            stash.offer(object);
+        } else {
+            // The pool is full. Leave the object to the GC.
+            stashSize.decrementAndGet();
+        }
+    }
+
+    /**
+     * Cleans a borrowed object and drops it instead of returning it to the pool (e.g. an object that grew too large
+     * to be worth retaining).
+     * 
+     * @param object
+     *            Object to drop.
+     */
+    public void invalidateObject(T object) {
+        numActive.decrementAndGet();
+        ThreadCache<T> cache = threadCache();
+        if (cache != null && cache.borrowed > 0) {
+            cache.borrowed--;
+        }
+        factory.passivate(object);
+    }
+
+    /**
+     * Drops the idle objects. Objects returned after the pool is closed are cleaned but not retained.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        clear();
+    }
+
+    /**
+     * Drops the idle objects in the shared stash and in the cache of the calling thread.
+     */
+    public void clear() {
+        ThreadCache<T> cache = threadCache();
+        if (cache != null) {
+            cache.clear();
+        }
+        stash.clear();
+        stashSize.set(0);
+    }
+
+    /**
+     * @return Returns the (approximate) number of idle objects in the shared stash and in the cache of the calling
+     *         thread. The caches of the other threads are not visible.
+     */
+    public int getNumIdle() {
+        ThreadCache<T> cache = threadCache();
+        return Math.max(0, Math.min(stashSize.get(), maxIdle)) + ((cache != null) ? cache.size : 0);
+    }
+
+    /**
+     * @return Returns the cache of the calling thread or null for a virtual thread.
+     */
+    private ThreadCache<T> threadCache() {
+        return isVirtual(Thread.currentThread()) ? null : threadCache.get();
+    }
+
+    static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static MethodHandle isVirtualHandle() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual",
+                    MethodType.methodType(boolean.class));
+        } catch (Exception e) {
+            // Before Java 21
+            return null;
+        }
+    }
+
+    /**
+     * @return Returns the number of borrowed, not yet returned objects.
+     */
+    public int getNumActive() {
+        return numActive.get();
+    }
+
+    /**
+     * @return Returns the total number of borrow operations.
+     */
+    public long getBorrowedCount() {
+        return borrowedCount.get();
+    }
+
+    /**
+     * @return Returns the number of objects created by the pool.
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Bounded LIFO stack of objects. Accessed only by its owner thread.
+     */
+    private static class ThreadCache<T> {
+
+        private final Object[] objects;
+
+        private int size;
+
+        /**
+         * Objects borrowed and not yet returned by the owner thread. A return by the owner thread is taken for the
+         * return of its own borrow while positive.
+         */
+        private int borrowed;
+
+        ThreadCache(int capacity) {
+            this.objects = new Object[capacity];
+        }
+
+        @SuppressWarnings("unchecked")
+        T pop() {
+            if (size == 0) {
+                return null;
+            }
+            T object = (T) objects[--size];
+            objects[size] = null;
+            return object;
+        }
+
+        boolean push(T object) {
+            if (size == objects.length) {
+                return false;
+            }
+            objects[size++] = object;
+            return true;
+        }
+
+        void clear() {
+            while (size > 0) {
+                objects[--size] = null;
+            }
+        }
+    }
+}
@@ -22,14 +22,15 @@ import static org.springframework.util.CollectionUtils.isEmpty;
 import java.io.Closeable;
 import java.io.IOException;
 
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
 
 /**
- * Helper class that keeps pools of {@link TimelineMetric} and {@link TimelineMetrics} objects to reduce the GC.
+ * Helper class that keeps pools of {@link TimelineMetric} and {@link TimelineMetrics} objects to reduce the GC. Uses
+ * the non-blocking {@link LockFreeObjectPool}, so borrowing and returning the objects costs less than the object
+ * allocation it saves.
  * 
  * @author tzolov@apache.org
  *
@@ -38,22 +39,23 @@ public class MetricObjectPool implements Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(MetricObjectPool.class);
 
-    private final static long FIVE_SECONDS = 5 * 1000;
-
     /**
      * Object pools used for TimelineMetric and TimelineMetrics objects.
      */
-    private GenericObjectPool<TimelineMetrics> timelineMetricsPool;
-    private GenericObjectPool<TimelineMetric> timelineMetricPool;
+    private LockFreeObjectPool<TimelineMetrics> timelineMetricsPool;
+    private LockFreeObjectPool<TimelineMetric> timelineMetricPool;
 
+    /**
+     * @param timelineMetricsPoolSize
+     *            Max number of idle {@link TimelineMetrics} objects retained by the pool.
+     * @param timelineMeticPoolSize
+     *            Max number of idle {@link TimelineMetric} objects retained by the pool.
+     */
     public MetricObjectPool(int timelineMetricsPoolSize, int timelineMeticPoolSize) {
-        this.timelineMetricPool = new GenericObjectPool<TimelineMetric>(new TimelineMetricFactory());
-        this.timelineMetricPool.setMaxTotal(timelineMeticPoolSize);
-        this.timelineMetricPool.setMaxWaitMillis(FIVE_SECONDS);
-
-        this.timelineMetricsPool = new GenericObjectPool<TimelineMetrics>(new TimelineMetricsFactory());
-        this.timelineMetricsPool.setMaxTotal(timelineMetricsPoolSize);
-        this.timelineMetricsPool.setMaxWaitMillis(FIVE_SECONDS);
+        this.timelineMetricPool = new LockFreeObjectPool<TimelineMetric>(new TimelineMetricFactory(),
+                timelineMeticPoolSize);
+        this.timelineMetricsPool = new LockFreeObjectPool<TimelineMetrics>(new TimelineMetricsFactory(),
+                timelineMetricsPoolSize);
     }
 
     /**
@@ -109,8 +111,6 @@ public class MetricObjectPool implements Closeable {
 
     @Override
     public void close() throws IOException {
-        timelineMetricsPool.clear();
-        timelineMetricPool.clear();
         timelineMetricsPool.close();
         timelineMetricPool.close();
     }
@@ -118,11 +118,11 @@ public class MetricObjectPool implements Closeable {
     // ------------------------------------------------------------------------
     // Getters/Setters used for test purposes only
     // ------------------------------------------------------------------------
-    public GenericObjectPool<TimelineMetrics> getTimelineMetricsPool() {
+    public LockFreeObjectPool<TimelineMetrics> getTimelineMetricsPool() {
         return timelineMetricsPool;
     }
 
-    public GenericObjectPool<TimelineMetric> getTimelineMetricPool() {
+    public LockFreeObjectPool<TimelineMetric> getTimelineMetricPool() {
         return timelineMetricPool;
     }
 }
@@ -24,15 +24,17 @@ import org.apache.commons.pool2.impl.DefaultPooledObject;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
 
 /**
- * Object pool factory for the {@link TimelineMetric} object types.
+ * Object pool factory for the {@link TimelineMetric} object types. Usable both by the {@link LockFreeObjectPool} and by
+ * the commons-pool2 pools.
  * 
  * @author tzolov@apache.org
  *
  */
-public class TimelineMetricFactory extends BasePooledObjectFactory<TimelineMetric> {
+public class TimelineMetricFactory extends BasePooledObjectFactory<TimelineMetric> implements
+        PoolObjectFactory<TimelineMetric> {
 
     @Override
-    public TimelineMetric create() throws Exception {
+    public TimelineMetric create() {
         return new TimelineMetric();
     }
 
@@ -43,12 +45,18 @@ public class TimelineMetricFactory extends BasePooledObjectFactory<TimelineMetri
 
     @Override
     public void passivateObject(PooledObject<TimelineMetric> tm) throws Exception {
+        passivate(tm.getObject());
+    }
+
+    @Override
+    public void passivate(TimelineMetric tm) {
         // When the TimelineMetric is returned to the pool, clean the previous state
-        tm.getObject().setInstanceId(null);
-        tm.getObject().setAppId(null);
-        tm.getObject().setHostName(null);
-        tm.getObject().setMetricName(null);
-        tm.getObject().getMetricValues().clear();
-        tm.getObject().setStartTime(-1);
+        tm.setInstanceId(null);
+        tm.setAppId(null);
+        tm.setHostName(null);
+        tm.setMetricName(null);
+        tm.setType(null);
+        tm.getMetricValues().clear();
+        tm.setStartTime(-1);
     }
 }
@@ -24,15 +24,17 @@ import org.apache.commons.pool2.impl.DefaultPooledObject;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
 
 /**
- * Object pool factory for the {@link TimelineMetrics} object types.
+ * Object pool factory for the {@link TimelineMetrics} object types. Usable both by the {@link LockFreeObjectPool} and
+ * by the commons-pool2 pools.
  * 
  * @author tzolov@apache.org
  *
  */
-public class TimelineMetricsFactory extends BasePooledObjectFactory<TimelineMetrics> {
+public class TimelineMetricsFactory extends BasePooledObjectFactory<TimelineMetrics> implements
+        PoolObjectFactory<TimelineMetrics> {
 
     @Override
-    public TimelineMetrics create() throws Exception {
+    public TimelineMetrics create() {
         return new TimelineMetrics();
     }
 
@@ -43,7 +45,12 @@ public class TimelineMetricsFactory extends BasePooledObjectFactory<TimelineMetr
 
     @Override
     public void passivateObject(PooledObject<TimelineMetrics> tlms) throws Exception {
+        passivate(tlms.getObject());
+    }
+
+    @Override
+    public void passivate(TimelineMetrics tlms) {
         // When the TimelineMetrics is returned to the pool, clean the previous state
-        tlms.getObject().getMetrics().clear();
+        tlms.getMetrics().clear();
     }
 }
@@ -0,0 +1,247 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.reactive;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+
+/**
+ * Unicast {@link Publisher} of the flushed {@link TimelineMetrics} batches. The batches are emitted only as the
+ * subscriber requests them. Up to maxPendingBatches batches wait for demand, when the limit is reached the oldest
+ * pending batch is dropped and handed to the {@link DroppedBatchHandler}, so a slow subscriber bounds the memory held
+ * by the publisher instead of growing it.
+ * 
+ * Thread safe. The signals to the subscriber are serialized by a work-in-progress counter (drain loop).
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class TimelineMetricsPublisher implements Publisher<TimelineMetrics> {
+
+    /**
+     * Receives the batches that are dropped or never delivered, e.g. to return them to the object pool.
+     */
+    public interface DroppedBatchHandler {
+        void dropped(TimelineMetrics timelineMetrics);
+    }
+
+    private final int maxPendingBatches;
+
+    private final DroppedBatchHandler droppedBatchHandler;
+
+    private final ConcurrentLinkedQueue<TimelineMetrics> pending = new ConcurrentLinkedQueue<TimelineMetrics>();
+
+    /**
+     * Approximate pending queue size. The ConcurrentLinkedQueue#size() is not a constant time operation.
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
+
+    private final AtomicLong demand = new AtomicLong(0);
+
+    private final AtomicInteger wip = new AtomicInteger(0);
+
+    private final AtomicLong droppedCount = new AtomicLong(0);
+
+    private volatile Subscriber<? super TimelineMetrics> subscriber;
+
+    private volatile boolean cancelled = false;
+
+    private volatile boolean completed = false;
+
+    private volatile Throwable error;
+
+    public TimelineMetricsPublisher(int maxPendingBatches, DroppedBatchHandler droppedBatchHandler) {
+        if (maxPendingBatches < 1) {
+            throw new IllegalArgumentException("At least one pending batch is required: " + maxPendingBatches);
+        }
+        this.maxPendingBatches = maxPendingBatches;
+        this.droppedBatchHandler = droppedBatchHandler;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super TimelineMetrics> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Null subscriber");
+        }
+
+        synchronized (this) {
+            if (this.subscriber != null) {
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("TimelineMetricsPublisher allows only one subscriber"));
+                return;
+            }
+            this.subscriber = subscriber;
+        }
+
+        subscriber.onSubscribe(new BatchSubscription());
+        drain();
+    }
+
+    /**
+     * Queues a batch for delivery. Drops the oldest pending batch if the subscriber does not keep up.
+     * 
+     * @param timelineMetrics
+     *            Batch to publish.
+     * @return Returns false if the publisher is completed or cancelled and the batch was dropped.
+     */
+    public boolean offer(TimelineMetrics timelineMetrics) {
+        if (completed || cancelled) {
+            drop(timelineMetrics);
+            return false;
+        }
+
+        pending.offer(timelineMetrics);
+        if (pendingCount.incrementAndGet() > maxPendingBatches) {
+            TimelineMetrics oldest = pending.poll();
+            if (oldest != null) {
+                pendingCount.decrementAndGet();
+                drop(oldest);
+            }
+        }
+
+        drain();
+        return true;
+    }
+
+    /**
+     * Signals onComplete to the subscriber once the pending batches are delivered.
+     */
+    public void complete() {
+        completed = true;
+        drain();
+    }
+
+    /**
+     * @return Returns true if a new batch can be queued without dropping a pending one.
+     */
+    public boolean hasCapacity() {
+        return pendingCount.get() < maxPendingBatches;
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public int getMaxPendingBatches() {
+        return maxPendingBatches;
+    }
+
+    private void drop(TimelineMetrics timelineMetrics) {
+        droppedCount.incrementAndGet();
+        if (droppedBatchHandler != null) {
+            droppedBatchHandler.dropped(timelineMetrics);
+        }
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            Subscriber<? super TimelineMetrics> s = subscriber;
+            if (s != null) {
+                if (cancelled) {
+                    dropPending();
+                } else if (error != null) {
+                    dropPending();
+                    cancelled = true;
+                    s.onError(error);
+                } else {
+                    while (demand.get() > 0) {
+                        TimelineMetrics next = pending.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        pendingCount.decrementAndGet();
+                        if (demand.get() != Long.MAX_VALUE) {
+                            demand.decrementAndGet();
+                        }
+                        s.onNext(next);
+                        if (cancelled) {
+                            break;
+                        }
+                    }
+                    if (completed && !cancelled && pending.isEmpty()) {
+                        cancelled = true;
+                        s.onComplete();
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void dropPending() {
+        TimelineMetrics next;
+        while ((next = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            drop(next);
+        }
+    }
+
+    private class BatchSubscription implements Subscription {
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                // Rule 3.9
+                error = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    if (current == Long.MAX_VALUE) {
+                        break;
+                    }
+                    next = current + n;
+                    if (next < 0) {
+                        next = Long.MAX_VALUE;
+                    }
+                } while (!demand.compareAndSet(current, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+    }
+}
@@ -21,7 +21,10 @@ package org.springframework.boot.actuate.metrics.ambari.restclient;
 import java.util.Arrays;
 import java.util.Map;
 
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricNameDictionary;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.ambari.json.PayloadListener;
+import org.springframework.boot.actuate.metrics.ambari.json.TimelineMetricsHttpMessageConverter;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -56,14 +59,26 @@ public class AsyncAmbariMetricsCollectorRestClient {
 
     private AsyncRestTemplate restTemplate = null;
 
+    /**
+     * Encodes the request payload. Registered ahead of the Jackson converter that reads the responses.
+     */
+    private final TimelineMetricsHttpMessageConverter timelineMetricsConverter =
+            new TimelineMetricsHttpMessageConverter();
+
     public AsyncAmbariMetricsCollectorRestClient(String ambariMetricsCollectorHost, String ambariMetricsCollectorPort) {
         this.ambariMetricsCollectorHost = ambariMetricsCollectorHost;
         this.ambariMetricsCollectorPort = ambariMetricsCollectorPort;
         this.restTemplate = createTimelineClient();
     }
 
+    /**
+     * Sends the metrics asynchronously.
+     * 
+     * @return Returns the response future. The callback is registered with it.
+     */
     @SuppressWarnings("rawtypes")
-    public void putMetrics(TimelineMetrics metrics, ListenableFutureCallback<ResponseEntity<Map>> callback) {
+    public ListenableFuture<ResponseEntity<Map>> putMetrics(TimelineMetrics metrics,
+            ListenableFutureCallback<ResponseEntity<Map>> callback) {
 
         HttpHeaders headers = new HttpHeaders();
         headers.setAccept(Arrays.asList(this.mediaType));
@@ -74,6 +89,8 @@ public class AsyncAmbariMetricsCollectorRestClient {
                 ambariMetricsCollectorPort);
 
         asyncResponse.addCallback(callback);
+
+        return asyncResponse;
     }
 
     private AsyncRestTemplate createTimelineClient() {
@@ -85,16 +102,32 @@ public class AsyncAmbariMetricsCollectorRestClient {
         
         AsyncRestTemplate restTemplate = new AsyncRestTemplate();
         restTemplate.getMessageConverters().clear();
+        restTemplate.getMessageConverters().add(timelineMetricsConverter);
         restTemplate.getMessageConverters().add(mc);
 
         SimpleClientHttpRequestFactory requestFactory = (SimpleClientHttpRequestFactory) restTemplate
                 .getAsyncRequestFactory();
         requestFactory.setReadTimeout(5000);
         requestFactory.setConnectTimeout(5000);
+        // Keeps buffering the request body: a streaming body would connect and write on the caller thread
 
         return restTemplate;
     }
 
+    /**
+     * Lets the payload encoder reuse the pre-encoded metric names.
+     */
+    public void setMetricNameDictionary(MetricNameDictionary metricNameDictionary) {
+        timelineMetricsConverter.setMetricNameDictionary(metricNameDictionary);
+    }
+
+    /**
+     * Reports the size and serialization time of every payload.
+     */
+    public void setPayloadListener(PayloadListener payloadListener) {
+        timelineMetricsConverter.setPayloadListener(payloadListener);
+    }
+
     // test only
     public AsyncRestTemplate getRestTemplate() {
         return restTemplate;
@@ -23,12 +23,16 @@ import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricNameDictionary;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.ambari.json.PayloadListener;
+import org.springframework.boot.actuate.metrics.ambari.json.TimelineMetricsHttpMessageConverter;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
 
@@ -58,6 +62,12 @@ public class SyncAmbariMetricsCollectorRestClient {
 
     private RestTemplate restTemplate = null;
 
+    /**
+     * Encodes the request payload. Registered ahead of the Jackson converter that reads the responses.
+     */
+    private final TimelineMetricsHttpMessageConverter timelineMetricsConverter =
+            new TimelineMetricsHttpMessageConverter();
+
     public SyncAmbariMetricsCollectorRestClient(String ambariMetricsCollectorHost, String ambariMetricsCollectorPort) {
         this.ambariMetricsCollectorHost = ambariMetricsCollectorHost;
         this.ambariMetricsCollectorPort = ambariMetricsCollectorPort;
@@ -82,6 +92,31 @@ public class SyncAmbariMetricsCollectorRestClient {
         return response.getStatusCode().is2xxSuccessful();
     }
 
+    /**
+     * Posts an already encoded JSON payload, e.g. a payload shared by several collectors.
+     * 
+     * @param payload
+     *            Encoded {@link TimelineMetrics}.
+     * @return Returns true if the server accepted the metrics.
+     */
+    @SuppressWarnings("rawtypes")
+    public boolean putPayload(byte[] payload) {
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Arrays.asList(this.mediaType));
+        headers.setContentType(this.mediaType);
+
+        ResponseEntity<Map> response = restTemplate.postForEntity(AMBARI_METRICS_COLLECTOR_URL,
+                new HttpEntity<byte[]>(payload, headers), Map.class, ambariMetricsCollectorHost,
+                ambariMetricsCollectorPort);
+
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            logger.warn("Cannot write a metric payload of " + payload.length + " bytes: " + response.getBody());
+        }
+
+        return response.getStatusCode().is2xxSuccessful();
+    }
+
     private RestTemplate createTimelineClient() {
 
         MappingJackson2HttpMessageConverter mc = new MappingJackson2HttpMessageConverter();
@@ -91,16 +126,42 @@ public class SyncAmbariMetricsCollectorRestClient {
 
         RestTemplate restTemplate = new RestTemplate();
         restTemplate.getMessageConverters().clear();
+        restTemplate.getMessageConverters().add(timelineMetricsConverter);
+        restTemplate.getMessageConverters().add(new ByteArrayHttpMessageConverter());
         restTemplate.getMessageConverters().add(mc);
 
         SimpleClientHttpRequestFactory requestFactory = (SimpleClientHttpRequestFactory) restTemplate
                 .getRequestFactory();
         requestFactory.setReadTimeout(2000);
         requestFactory.setConnectTimeout(2000);
+        // The converter sets the Content-Length and writes the pooled payload buffer straight to the connection
+        requestFactory.setBufferRequestBody(false);
 
         return restTemplate;
     }
 
+    /**
+     * Lets the payload encoder reuse the pre-encoded metric names.
+     */
+    public void setMetricNameDictionary(MetricNameDictionary metricNameDictionary) {
+        timelineMetricsConverter.setMetricNameDictionary(metricNameDictionary);
+    }
+
+    /**
+     * Reports the size and serialization time of every payload.
+     */
+    public void setPayloadListener(PayloadListener payloadListener) {
+        timelineMetricsConverter.setPayloadListener(payloadListener);
+    }
+
+    public String getAmbariMetricsCollectorHost() {
+        return ambariMetricsCollectorHost;
+    }
+
+    public String getAmbariMetricsCollectorPort() {
+        return ambariMetricsCollectorPort;
+    }
+
     // test only
     public RestTemplate getRestTemplate() {
         return restTemplate;
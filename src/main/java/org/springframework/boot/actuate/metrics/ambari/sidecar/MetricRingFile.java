@@ -0,0 +1,391 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.sidecar;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped ring of metric batches shared between one writing process (a SidecarAmbariMetricWriter) and one
+ * reading process (the {@link SidecarAgent}) on the same host. The writer appends records and never waits for the
+ * reader: when the reader falls behind by more than the ring capacity the oldest records are overwritten and counted as
+ * lost by the reader.
+ * 
+ * <pre>
+ * header (64 bytes): magic, version, capacity, closed flag, write position, last write time (millis)
+ * record:            length, CRC32 of the payload, payload, padding to 8 bytes
+ * </pre>
+ * 
+ * The write position is a logical offset growing forever, the record offset in the data region is the position modulo
+ * the capacity. A record never wraps: a padding marker fills the end of the region instead. The payload is written
+ * before the record header and the write position is published last. As the two processes share no lock, the reader
+ * validates every record with its CRC and checks that the writer did not lap it while the record was copied. A record
+ * failing the check but not lapped (e.g. not fully visible to the reader yet) is retried on the next poll. Only the
+ * records lapped by the writer are skipped and counted as lost.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class MetricRingFile implements Closeable {
+
+    public static final String FILE_SUFFIX = ".ring";
+
+    private static final int MAGIC = 0x414d5352; // AMSR
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int CLOSED_OFFSET = 12;
+    private static final int WRITE_POSITION_OFFSET = 16;
+    private static final int LAST_WRITE_OFFSET = 24;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int PADDING = -1;
+
+    private final File file;
+
+    private final RandomAccessFile randomAccessFile;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    private final boolean writable;
+
+    /**
+     * Writer side copy of the write position.
+     */
+    private long writePosition;
+
+    private final CRC32 crc = new CRC32();
+
+    private MetricRingFile(File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer, int capacity,
+            boolean writable) {
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.writable = writable;
+    }
+
+    /**
+     * Creates (or truncates) a ring file for writing.
+     * 
+     * @param file
+     *            Ring file.
+     * @param capacity
+     *            Size of the data region in bytes. Rounded up to a multiple of 8.
+     * @return Returns the writable ring.
+     */
+    public static MetricRingFile create(File file, int capacity) throws IOException {
+        if (capacity < 64) {
+            throw new IllegalArgumentException("The ring capacity must be at least 64 bytes: " + capacity);
+        }
+        int alignedCapacity = align(capacity);
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create the metric ring directory: " + directory);
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(0);
+            randomAccessFile.setLength(HEADER_SIZE + alignedCapacity);
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + alignedCapacity);
+
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, alignedCapacity);
+            buffer.putInt(CLOSED_OFFSET, 0);
+            buffer.putLong(WRITE_POSITION_OFFSET, 0);
+            buffer.putLong(LAST_WRITE_OFFSET, System.currentTimeMillis());
+            // Marks the header complete
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+
+            return new MetricRingFile(file, randomAccessFile, buffer, alignedCapacity, true);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing ring file for reading.
+     * 
+     * @param file
+     *            Ring file created by {@link #create(File, int)}.
+     * @return Returns the read only ring.
+     */
+    public static MetricRingFile open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            long length = randomAccessFile.length();
+            if (length < HEADER_SIZE) {
+                throw new IOException("Not a metric ring file: " + file);
+            }
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(MapMode.READ_ONLY, 0, length);
+
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException("Not a metric ring file: " + file);
+            }
+            if (buffer.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Unsupported metric ring version " + buffer.getInt(VERSION_OFFSET) + ": "
+                        + file);
+            }
+            int capacity = buffer.getInt(CAPACITY_OFFSET);
+            if (capacity <= 0 || HEADER_SIZE + (long) capacity > length) {
+                throw new IOException("Corrupted metric ring file: " + file);
+            }
+
+            return new MetricRingFile(file, randomAccessFile, buffer, capacity, false);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a record.
+     * 
+     * @return Returns false if the record is larger than the ring.
+     */
+    public synchronized boolean append(byte[] bytes, int offset, int length) {
+        if (!writable) {
+            throw new IllegalStateException("The metric ring is read only: " + file);
+        }
+
+        int recordSize = align(RECORD_HEADER_SIZE + length);
+        if (recordSize > capacity) {
+            return false;
+        }
+
+        int index = (int) (writePosition % capacity);
+        int remaining = capacity - index;
+        if (remaining < recordSize) {
+            // Both the remaining space and the record headers are 8 bytes aligned, so the marker always fits
+            buffer.putInt(HEADER_SIZE + index, PADDING);
+            writePosition += remaining;
+            index = 0;
+        }
+
+        crc.reset();
+        crc.update(bytes, offset, length);
+
+        ByteBuffer data = buffer.duplicate();
+        data.position(HEADER_SIZE + index + RECORD_HEADER_SIZE);
+        data.put(bytes, offset, length);
+
+        buffer.putInt(HEADER_SIZE + index + 4, (int) crc.getValue());
+        buffer.putInt(HEADER_SIZE + index, length);
+
+        writePosition += recordSize;
+        buffer.putLong(WRITE_POSITION_OFFSET, writePosition);
+        buffer.putLong(LAST_WRITE_OFFSET, System.currentTimeMillis());
+
+        return true;
+    }
+
+    /**
+     * Refreshes the last write time without appending a record, so the agent does not take an idle ring for the ring
+     * of a dead process.
+     */
+    public synchronized void touch() {
+        if (!writable) {
+            throw new IllegalStateException("The metric ring is read only: " + file);
+        }
+        buffer.putLong(LAST_WRITE_OFFSET, System.currentTimeMillis());
+    }
+
+    /**
+     * @return Returns a cursor reading the records from the oldest record still in the ring (or from the current write
+     *         position if the ring has already wrapped, as the record boundaries are unknown then).
+     */
+    public Cursor cursor() {
+        long position = getWritePosition();
+        return new Cursor((position <= capacity) ? 0 : position);
+    }
+
+    public long getWritePosition() {
+        return buffer.getLong(WRITE_POSITION_OFFSET);
+    }
+
+    /**
+     * @return Returns the time of the last append or {@link #touch()}, in milliseconds.
+     */
+    public long getLastWriteMillis() {
+        return buffer.getLong(LAST_WRITE_OFFSET);
+    }
+
+    /**
+     * @return Returns true if the writer closed the ring. No more records are appended.
+     */
+    public boolean isClosed() {
+        return buffer.getInt(CLOSED_OFFSET) != 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Closes the file. The writer also marks the ring closed. The mapping itself is released when the ring is garbage
+     * collected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writable) {
+            synchronized (this) {
+                buffer.putInt(CLOSED_OFFSET, 1);
+                buffer.force();
+            }
+        }
+        randomAccessFile.close();
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    /**
+     * Read position of a reader. Not thread safe.
+     */
+    public class Cursor {
+
+        private long position;
+
+        private long lostBytes;
+
+        private final CRC32 readCrc = new CRC32();
+
+        Cursor(long position) {
+            this.position = position;
+        }
+
+        /**
+         * @return Returns the payloads of the records appended since the last poll.
+         */
+        public List<byte[]> poll() {
+
+            List<byte[]> records = new ArrayList<byte[]>();
+
+            long limit = getWritePosition();
+
+            while (position < limit) {
+
+                if (limit - position > capacity) {
+                    // Lapped by the writer
+                    skipTo(limit);
+                    break;
+                }
+
+                int index = (int) (position % capacity);
+                int length = buffer.getInt(HEADER_SIZE + index);
+
+                if (length == PADDING) {
+                    position += capacity - index;
+                    continue;
+                }
+
+                if (length < 0 || align(RECORD_HEADER_SIZE + length) > capacity - index) {
+                    skipIfLapped();
+                    break;
+                }
+
+                int checksum = buffer.getInt(HEADER_SIZE + index + 4);
+
+                byte[] record = new byte[length];
+                ByteBuffer data = buffer.duplicate();
+                data.position(HEADER_SIZE + index + RECORD_HEADER_SIZE);
+                data.get(record);
+
+                readCrc.reset();
+                readCrc.update(record, 0, length);
+
+                if ((int) readCrc.getValue() != checksum || getWritePosition() - position > capacity) {
+                    skipIfLapped();
+                    break;
+                }
+
+                records.add(record);
+                position += align(RECORD_HEADER_SIZE + length);
+            }
+
+            return records;
+        }
+
+        /**
+         * Skips the records overwritten while copied. A record not lapped is kept for the next poll, so the intact
+         * records after it are not lost.
+         */
+        private void skipIfLapped() {
+            long writePosition = getWritePosition();
+            if (writePosition - position > capacity) {
+                skipTo(writePosition);
+            }
+        }
+
+        /**
+         * Skips the records not read yet and counts them as lost. Used for the rings no longer written, where a record
+         * failing the check will never become valid.
+         */
+        public void skipRemaining() {
+            skipTo(Math.max(position, getWritePosition()));
+        }
+
+        private void skipTo(long newPosition) {
+            lostBytes += newPosition - position;
+            position = newPosition;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * @return Returns true if all records appended so far are read.
+         */
+        public boolean isCaughtUp() {
+            return position >= getWritePosition();
+        }
+
+        /**
+         * @return Returns the bytes of the records overwritten before they were read.
+         */
+        public long getLostBytes() {
+            return lostBytes;
+        }
+    }
+}
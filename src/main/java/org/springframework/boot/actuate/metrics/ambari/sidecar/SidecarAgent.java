@@ -0,0 +1,430 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.sidecar;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.ambari.SidecarAmbariMetricWriter;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.ambari.restclient.SyncAmbariMetricsCollectorRestClient;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
+/**
+ * Host local agent consolidating the metrics of many JVMs. The SidecarAmbariMetricWriter of every JVM appends its
+ * flushed batches to its own {@link MetricRingFile} in a shared directory. The agent periodically reads all rings,
+ * merges the series of the same metric (application, host, instance and metric name) and sends the consolidated
+ * metrics to the Ambari Metrics Collector in a few large batches, instead of one request stream per JVM.
+ * 
+ * The metrics of a failed send are kept and merged into the next round, up to {@link #setMaxPendingMetrics(int)
+ * maxPendingMetrics} series of up to {@link #setMaxPendingPoints(int) maxPendingPoints} points each. The oldest
+ * series and the oldest points of a series are dropped beyond that. The rings closed by their writers, or not
+ * written for {@link #setStaleRingMillis(long) staleRingMillis}, are deleted once read. A live writer refreshes its
+ * ring every {@link SidecarAmbariMetricWriter#HEARTBEAT_MILLIS}, even when idle, so only the rings of the processes
+ * that died without closing them go stale. The stale ring period must be well above the heartbeat period. A writer
+ * whose ring was deleted anyway (e.g. after a long pause) creates it again.
+ * 
+ * Run with:
+ * 
+ * <pre>
+ * java -cp ambari-metric-writer.jar:... org.springframework.boot.actuate.metrics.ambari.sidecar.SidecarAgent \
+ *      --directory=/tmp/ambari-metrics --collector-host=ams.example.com [--collector-port=6188] \
+ *      [--interval-millis=10000]
+ * </pre>
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class SidecarAgent implements Runnable, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SidecarAgent.class);
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 10000;
+
+    public static final int DEFAULT_MAX_BATCH_METRICS = 1000;
+
+    public static final int DEFAULT_MAX_PENDING_METRICS = 100000;
+
+    public static final int DEFAULT_MAX_PENDING_POINTS = 1000;
+
+    public static final long DEFAULT_STALE_RING_MILLIS = 10 * 60 * 1000;
+
+    private final File directory;
+
+    private final SyncAmbariMetricsCollectorRestClient restClient;
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<File, RingReader> rings = new HashMap<File, RingReader>();
+
+    /**
+     * Merged metrics not sent yet, in arrival order.
+     */
+    private final LinkedHashMap<String, TimelineMetric> pending = new LinkedHashMap<String, TimelineMetric>();
+
+    private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
+    private int maxBatchMetrics = DEFAULT_MAX_BATCH_METRICS;
+
+    private int maxPendingMetrics = DEFAULT_MAX_PENDING_METRICS;
+
+    private int maxPendingPoints = DEFAULT_MAX_PENDING_POINTS;
+
+    private long staleRingMillis = DEFAULT_STALE_RING_MILLIS;
+
+    private long droppedMetrics;
+
+    private long droppedPoints;
+
+    private volatile boolean running = true;
+
+    public SidecarAgent(File directory, String metricsCollectorHost, String metricsCollectorPort) {
+        this(directory, new SyncAmbariMetricsCollectorRestClient(metricsCollectorHost, metricsCollectorPort));
+    }
+
+    public SidecarAgent(File directory, SyncAmbariMetricsCollectorRestClient restClient) {
+        this.directory = directory;
+        this.restClient = restClient;
+
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JaxbAnnotationModule());
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * Reads all rings, merges the new metrics and sends them.
+     * 
+     * @return Returns the number of metrics sent.
+     */
+    public synchronized int runOnce() {
+        openNewRings();
+        readRings();
+        return sendPending();
+    }
+
+    private void openNewRings() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(MetricRingFile.FILE_SUFFIX) && !rings.containsKey(file)) {
+                try {
+                    MetricRingFile ring = MetricRingFile.open(file);
+                    rings.put(file, new RingReader(ring));
+                    logger.info("Reading metric ring " + file);
+                } catch (IOException e) {
+                    // Possibly still being created
+                    logger.debug("Can not open metric ring " + file + ": " + e);
+                }
+            }
+        }
+    }
+
+    private void readRings() {
+        long now = System.currentTimeMillis();
+
+        Iterator<RingReader> iterator = rings.values().iterator();
+        while (iterator.hasNext()) {
+            RingReader reader = iterator.next();
+            MetricRingFile ring = reader.ring;
+
+            // Checked before the poll, so the records appended before the close are read
+            boolean finished = ring.isClosed() || (now - ring.getLastWriteMillis() > staleRingMillis);
+
+            for (byte[] record : reader.cursor.poll()) {
+                try {
+                    merge(objectMapper.readValue(record, TimelineMetrics.class));
+                } catch (IOException e) {
+                    logger.warn("Skipped an unreadable metric record of " + ring.getFile() + ": " + e);
+                }
+            }
+
+            if (finished && !reader.cursor.isCaughtUp()) {
+                // No longer written, so a record failing the check will not become valid
+                reader.cursor.skipRemaining();
+            }
+
+            long lost = reader.cursor.getLostBytes();
+            if (lost > reader.reportedLostBytes) {
+                logger.warn("The agent fell behind " + ring.getFile() + ": " + (lost - reader.reportedLostBytes)
+                        + " bytes of metrics were overwritten or corrupted");
+                reader.reportedLostBytes = lost;
+            }
+
+            if (finished && reader.cursor.isCaughtUp()) {
+                iterator.remove();
+                close(ring);
+                if (!ring.getFile().delete()) {
+                    logger.warn("Can not delete the metric ring " + ring.getFile());
+                }
+                logger.info("Removed metric ring " + ring.getFile());
+            }
+        }
+    }
+
+    private void merge(TimelineMetrics timelineMetrics) {
+        for (TimelineMetric metric : timelineMetrics.getMetrics()) {
+            String key = metric.getAppId() + '\u0000' + metric.getHostName() + '\u0000' + metric.getInstanceId()
+                    + '\u0000' + metric.getMetricName();
+            TimelineMetric merged = pending.get(key);
+            if (merged == null) {
+                merged = new TimelineMetric(metric);
+                pending.put(key, merged);
+            } else {
+                merged.addMetricValues(metric.getMetricValues());
+                merged.setStartTime(Math.min(merged.getStartTime(), metric.getStartTime()));
+                merged.setTimestamp(merged.getStartTime());
+            }
+            dropOldestPoints(merged);
+        }
+
+        // Drops the oldest metrics if the collector is down for long
+        Iterator<TimelineMetric> iterator = pending.values().iterator();
+        while (pending.size() > maxPendingMetrics && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            droppedMetrics++;
+        }
+    }
+
+    /**
+     * Bounds the points of a series kept while the collector is down. The merged values are ordered by timestamp.
+     */
+    private void dropOldestPoints(TimelineMetric metric) {
+        Map<Long, Double> values = metric.getMetricValues();
+        if (values.size() <= maxPendingPoints) {
+            return;
+        }
+        Iterator<Long> iterator = values.keySet().iterator();
+        while (values.size() > maxPendingPoints && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            droppedPoints++;
+        }
+        long startTime = values.isEmpty() ? metric.getStartTime() : values.keySet().iterator().next();
+        metric.setStartTime(startTime);
+        metric.setTimestamp(startTime);
+    }
+
+    private int sendPending() {
+        int sent = 0;
+        while (!pending.isEmpty()) {
+            List<String> keys = new ArrayList<String>(Math.min(maxBatchMetrics, pending.size()));
+            TimelineMetrics batch = new TimelineMetrics();
+            for (Map.Entry<String, TimelineMetric> entry : pending.entrySet()) {
+                if (keys.size() >= maxBatchMetrics) {
+                    break;
+                }
+                keys.add(entry.getKey());
+                batch.getMetrics().add(entry.getValue());
+            }
+
+            boolean success;
+            try {
+                success = restClient.putMetrics(batch);
+            } catch (Exception e) {
+                logger.warn("Failed to send " + keys.size() + " metrics: " + e);
+                success = false;
+            }
+            if (!success) {
+                // Retried on the next round
+                break;
+            }
+
+            for (String key : keys) {
+                pending.remove(key);
+            }
+            sent += keys.size();
+        }
+        return sent;
+    }
+
+    /**
+     * Runs {@link #runOnce()} every {@link #setIntervalMillis(long) intervalMillis} until closed.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                runOnce();
+            } catch (Exception e) {
+                logger.error("Metric agent round failed", e);
+            }
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the agent after a last round and closes the rings.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        runOnce();
+        for (RingReader reader : rings.values()) {
+            close(reader.ring);
+        }
+        rings.clear();
+    }
+
+    private void close(MetricRingFile ring) {
+        try {
+            ring.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close " + ring.getFile(), e);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public int getMaxBatchMetrics() {
+        return maxBatchMetrics;
+    }
+
+    public void setMaxBatchMetrics(int maxBatchMetrics) {
+        this.maxBatchMetrics = Math.max(1, maxBatchMetrics);
+    }
+
+    public int getMaxPendingMetrics() {
+        return maxPendingMetrics;
+    }
+
+    public void setMaxPendingMetrics(int maxPendingMetrics) {
+        this.maxPendingMetrics = maxPendingMetrics;
+    }
+
+    public int getMaxPendingPoints() {
+        return maxPendingPoints;
+    }
+
+    /**
+     * @param maxPendingPoints
+     *            Max number of points kept per pending series. The oldest points are dropped beyond that.
+     */
+    public void setMaxPendingPoints(int maxPendingPoints) {
+        this.maxPendingPoints = Math.max(1, maxPendingPoints);
+    }
+
+    public long getStaleRingMillis() {
+        return staleRingMillis;
+    }
+
+    public void setStaleRingMillis(long staleRingMillis) {
+        this.staleRingMillis = staleRingMillis;
+    }
+
+    public synchronized int getRingCount() {
+        return rings.size();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long getDroppedMetrics() {
+        return droppedMetrics;
+    }
+
+    public synchronized long getDroppedPoints() {
+        return droppedPoints;
+    }
+
+    private static class RingReader {
+
+        private final MetricRingFile ring;
+
+        private final MetricRingFile.Cursor cursor;
+
+        private long reportedLostBytes;
+
+        RingReader(MetricRingFile ring) {
+            this.ring = ring;
+            this.cursor = ring.cursor();
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                usage("Invalid argument: " + arg);
+                return;
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        if (!options.containsKey("directory") || !options.containsKey("collector-host")) {
+            usage("The --directory and --collector-host arguments are required");
+            return;
+        }
+
+        String port = options.containsKey("collector-port") ? options.get("collector-port") : "6188";
+        final SidecarAgent agent = new SidecarAgent(new File(options.get("directory")),
+                options.get("collector-host"), port);
+        if (options.containsKey("interval-millis")) {
+            agent.setIntervalMillis(Long.parseLong(options.get("interval-millis")));
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                agent.close();
+            }
+        }, "ambari-metric-agent-shutdown"));
+
+        logger.info("Metric agent reading " + agent.getDirectory() + " every " + agent.getIntervalMillis() + "ms");
+        agent.run();
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: SidecarAgent --directory=<ring directory> --collector-host=<host> "
+                + "[--collector-port=6188] [--interval-millis=10000]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.spool;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.ambari.json.JsonByteBuffer;
+import org.springframework.boot.actuate.metrics.ambari.json.TimelineMetricsJsonEncoder;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
+/**
+ * Directory of {@link TimelineMetrics} batches that could not be sent, e.g. before the shutdown deadline. Every batch
+ * is stored as a separate file holding the JSON payload sent to the Ambari Metrics Collector. The files are written
+ * under a temporary name and renamed when complete, so a crash never leaves a partial batch to replay.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class MetricSpool {
+
+    private static final String FILE_PREFIX = "metrics-";
+
+    private static final String FILE_SUFFIX = ".json";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+
+    private final TimelineMetricsJsonEncoder encoder = new TimelineMetricsJsonEncoder();
+
+    private final ObjectMapper objectMapper;
+
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    public MetricSpool(File directory) {
+        this.directory = directory;
+
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JaxbAnnotationModule());
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * Stores the batch.
+     * 
+     * @return Returns the spool file.
+     */
+    public File write(TimelineMetrics timelineMetrics) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create the metric spool directory: " + directory);
+        }
+
+        JsonByteBuffer buffer = new JsonByteBuffer(16 * 1024);
+        encoder.encode(timelineMetrics, buffer);
+
+        // The timestamp keeps the files ordered across restarts, the sequence within one
+        String name = String.format("%s%013d-%06d", FILE_PREFIX, System.currentTimeMillis(),
+                sequence.incrementAndGet() % 1000000);
+        File tempFile = new File(directory, name + TEMP_SUFFIX);
+        File file = new File(directory, name + FILE_SUFFIX);
+
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            buffer.writeTo(out);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Can not rename the metric spool file: " + tempFile);
+        }
+        return file;
+    }
+
+    /**
+     * @return Returns the spooled batch files, oldest first.
+     */
+    public List<File> list() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        List<File> spooled = new ArrayList<File>(files.length);
+        for (File file : files) {
+            if (file.isFile() && file.getName().startsWith(FILE_PREFIX) && file.getName().endsWith(FILE_SUFFIX)) {
+                spooled.add(file);
+            }
+        }
+        File[] sorted = spooled.toArray(new File[spooled.size()]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+    public TimelineMetrics read(File file) throws IOException {
+        return objectMapper.readValue(file, TimelineMetrics.class);
+    }
+
+    public boolean delete(File file) {
+        return file.delete();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.tuning;
+
+/**
+ * Tunes the flush threshold (metric buffer size) and the flush interval online from the observed ingestion rate,
+ * payload size, serialization time and HTTP latency. Aims for either a target request rate or a target payload size:
+ * <ul>
+ * <li>target request rate: the threshold is the number of points ingested per target request period;</li>
+ * <li>target payload size: the threshold is the number of points that encode to the target payload size.</li>
+ * </ul>
+ * The flush interval follows the time to fill the threshold at the current ingestion rate, so a quiet period still
+ * flushes. When a flush costs (serialization plus HTTP latency) more than half of the flush interval the collector does
+ * not keep up and the threshold is doubled. The threshold changes by at most a factor of two per flush.
+ * 
+ * The observations are smoothed with exponential moving averages. Thread safe.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class AdaptiveFlushTuner {
+
+    public static final int DEFAULT_MIN_BUFFER_SIZE = 10;
+
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 10000;
+
+    /**
+     * Weight of the latest observation in the moving averages.
+     */
+    private static final double EMA_ALPHA = 0.3;
+
+    private static final long MIN_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final long MAX_FLUSH_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Max fraction of the flush interval a flush is allowed to take.
+     */
+    private static final double MAX_FLUSH_COST_RATIO = 0.5;
+
+    private final double targetRequestsPerMinute;
+
+    private final long targetPayloadBytes;
+
+    private final int minBufferSize;
+
+    private final int maxBufferSize;
+
+    private int bufferSize;
+
+    private long flushIntervalMillis;
+
+    private long lastFlushMillis = -1;
+
+    private double pointsPerSecond = -1;
+
+    private double bytesPerPoint = -1;
+
+    private double encodeMillis = -1;
+
+    private double sendLatencyMillis = -1;
+
+    private long failedSends;
+
+    /**
+     * @param targetRequestsPerMinute
+     *            Target number of flushes per minute. 0 to target the payload size instead.
+     * @param targetPayloadBytes
+     *            Target payload size. Used when no target request rate is set.
+     * @param initialBufferSize
+     *            Buffer size used until the first observations.
+     */
+    public AdaptiveFlushTuner(double targetRequestsPerMinute, long targetPayloadBytes, int initialBufferSize) {
+        this(targetRequestsPerMinute, targetPayloadBytes, initialBufferSize, DEFAULT_MIN_BUFFER_SIZE,
+                DEFAULT_MAX_BUFFER_SIZE);
+    }
+
+    public AdaptiveFlushTuner(double targetRequestsPerMinute, long targetPayloadBytes, int initialBufferSize,
+            int minBufferSize, int maxBufferSize) {
+        if (targetRequestsPerMinute <= 0 && targetPayloadBytes <= 0) {
+            throw new IllegalArgumentException("Either a target request rate or a target payload size is required");
+        }
+        if (minBufferSize < 1 || maxBufferSize < minBufferSize) {
+            throw new IllegalArgumentException("Invalid buffer size range: [" + minBufferSize + ", " + maxBufferSize
+                    + "]");
+        }
+        this.targetRequestsPerMinute = targetRequestsPerMinute;
+        this.targetPayloadBytes = targetPayloadBytes;
+        this.minBufferSize = minBufferSize;
+        this.maxBufferSize = maxBufferSize;
+        this.bufferSize = clamp(initialBufferSize, minBufferSize, maxBufferSize);
+        this.flushIntervalMillis = (targetRequestsPerMinute > 0) ? clamp((long) (60000 / targetRequestsPerMinute),
+                MIN_FLUSH_INTERVAL_MILLIS, MAX_FLUSH_INTERVAL_MILLIS) : MAX_FLUSH_INTERVAL_MILLIS;
+    }
+
+    /**
+     * Records a flush of the metric buffer and recomputes the threshold and interval.
+     * 
+     * @param points
+     *            Number of points flushed.
+     * @param nowMillis
+     *            Flush time.
+     */
+    public synchronized void recordFlush(long points, long nowMillis) {
+        if (lastFlushMillis >= 0 && nowMillis > lastFlushMillis) {
+            pointsPerSecond = ema(pointsPerSecond, points * 1000.0 / (nowMillis - lastFlushMillis));
+        }
+        lastFlushMillis = nowMillis;
+        tune();
+    }
+
+    /**
+     * Records an encoded payload.
+     * 
+     * @param points
+     *            Number of points in the payload.
+     * @param bytes
+     *            Payload size.
+     * @param encodeNanos
+     *            Serialization time.
+     */
+    public synchronized void recordPayload(long points, long bytes, long encodeNanos) {
+        if (points > 0) {
+            bytesPerPoint = ema(bytesPerPoint, (double) bytes / points);
+        }
+        encodeMillis = ema(encodeMillis, encodeNanos / 1e6);
+    }
+
+    /**
+     * Records a completed HTTP request.
+     */
+    public synchronized void recordSend(long latencyNanos, boolean success) {
+        sendLatencyMillis = ema(sendLatencyMillis, latencyNanos / 1e6);
+        if (!success) {
+            failedSends++;
+        }
+    }
+
+    private void tune() {
+        long target = bufferSize;
+
+        if (targetRequestsPerMinute > 0) {
+            if (pointsPerSecond > 0) {
+                target = (long) (pointsPerSecond * 60 / targetRequestsPerMinute);
+            }
+        } else if (bytesPerPoint > 0) {
+            target = (long) (targetPayloadBytes / bytesPerPoint);
+        }
+
+        // The collector does not keep up: batch more
+        double flushCost = Math.max(0, encodeMillis) + Math.max(0, sendLatencyMillis);
+        if (pointsPerSecond > 0 && flushCost > MAX_FLUSH_COST_RATIO * (target * 1000 / pointsPerSecond)) {
+            target = Math.max(target, 2L * bufferSize);
+        }
+
+        // Smooth the step
+        target = clamp(target, bufferSize / 2, 2L * bufferSize);
+        bufferSize = (int) clamp(target, minBufferSize, maxBufferSize);
+
+        if (pointsPerSecond > 0) {
+            flushIntervalMillis = clamp((long) (bufferSize * 1000 / pointsPerSecond), MIN_FLUSH_INTERVAL_MILLIS,
+                    MAX_FLUSH_INTERVAL_MILLIS);
+        }
+    }
+
+    private static double ema(double average, double value) {
+        return (average < 0) ? value : average + EMA_ALPHA * (value - average);
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * @return Returns the tuned flush threshold in points.
+     */
+    public synchronized int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return Returns the tuned time bound of a flush.
+     */
+    public synchronized long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public synchronized double getPointsPerSecond() {
+        return pointsPerSecond;
+    }
+
+    public synchronized double getBytesPerPoint() {
+        return bytesPerPoint;
+    }
+
+    public synchronized double getEncodeMillis() {
+        return encodeMillis;
+    }
+
+    public synchronized double getSendLatencyMillis() {
+        return sendLatencyMillis;
+    }
+
+    public synchronized long getFailedSends() {
+        return failedSends;
+    }
+
+    public double getTargetRequestsPerMinute() {
+        return targetRequestsPerMinute;
+    }
+
+    public long getTargetPayloadBytes() {
+        return targetPayloadBytes;
+    }
+}
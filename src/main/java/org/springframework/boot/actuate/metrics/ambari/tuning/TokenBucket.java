@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.tuning;
+
+/**
+ * Token bucket limiting the bytes per second sent to the collector. The bucket fills at the configured rate up to the
+ * burst size. The size of a payload is known only once it is encoded, so the payload bytes are {@link #consume(long)
+ * consumed} after the fact and the bucket may go into debt. A flush is allowed only while the bucket is not in debt, so
+ * the long term send rate converges to the configured rate.
+ * 
+ * Thread safe.
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+public class TokenBucket {
+
+    private final long bytesPerSecond;
+
+    private final long burstBytes;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    /**
+     * @param bytesPerSecond
+     *            Refill rate in bytes per second.
+     * @param burstBytes
+     *            Bucket capacity in bytes. 0 defaults to one second worth of bytes.
+     */
+    public TokenBucket(long bytesPerSecond, long burstBytes) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("The byte rate must be positive: " + bytesPerSecond);
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstBytes = (burstBytes > 0) ? burstBytes : bytesPerSecond;
+        this.tokens = this.burstBytes;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * @return Returns true if the bucket is not in debt.
+     */
+    public boolean hasTokens() {
+        return hasTokens(System.nanoTime());
+    }
+
+    public synchronized boolean hasTokens(long nowNanos) {
+        refill(nowNanos);
+        return tokens > 0;
+    }
+
+    /**
+     * @param nowNanos
+     *            Current {@link System#nanoTime()}.
+     * @return Returns the nanoseconds until the bucket is out of debt or 0 if it is not in debt.
+     */
+    public synchronized long getDebtNanos(long nowNanos) {
+        refill(nowNanos);
+        return (tokens > 0) ? 0 : (long) (-tokens * 1e9 / bytesPerSecond) + 1;
+    }
+
+    /**
+     * Takes the bytes of a sent payload out of the bucket.
+     * 
+     * @param bytes
+     *            Payload size in bytes.
+     */
+    public void consume(long bytes) {
+        consume(bytes, System.nanoTime());
+    }
+
+    public synchronized void consume(long bytes, long nowNanos) {
+        refill(nowNanos);
+        tokens -= bytes;
+    }
+
+    /**
+     * @return Returns the bytes that can be sent right now. Negative while the bucket is in debt.
+     */
+    public synchronized long getAvailableBytes() {
+        refill(System.nanoTime());
+        return (long) tokens;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsedNanos = nowNanos - lastRefillNanos;
+        if (elapsedNanos > 0) {
+            tokens = Math.min(burstBytes, tokens + elapsedNanos * bytesPerSecond / 1e9);
+            lastRefillNanos = nowNanos;
+        }
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getBurstBytes() {
+        return burstBytes;
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.ambari.lane.PriorityLane;
+import org.springframework.boot.actuate.metrics.ambari.tuning.AdaptiveFlushTuner;
+
+public class AmbariMetricWriterLifecycleTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RecordingMetricWriter writer;
+
+    @Before
+    public void before() {
+        writer = new RecordingMetricWriter();
+        writer.setShutdownChunkSize(10);
+        writer.setShutdownParallelism(4);
+        writer.setShutdownTimeoutMillis(5000);
+    }
+
+    @Test
+    public void stopSendsBufferedMetricsInParallelChunks() {
+        writer.start();
+        assertThat(writer.isRunning(), is(true));
+
+        for (int i = 0; i < 35; i++) {
+            writer.set(new Metric<Number>("metric" + i, i, new Date(1000)));
+        }
+
+        writer.stop();
+
+        assertThat(writer.isRunning(), is(false));
+        assertThat(writer.getMetricBuffer().isEmpty(), is(true));
+        assertThat(writer.chunkSizes.size(), is(4));
+        assertThat(writer.sentMetricNames().size(), is(35));
+        assertThat(writer.threads.size() > 1, is(true));
+        assertThat(writer.getMetricObjectPool().getTimelineMetricPool().getNumActive(), is(0));
+        assertThat(writer.getMetricObjectPool().getTimelineMetricsPool().getNumActive(), is(0));
+    }
+
+    @Test
+    public void unsentChunksAreSpooledAndReplayed() throws Exception {
+        writer.setSpoolDirectory(folder.getRoot());
+        writer.setShutdownTimeoutMillis(200);
+        writer.block = new CountDownLatch(1);
+
+        for (int i = 0; i < 15; i++) {
+            writer.set(new Metric<Number>("metric" + i, i, new Date(1000)));
+        }
+
+        assertThat(writer.drain(200), is(false));
+        writer.block.countDown();
+
+        assertThat(writer.getMetricSpool().list().size(), is(2));
+
+        // Next start
+        RecordingMetricWriter restarted = new RecordingMetricWriter();
+        restarted.setSpoolDirectory(folder.getRoot());
+        assertThat(restarted.replaySpool(), is(2));
+
+        assertThat(restarted.sentMetricNames().size(), is(15));
+        assertThat(restarted.getMetricSpool().list().size(), is(0));
+    }
+
+    @Test
+    public void lateSendDeletesItsSpoolCopy() throws Exception {
+        writer.setSpoolDirectory(folder.getRoot());
+        writer.block = new CountDownLatch(1);
+        writer.ignoreInterrupts = true;
+
+        for (int i = 0; i < 5; i++) {
+            writer.set(new Metric<Number>("metric" + i, i, new Date(1000)));
+        }
+
+        assertThat(writer.drain(200), is(false));
+        assertThat(writer.getMetricSpool().list().size(), is(1));
+
+        // The abandoned send succeeds after all
+        writer.block.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((!writer.getMetricSpool().list().isEmpty() || writer.getMetricObjectPool().getTimelineMetricPool()
+                .getNumActive() > 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(writer.sentMetricNames().size(), is(5));
+        // Not replayed twice and the metric objects are back in the pool
+        assertThat(writer.getMetricSpool().list().size(), is(0));
+        assertThat(writer.getMetricObjectPool().getTimelineMetricPool().getNumActive(), is(0));
+        assertThat(writer.getMetricObjectPool().getTimelineMetricsPool().getNumActive(), is(0));
+    }
+
+    @Test
+    public void closeFlushDoesNotRescheduleTheTunedFlush() throws Exception {
+        writer.setFlushTuner(new AdaptiveFlushTuner(6, 0, 100));
+        writer.set(new Metric<Number>("metric1", 1, new Date(1000)));
+        writer.flushMetricBuffer();
+        Thread.sleep(50);
+
+        writer.set(new Metric<Number>("metric1", 2, new Date(2000)));
+        writer.close();
+
+        assertThat(writer.getNextFlushDelayMillis(), is(-1L));
+    }
+
+    @Test
+    public void failedReplayKeepsSpoolFiles() throws Exception {
+        writer.setSpoolDirectory(folder.getRoot());
+        writer.fail = true;
+
+        writer.set(new Metric<Number>("metric1", 1, new Date(1000)));
+        assertThat(writer.drain(1000), is(false));
+        assertThat(writer.getMetricSpool().list().size(), is(1));
+
+        assertThat(writer.replaySpool(), is(0));
+        assertThat(writer.getMetricSpool().list().size(), is(1));
+    }
+
+    @Test
+    public void priorityLaneSentOnItsOwnThread() throws Exception {
+        writer.setPriorityLanes(Arrays.asList(new PriorityLane("critical", 0, 0, "counter.status.5*")));
+
+        writer.set(new Metric<Number>("gauge.heap", 1, new Date(1000)));
+        writer.set(new Metric<Number>("counter.status.503", 1, new Date(1000)));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.metricNames.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(writer.metricNames, is((List<String>) Arrays.asList("counter.status.503")));
+        assertThat(writer.threads.iterator().next().getName(), is("ambari-metric-lane-critical"));
+        // The bulk metric waits for its own buffer to fill
+        assertThat(writer.getMetricBuffer().size(), is(1L));
+
+        assertThat(writer.drain(1000), is(true));
+        assertThat(writer.sentMetricNames(), is((Set<String>) new HashSet<String>(Arrays.asList("counter.status.503",
+                "gauge.heap"))));
+    }
+
+    private static class RecordingMetricWriter extends AmbariMetricWriter {
+
+        private final List<Integer> chunkSizes = new CopyOnWriteArrayList<Integer>();
+
+        private final List<String> metricNames = new CopyOnWriteArrayList<String>();
+
+        private final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+
+        private volatile CountDownLatch block;
+
+        private volatile boolean fail;
+
+        private volatile boolean ignoreInterrupts;
+
+        RecordingMetricWriter() {
+            super("app", "host", null, 1000);
+        }
+
+        @Override
+        protected void doSendMetrics(TimelineMetrics timelineMetrics) {
+            if (fail) {
+                throw new IllegalStateException("Collector down");
+            }
+            threads.add(Thread.currentThread());
+            try {
+                // Gives the other chunks a chance to run on the other threads
+                Thread.sleep(20);
+                awaitBlock();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Send interrupted");
+            }
+            chunkSizes.add(timelineMetrics.getMetrics().size());
+            for (TimelineMetric metric : timelineMetrics.getMetrics()) {
+                metricNames.add(metric.getMetricName());
+            }
+        }
+
+        private void awaitBlock() throws InterruptedException {
+            CountDownLatch latch = block;
+            if (latch == null) {
+                return;
+            }
+            if (!ignoreInterrupts) {
+                latch.await(5, TimeUnit.SECONDS);
+                return;
+            }
+            // Like a blocking socket read, not interrupted by the cancellation
+            while (latch.getCount() > 0) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // Ignored
+                }
+            }
+        }
+
+        Set<String> sentMetricNames() {
+            return new HashSet<String>(metricNames);
+        }
+    }
+}
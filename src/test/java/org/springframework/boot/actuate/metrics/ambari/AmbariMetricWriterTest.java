@@ -18,17 +18,27 @@
 package org.springframework.boot.actuate.metrics.ambari;
 
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Random;
 
 import org.junit.Test;
 import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricNameDictionary;
+import org.springframework.boot.actuate.metrics.ambari.filter.MetricNameFilter;
+import org.springframework.boot.actuate.metrics.ambari.history.MetricHistory;
+import org.springframework.boot.actuate.metrics.ambari.lane.PriorityLane;
+import org.springframework.boot.actuate.metrics.ambari.tuning.AdaptiveFlushTuner;
+import org.springframework.boot.actuate.metrics.ambari.tuning.TokenBucket;
 import org.springframework.http.HttpMethod;
 import org.springframework.test.web.client.MockRestServiceServer;
 
@@ -101,6 +111,220 @@ public abstract class AmbariMetricWriterTest {
                 .getTimelineMetricPool().getNumActive());
     }
 
+    @Test
+    public void excludedMetricsAreNotBuffered() {
+        mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", contains("metric1"))).andRespond(withSuccess());
+
+        ambariMetricWriter.setMetricNameFilter(new MetricNameFilter(new String[] { "metric*" },
+                new String[] { "metric2" }));
+
+        ambariMetricWriter.set(metric("metric1", random.nextLong(), 666f));
+        ambariMetricWriter.set(metric("metric2", random.nextLong(), 666f));
+        ambariMetricWriter.set(metric("other", random.nextLong(), 666f));
+        ambariMetricWriter.set("other2", random.nextLong(), 666d);
+        ambariMetricWriter.set("other3", random.nextLong(), 666L);
+
+        ambariMetricWriter.flushMetricBuffer();
+
+        mockServer.verify();
+
+        // The excluded names are not registered
+        MetricNameDictionary dictionary = ambariMetricWriter.getMetricNameDictionary();
+        assertEquals(-1, dictionary.findId("metric2"));
+        assertEquals(-1, dictionary.findId("other"));
+        assertEquals(-1, dictionary.findId("other2"));
+        assertEquals(-1, dictionary.findId("other3"));
+    }
+
+    @Test
+    public void setBatch() {
+        mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", contains("metric1"))).andRespond(withSuccess());
+
+        ambariMetricWriter.setMetricBufferSize(1);
+        ambariMetricWriter.setMetricNameFilter(new MetricNameFilter(null, new String[] { "metric2" }));
+
+        // Single flush once the whole batch is buffered
+        ambariMetricWriter.set("group", Arrays.<Metric<?>> asList(metric("metric1", 1, 666f),
+                metric("metric1", 2, 667f), metric("metric2", 3, 668f)));
+
+        mockServer.verify();
+    }
+
+    @Test
+    public void adaptiveTuningObservesFlushes() {
+        mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", contains("metric1"))).andRespond(withSuccess());
+
+        AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(0, 100000, 10);
+        ambariMetricWriter.setFlushTuner(tuner);
+
+        for (int i = 0; i < 5; i++) {
+            ambariMetricWriter.set(metric("metric1", i, 666f));
+        }
+        ambariMetricWriter.flushMetricBuffer();
+
+        mockServer.verify();
+
+        assertTrue(tuner.getBytesPerPoint() > 0);
+        assertTrue(tuner.getEncodeMillis() >= 0);
+        assertTrue(tuner.getSendLatencyMillis() >= 0);
+        // Grows towards the 100KB payload target, at most doubling per flush
+        assertEquals(20, ambariMetricWriter.getMetricBufferSize());
+
+        ambariMetricWriter.setFlushIntervalMillis(0);
+    }
+
+    @Test
+    public void priorityLaneMetricsSentSeparately() {
+        mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", contains("counter.status.500")))
+                .andRespond(withSuccess());
+        mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", contains("metric1"))).andRespond(withSuccess());
+
+        ambariMetricWriter.setPriorityLanes(Arrays.asList(new PriorityLane("critical", 100, 0, "counter.status.5*")));
+
+        ambariMetricWriter.set(metric("metric1", random.nextLong(), 666f));
+        ambariMetricWriter.set(metric("counter.status.500", random.nextLong(), 1f));
+
+        assertEquals(1, ambariMetricWriter.getMetricBuffer().size());
+
+        // The lanes are flushed first
+        ambariMetricWriter.flushMetricBuffer();
+
+        mockServer.verify();
+    }
+
+    @Test
+    public void flushedMetricsKeptInHistory() {
+        mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", contains("metric1"))).andRespond(withSuccess());
+
+        ambariMetricWriter.setMetricHistory(new MetricHistory(60000));
+
+        long now = System.currentTimeMillis();
+        ambariMetricWriter.set(metric("metric1", now - 1000, 1f));
+        ambariMetricWriter.set(metric("metric1", now, 2f));
+
+        ambariMetricWriter.flushMetricBuffer();
+
+        mockServer.verify();
+
+        assertEquals(2, ambariMetricWriter.getMetricHistory().findHistory("metric1").size());
+        assertEquals(2.0, ambariMetricWriter.getMetricHistory().findOne("metric1").getValue());
+    }
+
+    @Test
+    public void applicationsShareOneBatch() {
+        mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", contains("metric1", "metric1")))
+                .andExpect(jsonPath("$.metrics[*].appid", containsInAnyOrder("applicationId", "app2")))
+                .andExpect(jsonPath("$.metrics[*].instanceid", containsInAnyOrder("instanceId", "instance2")))
+                .andRespond(withSuccess());
+
+        ApplicationMetricWriter app2 = ambariMetricWriter.forApplication("app2", "instance2");
+        assertSame(app2, ambariMetricWriter.forApplication("app2", "instance2"));
+
+        // The name patterns apply to the application metrics
+        ambariMetricWriter.setMetricNameFilter(new MetricNameFilter(null, new String[] { "metric2" }));
+
+        ambariMetricWriter.set(metric("metric1", random.nextLong(), 666f));
+        app2.set(metric("metric1", random.nextLong(), 667f));
+        app2.set(metric("metric2", random.nextLong(), 668f));
+
+        assertEquals(2, ambariMetricWriter.getMetricBuffer().size());
+
+        ambariMetricWriter.flushMetricBuffer();
+
+        mockServer.verify();
+    }
+
+    @Test
+    public void applicationBatchesAndHistoryKeptPerInstance() {
+        mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", containsInAnyOrder("metric1", "metric1", "metric2")))
+                .andExpect(jsonPath("$.metrics[*].instanceid", containsInAnyOrder("instance2", "instance3",
+                        "instance3")))
+                .andRespond(withSuccess());
+
+        ambariMetricWriter.setMetricHistory(new MetricHistory(60000));
+
+        long now = System.currentTimeMillis();
+        ambariMetricWriter.forApplication("app2", "instance2").set(metric("metric1", now, 1f));
+        ambariMetricWriter.forApplication("app2", "instance3").set("group",
+                Arrays.<Metric<?>> asList(metric("metric1", now, 2f), metric("metric2", now, 3f)));
+
+        assertEquals(3, ambariMetricWriter.getMetricBuffer().size());
+
+        ambariMetricWriter.flushMetricBuffer();
+
+        mockServer.verify();
+
+        MetricHistory history = ambariMetricWriter.getMetricHistory();
+        assertEquals(1.0, history.findOne("app2:instance2:metric1").getValue());
+        assertEquals(2.0, history.findOne("app2:instance3:metric1").getValue());
+        assertEquals(3.0, history.findOne("app2:instance3:metric2").getValue());
+    }
+
+    @Test
+    public void deferFlushesBeyondTheSendRate() {
+        mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", contains("metric1"))).andRespond(withSuccess());
+
+        // The first payload puts the bucket into debt for minutes
+        ambariMetricWriter.setSendRateLimiter(new TokenBucket(1, 10));
+        ambariMetricWriter.setMetricBufferSize(0);
+
+        ambariMetricWriter.set(metric("metric1", random.nextLong(), 666f));
+        ambariMetricWriter.set(metric("metric2", random.nextLong(), 666f));
+        ambariMetricWriter.set(metric("metric2", random.nextLong(), 667f));
+        ambariMetricWriter.set(metric("metric2", random.nextLong(), 668f));
+
+        mockServer.verify();
+
+        // Deferred three times during the same debt
+        assertEquals(1, ambariMetricWriter.getDeferredFlushes());
+        assertEquals(3, ambariMetricWriter.getMetricBuffer().size());
+    }
+
+    @Test
+    public void flushPhaseSpreadByHost() {
+        long interval = 60000;
+        assertEquals(interval, ambariMetricWriter.getFlushPhaseMillis(interval));
+
+        ambariMetricWriter.setFlushPhaseJitter(true);
+        ambariMetricWriter.setMetricHostName("host-01");
+        long phase1 = ambariMetricWriter.getFlushPhaseMillis(interval);
+        assertTrue(phase1 >= 1 && phase1 <= interval);
+        assertEquals(phase1, ambariMetricWriter.getFlushPhaseMillis(interval));
+
+        ambariMetricWriter.setMetricHostName("host-02");
+        long phase2 = ambariMetricWriter.getFlushPhaseMillis(interval);
+        assertTrue(phase2 >= 1 && phase2 <= interval);
+        assertTrue(Math.abs(phase1 - phase2) > 100);
+    }
+
+    @Test
+    public void tunedRescheduleSkipsThePhase() {
+        long interval = 60000;
+        ambariMetricWriter.setFlushPhaseJitter(true);
+        for (int i = 0; ambariMetricWriter.getFlushPhaseMillis(2 * interval) > interval; i++) {
+            ambariMetricWriter.setMetricHostName("host-" + i);
+        }
+
+        ambariMetricWriter.setFlushIntervalMillis(2 * interval);
+        assertTrue(ambariMetricWriter.getNextFlushDelayMillis() <= interval);
+
+        // An interval change of the tuner does not start the phase over
+        ambariMetricWriter.rescheduleFlush(2 * interval + 1000);
+        assertTrue(ambariMetricWriter.getNextFlushDelayMillis() > 2 * interval);
+
+        ambariMetricWriter.setFlushIntervalMillis(0);
+        assertEquals(-1, ambariMetricWriter.getNextFlushDelayMillis());
+    }
+
     private static Metric<Number> metric(String name, long timestamp, float value) {
         return new Metric<Number>(name, value, new Date(timestamp));
     }
@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.FanOutAmbariMetricWriter.CollectorEndpoint;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.ResponseCreator;
+
+public class FanOutAmbariMetricWriterTest {
+
+    private FanOutAmbariMetricWriter writer;
+
+    private MockRestServiceServer primary;
+
+    private MockRestServiceServer secondary;
+
+    @Before
+    public void before() {
+        writer = new FanOutAmbariMetricWriter(new String[] { "primary", "secondary:6189" }, "app", "host", null, 100);
+        writer.setRetryBackoffMillis(1);
+        primary = MockRestServiceServer.createServer(endpoint(0).getRestClient().getRestTemplate());
+        secondary = MockRestServiceServer.createServer(endpoint(1).getRestClient().getRestTemplate());
+    }
+
+    @After
+    public void after() throws Exception {
+        writer.close();
+    }
+
+    @Test
+    public void sendTheSamePayloadToAllCollectors() {
+        primary.expect(requestTo("http://primary:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", contains("metric1"))).andRespond(withSuccess());
+        secondary.expect(requestTo("http://secondary:6189/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", contains("metric1"))).andRespond(withSuccess());
+
+        writer.set(new Metric<Number>("metric1", 1, new Date(1000)));
+        writer.flushMetricBuffer();
+        assertTrue(writer.drain(5000));
+
+        primary.verify();
+        secondary.verify();
+        assertEquals(1, endpoint(0).getSentPayloads());
+        assertEquals(1, endpoint(1).getSentPayloads());
+    }
+
+    @Test
+    public void retryEachCollectorIndependently() {
+        writer.setMaxAttempts(2);
+
+        // The primary recovers on retry, the secondary stays down
+        primary.expect(requestTo("http://primary:6188/ws/v1/timeline/metrics")).andRespond(withServerError());
+        primary.expect(requestTo("http://primary:6188/ws/v1/timeline/metrics")).andRespond(withSuccess());
+        secondary.expect(requestTo("http://secondary:6189/ws/v1/timeline/metrics")).andRespond(withServerError());
+        secondary.expect(requestTo("http://secondary:6189/ws/v1/timeline/metrics")).andRespond(withServerError());
+
+        writer.set(new Metric<Number>("metric1", 1, new Date(1000)));
+        writer.flushMetricBuffer();
+        writer.drain(5000);
+
+        primary.verify();
+        secondary.verify();
+        assertEquals(1, endpoint(0).getSentPayloads());
+        assertEquals(1, endpoint(0).getRetries());
+        assertEquals(0, endpoint(1).getSentPayloads());
+        assertEquals(1, endpoint(1).getFailedPayloads());
+    }
+
+    @Test
+    public void dropWritesAfterClose() throws Exception {
+        FanOutAmbariMetricWriter closed = new FanOutAmbariMetricWriter(new String[] { "primary" }, "app", "host",
+                null, 100);
+        closed.close();
+
+        closed.set(new Metric<Number>("metric1", 1, new Date(1000)));
+        closed.flushMetricBuffer();
+
+        assertEquals(1, closed.getEndpoints().get(0).getDroppedPayloads());
+        assertEquals(0, closed.getPendingSends());
+    }
+
+    @Test
+    public void overflowCancelsTheBlockingSend() throws Exception {
+        final FanOutAmbariMetricWriter slow = new FanOutAmbariMetricWriter(new String[] { "primary" }, "app", "host",
+                null, 100, 1);
+        CollectorEndpoint endpoint = slow.getEndpoints().get(0);
+        MockRestServiceServer server = MockRestServiceServer.createServer(endpoint.getRestClient().getRestTemplate());
+
+        final CountDownLatch inFlight = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        server.expect(requestTo("http://primary:6188/ws/v1/timeline/metrics")).andRespond(new ResponseCreator() {
+            @Override
+            public ClientHttpResponse createResponse(ClientHttpRequest request) throws IOException {
+                inFlight.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return withSuccess().createResponse(request);
+            }
+        });
+        server.expect(requestTo("http://primary:6188/ws/v1/timeline/metrics")).andRespond(withSuccess());
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            // Occupies the collector thread
+            endpoint.submit(new byte[] { '{', '}' });
+            assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+
+            // Queued behind the send in flight
+            final TimelineMetrics timelineMetrics = new TimelineMetrics();
+            timelineMetrics.setMetrics(new ArrayList<TimelineMetric>());
+            Future<Boolean> blockingSend = caller.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return slow.sendBlocking(timelineMetrics, 30000);
+                }
+            });
+            while (slow.getPendingSends() < 2) {
+                Thread.sleep(1);
+            }
+
+            // Overflows the queue, the blocking send is dropped
+            endpoint.submit(new byte[] { '{', '}' });
+
+            assertFalse(blockingSend.get(5, TimeUnit.SECONDS));
+            assertEquals(1, endpoint.getDroppedPayloads());
+        } finally {
+            release.countDown();
+            caller.shutdown();
+            slow.close();
+        }
+
+        server.verify();
+        assertEquals(2, endpoint.getSentPayloads());
+        assertEquals(0, slow.getPendingSends());
+    }
+
+    private CollectorEndpoint endpoint(int index) {
+        return writer.getEndpoints().get(index);
+    }
+}
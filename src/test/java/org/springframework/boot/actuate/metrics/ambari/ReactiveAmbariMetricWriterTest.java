@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.util.Date;
+
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.web.client.MockRestServiceServer;
+
+public class ReactiveAmbariMetricWriterTest extends AmbariMetricWriterTest {
+
+    private int metricsBufferSize = 10;
+    private String ambariMetricsCollectorHost = "localhost";
+    private String ambariMetricsCollectorPort = "6188";
+    private String applicationId = "applicationId";
+    private String instanceId = "instanceId";
+    private String hostName = "hostName";
+
+    @Before
+    public void before() {
+
+        ambariMetricWriter = new ReactiveAmbariMetricWriter(ambariMetricsCollectorHost, ambariMetricsCollectorPort,
+                applicationId, hostName, instanceId, metricsBufferSize);
+
+        mockServer = MockRestServiceServer.createServer(((ReactiveAmbariMetricWriter) ambariMetricWriter)
+                .getTimelineRestClient().getRestTemplate());
+    }
+
+    @Test
+    public void metricSubscriberRequestsBufferSizeWindows() {
+        ReactiveAmbariMetricWriter writer = (ReactiveAmbariMetricWriter) ambariMetricWriter;
+
+        for (int i = 0; i < 2; i++) {
+            mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics"))
+                    .andExpect(method(HttpMethod.POST))
+                    .andExpect(jsonPath("$.metrics[*].metricname", Matchers.contains("metric1")))
+                    .andRespond(withSuccess());
+        }
+
+        TestSubscription subscription = new TestSubscription();
+        Subscriber<Metric<?>> subscriber = writer.getMetricSubscriber();
+        subscriber.onSubscribe(subscription);
+        assertThat(subscription.requested, is(10L));
+
+        for (int i = 0; i < 22; i++) {
+            subscriber.onNext(new Metric<Number>("metric1", i, new Date(i)));
+        }
+        subscriber.onComplete();
+
+        mockServer.verify();
+        assertThat(subscription.requested >= 22, is(true));
+        assertThat(writer.getMetricObjectPool().getTimelineMetricsPool().getNumActive(), is(0));
+    }
+
+    @Test
+    public void metricSubscriberDoesNotReenterRequest() {
+        ReactiveAmbariMetricWriter writer = (ReactiveAmbariMetricWriter) ambariMetricWriter;
+        writer.setMetricBufferSize(100);
+
+        final Subscriber<Metric<?>> subscriber = writer.getMetricSubscriber();
+        final int[] depth = new int[2];
+        final int[] emitted = new int[1];
+
+        // Emits synchronously from request(), like many publishers do. onNext asks for more once half of the window
+        // is consumed, while the outer request call is still running
+        subscriber.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+                depth[1] = Math.max(depth[1], ++depth[0]);
+                for (long i = 0; i < n && emitted[0] < 60; i++) {
+                    emitted[0]++;
+                    subscriber.onNext(new Metric<Number>("metric1", emitted[0], new Date(emitted[0])));
+                }
+                depth[0]--;
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+
+        assertThat(emitted[0], is(60));
+        assertThat(depth[1], is(1));
+        assertThat(writer.getMetricBuffer().size(), is(60L));
+    }
+
+    @Test
+    public void periodicFlush() throws InterruptedException {
+        mockServer.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", Matchers.contains("metric1")))
+                .andRespond(withSuccess());
+
+        ambariMetricWriter.set(new Metric<Number>("metric1", 666, new Date(1)));
+        ambariMetricWriter.setFlushIntervalMillis(10);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ambariMetricWriter.getMetricObjectPool().getTimelineMetricsPool().getBorrowedCount() == 0
+                || ambariMetricWriter.getMetricObjectPool().getTimelineMetricsPool().getNumActive() > 0) {
+            assertThat("No periodic flush", System.currentTimeMillis() < deadline, is(true));
+            Thread.sleep(10);
+        }
+        ambariMetricWriter.setFlushIntervalMillis(0);
+
+        mockServer.verify();
+    }
+
+    @Test
+    public void closeWaitsForTheSendsInFlight() throws Exception {
+        ReactiveAmbariMetricWriter writer = new LateSendWriter(ambariMetricsCollectorHost,
+                ambariMetricsCollectorPort, applicationId, hostName, instanceId, metricsBufferSize);
+        MockRestServiceServer server = MockRestServiceServer.createServer(writer.getTimelineRestClient()
+                .getRestTemplate());
+        server.expect(requestTo("http://localhost:6188/ws/v1/timeline/metrics")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics[*].metricname", Matchers.contains("metric1")))
+                .andRespond(withSuccess());
+
+        writer.set(new Metric<Number>("metric1", 666, new Date(1)));
+        writer.close();
+
+        server.verify();
+        assertThat(writer.getSendsInFlight(), is(0));
+        assertThat(writer.getPublisher().getPendingCount(), is(0));
+    }
+
+    /**
+     * Sends the batches late, on another thread.
+     */
+    private static class LateSendWriter extends ReactiveAmbariMetricWriter {
+
+        LateSendWriter(String host, String port, String applicationId, String hostName, String instanceId,
+                int bufferSize) {
+            super(host, port, applicationId, hostName, instanceId, bufferSize);
+        }
+
+        @Override
+        protected void doSendMetrics(final TimelineMetrics timelineMetrics) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    sendLate(timelineMetrics);
+                }
+            }).start();
+        }
+
+        private void sendLate(TimelineMetrics timelineMetrics) {
+            super.doSendMetrics(timelineMetrics);
+        }
+    }
+
+    private static class TestSubscription implements Subscription {
+
+        private long requested;
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
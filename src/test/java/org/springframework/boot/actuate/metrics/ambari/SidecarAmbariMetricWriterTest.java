@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.sidecar.MetricRingFile;
+
+public class SidecarAmbariMetricWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SidecarAmbariMetricWriter writer;
+
+    @Before
+    public void before() {
+        writer = new SidecarAmbariMetricWriter(folder.getRoot(), 64 * 1024, "app1", "host", null, 100);
+    }
+
+    @After
+    public void after() throws Exception {
+        writer.close();
+    }
+
+    @Test
+    public void writersOfTheSameApplicationUseTheirOwnRing() throws Exception {
+        SidecarAmbariMetricWriter other = new SidecarAmbariMetricWriter(folder.getRoot(), 64 * 1024, "app1", "host",
+                null, 100);
+        try {
+            assertThat(other.getRingFile().getFile(), not(writer.getRingFile().getFile()));
+
+            writer.set(new Metric<Number>("metric1", 1.0, new Date(1000)));
+            writer.flushMetricBuffer();
+
+            // Creating the second ring did not truncate the first one
+            assertThat(writer.getRingFile().cursor().poll().size(), is(1));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void heartbeatRefreshesAnIdleRing() throws Exception {
+        MetricRingFile ring = writer.getRingFile();
+        long lastWrite = ring.getLastWriteMillis();
+        Thread.sleep(5);
+
+        writer.heartbeat();
+
+        assertThat(ring.getLastWriteMillis(), greaterThan(lastWrite));
+    }
+
+    @Test
+    public void heartbeatCreatesADeletedRingAgain() throws Exception {
+        MetricRingFile deleted = writer.getRingFile();
+        assertThat(deleted.getFile().delete(), is(true));
+
+        writer.heartbeat();
+
+        MetricRingFile ring = writer.getRingFile();
+        assertThat(ring, not(deleted));
+        assertThat(ring.getFile().exists(), is(true));
+
+        writer.set(new Metric<Number>("metric1", 1.0, new Date(1000)));
+        writer.flushMetricBuffer();
+
+        MetricRingFile reader = MetricRingFile.open(ring.getFile());
+        try {
+            assertThat(reader.cursor().poll().size(), is(1));
+        } finally {
+            reader.close();
+        }
+    }
+}
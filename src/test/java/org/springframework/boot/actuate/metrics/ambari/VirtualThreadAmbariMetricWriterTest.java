@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.ExecutorServiceAdapter;
+import org.springframework.test.web.client.MockRestServiceServer;
+
+public class VirtualThreadAmbariMetricWriterTest extends AmbariMetricWriterTest {
+
+    private int metricsBufferSize = 10;
+    private String ambariMetricsCollectorHost = "localhost";
+    private String ambariMetricsCollectorPort = "6188";
+    private String applicationId = "applicationId";
+    private String instanceId = "instanceId";
+    private String hostName = "hostName";
+
+    @Before
+    public void before() {
+
+        VirtualThreadAmbariMetricWriter writer = new VirtualThreadAmbariMetricWriter(ambariMetricsCollectorHost,
+                ambariMetricsCollectorPort, applicationId, hostName, instanceId, metricsBufferSize, 2);
+        // Send on the calling thread, so the common tests can verify the requests right after the flush
+        writer.setSendExecutor(new ExecutorServiceAdapter(new SyncTaskExecutor()));
+        ambariMetricWriter = writer;
+
+        mockServer = MockRestServiceServer.createServer(writer.getTimelineRestClient().getRestTemplate());
+    }
+
+    @Test
+    public void concurrentSendsAreBounded() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final AtomicInteger sent = new AtomicInteger();
+
+        final VirtualThreadAmbariMetricWriter writer = new VirtualThreadAmbariMetricWriter(
+                ambariMetricsCollectorHost, ambariMetricsCollectorPort, applicationId, hostName, instanceId, 0, 2) {
+            @Override
+            protected void doSendMetrics(TimelineMetrics timelineMetrics) {
+                int current = concurrent.incrementAndGet();
+                maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                concurrent.decrementAndGet();
+                sent.incrementAndGet();
+            }
+        };
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Every set flushes (buffer size 0). The third flush blocks until a permit is released.
+                for (int i = 0; i < 4; i++) {
+                    writer.set(new Metric<Number>("metric1", i, new Date(i)));
+                }
+            }
+        });
+        producer.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getSendsInFlight() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(writer.getSendsInFlight(), is(2));
+        assertThat(producer.isAlive(), is(true));
+
+        release.countDown();
+        producer.join(5000);
+        writer.close();
+
+        assertThat(sent.get(), is(4));
+        assertThat(maxConcurrent.get() <= 2, is(true));
+        assertThat(writer.getMetricObjectPool().getTimelineMetricsPool().getNumActive(), is(0));
+    }
+
+    @Test
+    public void closeWaitsUpToTheShutdownTimeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger sends = new AtomicInteger();
+
+        VirtualThreadAmbariMetricWriter writer = new VirtualThreadAmbariMetricWriter(ambariMetricsCollectorHost,
+                ambariMetricsCollectorPort, applicationId, hostName, instanceId, 10, 2) {
+            @Override
+            protected void doSendMetrics(TimelineMetrics timelineMetrics) {
+                sends.incrementAndGet();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        writer.setShutdownTimeoutMillis(100);
+        writer.set(new Metric<Number>("metric1", 1, new Date(1)));
+
+        long start = System.currentTimeMillis();
+        writer.close();
+        release.countDown();
+
+        assertThat(System.currentTimeMillis() - start < 5000, is(true));
+        // Flushed once, before the sender is shut down
+        assertThat(sends.get(), is(1));
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.actuate.metrics.ambari.codec.GorillaDecoder;
+import org.springframework.boot.actuate.metrics.ambari.codec.GorillaEncoder;
+
+/**
+ * Measures the {@link GorillaEncoder} encode and {@link GorillaDecoder} decode throughput of a series of regularly
+ * sampled points. The values follow the typical metric distributions: integral counters, gauges with 1-3 decimals and
+ * full precision ratios. The encoded bytes per point are printed on setup.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=GorillaCodecBenchmark
+ * </pre>
+ *
+ * @author tzolov@apache.org
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GorillaCodecBenchmark {
+
+    private static final int POINTS = 360;
+
+    @Param({ "counter", "gauge", "ratio" })
+    public String distribution;
+
+    private long[] timestamps;
+
+    private double[] values;
+
+    private GorillaEncoder encoded;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(666);
+
+        timestamps = new long[POINTS];
+        values = new double[POINTS];
+        double counter = 0;
+        for (int i = 0; i < POINTS; i++) {
+            // 10 seconds sampling with a few milliseconds of jitter
+            timestamps[i] = 1455113271000L + i * 10000 + random.nextInt(5);
+            if ("counter".equals(distribution)) {
+                counter += random.nextInt(100);
+                values[i] = counter;
+            } else if ("gauge".equals(distribution)) {
+                double scale = Math.pow(10, 1 + random.nextInt(3));
+                values[i] = Math.round(random.nextDouble() * 10000 * scale) / scale;
+            } else {
+                values[i] = random.nextDouble();
+            }
+        }
+
+        encoded = encode();
+        System.out.println(String.format("%n%s: %.2f bytes per point", distribution,
+                (double) encoded.getSizeInBytes() / POINTS));
+    }
+
+    @Benchmark
+    public GorillaEncoder encode() {
+        GorillaEncoder encoder = new GorillaEncoder();
+        for (int i = 0; i < POINTS; i++) {
+            encoder.append(timestamps[i], values[i]);
+        }
+        return encoder;
+    }
+
+    @Benchmark
+    public double decode() {
+        GorillaDecoder decoder = encoded.decoder();
+        double sum = 0;
+        while (decoder.next()) {
+            sum += decoder.getValue();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricValues;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.ambari.json.JsonByteBuffer;
+import org.springframework.boot.actuate.metrics.ambari.json.JsonNumberFormatter;
+import org.springframework.boot.actuate.metrics.ambari.json.TimelineMetricsJsonEncoder;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
+/**
+ * Compares the Jackson serialization of a flush payload with the {@link TimelineMetricsJsonEncoder}, and the
+ * {@link JsonNumberFormatter} with {@link Double#toString(double)}. The values follow the typical metric
+ * distributions: integral counters, gauges with 1-3 decimals and full precision ratios.
+ * 
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=JsonEncoderBenchmark
+ * </pre>
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonEncoderBenchmark {
+
+    private static final int METRICS = 100;
+
+    private static final int POINTS = 60;
+
+    @Param({ "counter", "gauge", "ratio" })
+    public String distribution;
+
+    private TimelineMetrics timelineMetrics;
+
+    private double[] values;
+
+    private ObjectMapper objectMapper;
+
+    private TimelineMetricsJsonEncoder encoder;
+
+    private JsonByteBuffer buffer;
+
+    private final byte[] numberBuffer = new byte[64];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(666);
+
+        values = new double[METRICS * POINTS];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = nextValue(random);
+        }
+
+        List<TimelineMetric> metrics = new ArrayList<TimelineMetric>();
+        for (int m = 0; m < METRICS; m++) {
+            TimelineMetric metric = new TimelineMetric();
+            metric.setMetricName("gauge.service.metric" + m);
+            metric.setHostName("host.example.com");
+            metric.setAppId("application");
+            metric.setTimestamp(1455113271000L);
+            metric.setStartTime(1455113271000L);
+
+            MetricValues metricValues = new MetricValues(POINTS);
+            metricValues.setIntegral("counter".equals(distribution));
+            for (int p = 0; p < POINTS; p++) {
+                double value = values[m * POINTS + p];
+                if (metricValues.isIntegral()) {
+                    metricValues.put(1455113271000L + p * 1000, (long) value);
+                } else {
+                    metricValues.put(1455113271000L + p * 1000, value);
+                }
+            }
+            metric.setMetricValues(metricValues);
+            metrics.add(metric);
+        }
+        timelineMetrics = new TimelineMetrics();
+        timelineMetrics.setMetrics(metrics);
+
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JaxbAnnotationModule());
+        objectMapper.setSerializationInclusion(Include.NON_NULL);
+
+        encoder = new TimelineMetricsJsonEncoder();
+        buffer = new JsonByteBuffer(64 * 1024);
+    }
+
+    private double nextValue(Random random) {
+        if ("counter".equals(distribution)) {
+            return random.nextInt(1000000);
+        } else if ("gauge".equals(distribution)) {
+            double scale = Math.pow(10, 1 + random.nextInt(3));
+            return Math.round(random.nextDouble() * 10000 * scale) / scale;
+        }
+        return random.nextDouble();
+    }
+
+    @Benchmark
+    public byte[] jackson() throws Exception {
+        return objectMapper.writeValueAsBytes(timelineMetrics);
+    }
+
+    @Benchmark
+    public int encoder() {
+        buffer.reset();
+        encoder.encode(timelineMetrics, buffer);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public int doubleToString() {
+        int length = 0;
+        for (double value : values) {
+            length += Double.toString(value).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int jsonNumberFormatter() {
+        int length = 0;
+        for (double value : values) {
+            length += JsonNumberFormatter.writeDouble(value, numberBuffer, 0);
+        }
+        return length;
+    }
+}
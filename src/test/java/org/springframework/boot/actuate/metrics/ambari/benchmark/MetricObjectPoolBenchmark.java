@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
+import org.springframework.boot.actuate.metrics.ambari.pool.LockFreeObjectPool;
+import org.springframework.boot.actuate.metrics.ambari.pool.TimelineMetricFactory;
+
+/**
+ * Compares the cost of obtaining and releasing a {@link TimelineMetric} through the commons-pool2
+ * {@link GenericObjectPool}, the {@link LockFreeObjectPool} and plain allocation. Run with:
+ * 
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec
+ * </pre>
+ * 
+ * @author tzolov@apache.org
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MetricObjectPoolBenchmark {
+
+    private GenericObjectPool<TimelineMetric> genericPool;
+
+    private LockFreeObjectPool<TimelineMetric> lockFreePool;
+
+    @Setup
+    public void setup() {
+        TimelineMetricFactory factory = new TimelineMetricFactory();
+
+        genericPool = new GenericObjectPool<TimelineMetric>(factory);
+        genericPool.setMaxTotal(1000);
+        genericPool.setMaxWaitMillis(5000);
+
+        lockFreePool = new LockFreeObjectPool<TimelineMetric>(factory, 1000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        genericPool.close();
+        lockFreePool.close();
+    }
+
+    @Benchmark
+    public TimelineMetric genericObjectPool() throws Exception {
+        TimelineMetric metric = genericPool.borrowObject();
+        metric.setMetricName("metric");
+        genericPool.returnObject(metric);
+        return metric;
+    }
+
+    @Benchmark
+    public TimelineMetric lockFreeObjectPool() {
+        TimelineMetric metric = lockFreePool.borrowObject();
+        metric.setMetricName("metric");
+        lockFreePool.returnObject(metric);
+        return metric;
+    }
+
+    @Benchmark
+    public TimelineMetric allocation() {
+        TimelineMetric metric = new TimelineMetric();
+        metric.setMetricName("metric");
+        return metric;
+    }
+}
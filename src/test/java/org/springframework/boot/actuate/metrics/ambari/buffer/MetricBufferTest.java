@@ -1,18 +1,28 @@
 package org.springframework.boot.actuate.metrics.ambari.buffer;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.domain.AbstractMetricValues;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricNameDictionary;
 
 public class MetricBufferTest {
 
@@ -65,6 +75,83 @@ public class MetricBufferTest {
         assertThat(snapshot.get(M2).values(), containsInAnyOrder(333.0));
     }
 
+    @Test
+    public void testAddAll() {
+        metricBuffer.setPercentileMetrics(M3);
+
+        metricBuffer.addAll(Arrays.<Metric<?>> asList(metric1(M1, TS1, 111.0), metric1(M1, TS2, 222.0),
+                metric1(M2, TS3, 333.0), metric1(M3, TS3, 444.0)));
+
+        assertThat(metricBuffer.size(), is(3L));
+
+        Map<String, Map<Long, Double>> snapshot = metricBuffer.flush();
+
+        assertThat(snapshot.get(M1).keySet(), containsInAnyOrder(TS1, TS2));
+        assertThat(snapshot.get(M2).keySet(), containsInAnyOrder(TS3));
+        assertThat(snapshot.get(M3 + ".p50").values(), containsInAnyOrder(444.0));
+    }
+
+    @Test
+    public void addWithResolvedIds() {
+        MetricNameDictionary dictionary = metricBuffer.getMetricNameDictionary();
+        int m1 = dictionary.getId(M1);
+        int m2 = dictionary.getId(M2);
+
+        metricBuffer.add(m1, metric1(M1, TS1, 111.0));
+        metricBuffer.addAll(new int[] { m1, m2 }, Arrays.<Metric<?>> asList(metric1(M1, TS2, 222.0),
+                metric1(M2, TS3, 333.0)));
+
+        Map<String, Map<Long, Double>> snapshot = metricBuffer.flush();
+
+        assertThat(snapshot.get(M1).values(), containsInAnyOrder(111.0, 222.0));
+        assertThat(snapshot.get(M2).values(), containsInAnyOrder(333.0));
+        assertThat(dictionary.size(), is(2));
+    }
+
+    @Test
+    public void recycleValueMaps() {
+        metricBuffer.add(metric1(M1, TS1, 111.0));
+        Map<Long, Double> values = metricBuffer.flush().get(M1);
+
+        metricBuffer.recycle(values);
+        assertThat(values.size(), is(0));
+
+        // Flush hands the filled map over to the snapshot and replaces it with the recycled one
+        metricBuffer.add(metric1(M1, TS2, 222.0));
+        Map<Long, Double> reused = metricBuffer.flush().get(M1);
+        assertThat(reused, not(sameInstance(values)));
+
+        metricBuffer.add(metric1(M1, TS3, 333.0));
+        assertThat(metricBuffer.flush().get(M1), sameInstance(values));
+    }
+
+    @Test
+    public void offHeapBuffer() throws IOException {
+        metricBuffer.setOffHeapCapacity(1024 * 1024);
+
+        metricBuffer.add(metric1(M1, TS1, 111.0));
+        metricBuffer.add(metric1(M1, TS2, 222.0));
+        metricBuffer.add(metric1(M2, TS3, 333.0));
+
+        Map<String, Map<Long, Double>> snapshot = metricBuffer.flush();
+
+        assertThat(snapshot.get(M1), instanceOf(OffHeapMetricValues.class));
+        assertThat(snapshot.get(M1).values(), contains(111.0, 222.0));
+        assertThat(snapshot.get(M2).values(), contains(333.0));
+
+        OffHeapSlab slab = metricBuffer.getOffHeapSlab();
+        assertThat(slab.getUsedChunks(), is(2));
+
+        metricBuffer.close();
+        // The snapshot still holds off-heap chunks
+        assertFalse(slab.isReleased());
+
+        for (Map<Long, Double> values : snapshot.values()) {
+            metricBuffer.recycle(values);
+        }
+        assertTrue(slab.isReleased());
+    }
+
     @Test
     public void testClose() throws IOException {
         metricBuffer.add(metric1(M1, TS1, 111.0));
@@ -90,6 +177,129 @@ public class MetricBufferTest {
         assertThat(metricBuffer.getMetricType(M3), is("Float"));
     }
 
+    @Test
+    public void integralMetricsAreStoredAsLongs() {
+        long largeCounter = (1L << 53) + 1;
+        metricBuffer.add(new Metric<Long>(M1, largeCounter, new Date(TS1)));
+        metricBuffer.add(M2, TS2, 2.5);
+
+        Map<String, Map<Long, Double>> snapshot = metricBuffer.flush();
+
+        AbstractMetricValues counter = (AbstractMetricValues) snapshot.get(M1);
+        assertTrue(counter.isIntegral());
+        assertThat(counter.getLongValue(0), is(largeCounter));
+        assertFalse(((AbstractMetricValues) snapshot.get(M2)).isIntegral());
+    }
+
+    @Test
+    public void percentileMetrics() {
+        metricBuffer.setPercentileMetrics("latency.*");
+        metricBuffer.setPercentiles(50, 99.9);
+
+        for (int i = 1; i <= 1000; i++) {
+            metricBuffer.add(metric1("latency.get", i, (double) i));
+        }
+        metricBuffer.add(metric1(M1, TS1, 111.0));
+
+        // Sketched samples are not counted as buffered
+        assertThat(metricBuffer.size(), is(1L));
+        assertFalse(metricBuffer.isEmpty());
+
+        Map<String, Map<Long, Double>> snapshot = metricBuffer.flush();
+        assertTrue(metricBuffer.isEmpty());
+
+        assertThat(snapshot.keySet(), containsInAnyOrder(M1, "latency.get.p50", "latency.get.p99_9"));
+        assertThat(snapshot.get("latency.get.p50").keySet(), containsInAnyOrder(1000L));
+        assertThat(snapshot.get("latency.get.p50").get(1000L), closeTo(500, 5));
+        assertThat(snapshot.get("latency.get.p99_9").get(1000L), closeTo(999, 10));
+
+        // The sketch is reset on flush
+        assertThat(metricBuffer.flush().keySet(), hasSize(0));
+    }
+
+    @Test
+    public void percentileNamesKeepTheDecimalPoint() {
+        metricBuffer.setPercentileMetrics("latency.*");
+        metricBuffer.setPercentiles(9.99, 99.9, 99);
+
+        metricBuffer.add(metric1("latency.get", 1000, 1.0));
+
+        assertThat(metricBuffer.flush().keySet(), containsInAnyOrder("latency.get.p9_99", "latency.get.p99_9",
+                "latency.get.p99"));
+    }
+
+    @Test
+    public void quantizedSamplesMerged() {
+        metricBuffer.setTimestampQuantizations(Arrays.asList(new TimestampQuantization(1000,
+                TimestampQuantization.Merge.MAX, "gauge.max*"), new TimestampQuantization(1000,
+                TimestampQuantization.Merge.AVG, "gauge.*"), new TimestampQuantization(1000,
+                TimestampQuantization.Merge.LAST, "counter.*")));
+
+        for (long timestamp : new long[] { 1001, 1500, 1999 }) {
+            metricBuffer.add("gauge.max", timestamp, (double) timestamp);
+            metricBuffer.add("gauge.avg", timestamp, (double) timestamp);
+            metricBuffer.add("counter.last", timestamp, timestamp);
+            metricBuffer.add(M1, timestamp, (double) timestamp);
+        }
+        metricBuffer.add("counter.last", 2001, 2001L);
+
+        // 3 quantized points and 3 raw points
+        assertThat(metricBuffer.size(), is(7L));
+
+        Map<String, Map<Long, Double>> snapshot = metricBuffer.flush();
+
+        assertThat(snapshot.get("gauge.max").keySet(), contains(1000L));
+        assertThat(snapshot.get("gauge.max").get(1000L), is(1999.0));
+        assertThat(snapshot.get("gauge.avg").get(1000L), closeTo(1500, 0.001));
+        assertThat(snapshot.get("counter.last").keySet(), contains(1000L, 2000L));
+        assertThat(snapshot.get("counter.last").get(1000L), is(1999.0));
+        assertTrue(((AbstractMetricValues) snapshot.get("counter.last")).isIntegral());
+        assertThat(snapshot.get(M1).keySet(), contains(1001L, 1500L, 1999L));
+    }
+
+    @Test
+    public void lateSamplesMergedIntoTheirSlot() {
+        metricBuffer.setTimestampQuantizations(Arrays.asList(new TimestampQuantization(1000,
+                TimestampQuantization.Merge.MAX, "gauge.max*"), new TimestampQuantization(1000,
+                TimestampQuantization.Merge.AVG, "gauge.*")));
+
+        for (String name : new String[] { "gauge.max", "gauge.avg" }) {
+            metricBuffer.add(name, 1100, 10.0);
+            metricBuffer.add(name, 2100, 100.0);
+            metricBuffer.add(name, 2200, 200.0);
+            // Late samples of the first slot
+            metricBuffer.add(name, 1200, 30.0);
+            metricBuffer.add(name, 1300, 20.0);
+            // A late sample of a new slot before the last one
+            metricBuffer.add(name, 500, 5.0);
+            // Merged with the right sample count after the insert
+            metricBuffer.add(name, 2300, 300.0);
+        }
+
+        // 3 slots per metric
+        assertThat(metricBuffer.size(), is(6L));
+
+        Map<String, Map<Long, Double>> snapshot = metricBuffer.flush();
+
+        assertThat(snapshot.get("gauge.max").keySet(), contains(0L, 1000L, 2000L));
+        assertThat(snapshot.get("gauge.max").get(1000L), is(30.0));
+        assertThat(snapshot.get("gauge.max").get(2000L), is(300.0));
+
+        assertThat(snapshot.get("gauge.avg").keySet(), contains(0L, 1000L, 2000L));
+        assertThat(snapshot.get("gauge.avg").get(0L), is(5.0));
+        assertThat(snapshot.get("gauge.avg").get(1000L), closeTo(20, 0.001));
+        assertThat(snapshot.get("gauge.avg").get(2000L), closeTo(200, 0.001));
+    }
+
+    @Test
+    public void quantizeNegativeTimestamps() {
+        TimestampQuantization quantization = new TimestampQuantization(1000, TimestampQuantization.Merge.LAST);
+
+        assertThat(quantization.quantize(-1), is(-1000L));
+        assertThat(quantization.quantize(-1000), is(-1000L));
+        assertThat(quantization.quantize(999), is(0L));
+    }
+
     private Metric<?> metric1(String name, long timestamp, Double value) {
         return new Metric<Double>(name, value, new Date(timestamp));
     }
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.buffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class OffHeapMetricValuesTest {
+
+    private OffHeapSlab slab;
+
+    @Before
+    public void before() {
+        // 4 chunks of 2 points
+        slab = new OffHeapSlab(4 * 2 * OffHeapSlab.POINT_BYTES, 2);
+    }
+
+    @Test
+    public void pointsAreOrderedByTimestamp() throws Exception {
+        OffHeapMetricValues values = new OffHeapMetricValues(slab);
+        values.put(30L, 3.0);
+        values.put(10L, 1.0);
+        values.put(40L, 4.0);
+        values.put(20L, 2.0);
+        values.put(20L, 2.5);
+
+        assertThat(values.size(), is(4));
+        assertThat(values.keySet(), contains(10L, 20L, 30L, 40L));
+        assertThat(values.values(), contains(1.0, 2.5, 3.0, 4.0));
+        assertThat(slab.getUsedChunks(), is(2));
+
+        assertThat(new ObjectMapper().writeValueAsString(values), is("{\"10\":1.0,\"20\":2.5,\"30\":3.0,\"40\":4.0}"));
+    }
+
+    @Test
+    public void pointsAreDroppedWhenTheSlabIsFull() {
+        OffHeapMetricValues values = new OffHeapMetricValues(slab);
+        for (long ts = 0; ts < 10; ts++) {
+            values.put(ts, ts);
+        }
+
+        assertThat(values.size(), is(8));
+        assertThat(slab.getRejectedPoints(), is(2L));
+
+        values.clear();
+        assertThat(slab.getUsedChunks(), is(0));
+        assertTrue(values.put(1L, 1.0));
+    }
+
+    @Test
+    public void releaseIsDeferredUntilAllChunksAreFreed() {
+        OffHeapMetricValues values = new OffHeapMetricValues(slab);
+        values.put(1L, 1.0);
+
+        slab.close();
+        assertFalse(slab.isReleased());
+        // No new chunks after close
+        assertThat(slab.allocateChunk(), is(-1));
+        assertThat(values.get(1L), is(1.0));
+
+        values.clear();
+        assertTrue(slab.isReleased());
+    }
+}
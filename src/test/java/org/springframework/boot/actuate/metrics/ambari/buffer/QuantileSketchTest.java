@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.buffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+    private QuantileSketch sketch;
+
+    @Before
+    public void before() {
+        sketch = new QuantileSketch(0.01, 2048);
+    }
+
+    @Test
+    public void emptySketch() {
+        assertThat(sketch.getCount(), is(0L));
+        assertTrue(Double.isNaN(sketch.getValueAtPercentile(50)));
+    }
+
+    @Test
+    public void percentilesWithinRelativeAccuracy() {
+        for (int i = 1; i <= 10000; i++) {
+            sketch.add(i);
+        }
+
+        assertThat(sketch.getCount(), is(10000L));
+        assertThat(sketch.getValueAtPercentile(50), closeTo(5000, 5000 * 0.01));
+        assertThat(sketch.getValueAtPercentile(99), closeTo(9900, 9900 * 0.01));
+        assertThat(sketch.getValueAtPercentile(99.9), closeTo(9990, 9990 * 0.01));
+        assertThat(sketch.getValueAtPercentile(0), is(1.0));
+        assertThat(sketch.getValueAtPercentile(100), is(10000.0));
+    }
+
+    @Test
+    public void negativeAndZeroValues() {
+        for (int i = -100; i <= 100; i++) {
+            sketch.add(i);
+        }
+
+        assertThat(sketch.getValueAtPercentile(0), is(-100.0));
+        assertThat(sketch.getValueAtPercentile(50), is(0.0));
+        assertThat(sketch.getValueAtPercentile(25), closeTo(-50, 50 * 0.01));
+        assertThat(sketch.getValueAtPercentile(75), closeTo(50, 50 * 0.01));
+    }
+
+    @Test
+    public void nonFiniteValuesIgnored() {
+        for (int i = 1; i <= 100; i++) {
+            sketch.add(i);
+        }
+        sketch.add(Double.NaN);
+        sketch.add(Double.POSITIVE_INFINITY);
+        sketch.add(Double.NEGATIVE_INFINITY);
+
+        assertThat(sketch.getCount(), is(100L));
+        assertThat(sketch.getValueAtPercentile(0), is(1.0));
+        assertThat(sketch.getValueAtPercentile(50), closeTo(50, 50 * 0.01));
+        assertThat(sketch.getValueAtPercentile(100), is(100.0));
+    }
+
+    @Test
+    public void merge() {
+        QuantileSketch other = new QuantileSketch(0.01, 2048);
+        for (int i = 1; i <= 5000; i++) {
+            sketch.add(i);
+            other.add(i + 5000);
+        }
+
+        sketch.merge(other);
+
+        assertThat(sketch.getCount(), is(10000L));
+        assertThat(sketch.getValueAtPercentile(50), closeTo(5000, 5000 * 0.01));
+        assertThat(sketch.getValueAtPercentile(99), closeTo(9900, 9900 * 0.01));
+    }
+
+    @Test
+    public void fixedNumberOfBucketsKeepsHighQuantilesAccurate() {
+        QuantileSketch small = new QuantileSketch(0.01, 64);
+        for (int i = 1; i <= 100000; i++) {
+            small.add(i);
+        }
+
+        assertThat(small.getValueAtPercentile(99), closeTo(99000, 99000 * 0.01));
+        assertThat(small.getValueAtPercentile(100), is(100000.0));
+    }
+
+    @Test
+    public void clear() {
+        sketch.add(10);
+        sketch.clear();
+
+        assertThat(sketch.getCount(), is(0L));
+        sketch.add(20);
+        assertThat(sketch.getValueAtPercentile(50), closeTo(20, 20 * 0.01));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeDifferentAccuracy() {
+        sketch.merge(new QuantileSketch(0.05, 2048));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.codec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricValues;
+
+public class GorillaCodecTest {
+
+    @Test
+    public void roundTripRegularSeries() {
+        long[] timestamps = new long[1000];
+        double[] values = new double[timestamps.length];
+        Random random = new Random(666);
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = 1455113271000L + i * 10000;
+            values[i] = 100 + random.nextInt(3);
+        }
+
+        GorillaEncoder encoder = encode(timestamps, values);
+
+        assertRoundTrip(encoder.decoder(), timestamps, values);
+        assertRoundTrip(new GorillaDecoder(encoder.toByteArray(), encoder.getCount()), timestamps, values);
+        // Regular timestamps and slowly changing values take less than 2 bytes per point
+        assertThat(encoder.getSizeInBytes(), lessThan(2 * timestamps.length));
+    }
+
+    @Test
+    public void roundTripIrregularSeries() {
+        long[] timestamps = new long[5000];
+        double[] values = new double[timestamps.length];
+        Random random = new Random(666);
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < timestamps.length; i++) {
+            // Jitter in all delta-of-delta ranges, including repeated timestamps
+            int range = random.nextInt(5);
+            timestamp += (range == 0) ? 0 : random.nextInt(range == 4 ? 10000000 : (int) Math.pow(8, range + 1));
+            timestamps[i] = timestamp;
+            values[i] = (i % 7 == 0) ? values[Math.max(0, i - 1)] : random.nextGaussian() * Math.pow(10, i % 12);
+        }
+        values[10] = Double.NaN;
+        values[11] = Double.POSITIVE_INFINITY;
+        values[12] = -0.0;
+        values[13] = Double.MIN_VALUE;
+
+        GorillaEncoder encoder = encode(timestamps, values);
+
+        assertRoundTrip(encoder.decoder(), timestamps, values);
+        assertRoundTrip(new GorillaDecoder(encoder.toByteArray(), encoder.getCount()), timestamps, values);
+    }
+
+    @Test
+    public void extremeDeltas() {
+        long[] timestamps = { 0, Long.MAX_VALUE / 2, Long.MAX_VALUE / 2 + 1, Long.MAX_VALUE };
+        double[] values = { 1, 2, 3, 4 };
+
+        assertRoundTrip(encode(timestamps, values).decoder(), timestamps, values);
+    }
+
+    @Test
+    public void appendMetricValues() {
+        MetricValues metricValues = new MetricValues();
+        metricValues.put(1000L, 1.0);
+        metricValues.put(2000L, 2.0);
+
+        GorillaEncoder encoder = new GorillaEncoder();
+        encoder.append(metricValues);
+
+        assertThat(encoder.getCount(), is(2));
+        assertThat(encoder.getFirstTimestamp(), is(1000L));
+        assertThat(encoder.getLastTimestamp(), is(2000L));
+        assertRoundTrip(encoder.decoder(), new long[] { 1000, 2000 }, new double[] { 1, 2 });
+    }
+
+    @Test
+    public void decoderSeesThePointsAppendedSoFar() {
+        GorillaEncoder encoder = new GorillaEncoder();
+        encoder.append(1000, 1);
+        GorillaDecoder decoder = encoder.decoder();
+        encoder.append(2000, 2);
+
+        assertThat(decoder.next(), is(true));
+        assertThat(decoder.next(), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timestampsInOrder() {
+        GorillaEncoder encoder = new GorillaEncoder();
+        encoder.append(2000, 1);
+        encoder.append(1000, 1);
+    }
+
+    private static GorillaEncoder encode(long[] timestamps, double[] values) {
+        GorillaEncoder encoder = new GorillaEncoder();
+        for (int i = 0; i < timestamps.length; i++) {
+            encoder.append(timestamps[i], values[i]);
+        }
+        encoder.trim();
+        return encoder;
+    }
+
+    private static void assertRoundTrip(GorillaDecoder decoder, long[] timestamps, double[] values) {
+        for (int i = 0; i < timestamps.length; i++) {
+            assertThat(decoder.next(), is(true));
+            assertEquals(timestamps[i], decoder.getTimestamp());
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.getValue()));
+        }
+        assertThat(decoder.next(), is(false));
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.domain;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricNameDictionaryTest {
+
+    private MetricNameDictionary dictionary;
+
+    @Before
+    public void before() {
+        dictionary = new MetricNameDictionary();
+    }
+
+    @Test
+    public void denseIds() {
+        assertThat(dictionary.getId("gauge.a"), is(0));
+        assertThat(dictionary.getId("gauge.b"), is(1));
+        assertThat(dictionary.getId(new String("gauge.a")), is(0));
+        assertThat(dictionary.size(), is(2));
+
+        assertThat(dictionary.findId("gauge.b"), is(1));
+        assertThat(dictionary.findId("gauge.c"), is(-1));
+        assertThat(dictionary.size(), is(2));
+    }
+
+    @Test
+    public void resolveNames() {
+        for (int i = 0; i < 1000; i++) {
+            assertThat(dictionary.getId("metric." + i), is(i));
+        }
+
+        assertThat(dictionary.getName(999), is("metric.999"));
+        assertThat(dictionary.getName(dictionary.getId("metric.1")), sameInstance(dictionary.getName(1)));
+        assertThat(new String(dictionary.getNameBytes(10)), is("metric.10"));
+    }
+
+    @Test
+    public void concurrentRegistration() throws InterruptedException {
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 1000; i++) {
+                            dictionary.getId("metric." + i);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        done.await();
+
+        assertThat(dictionary.size(), is(1000));
+        Set<String> names = new HashSet<String>();
+        for (int id = 0; id < dictionary.size(); id++) {
+            names.add(dictionary.getName(id));
+            assertThat(dictionary.getId(dictionary.getName(id)), is(id));
+        }
+        assertThat(names.size(), is(1000));
+    }
+}
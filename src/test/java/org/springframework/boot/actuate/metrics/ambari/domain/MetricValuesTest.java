@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.domain;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MetricValuesTest {
+
+    private MetricValues metricValues;
+
+    @Before
+    public void before() {
+        metricValues = new MetricValues(2);
+    }
+
+    @Test
+    public void pointsAreOrderedByTimestamp() {
+        metricValues.put(30L, 3.0);
+        metricValues.put(10L, 1.0);
+        metricValues.put(40L, 4.0);
+        metricValues.put(20L, 2.0);
+
+        assertThat(metricValues.size(), is(4));
+        assertThat(metricValues.keySet(), contains(10L, 20L, 30L, 40L));
+        assertThat(metricValues.values(), contains(1.0, 2.0, 3.0, 4.0));
+        assertThat(metricValues.getFirstTimestamp(), is(10L));
+        assertThat(metricValues.getTimestamp(3), is(40L));
+        assertThat(metricValues.getValue(3), is(4.0));
+    }
+
+    @Test
+    public void putReplacesExistingTimestamp() {
+        assertThat(metricValues.put(10L, 1.0), is(true));
+        assertThat(metricValues.put(10L, 2.0), is(false));
+        assertThat(metricValues.put(Long.valueOf(10L), Double.valueOf(3.0)), is(2.0));
+
+        assertThat(metricValues.size(), is(1));
+        assertThat(metricValues.get(10L), is(3.0));
+        assertThat(metricValues.get(11L), nullValue());
+    }
+
+    @Test
+    public void iteratorRemove() {
+        metricValues.put(10L, 1.0);
+        metricValues.put(20L, 2.0);
+        metricValues.put(30L, 3.0);
+
+        Iterator<Entry<Long, Double>> iterator = metricValues.entrySet().iterator();
+        iterator.next();
+        iterator.next();
+        iterator.remove();
+
+        assertThat(metricValues.keySet(), contains(10L, 30L));
+    }
+
+    @Test
+    public void clearRetainsCapacity() {
+        for (long ts = 0; ts < 100; ts++) {
+            metricValues.put(ts, ts);
+        }
+        metricValues.clear();
+
+        assertThat(metricValues.isEmpty(), is(true));
+        assertThat(metricValues.getFirstTimestamp(), is(0L));
+    }
+
+    @Test
+    public void serialize() throws Exception {
+        metricValues.put(20L, 2.5);
+        metricValues.put(10L, 1.0);
+
+        assertThat(new ObjectMapper().writeValueAsString(metricValues), is("{\"10\":1.0,\"20\":2.5}"));
+    }
+
+    @Test
+    public void integralValuesAreExact() throws Exception {
+        metricValues.setIntegral(true);
+        metricValues.put(10L, Long.MAX_VALUE - 1);
+        metricValues.put(20L, 2L);
+
+        assertThat(metricValues.getLongValue(0), is(Long.MAX_VALUE - 1));
+        assertThat(new ObjectMapper().writeValueAsString(metricValues), is("{\"10\":9223372036854775806,\"20\":2}"));
+    }
+
+    @Test
+    public void fractionalValuePromotesIntegralSeries() {
+        metricValues.setIntegral(true);
+        metricValues.put(10L, 1L);
+        metricValues.put(20L, 2.0);
+        assertThat(metricValues.isIntegral(), is(true));
+
+        metricValues.put(30L, 3.5);
+
+        assertThat(metricValues.isIntegral(), is(false));
+        assertThat(metricValues.values(), contains(1.0, 2.0, 3.5));
+
+        metricValues.clear();
+        assertThat(metricValues.isIntegral(), is(false));
+    }
+}
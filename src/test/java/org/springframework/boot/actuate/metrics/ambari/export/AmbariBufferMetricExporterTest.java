@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.export;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.ambari.AmbariMetricWriter;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+import org.springframework.boot.actuate.metrics.buffer.CounterBuffers;
+import org.springframework.boot.actuate.metrics.buffer.GaugeBuffers;
+
+public class AmbariBufferMetricExporterTest {
+
+    private CounterBuffers counterBuffers;
+    private GaugeBuffers gaugeBuffers;
+    private CapturingMetricWriter metricWriter;
+    private AmbariBufferMetricExporter exporter;
+
+    @Before
+    public void before() {
+        counterBuffers = new CounterBuffers();
+        gaugeBuffers = new GaugeBuffers();
+        metricWriter = new CapturingMetricWriter();
+        exporter = new AmbariBufferMetricExporter(metricWriter, counterBuffers, gaugeBuffers);
+    }
+
+    @Test
+    public void exportCountersAndGauges() {
+        counterBuffers.increment("counter.requests", 3);
+        gaugeBuffers.set("gauge.response.root", 12.5);
+
+        exporter.export();
+        metricWriter.flushMetricBuffer();
+
+        assertThat(metricWriter.sent.keySet(), containsInAnyOrder("counter.requests", "gauge.response.root"));
+        assertThat(metricWriter.sent.get("counter.requests").values(), containsInAnyOrder(3.0));
+        assertThat(metricWriter.sent.get("gauge.response.root").values(), containsInAnyOrder(12.5));
+        assertThat(metricWriter.getMetricBuffer().getMetricType("counter.requests"), is("Long"));
+        assertThat(metricWriter.getMetricBuffer().getMetricType("gauge.response.root"), is("Double"));
+    }
+
+    @Test
+    public void exportOnlyUpdatedValues() throws InterruptedException {
+        counterBuffers.increment("counter.requests", 3);
+        gaugeBuffers.set("gauge.response.root", 12.5);
+        Thread.sleep(5);
+
+        exporter.export();
+        metricWriter.flushMetricBuffer();
+        metricWriter.sent.clear();
+
+        Thread.sleep(5);
+        gaugeBuffers.set("gauge.response.root", 13.5);
+        Thread.sleep(5);
+
+        exporter.export();
+        metricWriter.flushMetricBuffer();
+
+        assertThat(metricWriter.sent.keySet(), containsInAnyOrder("gauge.response.root"));
+
+        metricWriter.sent.clear();
+        exporter.setSendLatest(true);
+
+        exporter.export();
+        metricWriter.flushMetricBuffer();
+
+        assertThat(metricWriter.sent.keySet(), hasSize(2));
+    }
+
+    private static class CapturingMetricWriter extends AmbariMetricWriter {
+
+        private Map<String, Map<Long, Double>> sent = new HashMap<String, Map<Long, Double>>();
+
+        public CapturingMetricWriter() {
+            super("appId", "hostName", "instanceId", 100);
+        }
+
+        @Override
+        protected void doSendMetrics(TimelineMetrics timelineMetrics) {
+            for (TimelineMetric metric : timelineMetrics.getMetrics()) {
+                sent.put(metric.getMetricName(), new HashMap<Long, Double>(metric.getMetricValues()));
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.filter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeadbandFilterTest {
+
+    private DeadbandFilter deadbandFilter;
+
+    @Before
+    public void before() {
+        deadbandFilter = new DeadbandFilter();
+        deadbandFilter.setMetricPatterns("heap.*");
+        deadbandFilter.setMaxSilenceMillis(1000);
+    }
+
+    @Test
+    public void notMatchingMetricsAreAlwaysAccepted() {
+        assertTrue(deadbandFilter.accept("threads", 1, 10));
+        assertTrue(deadbandFilter.accept("threads", 2, 10));
+        assertTrue(deadbandFilter.accept("threads", 3, 10));
+    }
+
+    @Test
+    public void changeOnly() {
+        assertTrue(deadbandFilter.accept("heap.used", 1, 10));
+        assertFalse(deadbandFilter.accept("heap.used", 2, 10));
+        assertTrue(deadbandFilter.accept("heap.used", 3, 11));
+        assertFalse(deadbandFilter.accept("heap.used", 4, 11));
+    }
+
+    @Test
+    public void absoluteThreshold() {
+        deadbandFilter.setAbsoluteThreshold(5);
+
+        assertTrue(deadbandFilter.accept("heap.used", 1, 100));
+        assertFalse(deadbandFilter.accept("heap.used", 2, 104));
+        assertFalse(deadbandFilter.accept("heap.used", 3, 96));
+        // The deadband is relative to the last accepted, not to the last seen value
+        assertTrue(deadbandFilter.accept("heap.used", 4, 106));
+    }
+
+    @Test
+    public void relativeThreshold() {
+        deadbandFilter.setRelativeThreshold(0.1);
+
+        assertTrue(deadbandFilter.accept("heap.used", 1, 100));
+        assertFalse(deadbandFilter.accept("heap.used", 2, 109));
+        assertTrue(deadbandFilter.accept("heap.used", 3, 111));
+        assertFalse(deadbandFilter.accept("heap.used", 4, 120));
+    }
+
+    @Test
+    public void heartbeat() {
+        assertTrue(deadbandFilter.accept("heap.used", 1000, 10));
+        assertFalse(deadbandFilter.accept("heap.used", 1999, 10));
+        assertTrue(deadbandFilter.accept("heap.used", 2000, 10));
+        assertFalse(deadbandFilter.accept("heap.used", 2001, 10));
+    }
+
+    @Test
+    public void reset() {
+        assertTrue(deadbandFilter.accept("heap.used", 1, 10));
+        assertFalse(deadbandFilter.accept("heap.used", 2, 10));
+
+        deadbandFilter.reset("heap.used");
+
+        assertTrue(deadbandFilter.accept("heap.used", 3, 10));
+    }
+}
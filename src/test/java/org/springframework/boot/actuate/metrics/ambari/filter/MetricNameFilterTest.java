@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.filter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MetricNameFilterTest {
+
+    @Test
+    public void acceptAllByDefault() {
+        MetricNameFilter filter = new MetricNameFilter(null, null);
+
+        assertTrue(filter.isAcceptAll());
+        assertTrue(filter.accept("gauge.response.root"));
+    }
+
+    @Test
+    public void includes() {
+        MetricNameFilter filter = new MetricNameFilter(new String[] { "gauge.*", "mem" }, null);
+
+        assertTrue(filter.accept("gauge.response.root"));
+        assertTrue(filter.accept("mem"));
+        assertFalse(filter.accept("mem.free"));
+        assertFalse(filter.accept("counter.status.200.root"));
+        // Cached decision
+        assertFalse(filter.accept("counter.status.200.root"));
+    }
+
+    @Test
+    public void excludesAppliedAfterIncludes() {
+        MetricNameFilter filter = new MetricNameFilter(new String[] { "gauge.*" }, new String[] { "*.star-star" });
+
+        assertTrue(filter.accept("gauge.response.root"));
+        assertFalse(filter.accept("gauge.response.star-star"));
+    }
+
+    @Test
+    public void excludesOnly() {
+        MetricNameFilter filter = new MetricNameFilter(new String[0], new String[] { "counter.*" });
+
+        assertTrue(filter.accept("gauge.response.root"));
+        assertFalse(filter.accept("counter.status.200.root"));
+    }
+
+    @Test
+    public void acceptById() {
+        MetricNameFilter filter = new MetricNameFilter(new String[] { "gauge.*" }, null);
+
+        assertTrue(filter.accept(0, "gauge.response.root"));
+        assertFalse(filter.accept(100, "counter.status.200.root"));
+        // Cached decisions, the names are not evaluated again
+        assertTrue(filter.accept(0, null));
+        assertFalse(filter.accept(100, null));
+    }
+}
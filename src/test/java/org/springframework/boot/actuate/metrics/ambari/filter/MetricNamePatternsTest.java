@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.ambari.domain.QualifiedMetricName;
+
+public class MetricNamePatternsTest {
+
+    @Test
+    public void exactNames() {
+        MetricNamePatterns patterns = new MetricNamePatterns("heap", "heap.used");
+
+        assertTrue(patterns.matches("heap"));
+        assertTrue(patterns.matches("heap.used"));
+        assertFalse(patterns.matches("heap.use"));
+        assertFalse(patterns.matches("heap.used.max"));
+        assertFalse(patterns.matches("hea"));
+    }
+
+    @Test
+    public void wildcards() {
+        MetricNamePatterns patterns = new MetricNamePatterns("gauge.*", "*.count", "mem.*.used", "*error*");
+
+        assertTrue(patterns.matches("gauge."));
+        assertTrue(patterns.matches("gauge.response.root"));
+        assertTrue(patterns.matches("counter.status.count"));
+        assertTrue(patterns.matches("mem.heap.used"));
+        assertTrue(patterns.matches("mem.heap.nonheap.used"));
+        assertTrue(patterns.matches("http.error.500"));
+        assertTrue(patterns.matches("error"));
+
+        assertFalse(patterns.matches("gauge"));
+        assertFalse(patterns.matches("counter.status.counts"));
+        assertFalse(patterns.matches("mem.heap.usedx"));
+        assertFalse(patterns.matches("counter.status.200"));
+    }
+
+    @Test
+    public void sharedPrefixes() {
+        MetricNamePatterns patterns = new MetricNamePatterns("gauge.a*b", "gauge.ab");
+
+        assertTrue(patterns.matches("gauge.ab"));
+        assertTrue(patterns.matches("gauge.axxb"));
+        assertFalse(patterns.matches("gauge.abc"));
+    }
+
+    @Test
+    public void matchAll() {
+        MetricNamePatterns patterns = new MetricNamePatterns("**");
+
+        assertTrue(patterns.matches(""));
+        assertTrue(patterns.matches("anything"));
+    }
+
+    @Test
+    public void qualifiedApplicationNames() {
+        MetricNamePatterns patterns = new MetricNamePatterns("gauge.*", "counter.status.500");
+        String qualified = QualifiedMetricName.qualify(12, "counter.status.500");
+
+        assertTrue(patterns.matches(QualifiedMetricName.qualify(3, "gauge.heap")));
+        assertTrue(patterns.matches(qualified));
+        assertFalse(patterns.matches(QualifiedMetricName.qualify(3, "counter.status.200")));
+
+        assertEquals(12, QualifiedMetricName.getApplicationIndex(qualified));
+        assertEquals("counter.status.500", QualifiedMetricName.getMetricName(qualified));
+        assertEquals(-1, QualifiedMetricName.getApplicationIndex("counter.status.500"));
+        assertEquals("counter.status.500", QualifiedMetricName.getMetricName("counter.status.500"));
+    }
+
+    @Test
+    public void empty() {
+        MetricNamePatterns patterns = new MetricNamePatterns();
+
+        assertTrue(patterns.isEmpty());
+        assertFalse(patterns.matches("gauge"));
+        assertTrue(new MetricNamePatterns((String[]) null).isEmpty());
+        assertFalse(new MetricNamePatterns("a").isEmpty());
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.history;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricValues;
+
+public class MetricHistoryTest {
+
+    @Test
+    public void latestValueOfEverySeries() {
+        MetricHistory history = new MetricHistory(60000);
+        long now = System.currentTimeMillis();
+
+        history.record("gauge.heap", now - 2000, 1);
+        history.record("gauge.heap", now - 1000, 2);
+        history.record("counter.status.200", now, 3);
+
+        assertThat(history.count(), is(2L));
+        assertThat(history.findOne("gauge.heap").getValue(), is((Number) 2.0));
+        assertThat(history.findOne("gauge.heap").getTimestamp().getTime(), is(now - 1000));
+        assertThat(history.findOne("gauge.missing"), is(nullValue()));
+        assertThat(toList(history.findAll()).size(), is(2));
+        assertThat(toList(history.findAll("counter.")).size(), is(1));
+    }
+
+    @Test
+    public void historyOldestFirst() {
+        MetricHistory history = new MetricHistory(60000);
+        long now = System.currentTimeMillis();
+
+        Map<Long, Double> values = new LinkedHashMap<Long, Double>();
+        values.put(now - 2000, 1.0);
+        values.put(now - 1000, 2.0);
+        history.record("gauge.heap", values);
+        // Out of order points are ignored and the last timestamp is overwritten
+        history.record("gauge.heap", now - 3000, 0);
+        history.record("gauge.heap", now - 1000, 3);
+
+        List<Metric<Double>> points = history.findHistory("gauge.heap");
+        assertEquals(2, points.size());
+        assertThat(points.get(0).getValue(), is(1.0));
+        assertThat(points.get(1).getValue(), is(3.0));
+
+        assertEquals(1, history.findHistory("gauge.heap", now - 1500).size());
+    }
+
+    @Test
+    public void recordMetricValuesWithoutBoxing() {
+        MetricHistory history = new MetricHistory(60000);
+        long now = System.currentTimeMillis();
+
+        MetricValues values = new MetricValues();
+        values.put(now - 1000, 1.0);
+        values.put(now, 2.0);
+        history.record("gauge.heap", values);
+
+        assertEquals(2, history.findHistory("gauge.heap").size());
+    }
+
+    @Test
+    public void evictPointsBeyondTheRetention() {
+        MetricHistory history = new MetricHistory(1000);
+        long now = System.currentTimeMillis();
+
+        history.record("gauge.heap", now - 5000, 1);
+        history.record("gauge.heap", now, 2);
+
+        assertEquals(1, history.findHistory("gauge.heap", 0).size());
+    }
+
+    @Test
+    public void boundedPointsPerSeries() {
+        MetricHistory history = new MetricHistory(60000, 10, 20);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 50; i++) {
+            history.record("gauge.heap", now - 50 + i, i);
+        }
+
+        List<Metric<Double>> points = history.findHistory("gauge.heap");
+        assertEquals(20, points.size());
+        assertThat(points.get(0).getValue(), is(30.0));
+        assertThat(points.get(19).getValue(), is(49.0));
+    }
+
+    @Test
+    public void boundedSeries() {
+        MetricHistory history = new MetricHistory(1000, 2, 10);
+        long now = System.currentTimeMillis();
+
+        history.record("metric1", now - 5000, 1);
+        history.record("metric2", now, 1);
+        // The expired metric1 makes room for metric3
+        history.record("metric3", now, 1);
+        history.record("metric4", now, 1);
+
+        assertThat(history.count(), is(2L));
+        assertThat(history.findOne("metric1"), is(nullValue()));
+        assertThat(history.findOne("metric4"), is(nullValue()));
+        assertThat(history.getUntrackedPoints(), is(1L));
+    }
+
+    @Test
+    public void compressedPoints() {
+        MetricHistory history = new MetricHistory(2 * 3600000);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 360; i++) {
+            history.record("gauge.heap", now - 3600000 + i * 10000, 512 + i % 2);
+        }
+
+        assertEquals(360, history.findHistory("gauge.heap").size());
+        assertThat(history.getSizeInBytes() < 2 * 360, is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void retentionRequired() {
+        new MetricHistory(0);
+    }
+
+    private static List<Metric<?>> toList(Iterable<Metric<?>> metrics) {
+        List<Metric<?>> list = new ArrayList<Metric<?>>();
+        for (Metric<?> metric : metrics) {
+            list.add(metric);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.json;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class JsonNumberFormatterTest {
+
+    private final byte[] buffer = new byte[64];
+
+    @Test
+    public void formatLongs() {
+        long[] values = { 0, 1, -1, 9, 10, 99, 100, 1234567890L, -1234567890L, 1455113271000L, Long.MAX_VALUE,
+                Long.MIN_VALUE };
+        for (long value : values) {
+            assertThat(formatLong(value), is(Long.toString(value)));
+        }
+
+        Random random = new Random(666);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >> random.nextInt(64);
+            assertThat(formatLong(value), is(Long.toString(value)));
+        }
+    }
+
+    @Test
+    public void formatTypicalMetricValues() {
+        double[] values = { 0.0, -0.0, 1.0, -1.0, 0.5, 2.0, 666.666, 999.999, 0.1, 0.2, 0.001, 1234.5, 99.99,
+                1e6, 9999999.0, 0.015625, 3.14159 };
+        for (double value : values) {
+            assertThat(formatDouble(value), is(Double.toString(value)));
+        }
+    }
+
+    @Test
+    public void formatLargeValuesAsPlainDecimals() {
+        assertThat(formatDouble(12345678.0), is("12345678.0"));
+        assertThat(formatDouble(1.5e10), is("15000000000.0"));
+        assertThat(formatDouble(-268435456.25), is("-268435456.25"));
+    }
+
+    @Test
+    public void formatOutsideOfTheFastPath() {
+        double[] values = { 1e-4, 1e300, -1e300, Double.MIN_VALUE, Double.MAX_VALUE, 0.1 + 0.2, 1.0 / 3,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        for (double value : values) {
+            assertThat(formatDouble(value), is(Double.toString(value)));
+        }
+    }
+
+    @Test
+    public void randomValuesRoundTrip() {
+        Random random = new Random(666);
+        for (int i = 0; i < 200000; i++) {
+            double value;
+            switch (i % 4) {
+            case 0:
+                value = Double.longBitsToDouble(random.nextLong());
+                break;
+            case 1:
+                value = random.nextDouble();
+                break;
+            case 2:
+                // Gauges with a few decimals
+                value = Math.round(random.nextDouble() * 1e6) / 1000.0;
+                break;
+            default:
+                value = random.nextGaussian() * 1e9;
+            }
+
+            if (Double.isNaN(value)) {
+                continue;
+            }
+
+            String text = formatDouble(value);
+            assertThat(text, Double.doubleToLongBits(Double.parseDouble(text)), is(Double.doubleToLongBits(value)));
+            assertThat(text, text.length() <= JsonNumberFormatter.MAX_DOUBLE_LENGTH, is(true));
+        }
+    }
+
+    private String formatLong(long value) {
+        int end = JsonNumberFormatter.writeLong(value, buffer, 3);
+        return new String(buffer, 3, end - 3);
+    }
+
+    private String formatDouble(double value) {
+        int end = JsonNumberFormatter.writeDouble(value, buffer, 3);
+        return new String(buffer, 3, end - 3);
+    }
+}
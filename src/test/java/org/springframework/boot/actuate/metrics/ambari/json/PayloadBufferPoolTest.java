@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.json;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PayloadBufferPoolTest {
+
+    private PayloadBufferPool pool;
+
+    @Before
+    public void before() {
+        pool = new PayloadBufferPool();
+    }
+
+    @Test
+    public void reuseReleasedBuffer() {
+        JsonByteBuffer buffer = pool.borrow();
+        buffer.writeString("payload");
+        pool.release(buffer);
+
+        JsonByteBuffer reused = pool.borrow();
+        assertThat(reused, sameInstance(buffer));
+        assertThat(reused.size(), is(0));
+        assertThat(pool.getCreatedCount(), is(1L));
+    }
+
+    @Test
+    public void newBuffersAreSizedFromPayloadHistory() {
+        assertThat(pool.getNewBufferSize(), is(PayloadBufferPool.MIN_BUFFER_SIZE));
+
+        for (int i = 0; i < 50; i++) {
+            JsonByteBuffer buffer = pool.borrow();
+            fill(buffer, 100000);
+            pool.release(buffer);
+        }
+
+        assertThat(pool.getPayloadSizeEstimate(), is(100000.0));
+        assertThat(pool.getNewBufferSize(), is(125000));
+    }
+
+    @Test
+    public void oversizedBuffersAreDropped() {
+        for (int i = 0; i < 10; i++) {
+            JsonByteBuffer buffer = pool.borrow();
+            fill(buffer, 1000);
+            pool.release(buffer);
+        }
+
+        JsonByteBuffer buffer = pool.borrow();
+        fill(buffer, 1000000);
+        pool.release(buffer);
+        assertThat(pool.getNumIdle(), is(0));
+
+        assertThat(pool.borrow(), not(sameInstance(buffer)));
+    }
+
+    private void fill(JsonByteBuffer buffer, int size) {
+        for (int i = 0; i < size; i++) {
+            buffer.writeByte('0');
+        }
+    }
+}
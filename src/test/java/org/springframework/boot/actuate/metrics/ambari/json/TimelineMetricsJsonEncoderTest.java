@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.json;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricNameDictionary;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricValues;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
+public class TimelineMetricsJsonEncoderTest {
+
+    private ObjectMapper objectMapper;
+
+    private JsonByteBuffer buffer;
+
+    @Before
+    public void before() {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JaxbAnnotationModule());
+        objectMapper.setSerializationInclusion(Include.NON_NULL);
+
+        buffer = new JsonByteBuffer(16);
+    }
+
+    @Test
+    public void sameOutputAsJackson() throws Exception {
+
+        TimelineMetric full = newMetric("metric1", "a host", "app", "instance");
+        full.setType("Double");
+        Map<Long, Double> values = new TreeMap<Long, Double>();
+        values.put(666666L, 666.666);
+        values.put(999999L, -0.5);
+        full.setMetricValues(values);
+
+        TimelineMetric sparse = newMetric("metric2", null, "app", null);
+        MetricValues integralValues = new MetricValues();
+        integralValues.setIntegral(true);
+        integralValues.put(10L, 42L);
+        integralValues.put(20L, Long.MAX_VALUE);
+        sparse.setMetricValues(integralValues);
+
+        TimelineMetric escaped = newMetric("m\"e\\t\nri\u0001c é€😀", "host", "app", null);
+        MetricValues doubleValues = new MetricValues();
+        doubleValues.put(1L, 0.001);
+        doubleValues.put(2L, 3.14159);
+        doubleValues.put(3L, 0.1 + 0.2);
+        escaped.setMetricValues(doubleValues);
+
+        TimelineMetric empty = newMetric("metric3", "host", "app", null);
+        empty.setType("Long");
+
+        TimelineMetrics timelineMetrics = new TimelineMetrics();
+        timelineMetrics.setMetrics(Arrays.asList(full, sparse, escaped, empty));
+
+        assertThat(encode(timelineMetrics), is(objectMapper.writeValueAsString(timelineMetrics)));
+    }
+
+    @Test
+    public void emptyMetrics() throws Exception {
+        TimelineMetrics timelineMetrics = new TimelineMetrics();
+        assertThat(encode(timelineMetrics), is("{\"metrics\":[]}"));
+        assertThat(encode(timelineMetrics), is(objectMapper.writeValueAsString(timelineMetrics)));
+    }
+
+    @Test
+    public void nonFiniteValuesAreQuoted() throws Exception {
+        TimelineMetric metric = newMetric("metric1", "host", "app", null);
+        MetricValues values = new MetricValues();
+        values.put(1L, Double.NaN);
+        values.put(2L, Double.POSITIVE_INFINITY);
+        metric.setMetricValues(values);
+
+        TimelineMetrics timelineMetrics = new TimelineMetrics();
+        timelineMetrics.setMetrics(Arrays.asList(metric));
+
+        assertThat(encode(timelineMetrics), is(objectMapper.writeValueAsString(timelineMetrics)));
+    }
+
+    @Test
+    public void metricNamesFromDictionary() throws Exception {
+        MetricNameDictionary dictionary = new MetricNameDictionary();
+        dictionary.getId("counter.\"quoted\".é");
+
+        TimelineMetric metric = newMetric("counter.\"quoted\".é", "host", "app", null);
+        TimelineMetrics timelineMetrics = new TimelineMetrics();
+        timelineMetrics.setMetrics(Arrays.asList(metric));
+
+        String expected = objectMapper.writeValueAsString(timelineMetrics);
+
+        JsonByteBuffer dictionaryBuffer = new JsonByteBuffer(16);
+        new TimelineMetricsJsonEncoder(dictionary).encode(timelineMetrics, dictionaryBuffer);
+
+        assertThat(new String(dictionaryBuffer.toByteArray(), "UTF-8"), is(expected));
+    }
+
+    private String encode(TimelineMetrics timelineMetrics) throws Exception {
+        buffer.reset();
+        new TimelineMetricsJsonEncoder().encode(timelineMetrics, buffer);
+        return new String(buffer.toByteArray(), "UTF-8");
+    }
+
+    private TimelineMetric newMetric(String name, String hostName, String appId, String instanceId) {
+        TimelineMetric metric = new TimelineMetric();
+        metric.setMetricName(name);
+        metric.setHostName(hostName);
+        metric.setAppId(appId);
+        metric.setInstanceId(instanceId);
+        metric.setTimestamp(1455113271000L);
+        metric.setStartTime(1455113270000L);
+        return metric;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.lane;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PriorityLaneRouterTest {
+
+    private final PriorityLaneRouter router = new PriorityLaneRouter(Arrays.asList(new PriorityLane("critical", 0,
+            100, "counter.status.5*", "gauge.health"), new PriorityLane("counters", 500, 1000, "counter.*")));
+
+    @Test
+    public void routeToFirstMatchingLane() {
+        assertThat(router.route(0, "counter.status.503"), is(0));
+        assertThat(router.route(1, "gauge.health"), is(0));
+        assertThat(router.route(2, "counter.status.200"), is(1));
+        assertThat(router.route(3, "gauge.heap"), is(PriorityLaneRouter.DEFAULT_LANE));
+    }
+
+    @Test
+    public void routeIsCachedById() {
+        assertThat(router.route(200, "gauge.health"), is(0));
+        // The name is used only the first time the ID is seen
+        assertThat(router.route(200, "gauge.heap"), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeBufferSize() {
+        new PriorityLane("critical", -1, 0, "gauge.*");
+    }
+}
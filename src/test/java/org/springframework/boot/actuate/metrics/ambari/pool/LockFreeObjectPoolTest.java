@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.pool;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
+
+public class LockFreeObjectPoolTest {
+
+    private LockFreeObjectPool<TimelineMetric> pool;
+
+    @Before
+    public void before() {
+        pool = new LockFreeObjectPool<TimelineMetric>(new TimelineMetricFactory(), 20);
+    }
+
+    @Test
+    public void reuseReturnedObject() {
+        TimelineMetric metric = pool.borrowObject();
+        metric.setMetricName("metric1");
+        metric.getMetricValues().put(1L, 1.0);
+
+        pool.returnObject(metric);
+
+        TimelineMetric reused = pool.borrowObject();
+        assertThat(reused, sameInstance(metric));
+        assertThat(reused.getMetricName(), is((String) null));
+        assertThat(reused.getMetricValues().size(), is(0));
+        assertThat(pool.getCreatedCount(), is(1L));
+        assertThat(pool.getBorrowedCount(), is(2L));
+    }
+
+    @Test
+    public void surplusObjectsAreDropped() {
+        List<TimelineMetric> metrics = new ArrayList<TimelineMetric>();
+        for (int i = 0; i < 100; i++) {
+            metrics.add(pool.borrowObject());
+        }
+        assertThat(pool.getNumActive(), is(100));
+
+        for (TimelineMetric metric : metrics) {
+            pool.returnObject(metric);
+        }
+
+        // 16 cached by the thread plus the 20 idle objects in the shared stash
+        assertThat(pool.getNumIdle(), is(36));
+        assertThat(pool.getNumActive(), is(0));
+    }
+
+    @Test
+    public void objectsReturnedAfterCloseAreDropped() {
+        TimelineMetric metric = pool.borrowObject();
+        pool.close();
+        pool.returnObject(metric);
+
+        assertThat(pool.getNumIdle(), is(0));
+        assertThat(pool.borrowObject(), not(sameInstance(metric)));
+    }
+
+    @Test
+    public void invalidatedObjectsAreDropped() {
+        TimelineMetric metric = pool.borrowObject();
+        metric.setMetricName("metric1");
+
+        pool.invalidateObject(metric);
+
+        assertThat(metric.getMetricName(), is((String) null));
+        assertThat(pool.getNumActive(), is(0));
+        assertThat(pool.getNumIdle(), is(0));
+        assertThat(pool.borrowObject(), not(sameInstance(metric)));
+    }
+
+    @Test
+    public void objectsReturnedByAnotherThreadGoToTheStash() throws InterruptedException {
+        final List<TimelineMetric> metrics = new ArrayList<TimelineMetric>();
+        for (int i = 0; i < 10; i++) {
+            metrics.add(pool.borrowObject());
+        }
+
+        Thread returner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (TimelineMetric metric : metrics) {
+                    pool.returnObject(metric);
+                }
+            }
+        });
+        returner.start();
+        returner.join();
+
+        // Not stranded in the cache of the returning thread
+        assertThat(pool.getNumIdle(), is(10));
+        for (int i = 0; i < 10; i++) {
+            pool.borrowObject();
+        }
+        assertThat(pool.getCreatedCount(), is(10L));
+    }
+
+    @Test
+    public void clearKeepsTheIdleCountOfTheOtherThreads() throws InterruptedException {
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pool.returnObject(pool.borrowObject());
+            }
+        });
+        other.start();
+        other.join();
+
+        pool.clear();
+        assertThat(pool.getNumIdle(), is(0));
+
+        pool.returnObject(pool.borrowObject());
+        assertThat(pool.getNumIdle(), is(1));
+    }
+
+    @Test
+    public void concurrentBorrowAndReturn() throws InterruptedException {
+        final int threads = 4;
+        final int iterations = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger shared = new AtomicInteger();
+
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < iterations; i++) {
+                            TimelineMetric metric = pool.borrowObject();
+                            if (metric.getMetricName() != null) {
+                                shared.incrementAndGet();
+                            }
+                            metric.setMetricName(Thread.currentThread().getName());
+                            pool.returnObject(metric);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        done.await();
+
+        // Returned objects are always passivated and never handed to two threads at once
+        assertThat(shared.get(), is(0));
+        assertThat(pool.getNumActive(), is(0));
+        assertThat(pool.getBorrowedCount(), is((long) threads * iterations));
+    }
+
+    @Test
+    public void platformThreadIsNotVirtual() {
+        assertThat(LockFreeObjectPool.isVirtual(Thread.currentThread()), is(false));
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.reactive;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+
+public class TimelineMetricsPublisherTest {
+
+    private List<TimelineMetrics> dropped;
+
+    private TimelineMetricsPublisher publisher;
+
+    private RecordingSubscriber subscriber;
+
+    @Before
+    public void before() {
+        dropped = new ArrayList<TimelineMetrics>();
+        publisher = new TimelineMetricsPublisher(2, new TimelineMetricsPublisher.DroppedBatchHandler() {
+            @Override
+            public void dropped(TimelineMetrics timelineMetrics) {
+                dropped.add(timelineMetrics);
+            }
+        });
+        subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+    }
+
+    @Test
+    public void emitOnlyOnDemand() {
+        TimelineMetrics first = new TimelineMetrics();
+        TimelineMetrics second = new TimelineMetrics();
+
+        publisher.offer(first);
+        publisher.offer(second);
+        assertThat(subscriber.received.size(), is(0));
+        assertThat(publisher.hasCapacity(), is(false));
+
+        subscriber.subscription.request(1);
+        assertThat(subscriber.received, contains(first));
+        assertThat(publisher.getPendingCount(), is(1));
+
+        subscriber.subscription.request(5);
+        assertThat(subscriber.received, contains(first, second));
+
+        TimelineMetrics third = new TimelineMetrics();
+        publisher.offer(third);
+        assertThat(subscriber.received, contains(first, second, third));
+    }
+
+    @Test
+    public void dropOldestPendingBatch() {
+        TimelineMetrics first = new TimelineMetrics();
+        TimelineMetrics second = new TimelineMetrics();
+        TimelineMetrics third = new TimelineMetrics();
+
+        publisher.offer(first);
+        publisher.offer(second);
+        publisher.offer(third);
+
+        assertThat(dropped, contains(first));
+        assertThat(publisher.getDroppedCount(), is(1L));
+        assertThat(publisher.getPendingCount(), is(2));
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertThat(subscriber.received, contains(second, third));
+    }
+
+    @Test
+    public void completeAfterPendingBatches() {
+        TimelineMetrics first = new TimelineMetrics();
+        publisher.offer(first);
+        publisher.complete();
+        assertThat(subscriber.completed, is(false));
+
+        subscriber.subscription.request(1);
+        assertThat(subscriber.received, contains(first));
+        assertThat(subscriber.completed, is(true));
+
+        TimelineMetrics late = new TimelineMetrics();
+        assertThat(publisher.offer(late), is(false));
+        assertThat(dropped, contains(late));
+    }
+
+    @Test
+    public void cancelDropsPendingBatches() {
+        TimelineMetrics first = new TimelineMetrics();
+        publisher.offer(first);
+
+        subscriber.subscription.cancel();
+
+        assertThat(dropped, contains(first));
+        assertThat(publisher.offer(new TimelineMetrics()), is(false));
+    }
+
+    @Test
+    public void nonPositiveRequestSignalsError() {
+        subscriber.subscription.request(0);
+        assertThat(subscriber.error, instanceOf(IllegalArgumentException.class));
+    }
+
+    @Test
+    public void singleSubscriber() {
+        RecordingSubscriber other = new RecordingSubscriber();
+        publisher.subscribe(other);
+        assertThat(other.error, instanceOf(IllegalStateException.class));
+    }
+
+    private static class RecordingSubscriber implements Subscriber<TimelineMetrics> {
+
+        private Subscription subscription;
+
+        private final List<TimelineMetrics> received = new ArrayList<TimelineMetrics>();
+
+        private boolean completed;
+
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(TimelineMetrics timelineMetrics) {
+            received.add(timelineMetrics);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
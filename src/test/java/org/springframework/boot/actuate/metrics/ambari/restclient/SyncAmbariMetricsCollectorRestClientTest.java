@@ -18,6 +18,7 @@
 package org.springframework.boot.actuate.metrics.ambari.restclient;
 
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
@@ -29,6 +30,7 @@ import java.util.TreeMap;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricValues;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
 import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
 import org.springframework.http.HttpMethod;
@@ -83,4 +85,36 @@ public class SyncAmbariMetricsCollectorRestClientTest {
 
         Assert.assertTrue(successful);
     }
+
+    @Test
+    public void sendPrimitiveMetricValues() {
+
+        mockServer
+                .expect(requestTo("http://" + ambariMetricsCollectorHost + ":" + ambariMetricsCollectorPort
+                        + "/ws/v1/timeline/metrics"))
+                .andExpect(method(HttpMethod.POST))
+                .andExpect(
+                        content().string(
+                                "{\"metrics\":[{\"metricname\":\"Metric Name\",\"hostname\":\"a host\",\"timestamp\":0,"
+                                        + "\"appid\":\"appid\",\"starttime\":666666,"
+                                        + "\"metrics\":{\"666666\":666.666,\"999999\":999.999}}]}"))
+                .andExpect(header("Content-Length", "157")).andRespond(withSuccess());
+
+        TimelineMetric tm = new TimelineMetric();
+        tm.setAppId("appid");
+        tm.setHostName("a host");
+        tm.setMetricName("Metric Name");
+        tm.setStartTime(666666L);
+        MetricValues metricValues = new MetricValues();
+        metricValues.put(999999L, 999.999);
+        metricValues.put(666666L, 666.666);
+        tm.setMetricValues(metricValues);
+
+        TimelineMetrics tms = new TimelineMetrics();
+        tms.setMetrics(Arrays.asList(tm));
+
+        Assert.assertTrue(restClient.putMetrics(tms));
+
+        mockServer.verify();
+    }
 }
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.sidecar;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetricRingFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendAndPoll() throws Exception {
+        File file = new File(folder.getRoot(), "app-1.ring");
+        MetricRingFile writer = MetricRingFile.create(file, 1024);
+        MetricRingFile reader = MetricRingFile.open(file);
+        MetricRingFile.Cursor cursor = reader.cursor();
+
+        assertThat(writer.append(bytes("first"), 0, 5), is(true));
+        assertThat(writer.append(bytes("second"), 0, 6), is(true));
+
+        List<byte[]> records = cursor.poll();
+        assertThat(records.size(), is(2));
+        assertThat(new String(records.get(0), "UTF-8"), is("first"));
+        assertThat(new String(records.get(1), "UTF-8"), is("second"));
+        assertThat(cursor.isCaughtUp(), is(true));
+        assertThat(cursor.poll().isEmpty(), is(true));
+
+        assertThat(reader.isClosed(), is(false));
+        writer.close();
+        assertThat(reader.isClosed(), is(true));
+        reader.close();
+    }
+
+    @Test
+    public void wrapAround() throws Exception {
+        File file = new File(folder.getRoot(), "app-2.ring");
+        MetricRingFile writer = MetricRingFile.create(file, 128);
+        MetricRingFile.Cursor cursor = MetricRingFile.open(file).cursor();
+
+        // 48 bytes records: the third one does not fit the end of the ring and wraps
+        for (int i = 0; i < 10; i++) {
+            assertThat(writer.append(bytes(String.format("record-%033d", i)), 0, 40), is(true));
+            List<byte[]> records = cursor.poll();
+            assertThat(records.size(), is(1));
+            assertThat(new String(records.get(0), "UTF-8"), is(String.format("record-%033d", i)));
+        }
+        assertThat(cursor.getLostBytes(), is(0L));
+
+        assertThat(writer.append(new byte[200], 0, 200), is(false));
+    }
+
+    @Test
+    public void lappedReaderSkipsOverwrittenRecords() throws Exception {
+        File file = new File(folder.getRoot(), "app-3.ring");
+        MetricRingFile writer = MetricRingFile.create(file, 128);
+        MetricRingFile.Cursor cursor = MetricRingFile.open(file).cursor();
+
+        for (int i = 0; i < 10; i++) {
+            writer.append(new byte[40], 0, 40);
+        }
+
+        assertThat(cursor.poll().isEmpty(), is(true));
+        assertThat(cursor.getLostBytes() > 0, is(true));
+
+        writer.append(bytes("after"), 0, 5);
+        List<byte[]> records = cursor.poll();
+        assertThat(records.size(), is(1));
+        assertThat(new String(records.get(0), "UTF-8"), is("after"));
+    }
+
+    @Test
+    public void invalidRecordIsRetriedUntilLapped() throws Exception {
+        File file = new File(folder.getRoot(), "app-4.ring");
+        MetricRingFile writer = MetricRingFile.create(file, 1024);
+        MetricRingFile.Cursor cursor = MetricRingFile.open(file).cursor();
+
+        writer.append(bytes("first"), 0, 5);
+        writer.append(bytes("second"), 0, 6);
+        writer.append(bytes("third"), 0, 5);
+
+        // Payload of the second record: header 64 bytes, first record 16 bytes, record header 8 bytes
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            raw.seek(64 + 16 + 8);
+            raw.write('X');
+
+            List<byte[]> records = cursor.poll();
+            assertThat(records.size(), is(1));
+            assertThat(cursor.getLostBytes(), is(0L));
+            assertThat(cursor.isCaughtUp(), is(false));
+
+            raw.seek(64 + 16 + 8);
+            raw.write('s');
+        } finally {
+            raw.close();
+        }
+
+        List<byte[]> records = cursor.poll();
+        assertThat(records.size(), is(2));
+        assertThat(new String(records.get(0), "UTF-8"), is("second"));
+        assertThat(new String(records.get(1), "UTF-8"), is("third"));
+        assertThat(cursor.getLostBytes(), is(0L));
+
+        writer.append(bytes("fourth"), 0, 6);
+        cursor.skipRemaining();
+        assertThat(cursor.isCaughtUp(), is(true));
+        assertThat(cursor.getLostBytes(), is(16L));
+        writer.close();
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void notARingFile() throws Exception {
+        File file = folder.newFile("other.ring");
+        MetricRingFile.open(file);
+    }
+
+    private static byte[] bytes(String value) throws Exception {
+        return value.getBytes("UTF-8");
+    }
+}
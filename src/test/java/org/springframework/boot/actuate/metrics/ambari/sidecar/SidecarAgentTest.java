@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.sidecar;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.ambari.SidecarAmbariMetricWriter;
+import org.springframework.boot.actuate.metrics.ambari.restclient.SyncAmbariMetricsCollectorRestClient;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.web.client.MockRestServiceServer;
+
+public class SidecarAgentTest {
+
+    private static final String URL = "http://localhost:6188/ws/v1/timeline/metrics";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockRestServiceServer mockServer;
+
+    private SidecarAgent agent;
+
+    private SidecarAmbariMetricWriter writer1;
+
+    private SidecarAmbariMetricWriter writer2;
+
+    @Before
+    public void before() {
+        SyncAmbariMetricsCollectorRestClient restClient = new SyncAmbariMetricsCollectorRestClient("localhost",
+                "6188");
+        mockServer = MockRestServiceServer.createServer(restClient.getRestTemplate());
+        agent = new SidecarAgent(folder.getRoot(), restClient);
+
+        writer1 = new SidecarAmbariMetricWriter(folder.getRoot(), 64 * 1024, "app1", "host", null, 100);
+        writer2 = new SidecarAmbariMetricWriter(folder.getRoot(), 64 * 1024, "app2", "host", null, 100);
+    }
+
+    @After
+    public void after() throws Exception {
+        writer1.close();
+        writer2.close();
+        agent.close();
+    }
+
+    @Test
+    public void consolidateTheRingsOfManyWriters() throws Exception {
+        mockServer.expect(requestTo(URL)).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.metrics", hasSize(2)))
+                .andExpect(jsonPath("$.metrics[*].appid", containsInAnyOrder("app1", "app2")))
+                .andExpect(jsonPath("$.metrics[?(@.appid == 'app1')].metrics.1000", contains(1.0)))
+                .andExpect(jsonPath("$.metrics[?(@.appid == 'app1')].metrics.2000", contains(2.0)))
+                .andRespond(withSuccess());
+
+        // Two flushes of the same metric are merged into one series
+        writer1.set(new Metric<Number>("metric1", 1.0, new Date(1000)));
+        writer1.flushMetricBuffer();
+        writer1.set(new Metric<Number>("metric1", 2.0, new Date(2000)));
+        writer1.flushMetricBuffer();
+
+        writer2.set(new Metric<Number>("metric1", 3.0, new Date(1000)));
+        writer2.flushMetricBuffer();
+
+        assertThat(agent.runOnce(), is(2));
+        mockServer.verify();
+
+        assertThat(agent.getRingCount(), is(2));
+        assertThat(agent.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void removeClosedRingsOnceRead() throws Exception {
+        mockServer.expect(requestTo(URL)).andExpect(jsonPath("$.metrics[*].appid", contains("app1")))
+                .andRespond(withSuccess());
+
+        agent.runOnce();
+        assertThat(agent.getRingCount(), is(2));
+
+        writer1.set(new Metric<Number>("metric1", 1.0, new Date(1000)));
+        // Flushes the buffer before the ring is closed
+        writer1.close();
+
+        assertThat(agent.runOnce(), is(1));
+        mockServer.verify();
+
+        assertThat(agent.getRingCount(), is(1));
+        assertThat(writer1.getRingFile().getFile().exists(), is(false));
+    }
+
+    @Test
+    public void retryFailedSends() throws Exception {
+        mockServer.expect(requestTo(URL)).andRespond(withServerError());
+        mockServer.expect(requestTo(URL)).andExpect(jsonPath("$.metrics[*].metricname", contains("metric1")))
+                .andRespond(withSuccess());
+
+        writer1.set(new Metric<Number>("metric1", 1.0, new Date(1000)));
+        writer1.flushMetricBuffer();
+
+        assertThat(agent.runOnce(), is(0));
+        assertThat(agent.getPendingCount(), is(1));
+
+        assertThat(agent.runOnce(), is(1));
+        mockServer.verify();
+        assertThat(agent.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void dropOldestPendingPoints() throws Exception {
+        mockServer.expect(requestTo(URL)).andRespond(withServerError());
+        mockServer.expect(requestTo(URL)).andRespond(withServerError());
+        mockServer.expect(requestTo(URL)).andExpect(jsonPath("$.metrics[0].starttime", is(3000)))
+                .andExpect(jsonPath("$.metrics[0].metrics.2000").doesNotExist())
+                .andExpect(jsonPath("$.metrics[0].metrics.3000", is(3.0)))
+                .andExpect(jsonPath("$.metrics[0].metrics.4000", is(4.0))).andRespond(withSuccess());
+
+        agent.setMaxPendingPoints(2);
+
+        writer1.set(new Metric<Number>("metric1", 1.0, new Date(1000)));
+        writer1.set(new Metric<Number>("metric1", 2.0, new Date(2000)));
+        writer1.flushMetricBuffer();
+        assertThat(agent.runOnce(), is(0));
+
+        writer1.set(new Metric<Number>("metric1", 3.0, new Date(3000)));
+        writer1.set(new Metric<Number>("metric1", 4.0, new Date(4000)));
+        writer1.flushMetricBuffer();
+        assertThat(agent.runOnce(), is(0));
+        assertThat(agent.getDroppedPoints(), is(2L));
+
+        assertThat(agent.runOnce(), is(1));
+        mockServer.verify();
+    }
+}
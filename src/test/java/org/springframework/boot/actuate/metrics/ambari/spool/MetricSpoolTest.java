@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.spool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.ambari.domain.MetricValues;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetric;
+import org.springframework.boot.actuate.metrics.ambari.domain.TimelineMetrics;
+
+public class MetricSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndReadBack() throws Exception {
+        MetricSpool spool = new MetricSpool(new File(folder.getRoot(), "spool"));
+        assertThat(spool.list().size(), is(0));
+
+        TimelineMetric metric = new TimelineMetric();
+        metric.setMetricName("metric1");
+        metric.setAppId("app");
+        metric.setHostName("host");
+        metric.setType("Long");
+        metric.setStartTime(10);
+        metric.setTimestamp(10);
+        MetricValues values = new MetricValues();
+        values.setIntegral(true);
+        values.put(10L, 1L);
+        values.put(20L, 2L);
+        metric.setMetricValues(values);
+
+        TimelineMetrics timelineMetrics = new TimelineMetrics();
+        timelineMetrics.setMetrics(Arrays.asList(metric));
+
+        File first = spool.write(timelineMetrics);
+        File second = spool.write(new TimelineMetrics());
+
+        List<File> files = spool.list();
+        assertThat(files, contains(first, second));
+
+        TimelineMetrics read = spool.read(first);
+        assertThat(read.getMetrics().size(), is(1));
+        TimelineMetric readMetric = read.getMetrics().get(0);
+        assertThat(readMetric.getMetricName(), is("metric1"));
+        assertThat(readMetric.getAppId(), is("app"));
+        assertThat(readMetric.getType(), is("Long"));
+        assertThat(readMetric.getStartTime(), is(10L));
+        assertThat(readMetric.getMetricValues().get(20L), is(2.0));
+
+        assertThat(spool.delete(first), is(true));
+        assertThat(spool.list(), contains(second));
+    }
+}
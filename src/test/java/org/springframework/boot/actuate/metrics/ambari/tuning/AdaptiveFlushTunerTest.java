@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.tuning;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+public class AdaptiveFlushTunerTest {
+
+    @Test
+    public void convergeToTargetRequestRate() {
+        // 6 requests per minute at 100 points per second: 1000 points every 10 seconds
+        AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(6, 0, 100);
+        assertThat(tuner.getFlushIntervalMillis(), is(10000L));
+
+        long now = 0;
+        tuner.recordFlush(0, now);
+        for (int i = 0; i < 10; i++) {
+            int points = tuner.getBufferSize();
+            now += points * 10; // 100 points per second
+            tuner.recordFlush(points, now);
+        }
+
+        assertThat(tuner.getBufferSize(), is(1000));
+        assertThat(tuner.getFlushIntervalMillis(), is(10000L));
+    }
+
+    @Test
+    public void convergeToTargetPayloadSize() {
+        AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(0, 50000, 100);
+
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            int points = tuner.getBufferSize();
+            tuner.recordPayload(points, points * 50, 1000000);
+            now += 1000;
+            tuner.recordFlush(points, now);
+        }
+
+        assertThat(tuner.getBytesPerPoint(), is(50.0));
+        assertThat(tuner.getBufferSize(), is(1000));
+    }
+
+    @Test
+    public void batchMoreWhenTheCollectorIsSlow() {
+        AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(60, 0, 100);
+
+        long now = 0;
+        tuner.recordFlush(0, now);
+        now += 1000;
+        tuner.recordFlush(100, now);
+        assertThat(tuner.getBufferSize(), is(100));
+
+        // Each send takes longer than the one second flush interval
+        tuner.recordSend(2000000000L, true);
+        now += 1000;
+        tuner.recordFlush(100, now);
+
+        assertThat(tuner.getBufferSize(), is(200));
+        assertThat(tuner.getFlushIntervalMillis(), is(2000L));
+    }
+
+    @Test
+    public void bufferSizeStaysInRange() {
+        AdaptiveFlushTuner tuner = new AdaptiveFlushTuner(0, 1000000000L, 100, 10, 500);
+        for (int i = 0; i < 10; i++) {
+            tuner.recordPayload(100, 100, 0);
+            tuner.recordFlush(100, i * 1000);
+        }
+        assertThat(tuner.getBufferSize(), is(500));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void targetRequired() {
+        new AdaptiveFlushTuner(0, 0, 100);
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.actuate.metrics.ambari.tuning;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void consumeIntoDebtAndRefill() {
+        TokenBucket bucket = new TokenBucket(1000, 2000);
+        long now = System.nanoTime();
+
+        assertThat(bucket.hasTokens(now), is(true));
+        bucket.consume(5000, now);
+        assertThat(bucket.hasTokens(now), is(false));
+
+        // 3000 bytes of debt take 3 seconds to pay back
+        assertThat(bucket.hasTokens(now + 2 * SECOND), is(false));
+        assertThat(bucket.hasTokens(now + 3 * SECOND + 1000), is(true));
+    }
+
+    @Test
+    public void debtNanos() {
+        TokenBucket bucket = new TokenBucket(1000, 2000);
+        long now = System.nanoTime();
+
+        assertThat(bucket.getDebtNanos(now), is(0L));
+        bucket.consume(5000, now);
+
+        long debtNanos = bucket.getDebtNanos(now);
+        assertThat(debtNanos > 3 * SECOND - 1000 && debtNanos <= 3 * SECOND + 1, is(true));
+        assertThat(bucket.hasTokens(now + debtNanos), is(true));
+    }
+
+    @Test
+    public void refillUpToTheBurstSize() {
+        TokenBucket bucket = new TokenBucket(1000, 2000);
+        long now = System.nanoTime();
+
+        bucket.consume(2000, now + 100 * SECOND);
+        assertThat(bucket.hasTokens(now + 100 * SECOND), is(false));
+    }
+
+    @Test
+    public void defaultBurstIsOneSecond() {
+        assertThat(new TokenBucket(1000, 0).getBurstBytes(), is(1000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rateRequired() {
+        new TokenBucket(0, 0);
+    }
+}